@@ -68,6 +68,7 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter
             .antMatchers( HttpMethod.GET, "/favicon.ico" ).permitAll()
             .antMatchers( HttpMethod.GET, "/actuator/health" ).permitAll()
             .antMatchers( HttpMethod.GET, "/actuator/info" ).permitAll()
+            .antMatchers( HttpMethod.GET, "/api/readiness" ).permitAll()
             .antMatchers( HttpMethod.GET, "/docs/**" ).permitAll()
             .antMatchers( HttpMethod.GET, "/dhis/metadata/**" ).permitAll()
             .antMatchers( HttpMethod.GET, "/scripts/**" ).permitAll()
@@ -164,6 +164,10 @@ public abstract class AbstractAppTest
     @Qualifier( "dhisCacheManager" )
     private CacheManager dhisCacheManager;
 
+    @Autowired
+    @Qualifier( "stagedDhisCacheManager" )
+    private CacheManager stagedDhisCacheManager;
+
     @Autowired
     @Qualifier( "fhirCacheManager" )
     private CacheManager fhirCacheManager;
@@ -414,6 +418,7 @@ public abstract class AbstractAppTest
 
         clearCache( metadataCacheManager );
         clearCache( dhisCacheManager );
+        clearCache( stagedDhisCacheManager );
         clearCache( fhirCacheManager );
 
         final TransactionStatus transactionStatus = transactionManager.getTransaction( new DefaultTransactionDefinition() );
@@ -36,7 +36,7 @@ import org.dhis2.fhir.adapter.fhir.metadata.model.SubscriptionType;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
 import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
 import org.dhis2.fhir.adapter.lock.LockManager;
-import org.dhis2.fhir.adapter.lock.impl.EmbeddedLockManagerImpl;
+import org.dhis2.fhir.adapter.lock.impl.StripedLockManagerImpl;
 import org.dhis2.fhir.adapter.setup.FhirClientSetup;
 import org.dhis2.fhir.adapter.setup.OrganizationCodeSetup;
 import org.dhis2.fhir.adapter.setup.Setup;
@@ -176,7 +176,7 @@ public class TestConfiguration
     @Primary
     protected LockManager embeddedLockManager()
     {
-        return new EmbeddedLockManagerImpl();
+        return new StripedLockManagerImpl();
     }
 
     @Nonnull
@@ -0,0 +1,316 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.primitive.IdDt;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import org.apache.commons.io.IOUtils;
+import org.dhis2.fhir.adapter.App;
+import org.dhis2.fhir.adapter.AppException;
+import org.dhis2.fhir.adapter.TestConfiguration;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.impl.TrackedEntityInstances;
+import org.dhis2.fhir.adapter.fhir.data.repository.FhirDhisAssignmentRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResourceUpdate;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.RuleRepository;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Benchmark state that contains the fully initialized application context. The
+ * application context is created once per forked benchmark JVM. The DHIS2 metadata
+ * is served by a mock server, the referenced FHIR resources are served by a
+ * WireMock server and the DHIS2 tracker resources are kept in memory.
+ *
+ * @author volsch
+ */
+@State( Scope.Benchmark )
+public class BenchmarkApplication
+{
+    public static final String FHIR_RESOURCE_DIR = "/org/dhis2/fhir/adapter/fhir/test/r4/";
+
+    public static final String DHIS_RESOURCE_DIR = "/org/dhis2/fhir/adapter/dhis/test/";
+
+    public static final String BENCHMARK_RESOURCE_DIR = "/org/dhis2/fhir/adapter/benchmark/r4/";
+
+    /**
+     * Rule that transforms a FHIR Questionnaire Response based on a FHIR Care Plan.
+     */
+    public static final UUID CARE_PLAN_RULE_ID = UUID.fromString( "c4e17e7d-880e-45b5-9bc5-568da8c79742" );
+
+    /**
+     * Tracked entity attribute that contains the national identifier of a person.
+     */
+    public static final String NATIONAL_IDENTIFIER_ATTRIBUTE_ID = "jD1NGmSntCt";
+
+    private ConfigurableApplicationContext context;
+
+    private TestConfiguration testConfiguration;
+
+    private final Map<FhirResourceType, UUID> additionalFhirClientResourceIds = new EnumMap<>( FhirResourceType.class );
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    @Setup( Level.Trial )
+    public void setup() throws IOException
+    {
+        prepareHome();
+
+        context = new SpringApplicationBuilder( App.class, TestConfiguration.class, BenchmarkConfig.class )
+            .properties( "spring.config.additional-location=classpath:/benchmark.properties" ).run();
+
+        final WireMockServer fhirMockServer = context.getBean( "fhirMockServer", WireMockServer.class );
+        testConfiguration = context.getBean( TestConfiguration.class );
+        testConfiguration.init( fhirMockServer );
+
+        stubFhirServer( fhirMockServer );
+        stubDhisMetadata( context.getBean( "systemDhis2RestTemplate", RestTemplate.class ) );
+        // any unexpected access to the DHIS2 Web API (not covered by in-memory services) fails
+        MockRestServiceServer.bindTo( context.getBean( "userDhis2RestTemplate", RestTemplate.class ) ).build();
+
+        prepareDhisResources( context.getBean( ObjectMapper.class ) );
+        prepareFhirClientResources();
+        prepareAssignments();
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        if ( context != null )
+        {
+            context.close();
+            context = null;
+        }
+    }
+
+    @Nonnull
+    public <T> T getBean( @Nonnull Class<T> beanClass )
+    {
+        return context.getBean( beanClass );
+    }
+
+    @Nonnull
+    public <T> Collection<T> getBeans( @Nonnull Class<T> beanClass )
+    {
+        return context.getBeansOfType( beanClass ).values();
+    }
+
+    @Nonnull
+    public TestConfiguration getTestConfiguration()
+    {
+        return testConfiguration;
+    }
+
+    @Nonnull
+    public FhirClientResource getFhirClientResource( @Nonnull FhirResourceType resourceType )
+    {
+        final UUID id = additionalFhirClientResourceIds.containsKey( resourceType ) ?
+            additionalFhirClientResourceIds.get( resourceType ) : testConfiguration.getFhirClientResourceId( FhirVersion.R4, resourceType );
+
+        return runAsSystem( () -> context.getBean( FhirClientResourceRepository.class ).findOneByIdCached( id ) )
+            .orElseThrow( () -> new AppException( "FHIR client resource could not be found: " + id ) );
+    }
+
+    @Nonnull
+    public IBaseResource parseResource( @Nonnull String path )
+    {
+        return fhirContext.newJsonParser().parseResource( readResource( path ) );
+    }
+
+    @Nonnull
+    public static String readResource( @Nonnull String path )
+    {
+        try
+        {
+            return IOUtils.resourceToString( path, StandardCharsets.UTF_8 );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    protected void prepareHome() throws IOException
+    {
+        final Path home = Files.createTempDirectory( "dfab" );
+        final Path configPath = Paths.get( home.toAbsolutePath().toString(), App.RELATIVE_APPLICATION_PROPERTY_SOURCE );
+        Files.createDirectories( configPath.getParent() );
+        Files.createFile( configPath );
+        configPath.toFile().deleteOnExit();
+        System.setProperty( App.DHIS2_HOME_PROP, home.toAbsolutePath().toString() );
+    }
+
+    protected void stubFhirServer( @Nonnull WireMockServer fhirMockServer )
+    {
+        stubFhirResource( fhirMockServer, TestConfiguration.BASE_R4_CONTEXT + "/metadata", FHIR_RESOURCE_DIR + "metadata.json" );
+        stubFhirResource( fhirMockServer, TestConfiguration.BASE_DSTU3_CONTEXT + "/metadata", "/org/dhis2/fhir/adapter/fhir/test/dstu3/metadata.json" );
+        stubFhirResource( fhirMockServer, TestConfiguration.BASE_R4_CONTEXT + "/Patient/15", FHIR_RESOURCE_DIR + "get-patient-15.json" );
+        stubFhirResource( fhirMockServer, TestConfiguration.BASE_R4_CONTEXT + "/CarePlan/90", FHIR_RESOURCE_DIR + "get-care-plan-90.json" );
+
+        for ( int i = 18; i <= 21; i++ )
+        {
+            stubFhirResource( fhirMockServer, TestConfiguration.BASE_R4_CONTEXT + "/Organization/" + i, FHIR_RESOURCE_DIR + "get-organization-" + i + ".json" );
+        }
+    }
+
+    protected void stubFhirResource( @Nonnull WireMockServer fhirMockServer, @Nonnull String path, @Nonnull String resourcePath )
+    {
+        fhirMockServer.stubFor( WireMock.get( urlPathEqualTo( path ) ).willReturn( aResponse()
+            .withHeader( "Content-Type", "application/fhir+json" ).withBody( readResource( resourcePath ) ) ) );
+    }
+
+    protected void stubDhisMetadata( @Nonnull RestTemplate systemDhis2RestTemplate )
+    {
+        // more specific URL parts must be specified before less specific URL parts
+        final Map<String, String> resources = new LinkedHashMap<>();
+        resources.put( "/programStages/MsWxkiY6tMS.json", "single-program-stage.json" );
+        resources.put( "/programStages.json", "all-program-stages.json" );
+        resources.put( "/programs/EPDyQuoRnXk.json", "single-program.json" );
+        resources.put( "/programs.json", "all-programs.json" );
+        resources.put( "/trackedEntityTypes/MCPQUTHX1Ze.json", "single-tracked-entity-type.json" );
+        resources.put( "/trackedEntityTypes.json", "default-tracked-entity-type.json" );
+        resources.put( "/trackedEntityAttributes.json", "default-tracked-entity-attributes.json" );
+        resources.put( "/organisationUnits/ldXIdLNUNEn.json", "single-org-unit-OU_1234.json" );
+        resources.put( "filter=code:eq:OU_1234", "default-org-unit-OU_1234.json" );
+        resources.put( "filter=code:eq:OU_1357", "default-org-unit-OU_1357.json" );
+        resources.put( "filter=code:eq:OU_4567", "default-org-unit-OU_4567.json" );
+        resources.put( "/organisationUnits.json", "default-org-unit-empty.json" );
+
+        final MockRestServiceServer systemDhis2Server = MockRestServiceServer.bindTo( systemDhis2RestTemplate ).ignoreExpectOrder( true ).build();
+        resources.forEach( ( urlPart, resource ) -> systemDhis2Server.expect( ExpectedCount.manyTimes(), request -> {
+            if ( !request.getURI().toString().contains( urlPart ) )
+            {
+                throw new AssertionError( "URI does not contain " + urlPart );
+            }
+        } ).andRespond( withSuccess( readResource( DHIS_RESOURCE_DIR + resource ), MediaType.APPLICATION_JSON ) ) );
+    }
+
+    protected void prepareDhisResources( @Nonnull ObjectMapper objectMapper ) throws IOException
+    {
+        final InMemoryTrackedEntityServiceImpl trackedEntityService = AopTestUtils.getUltimateTargetObject( context.getBean( "trackedEntityServiceImpl" ) );
+        objectMapper.readValue( readResource( DHIS_RESOURCE_DIR + "default-tei-15-get.json" ), TrackedEntityInstances.class )
+            .getTrackedEntityInstances().forEach( tei -> {
+                // national identifier must match the identifier of FHIR Patient 15 in order to be found
+                tei.getAttribute( NATIONAL_IDENTIFIER_ATTRIBUTE_ID ).setValue( "PT_88589" );
+                trackedEntityService.getStore().save( tei );
+            } );
+
+        final InMemoryEnrollmentServiceImpl enrollmentService = AopTestUtils.getUltimateTargetObject( context.getBean( "enrollmentServiceImpl" ) );
+        enrollmentService.getStore().save( objectMapper.readValue( readResource( DHIS_RESOURCE_DIR + "single-enrollment-90-get.json" ), Enrollment.class ) );
+    }
+
+    protected void prepareFhirClientResources()
+    {
+        // FHIR Immunization is not included in the default setup of the FHIR clients
+        final FhirClientResource fhirClientResource = new FhirClientResource();
+        fhirClientResource.setFhirClient( runAsSystem( () -> context.getBean( FhirClientRepository.class ).findById( testConfiguration.getFhirClientId( FhirVersion.R4 ) ) )
+            .orElseThrow( () -> new AppException( "FHIR client could not be found." ) ) );
+        fhirClientResource.setFhirResourceType( FhirResourceType.IMMUNIZATION );
+        fhirClientResource.setDescription( "FHIR client for FHIR Immunization." );
+
+        final FhirClientResourceUpdate resourceUpdate = new FhirClientResourceUpdate( Instant.now() );
+        resourceUpdate.setGroup( fhirClientResource );
+        fhirClientResource.setResourceUpdate( resourceUpdate );
+
+        final UUID id = runAsSystem( () -> context.getBean( FhirClientResourceRepository.class ).save( fhirClientResource ) ).getId();
+        // the saved and detached entity has been put into the cache, but lazy associations have not been initialized
+        Objects.requireNonNull( context.getBean( "metadataCacheManager", CacheManager.class ).getCache( "fhirClientResource" ) ).evict( id );
+        additionalFhirClientResourceIds.put( FhirResourceType.IMMUNIZATION, id );
+    }
+
+    protected void prepareAssignments()
+    {
+        runAsSystem( () -> context.getBean( FhirDhisAssignmentRepository.class ).saveFhirResourceId(
+            context.getBean( RuleRepository.class ).findById( CARE_PLAN_RULE_ID )
+                .orElseThrow( () -> new AppException( "Rule could not be found: " + CARE_PLAN_RULE_ID ) ),
+            context.getBean( FhirClientRepository.class ).findById( testConfiguration.getFhirClientId( FhirVersion.R4 ) )
+                .orElseThrow( () -> new AppException( "FHIR client could not be found." ) ),
+            new DhisResourceId( DhisResourceType.ENROLLMENT, "ieR4nl4muff" ), new IdDt( "CarePlan", "90" ) ) );
+    }
+
+    @Nonnull
+    protected <T> T runAsSystem( @Nonnull Supplier<T> supplier )
+    {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
+        try
+        {
+            return supplier.get();
+        }
+        finally
+        {
+            SecurityContextHolder.getContext().setAuthentication( authentication );
+        }
+    }
+}
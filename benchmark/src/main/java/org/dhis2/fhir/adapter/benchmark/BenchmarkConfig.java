@@ -0,0 +1,64 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration of the benchmark application context. The DHIS2 tracker
+ * services are replaced by in-memory stand-ins. Since the original services
+ * are registered from the component index, they cannot be overridden by bean
+ * methods and the bean class of the original bean definitions is replaced
+ * instead.
+ *
+ * @author volsch
+ */
+@Configuration
+public class BenchmarkConfig
+{
+    @Nonnull
+    @Bean
+    protected static BeanFactoryPostProcessor inMemoryDhisServiceBeanFactoryPostProcessor()
+    {
+        final Map<String, Class<?>> beanClasses = new HashMap<>();
+        beanClasses.put( "trackedEntityServiceImpl", InMemoryTrackedEntityServiceImpl.class );
+        beanClasses.put( "enrollmentServiceImpl", InMemoryEnrollmentServiceImpl.class );
+        beanClasses.put( "eventServiceImpl", InMemoryEventServiceImpl.class );
+
+        return beanFactory -> beanClasses.forEach( ( beanName, beanClass ) ->
+            ( (AbstractBeanDefinition) beanFactory.getBeanDefinition( beanName ) ).setBeanClass( beanClass ) );
+    }
+}
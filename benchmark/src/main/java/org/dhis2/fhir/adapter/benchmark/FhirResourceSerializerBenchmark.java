@@ -0,0 +1,108 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceRedisSerializer;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceSerializationFormat;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the encoding and decoding of FHIR resources that are stored in the
+ * Redis FHIR resource cache for all serialization formats. The number of stored
+ * bytes per resource type and format is logged when the benchmark is set up.
+ * The benchmark does not require the application context.
+ *
+ * @author volsch
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Duser.timezone=CET" )
+public class FhirResourceSerializerBenchmark
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Param( { "PATIENT", "OBSERVATION", "IMMUNIZATION", "QUESTIONNAIRE_RESPONSE" } )
+    private FhirResourceType resourceType;
+
+    @Param( { "JSON", "DEFLATE_JSON" } )
+    private FhirResourceSerializationFormat format;
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    private FhirResourceRedisSerializer serializer;
+
+    private IBaseResource resource;
+
+    private byte[] serializedResource;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        serializer = new FhirResourceRedisSerializer( Collections.singletonList( fhirContext ), format );
+        resource = fhirContext.newJsonParser().parseResource(
+            BenchmarkApplication.readResource( FhirToDhisTransformerBenchmark.getResourcePath( resourceType ) ) );
+        serializedResource = serializer.serialize( resource );
+
+        logger.info( "Serialized {} with format {}: {} bytes", resourceType, format, serializedResource.length );
+    }
+
+    @Benchmark
+    public byte[] serialize()
+    {
+        return serializer.serialize( resource );
+    }
+
+    @Benchmark
+    public IBaseResource deserialize()
+    {
+        return serializer.deserialize( serializedResource );
+    }
+}
@@ -0,0 +1,207 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.google.common.collect.ArrayListMultimap;
+import org.dhis2.fhir.adapter.TestConfiguration;
+import org.dhis2.fhir.adapter.auth.Authorization;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientSystemRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
+import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.FhirToDhisTransformOutcome;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.FhirToDhisTransformerRequest;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.FhirToDhisTransformerService;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.model.ResourceSystem;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.model.WritableFhirRequest;
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.dhis2.fhir.adapter.lock.LockManager;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks the transformation of FHIR resources to DHIS2 resources. The
+ * benchmark {@link #transform(Blackhole)} measures the evaluation of the rules
+ * and the execution of the transformation scripts only. The benchmark
+ * {@link #save()} measures the complete processing of a FHIR resource that has
+ * been received from a FHIR client, including the persistence of the resulting
+ * DHIS2 resources (in memory) and the FHIR to DHIS2 assignments.
+ * <p>
+ * The allocation rate is reported when running JMH with the GC profiler
+ * (<code>-prof gc</code>), which is the default when running the benchmarks
+ * with Maven.
+ *
+ * @author volsch
+ */
+@State( Scope.Thread )
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Duser.timezone=CET" )
+public class FhirToDhisTransformerBenchmark
+{
+    @Param( { "PATIENT", "OBSERVATION", "IMMUNIZATION", "QUESTIONNAIRE_RESPONSE" } )
+    private FhirResourceType resourceType;
+
+    private AuthorizationContext authorizationContext;
+
+    private RequestCacheService requestCacheService;
+
+    private LockManager lockManager;
+
+    private FhirToDhisTransformerService transformerService;
+
+    private FhirRepository fhirRepository;
+
+    private FhirClientResource fhirClientResource;
+
+    private Map<FhirResourceType, ResourceSystem> resourceSystemsByType;
+
+    private IBaseResource resource;
+
+    @Setup( Level.Trial )
+    public void setup( @Nonnull BenchmarkApplication application )
+    {
+        authorizationContext = application.getBean( AuthorizationContext.class );
+        requestCacheService = application.getBean( RequestCacheService.class );
+        lockManager = application.getBean( LockManager.class );
+        transformerService = application.getBean( FhirToDhisTransformerService.class );
+        fhirRepository = application.getBean( FhirRepository.class );
+
+        // JMH invokes setup and benchmark methods on the same worker thread
+        SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
+        authorizationContext.setAuthorization( new Authorization( application.getTestConfiguration().getDhis2UserAuthorization() ) );
+
+        fhirClientResource = application.getFhirClientResource( resourceType );
+        resourceSystemsByType = application.getBean( FhirClientSystemRepository.class ).findByFhirClient( fhirClientResource.getFhirClient() ).stream()
+            .map( s -> new ResourceSystem( s.getFhirResourceType(), s.getSystem().getSystemUri(), s.getCodePrefix(), s.getDefaultValue(), s.getSystem().getFhirDisplayName(), s.isFhirId() ) )
+            .collect( Collectors.toMap( ResourceSystem::getFhirResourceType, rs -> rs ) );
+        resource = application.parseResource( getResourcePath( resourceType ) );
+
+        // creates referenced tracked entity instances so that all benchmarks work on existing DHIS2 resources
+        fhirRepository.save( fhirClientResource, resource, null );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        authorizationContext.resetAuthorization();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public void transform( @Nonnull Blackhole blackhole )
+    {
+        FhirToDhisTransformerRequest transformerRequest = transformerService.createTransformerRequest( createFhirRequest(), fhirClientResource, resource, false );
+
+        do
+        {
+            final FhirToDhisTransformOutcome<? extends DhisResource> outcome;
+            try ( final LockContext lockContext = lockManager.begin() )
+            {
+                try ( final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext( true ) )
+                {
+                    outcome = transformerService.transform( transformerRequest );
+                }
+            }
+
+            blackhole.consume( outcome );
+            transformerRequest = (outcome == null) ? null : outcome.getNextTransformerRequest();
+        }
+        while ( transformerRequest != null );
+    }
+
+    @Benchmark
+    public Object save()
+    {
+        return fhirRepository.save( fhirClientResource, resource, null );
+    }
+
+    @Nonnull
+    protected WritableFhirRequest createFhirRequest()
+    {
+        final WritableFhirRequest fhirRequest = new WritableFhirRequest();
+        fhirRequest.setResourceType( resourceType );
+        fhirRequest.setResourceId( resource.getIdElement().getIdPart() );
+        fhirRequest.setResourceVersionId( resource.getMeta().getVersionId() );
+        fhirRequest.setFhirClientId( fhirClientResource.getFhirClient().getId() );
+        fhirRequest.setFhirClientResourceId( fhirClientResource.getId() );
+        fhirRequest.setVersion( fhirClientResource.getFhirClient().getFhirVersion() );
+        fhirRequest.setParameters( ArrayListMultimap.create() );
+        fhirRequest.setFhirClientCode( fhirClientResource.getFhirClient().getCode() );
+        fhirRequest.setResourceSystemsByType( resourceSystemsByType );
+        fhirRequest.setSync( true );
+        fhirRequest.setDhisUsername( TestConfiguration.DHIS2_USERNAME );
+
+        return fhirRequest;
+    }
+
+    @Nonnull
+    protected static String getResourcePath( @Nonnull FhirResourceType resourceType )
+    {
+        switch ( resourceType )
+        {
+            case PATIENT:
+                return BenchmarkApplication.FHIR_RESOURCE_DIR + "get-patient-15.json";
+            case OBSERVATION:
+                return BenchmarkApplication.FHIR_RESOURCE_DIR + "get-observation-70.json";
+            case IMMUNIZATION:
+                return BenchmarkApplication.BENCHMARK_RESOURCE_DIR + "get-immunization-60.json";
+            case QUESTIONNAIRE_RESPONSE:
+                return BenchmarkApplication.FHIR_RESOURCE_DIR + "get-questionnaire-response-91.json";
+            default:
+                throw new AssertionError( "Unhandled FHIR resource type: " + resourceType );
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for the DHIS2 Web API storage of a single resource type.
+ * Resources are kept in their serialized JSON form. Every read deserializes the
+ * resource and every write serializes the resource, so that the allocation and
+ * parsing costs of the REST client are still part of the measurement while the
+ * network round trips are not.
+ *
+ * @param <T> the concrete type of the stored DHIS2 resource.
+ * @author volsch
+ */
+public class InMemoryDhisResourceStore<T extends DhisResource>
+{
+    private final ObjectMapper objectMapper;
+
+    private final Class<T> resourceClass;
+
+    private final Map<String, byte[]> resources = new ConcurrentHashMap<>();
+
+    public InMemoryDhisResourceStore( @Nonnull ObjectMapper objectMapper, @Nonnull Class<T> resourceClass )
+    {
+        this.objectMapper = objectMapper;
+        this.resourceClass = resourceClass;
+    }
+
+    @Nullable
+    public T findOneById( @Nonnull String id )
+    {
+        final byte[] content = resources.get( id );
+
+        return (content == null) ? null : read( content );
+    }
+
+    @Nonnull
+    public List<T> find( @Nonnull Predicate<T> predicate, int maxResult )
+    {
+        return resources.values().stream().map( this::read ).filter( predicate ).limit( maxResult ).collect( Collectors.toList() );
+    }
+
+    @Nonnull
+    public T save( @Nonnull T resource )
+    {
+        try
+        {
+            resources.put( resource.getId(), objectMapper.writeValueAsBytes( resource ) );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+
+        return resource;
+    }
+
+    public boolean delete( @Nonnull String id )
+    {
+        return resources.remove( id ) != null;
+    }
+
+    public void clear()
+    {
+        resources.clear();
+    }
+
+    @Nonnull
+    private T read( @Nonnull byte[] content )
+    {
+        try
+        {
+            return objectMapper.readValue( content, resourceClass );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+}
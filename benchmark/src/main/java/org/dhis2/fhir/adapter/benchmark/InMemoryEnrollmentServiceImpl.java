@@ -0,0 +1,138 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EnrollmentStatus;
+import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
+import org.dhis2.fhir.adapter.dhis.tracker.program.impl.EnrollmentServiceImpl;
+import org.dhis2.fhir.adapter.dhis.util.CodeGenerator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Implementation of the enrollment service that keeps all enrollments in memory
+ * instead of accessing DHIS2. Only the methods that access the DHIS2 Web API are
+ * replaced.
+ *
+ * @author volsch
+ */
+public class InMemoryEnrollmentServiceImpl extends EnrollmentServiceImpl
+{
+    private final InMemoryDhisResourceStore<Enrollment> store;
+
+    public InMemoryEnrollmentServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull EventService eventService,
+        @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectMapper objectMapper )
+    {
+        super( restTemplate, eventService, requestCacheService );
+        this.store = new InMemoryDhisResourceStore<>( objectMapper, Enrollment.class );
+    }
+
+    @Nonnull
+    public InMemoryDhisResourceStore<Enrollment> getStore()
+    {
+        return store;
+    }
+
+    @Nullable
+    @Override
+    protected Enrollment _findLatestActiveRefreshed( @Nonnull String programId, @Nonnull String trackedEntityInstanceId )
+    {
+        return store.find( e -> programId.equals( e.getProgramId() ) && trackedEntityInstanceId.equals( e.getTrackedEntityInstanceId() ) &&
+            (e.getStatus() == EnrollmentStatus.ACTIVE), 1 ).stream().findFirst().orElse( null );
+    }
+
+    @Nullable
+    @Override
+    protected Enrollment _findOneById( @Nonnull String id )
+    {
+        return store.findOneById( id );
+    }
+
+    @Nonnull
+    @Override
+    protected Enrollment _create( @Nonnull Enrollment enrollment )
+    {
+        if ( enrollment.getId() == null )
+        {
+            enrollment.setId( CodeGenerator.generateUid() );
+        }
+
+        enrollment.resetNewResource();
+        enrollment.setLocal( false );
+
+        if ( enrollment.getEvents() != null )
+        {
+            enrollment.getEvents().forEach( event -> {
+                if ( event.getId() == null )
+                {
+                    event.setId( CodeGenerator.generateUid() );
+                }
+
+                event.resetNewResource();
+                event.setLocal( false );
+            } );
+        }
+
+        return store.save( enrollment );
+    }
+
+    @Nonnull
+    @Override
+    protected Enrollment _update( @Nonnull Enrollment enrollment )
+    {
+        // update of included events is not supported
+        enrollment.setEvents( Collections.emptyList() );
+
+        return store.save( enrollment );
+    }
+
+    @Nonnull
+    @Override
+    protected Collection<Enrollment> _findAllByIds( @Nonnull Collection<String> ids )
+    {
+        final Collection<String> idSet = new HashSet<>( ids );
+
+        return store.find( e -> idSet.contains( e.getId() ), Integer.MAX_VALUE );
+    }
+
+    @Override
+    protected boolean _delete( @Nonnull String enrollmentId )
+    {
+        return store.delete( enrollmentId );
+    }
+}
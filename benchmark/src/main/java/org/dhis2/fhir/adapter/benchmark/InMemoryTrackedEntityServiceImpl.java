@@ -0,0 +1,127 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityMetadataService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.impl.TrackedEntityServiceImpl;
+import org.dhis2.fhir.adapter.dhis.util.CodeGenerator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+
+/**
+ * Implementation of the tracked entity service that keeps all tracked entity
+ * instances in memory instead of accessing DHIS2. Only the methods that access
+ * the DHIS2 Web API are replaced. Caching, request local handling and all
+ * other processing of the original service implementation still take place.
+ *
+ * @author volsch
+ */
+public class InMemoryTrackedEntityServiceImpl extends TrackedEntityServiceImpl
+{
+    private final InMemoryDhisResourceStore<TrackedEntityInstance> store;
+
+    public InMemoryTrackedEntityServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull AuthorizationContext authorizationContext,
+        @Nonnull RequestCacheService requestCacheService, @Nonnull TrackedEntityMetadataService metadataService, @Nonnull StoredDhisResourceService storedItemService,
+        @Nonnull @Qualifier( "dhisCacheManager" ) CacheManager cacheManager, @Nonnull ObjectProvider<MeterRegistry> meterRegistry, @Nonnull ObjectMapper objectMapper )
+    {
+        super( restTemplate, authorizationContext, requestCacheService, metadataService, storedItemService, cacheManager, meterRegistry );
+        this.store = new InMemoryDhisResourceStore<>( objectMapper, TrackedEntityInstance.class );
+    }
+
+    @Nonnull
+    public InMemoryDhisResourceStore<TrackedEntityInstance> getStore()
+    {
+        return store;
+    }
+
+    @Nullable
+    @Override
+    protected TrackedEntityInstance _findOneByIdRefreshed( @Nonnull String id )
+    {
+        return store.findOneById( id );
+    }
+
+    @Nonnull
+    @Override
+    public Collection<TrackedEntityInstance> findAllByIdsRefreshed( @Nonnull Collection<String> ids )
+    {
+        final Collection<String> idSet = new HashSet<>( ids );
+
+        return store.find( tei -> idSet.contains( tei.getId() ), Integer.MAX_VALUE );
+    }
+
+    @Nonnull
+    @Override
+    protected Collection<TrackedEntityInstance> _findByAttrValueRefreshed( @Nonnull String typeId, @Nonnull String attributeId, @Nonnull String value, int maxResult )
+    {
+        return store.find( tei -> Objects.equals( tei.getTypeId(), typeId ) && tei.containsAttribute( attributeId, value ), maxResult );
+    }
+
+    @Override
+    protected boolean _delete( @Nonnull String trackedEntityInstanceId )
+    {
+        return store.delete( trackedEntityInstanceId );
+    }
+
+    @Nonnull
+    @Override
+    protected TrackedEntityInstance create( @Nonnull TrackedEntityInstance trackedEntityInstance )
+    {
+        if ( trackedEntityInstance.getId() == null )
+        {
+            trackedEntityInstance.setId( CodeGenerator.generateUid() );
+        }
+
+        trackedEntityInstance.resetNewResource();
+        trackedEntityInstance.setLocal( false );
+
+        return store.save( trackedEntityInstance );
+    }
+
+    @Nonnull
+    @Override
+    protected TrackedEntityInstance update( @Nonnull TrackedEntityInstance trackedEntityInstance )
+    {
+        return store.save( trackedEntityInstance );
+    }
+}
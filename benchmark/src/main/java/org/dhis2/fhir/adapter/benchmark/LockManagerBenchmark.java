@@ -0,0 +1,126 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.dhis2.fhir.adapter.lock.LockManager;
+import org.dhis2.fhir.adapter.lock.impl.EmbeddedLockManagerImpl;
+import org.dhis2.fhir.adapter.lock.impl.StripedLockManagerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the contention of the lock managers that use internal JVM locks. Each
+ * operation locks two keys (in a consistent order, since the embedded lock manager
+ * does not detect deadlocks), performs some work while holding the locks and
+ * releases them. The number of distinct keys controls the contention on single keys.
+ * The benchmark does not require the application context.
+ *
+ * @author volsch
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Duser.timezone=CET" )
+public class LockManagerBenchmark
+{
+    private static final int WORK_TOKENS = 200;
+
+    @Param( { "embedded", "striped" } )
+    private String implementation;
+
+    @Param( { "16", "1024" } )
+    private int keyCount;
+
+    private LockManager lockManager;
+
+    private String[] keys;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        lockManager = "striped".equals( implementation ) ? new StripedLockManagerImpl() : new EmbeddedLockManagerImpl();
+        keys = new String[keyCount];
+        for ( int i = 0; i < keyCount; i++ )
+        {
+            keys[i] = "TrackedEntity:" + i;
+        }
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public void lock8Threads()
+    {
+        lock();
+    }
+
+    @Benchmark
+    @Threads( 32 )
+    public void lock32Threads()
+    {
+        lock();
+    }
+
+    @Benchmark
+    @Threads( 128 )
+    public void lock128Threads()
+    {
+        lock();
+    }
+
+    private void lock()
+    {
+        final int first = ThreadLocalRandom.current().nextInt( keyCount );
+        final int second = ThreadLocalRandom.current().nextInt( keyCount );
+
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( keys[Math.min( first, second )] );
+            lockContext.lock( keys[Math.max( first, second )] );
+            Blackhole.consumeCPU( WORK_TOKENS );
+        }
+    }
+}
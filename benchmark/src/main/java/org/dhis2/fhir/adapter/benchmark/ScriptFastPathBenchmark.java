@@ -0,0 +1,188 @@
+package org.dhis2.fhir.adapter.benchmark;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.google.common.collect.ArrayListMultimap;
+import org.dhis2.fhir.adapter.AppException;
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.DataType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScript;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
+import org.dhis2.fhir.adapter.fhir.metadata.model.Script;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptVariable;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ExecutableScriptRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.RuleRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptSourceRepository;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
+import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.FhirToDhisTransformerContext;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.impl.FhirToDhisTransformerContextImpl;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.impl.util.FhirToDhisTransformerUtils;
+import org.dhis2.fhir.adapter.fhir.transform.fhir.model.WritableFhirRequest;
+import org.dhis2.fhir.adapter.fhir.transform.util.TransformerUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the evaluation of trivial applicable scripts of rules with and
+ * without the fast path that bypasses the script engine. The scripts are
+ * executed in the same way as the applicable scripts of rules are executed by
+ * the FHIR to DHIS2 transformer service.
+ *
+ * @author volsch
+ */
+@State( Scope.Thread )
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Duser.timezone=CET" )
+public class ScriptFastPathBenchmark
+{
+    @Param( { "true", "false" } )
+    private boolean fastPathEnabled;
+
+    @Param( { "input.gender != null", "input.active", "input.hasBirthDate() && (input.gender == 'MALE')" } )
+    private String applicableScript;
+
+    private TransformationConfig transformationConfig;
+
+    private ScriptExecutor scriptExecutor;
+
+    private FhirToDhisTransformerContext context;
+
+    private RuleInfo<? extends AbstractRule> ruleInfo;
+
+    private ExecutableScript executableScript;
+
+    private Map<String, Object> scriptVariables;
+
+    @Setup( Level.Trial )
+    public void setup( @Nonnull BenchmarkApplication application )
+    {
+        transformationConfig = application.getBean( TransformationConfig.class );
+        scriptExecutor = application.getBean( ScriptExecutor.class );
+
+        // JMH invokes setup and benchmark methods on the same worker thread
+        SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
+        transformationConfig.setScriptFastPathEnabled( fastPathEnabled );
+
+        final AbstractRule rule = application.getBean( RuleRepository.class ).findById( BenchmarkApplication.CARE_PLAN_RULE_ID )
+            .orElseThrow( () -> new AppException( "Rule could not be found: " + BenchmarkApplication.CARE_PLAN_RULE_ID ) );
+        ruleInfo = new RuleInfo<>( rule, Collections.emptyList() );
+        executableScript = createExecutableScript( application );
+
+        final WritableFhirRequest fhirRequest = new WritableFhirRequest();
+        fhirRequest.setResourceType( FhirResourceType.PATIENT );
+        fhirRequest.setVersion( FhirVersion.R4 );
+        fhirRequest.setParameters( ArrayListMultimap.create() );
+        context = new FhirToDhisTransformerContextImpl( fhirRequest, false );
+
+        final IBaseResource input = application.parseResource( BenchmarkApplication.FHIR_RESOURCE_DIR + "get-patient-15.json" );
+        scriptVariables = new HashMap<>();
+        application.getBeans( FhirToDhisTransformerUtils.class ).stream().filter( tu -> tu.getFhirVersions().contains( FhirVersion.R4 ) )
+            .forEach( tu -> scriptVariables.put( tu.getScriptAttrName(), tu ) );
+        scriptVariables.put( ScriptVariable.CONTEXT.getVariableName(), context );
+        scriptVariables.put( ScriptVariable.INPUT.getVariableName(), input );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        transformationConfig.setScriptFastPathEnabled( true );
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public Boolean isApplicable()
+    {
+        return TransformerUtils.executeScript( scriptExecutor, context, ruleInfo, executableScript, scriptVariables, Boolean.class );
+    }
+
+    @Nonnull
+    protected ExecutableScript createExecutableScript( @Nonnull BenchmarkApplication application )
+    {
+        final String code = "BENCHMARK_" + Integer.toHexString( applicableScript.hashCode() );
+        final ExecutableScriptRepository executableScriptRepository = application.getBean( ExecutableScriptRepository.class );
+        final ExecutableScript existingExecutableScript = executableScriptRepository.findOneByCode( code ).orElse( null );
+        if ( existingExecutableScript != null )
+        {
+            return existingExecutableScript;
+        }
+
+        final Script script = new Script();
+        script.setName( "Benchmark " + applicableScript );
+        script.setCode( code );
+        script.setScriptType( ScriptType.EVALUATE );
+        script.setReturnType( DataType.BOOLEAN );
+        script.setVariables( new TreeSet<>( Arrays.asList( ScriptVariable.CONTEXT, ScriptVariable.INPUT ) ) );
+        application.getBean( ScriptRepository.class ).save( script );
+
+        final ScriptSource scriptSource = new ScriptSource();
+        scriptSource.setScript( script );
+        scriptSource.setSourceType( ScriptSourceType.JAVASCRIPT );
+        scriptSource.setSourceText( applicableScript );
+        scriptSource.setFhirVersions( new TreeSet<>( Collections.singleton( FhirVersion.R4 ) ) );
+        application.getBean( ScriptSourceRepository.class ).save( scriptSource );
+
+        final ExecutableScript executableScript = new ExecutableScript();
+        executableScript.setScript( script );
+        executableScript.setName( script.getName() );
+        executableScript.setCode( code );
+        return executableScriptRepository.save( executableScript );
+    }
+}
@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.cache;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.cache.CacheManager;
@@ -43,6 +44,7 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.validation.annotation.Validated;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
@@ -98,7 +100,8 @@ public abstract class AbstractSimpleCacheConfig implements Serializable
 
     @Nonnull
     protected <R> CacheManager createCacheManager( @Nonnull RequestCacheService requestCacheService,
-        @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull RedisSerializer<R> redisSerializer )
+        @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull RedisSerializer<R> redisSerializer,
+        @Nullable MeterRegistry meterRegistry )
     {
         final CacheManager defaultCacheManager;
         switch ( getType() )
@@ -114,6 +117,16 @@ public abstract class AbstractSimpleCacheConfig implements Serializable
             case REDIS:
                 defaultCacheManager = RedisCacheManager.builder( redisConnectionFactoryProvider.getObject() ).cacheDefaults( createRedisCacheConfiguration( redisSerializer ) ).build();
                 break;
+            case CAFFEINE_REDIS:
+                final CaffeineCacheManager localCacheManager = new CaffeineCacheManager();
+                localCacheManager.setCacheSpecification( caffeine.getSpec() );
+                final RedisConnectionFactory redisConnectionFactory = redisConnectionFactoryProvider.getObject();
+                final TwoLevelCacheManager twoLevelCacheManager = new TwoLevelCacheManager( getCacheManagerName(), localCacheManager,
+                    RedisCacheManager.builder( redisConnectionFactory ).cacheDefaults( createRedisCacheConfiguration( redisSerializer ) ).build(),
+                    getRedis().getKeyPrefix() + ":invalidation", meterRegistry );
+                twoLevelCacheManager.start( redisConnectionFactory );
+                defaultCacheManager = twoLevelCacheManager;
+                break;
             default:
                 throw new AssertionError( "Unhandled cache type: " + getType() );
         }
@@ -0,0 +1,167 @@
+package org.dhis2.fhir.adapter.cache;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces concurrent identical lookups. While a lookup for a key is in progress,
+ * all other callers that request the same key wait for and share the result of
+ * that lookup instead of issuing their own request. The key of a lookup should be
+ * built in the same way as the key that is used for caching the result. Since the
+ * result of the lookup is shared by several threads, callers that wait for the
+ * result receive a copy that is created by the specified copy function. The number
+ * of issued and coalesced lookups is counted by counter {@value #CALLS_COUNTER_NAME}.
+ *
+ * @author volsch
+ */
+public class SingleFlight
+{
+    public static final String CALLS_COUNTER_NAME = "dhis2.fhir.adapter.single.flight.calls";
+
+    public static final String FLIGHT_TAG_NAME = "flight";
+
+    public static final String RESULT_TAG_NAME = "result";
+
+    private final String name;
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter issuedCounter;
+
+    private final Counter coalescedCounter;
+
+    /**
+     * @param name          the name of the single flight (e.g. name of the service).
+     * @param meterRegistry the optional meter registry that receives the number
+     *                      of issued and coalesced lookups.
+     */
+    public SingleFlight( @Nonnull String name, @Nullable MeterRegistry meterRegistry )
+    {
+        this.name = name;
+        this.issuedCounter = createCounter( meterRegistry, "issued" );
+        this.coalescedCounter = createCounter( meterRegistry, "coalesced" );
+    }
+
+    @Nonnull
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Executes the lookup for the specified key or waits for the lookup for the same
+     * key that is already in progress.
+     *
+     * @param key      the key of the lookup.
+     * @param supplier the supplier that performs the lookup.
+     * @param copier   the function that copies the result for callers that have not
+     *                 performed the lookup by themselves.
+     * @param <V>      the concrete type of the result.
+     * @return the result of the lookup.
+     */
+    @SuppressWarnings( "unchecked" )
+    public <V> V execute( @Nonnull Object key, @Nonnull Supplier<V> supplier, @Nonnull UnaryOperator<V> copier )
+    {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> existingFuture = inFlight.putIfAbsent( key, future );
+
+        if ( existingFuture != null )
+        {
+            increment( coalescedCounter );
+
+            final V result;
+            try
+            {
+                result = (V) existingFuture.join();
+            }
+            catch ( CompletionException e )
+            {
+                if ( e.getCause() instanceof RuntimeException )
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                if ( e.getCause() instanceof Error )
+                {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+
+            return ( result == null ) ? null : copier.apply( result );
+        }
+
+        increment( issuedCounter );
+        try
+        {
+            final V result = supplier.get();
+            future.complete( result );
+
+            return result;
+        }
+        catch ( RuntimeException | Error e )
+        {
+            future.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove( key, future );
+        }
+    }
+
+    @Nullable
+    private Counter createCounter( @Nullable MeterRegistry meterRegistry, @Nonnull String result )
+    {
+        if ( meterRegistry == null )
+        {
+            return null;
+        }
+        return Counter.builder( CALLS_COUNTER_NAME ).tag( FLIGHT_TAG_NAME, name ).tag( RESULT_TAG_NAME, result )
+            .description( "Lookups that have been issued or coalesced with an identical lookup in progress." ).register( meterRegistry );
+    }
+
+    private static void increment( @Nullable Counter counter )
+    {
+        if ( counter != null )
+        {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.dhis2.fhir.adapter.cache;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cache that layers a local cache over a remote (shared) cache. Values that are read
+ * from the remote cache are put into the local cache. Modifications are applied to
+ * both caches and are published to all other instances so that they can evict the
+ * affected entries from their local caches. The keys of the local cache are the
+ * string representations of the keys that are also used by the remote Redis cache.
+ * These string representations are also published as invalidation messages.
+ *
+ * @author volsch
+ */
+public class TwoLevelCache implements Cache
+{
+    public static final String GETS_COUNTER_NAME = "dhis2.fhir.adapter.cache.gets";
+
+    public static final String CACHE_MANAGER_TAG_NAME = "cacheManager";
+
+    public static final String CACHE_TAG_NAME = "cache";
+
+    public static final String RESULT_TAG_NAME = "result";
+
+    private static final ConversionService conversionService = RedisCacheConfiguration.defaultCacheConfig().getConversionService();
+
+    private final Cache localCache;
+
+    private final Cache remoteCache;
+
+    private final Consumer<String> invalidationPublisher;
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final Counter localHitCounter;
+
+    private final Counter remoteHitCounter;
+
+    private final Counter missCounter;
+
+    /**
+     * @param cacheManagerName      the name of the cache manager to which this cache belongs.
+     * @param localCache            the local cache.
+     * @param remoteCache           the remote cache that is shared by all instances.
+     * @param invalidationPublisher the publisher of invalidated keys to all other
+     *                              instances (<code>null</code> if all keys have been invalidated).
+     * @param meterRegistry         the optional meter registry that receives the
+     *                              number of hits per cache level.
+     */
+    public TwoLevelCache( @Nonnull String cacheManagerName, @Nonnull Cache localCache, @Nonnull Cache remoteCache,
+        @Nonnull Consumer<String> invalidationPublisher, @Nullable MeterRegistry meterRegistry )
+    {
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+        this.invalidationPublisher = invalidationPublisher;
+        this.localHitCounter = createCounter( meterRegistry, cacheManagerName, "local-hit" );
+        this.remoteHitCounter = createCounter( meterRegistry, cacheManagerName, "remote-hit" );
+        this.missCounter = createCounter( meterRegistry, cacheManagerName, "miss" );
+    }
+
+    @Nonnull
+    @Override
+    public String getName()
+    {
+        return remoteCache.getName();
+    }
+
+    @Nonnull
+    @Override
+    public Object getNativeCache()
+    {
+        return remoteCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get( @Nonnull Object key )
+    {
+        final String localKey = convertKey( key );
+        ValueWrapper valueWrapper = localCache.get( localKey );
+        if ( valueWrapper != null )
+        {
+            increment( localHitCounter );
+            return valueWrapper;
+        }
+
+        // an invalidation that is received while reading the remote cache may refer to an outdated value
+        final long currentInvalidationCount = invalidationCount.get();
+        valueWrapper = remoteCache.get( key );
+        if ( valueWrapper == null )
+        {
+            increment( missCounter );
+            return null;
+        }
+
+        increment( remoteHitCounter );
+        if ( invalidationCount.get() == currentInvalidationCount )
+        {
+            localCache.put( localKey, valueWrapper.get() );
+        }
+        return valueWrapper;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public <T> T get( @Nonnull Object key, Class<T> type )
+    {
+        final ValueWrapper valueWrapper = get( key );
+        if ( valueWrapper == null )
+        {
+            return null;
+        }
+        if ( type == null )
+        {
+            return (T) valueWrapper.get();
+        }
+        return type.cast( valueWrapper.get() );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public <T> T get( @Nonnull Object key, @Nonnull Callable<T> valueLoader )
+    {
+        final ValueWrapper valueWrapper = get( key );
+        if ( valueWrapper != null )
+        {
+            return (T) valueWrapper.get();
+        }
+
+        final T value;
+        try
+        {
+            value = valueLoader.call();
+        }
+        catch ( Throwable ex )
+        {
+            throw new ValueRetrievalException( key, valueLoader, ex );
+        }
+
+        put( key, value );
+        return value;
+    }
+
+    @Override
+    public void put( @Nonnull Object key, Object value )
+    {
+        final String localKey = convertKey( key );
+        remoteCache.put( key, value );
+        localCache.put( localKey, value );
+        invalidationPublisher.accept( localKey );
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent( @Nonnull Object key, Object value )
+    {
+        final String localKey = convertKey( key );
+        final ValueWrapper valueWrapper = remoteCache.putIfAbsent( key, value );
+        localCache.evict( localKey );
+        invalidationPublisher.accept( localKey );
+        return valueWrapper;
+    }
+
+    @Override
+    public void evict( @Nonnull Object key )
+    {
+        final String localKey = convertKey( key );
+        remoteCache.evict( key );
+        localCache.evict( localKey );
+        invalidationPublisher.accept( localKey );
+    }
+
+    @Override
+    public void clear()
+    {
+        remoteCache.clear();
+        localCache.clear();
+        invalidationPublisher.accept( null );
+    }
+
+    /**
+     * Evicts the specified key from the local cache after it has been invalidated by
+     * another instance.
+     *
+     * @param localKey the string representation of the key or <code>null</code> if
+     *                 all keys have been invalidated.
+     */
+    public void invalidateLocal( @Nullable String localKey )
+    {
+        invalidationCount.incrementAndGet();
+        if ( localKey == null )
+        {
+            localCache.clear();
+        }
+        else
+        {
+            localCache.evict( localKey );
+        }
+    }
+
+    @Nonnull
+    protected String convertKey( @Nonnull Object key )
+    {
+        if ( key instanceof String )
+        {
+            return (String) key;
+        }
+        if ( conversionService.canConvert( key.getClass(), String.class ) )
+        {
+            final String convertedKey = conversionService.convert( key, String.class );
+            if ( convertedKey != null )
+            {
+                return convertedKey;
+            }
+        }
+        return key.toString();
+    }
+
+    @Nullable
+    private Counter createCounter( @Nullable MeterRegistry meterRegistry, @Nonnull String cacheManagerName, @Nonnull String result )
+    {
+        if ( meterRegistry == null )
+        {
+            return null;
+        }
+        return Counter.builder( GETS_COUNTER_NAME ).tag( CACHE_MANAGER_TAG_NAME, cacheManagerName ).tag( CACHE_TAG_NAME, getName() )
+            .tag( RESULT_TAG_NAME, result ).description( "Cache lookups by the cache level that provided the value." ).register( meterRegistry );
+    }
+
+    private static void increment( @Nullable Counter counter )
+    {
+        if ( counter != null )
+        {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.dhis2.fhir.adapter.cache;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache manager that provides {@link TwoLevelCache}s that use a local cache over
+ * a remote Redis cache. Invalidations are published over a Redis channel to all
+ * other instances. If invalidation messages are lost (e.g. since the connection to
+ * Redis was interrupted), the local caches may return outdated values until their
+ * entries expire.
+ *
+ * @author volsch
+ */
+public class TwoLevelCacheManager implements CacheManager, DisposableBean
+{
+    private static final String SEPARATOR = "\n";
+
+    private static final String EVICT = "E";
+
+    private static final String CLEAR = "C";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final String cacheManagerName;
+
+    private final CacheManager localCacheManager;
+
+    private final CacheManager remoteCacheManager;
+
+    private final String channel;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    private StringRedisTemplate redisTemplate;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    public TwoLevelCacheManager( @Nonnull String cacheManagerName, @Nonnull CacheManager localCacheManager, @Nonnull CacheManager remoteCacheManager,
+        @Nonnull String channel, @Nullable MeterRegistry meterRegistry )
+    {
+        this.cacheManagerName = cacheManagerName;
+        this.localCacheManager = localCacheManager;
+        this.remoteCacheManager = remoteCacheManager;
+        this.channel = channel;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts to publish and receive invalidation messages.
+     *
+     * @param redisConnectionFactory the connection factory that is used for the
+     *                               invalidation messages.
+     */
+    public void start( @Nonnull RedisConnectionFactory redisConnectionFactory )
+    {
+        redisTemplate = new StringRedisTemplate( redisConnectionFactory );
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory( redisConnectionFactory );
+        listenerContainer.addMessageListener( ( Message message, byte[] pattern ) ->
+            receive( new String( message.getBody(), StandardCharsets.UTF_8 ) ), new ChannelTopic( channel ) );
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        if ( listenerContainer != null )
+        {
+            listenerContainer.destroy();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cache getCache( @Nonnull String name )
+    {
+        final TwoLevelCache cache = caches.get( name );
+        if ( cache != null )
+        {
+            return cache;
+        }
+
+        final Cache localCache = localCacheManager.getCache( name );
+        final Cache remoteCache = remoteCacheManager.getCache( name );
+        if ( (localCache == null) || (remoteCache == null) )
+        {
+            return null;
+        }
+        return caches.computeIfAbsent( name, n -> new TwoLevelCache( cacheManagerName, localCache, remoteCache,
+            localKey -> publish( n, localKey ), meterRegistry ) );
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> getCacheNames()
+    {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    protected void publish( @Nonnull String cacheName, @Nullable String localKey )
+    {
+        if ( redisTemplate == null )
+        {
+            return;
+        }
+
+        try
+        {
+            redisTemplate.convertAndSend( channel, createMessage( cacheName, localKey ) );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Could not publish invalidation of cache {} of {}: {}", cacheName, cacheManagerName, e.getMessage() );
+        }
+    }
+
+    @Nonnull
+    protected String createMessage( @Nonnull String cacheName, @Nullable String localKey )
+    {
+        return (localKey == null) ? String.join( SEPARATOR, instanceId, CLEAR, cacheName ) :
+            String.join( SEPARATOR, instanceId, EVICT, cacheName, localKey );
+    }
+
+    protected void receive( @Nonnull String message )
+    {
+        final String[] parts = message.split( SEPARATOR, 4 );
+        if ( (parts.length < 3) || instanceId.equals( parts[0] ) )
+        {
+            return;
+        }
+
+        final TwoLevelCache cache = caches.get( parts[2] );
+        if ( cache == null )
+        {
+            // entries of the cache have never been put into the local cache
+            return;
+        }
+        if ( CLEAR.equals( parts[1] ) )
+        {
+            cache.invalidateLocal( null );
+        }
+        else if ( EVICT.equals( parts[1] ) && (parts.length == 4) )
+        {
+            cache.invalidateLocal( parts[3] );
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package org.dhis2.fhir.adapter.data.filter;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dhis2.fhir.adapter.data.model.DataGroup;
+import org.dhis2.fhir.adapter.data.model.DataGroupId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory filter of the IDs of the items of each group that are included in the
+ * database. The filter tells if an item is definitely not included in the database
+ * or if it may be included. Only in the latter case the database must be consulted.
+ * The filter of a group is loaded from the database by the specified executor (in
+ * the background) when it is accessed the first time. Until the filter has been
+ * loaded, the database is always consulted.<br>
+ *
+ * Items must be added to the filter before they are added to the database. Since
+ * items cannot be removed from a Bloom filter, the items are added to generations
+ * that cover a limited time period. A generation is dropped as soon as all of its
+ * items have been deleted from the database. The results of the lookups are counted
+ * by counter {@value #LOOKUP_COUNTER_NAME} (result <code>hit</code> if the lookup
+ * in the database could be avoided, <code>miss</code> if the item has been found in
+ * the database and <code>false-positive</code> if the item has not been found in the
+ * database).
+ *
+ * @param <G> the concrete type of the group of the items.
+ * @author volsch
+ */
+public class ItemFilter<G extends DataGroup>
+{
+    public static final String LOOKUP_COUNTER_NAME = "dhis2.fhir.adapter.item.filter.lookups";
+
+    public static final String FILTER_TAG_NAME = "filter";
+
+    public static final String RESULT_TAG_NAME = "result";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String name;
+
+    private final boolean enabled;
+
+    private final int expectedInsertions;
+
+    private final double falsePositiveProbability;
+
+    private final long generationMillis;
+
+    private final ItemFilterLoader<G> loader;
+
+    private final Executor loadExecutor;
+
+    private final Map<DataGroupId, GroupFilter> groupFilters = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private final Counter falsePositiveCounter;
+
+    public ItemFilter( @Nonnull String name, @Nonnull ItemFilterConfig config, @Nonnull ItemFilterLoader<G> loader, @Nullable MeterRegistry meterRegistry )
+    {
+        this( name, config, loader, Runnable::run, meterRegistry );
+    }
+
+    /**
+     * @param name          the name of the filter.
+     * @param config        the configuration of the filter.
+     * @param loader        the loader that loads the filter of a group from the database.
+     * @param loadExecutor  the executor that executes the loading of the filter of a group.
+     * @param meterRegistry the optional meter registry that receives the lookup results.
+     */
+    public ItemFilter( @Nonnull String name, @Nonnull ItemFilterConfig config, @Nonnull ItemFilterLoader<G> loader, @Nonnull Executor loadExecutor, @Nullable MeterRegistry meterRegistry )
+    {
+        this.name = name;
+        this.enabled = config.isEnabled();
+        this.expectedInsertions = config.getExpectedInsertions();
+        this.falsePositiveProbability = config.getFalsePositiveProbability();
+        this.generationMillis = TimeUnit.MINUTES.toMillis( config.getGenerationMinutes() );
+        this.loader = loader;
+        this.loadExecutor = loadExecutor;
+
+        if ( enabled && ( meterRegistry != null ) )
+        {
+            hitCounter = createCounter( meterRegistry, "hit" );
+            missCounter = createCounter( meterRegistry, "miss" );
+            falsePositiveCounter = createCounter( meterRegistry, "false-positive" );
+        }
+        else
+        {
+            hitCounter = null;
+            missCounter = null;
+            falsePositiveCounter = null;
+        }
+    }
+
+    @Nonnull
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Checks if the specified item of the specified group is included. The specified
+     * finder is only invoked if the item may be included.
+     *
+     * @param group  the group of the item.
+     * @param id     the ID of the item.
+     * @param finder the finder that checks if the item is included in the database.
+     * @return <code>true</code> if the item is included, <code>false</code> otherwise.
+     */
+    public boolean contains( @Nonnull G group, @Nonnull String id, @Nonnull Predicate<String> finder )
+    {
+        final GroupFilter groupFilter = getLoadedGroupFilter( group );
+        if ( groupFilter == null )
+        {
+            return finder.test( id );
+        }
+
+        if ( !groupFilter.mightContain( id ) )
+        {
+            increment( hitCounter, 1 );
+            return false;
+        }
+
+        final boolean found = finder.test( id );
+        increment( found ? missCounter : falsePositiveCounter, 1 );
+        return found;
+    }
+
+    /**
+     * Returns the IDs of the specified items of the specified group that are included.
+     * The specified finder is only invoked with the IDs of the items that may be included.
+     *
+     * @param group  the group of the items.
+     * @param ids    the IDs of the items.
+     * @param finder the finder that returns the IDs of the items that are included in the database.
+     * @return the IDs of the items that are included.
+     */
+    @Nonnull
+    public Set<String> find( @Nonnull G group, @Nonnull Collection<String> ids, @Nonnull Function<Collection<String>, Set<String>> finder )
+    {
+        final GroupFilter groupFilter = getLoadedGroupFilter( group );
+        if ( groupFilter == null )
+        {
+            return finder.apply( ids );
+        }
+
+        final List<String> candidateIds = ids.stream().filter( groupFilter::mightContain ).collect( Collectors.toList() );
+        increment( hitCounter, ids.size() - candidateIds.size() );
+        if ( candidateIds.isEmpty() )
+        {
+            return Collections.emptySet();
+        }
+
+        final Set<String> foundIds = finder.apply( candidateIds );
+        increment( missCounter, foundIds.size() );
+        increment( falsePositiveCounter, candidateIds.size() - foundIds.size() );
+        return foundIds;
+    }
+
+    /**
+     * Adds the specified item to the filter. The item must be added before it is
+     * added to the database.
+     *
+     * @param group     the group of the item.
+     * @param id        the ID of the item.
+     * @param timestamp the timestamp of the item that is used for deleting the oldest items.
+     */
+    public void put( @Nonnull G group, @Nonnull String id, @Nonnull Instant timestamp )
+    {
+        if ( enabled )
+        {
+            getGroupFilter( group ).put( id, timestamp );
+        }
+    }
+
+    /**
+     * Removes the generations of the filter of the specified group whose items are
+     * all older than the specified timestamp (i.e. have been deleted from the database).
+     *
+     * @param group     the group of the items.
+     * @param timestamp the timestamp before which all items have been deleted.
+     */
+    public void deleteOldest( @Nonnull G group, @Nonnull Instant timestamp )
+    {
+        if ( enabled )
+        {
+            final GroupFilter groupFilter = groupFilters.get( group.getGroupId() );
+            if ( groupFilter != null )
+            {
+                groupFilter.deleteOldest( timestamp );
+            }
+        }
+    }
+
+    @Nullable
+    protected GroupFilter getLoadedGroupFilter( @Nonnull G group )
+    {
+        if ( !enabled )
+        {
+            return null;
+        }
+
+        final GroupFilter groupFilter = getGroupFilter( group );
+        return groupFilter.isLoaded() ? groupFilter : null;
+    }
+
+    @Nonnull
+    protected GroupFilter getGroupFilter( @Nonnull G group )
+    {
+        GroupFilter groupFilter = groupFilters.get( group.getGroupId() );
+        if ( groupFilter == null )
+        {
+            final GroupFilter newGroupFilter = new GroupFilter();
+            groupFilter = groupFilters.putIfAbsent( group.getGroupId(), newGroupFilter );
+            if ( groupFilter == null )
+            {
+                // items that are added while loading are added to the same filter
+                groupFilter = newGroupFilter;
+                try
+                {
+                    loadExecutor.execute( () -> load( group, newGroupFilter ) );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    groupFilters.remove( group.getGroupId(), newGroupFilter );
+                    logger.warn( "Could not schedule loading of filter {} of group {}.", name, group.getGroupId() );
+                }
+            }
+        }
+        return groupFilter;
+    }
+
+    private void load( @Nonnull G group, @Nonnull GroupFilter groupFilter )
+    {
+        logger.debug( "Loading filter {} of group {}.", name, group.getGroupId() );
+        try
+        {
+            loader.load( group, groupFilter::put );
+        }
+        catch ( RuntimeException e )
+        {
+            groupFilters.remove( group.getGroupId(), groupFilter );
+            logger.warn( "Could not load filter {} of group {}. Database will be consulted for every lookup.", name, group.getGroupId(), e );
+            return;
+        }
+        groupFilter.setLoaded();
+        logger.info( "Loaded filter {} of group {} with {} items.", name, group.getGroupId(), groupFilter.getCount() );
+    }
+
+    @Nonnull
+    private Counter createCounter( @Nonnull MeterRegistry meterRegistry, @Nonnull String result )
+    {
+        return Counter.builder( LOOKUP_COUNTER_NAME ).tag( FILTER_TAG_NAME, name ).tag( RESULT_TAG_NAME, result ).register( meterRegistry );
+    }
+
+    private static void increment( @Nullable Counter counter, long amount )
+    {
+        if ( counter != null && amount > 0 )
+        {
+            counter.increment( amount );
+        }
+    }
+
+    /**
+     * The filter of a single group that consists of several generations.
+     */
+    protected class GroupFilter
+    {
+        private final List<Generation> generations = new CopyOnWriteArrayList<>();
+
+        private volatile boolean loaded;
+
+        public boolean isLoaded()
+        {
+            return loaded;
+        }
+
+        public void setLoaded()
+        {
+            this.loaded = true;
+        }
+
+        public long getCount()
+        {
+            return generations.stream().mapToLong( g -> g.count ).sum();
+        }
+
+        public int getGenerationCount()
+        {
+            return generations.size();
+        }
+
+        public boolean mightContain( @Nonnull String id )
+        {
+            for ( final Generation generation : generations )
+            {
+                if ( generation.filter.mightContain( id ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public synchronized void put( @Nonnull String id, @Nonnull Instant timestamp )
+        {
+            Generation generation = generations.isEmpty() ? null : generations.get( generations.size() - 1 );
+            if ( generation == null || generation.count >= expectedInsertions ||
+                timestamp.toEpochMilli() - generation.minTimestamp.toEpochMilli() >= generationMillis )
+            {
+                generation = new Generation( timestamp );
+                generations.add( generation );
+            }
+            generation.put( id, timestamp );
+        }
+
+        public synchronized void deleteOldest( @Nonnull Instant timestamp )
+        {
+            generations.removeIf( g -> g.maxTimestamp.isBefore( timestamp ) );
+        }
+    }
+
+    private class Generation
+    {
+        private final BloomFilter<CharSequence> filter = BloomFilter.create( Funnels.stringFunnel( StandardCharsets.UTF_8 ), expectedInsertions, falsePositiveProbability );
+
+        private final Instant minTimestamp;
+
+        private volatile Instant maxTimestamp;
+
+        private volatile long count;
+
+        private Generation( @Nonnull Instant timestamp )
+        {
+            this.minTimestamp = timestamp;
+            this.maxTimestamp = timestamp;
+        }
+
+        private void put( @Nonnull String id, @Nonnull Instant timestamp )
+        {
+            filter.put( id );
+            if ( timestamp.isAfter( maxTimestamp ) )
+            {
+                maxTimestamp = timestamp;
+            }
+            count++;
+        }
+    }
+}
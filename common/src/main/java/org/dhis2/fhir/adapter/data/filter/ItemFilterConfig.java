@@ -0,0 +1,111 @@
+package org.dhis2.fhir.adapter.data.filter;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+
+/**
+ * Configuration of the in-memory filters that avoid database lookups of stored and
+ * processed items that are definitely not included in the database.
+ *
+ * @author volsch
+ */
+@Configuration
+@Component
+@ConfigurationProperties( "dhis2.fhir-adapter.item-filter" )
+@Validated
+public class ItemFilterConfig implements Serializable
+{
+    private static final long serialVersionUID = 4529512893370519734L;
+
+    private boolean enabled;
+
+    @Min( 1 )
+    private int expectedInsertions = 100_000;
+
+    @DecimalMin( "0.000001" )
+    @DecimalMax( "0.5" )
+    private double falsePositiveProbability = 0.01;
+
+    @Min( 1 )
+    private int generationMinutes = 720;
+
+    /**
+     * @return <code>true</code> if the filters are enabled, <code>false</code>
+     * otherwise. The filters must only be enabled if there is a single instance of
+     * the adapter, since items that are stored by other instances are not known.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    public int getExpectedInsertions()
+    {
+        return expectedInsertions;
+    }
+
+    public void setExpectedInsertions( int expectedInsertions )
+    {
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    public double getFalsePositiveProbability()
+    {
+        return falsePositiveProbability;
+    }
+
+    public void setFalsePositiveProbability( double falsePositiveProbability )
+    {
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    public int getGenerationMinutes()
+    {
+        return generationMinutes;
+    }
+
+    public void setGenerationMinutes( int generationMinutes )
+    {
+        this.generationMinutes = generationMinutes;
+    }
+}
@@ -0,0 +1,88 @@
+package org.dhis2.fhir.adapter.data.filter;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dhis2.fhir.adapter.data.model.DataGroup;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the {@linkplain ItemFilter item filters} with the configured settings.
+ * The filters of all groups are loaded one after the other by a single background
+ * thread, so that processing threads never wait for the loading of a filter.
+ *
+ * @author volsch
+ */
+@Component
+public class ItemFilterFactory
+{
+    private final ItemFilterConfig config;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService loadExecutorService;
+
+    @Autowired
+    public ItemFilterFactory( @Nonnull ItemFilterConfig config, @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
+    {
+        this( config, meterRegistry.getIfAvailable() );
+    }
+
+    public ItemFilterFactory( @Nonnull ItemFilterConfig config, @Nullable MeterRegistry meterRegistry )
+    {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.loadExecutorService = config.isEnabled() ? Executors.newSingleThreadExecutor( new CustomizableThreadFactory( "item-filter-load-" ) ) : null;
+    }
+
+    @PreDestroy
+    protected void close()
+    {
+        if ( loadExecutorService != null )
+        {
+            loadExecutorService.shutdownNow();
+        }
+    }
+
+    @Nonnull
+    public <G extends DataGroup> ItemFilter<G> create( @Nonnull String name, @Nonnull ItemFilterLoader<G> loader )
+    {
+        return (loadExecutorService == null) ? new ItemFilter<>( name, config, loader, meterRegistry ) :
+            new ItemFilter<>( name, config, loader, loadExecutorService, meterRegistry );
+    }
+}
@@ -45,10 +45,15 @@ import org.dhis2.fhir.adapter.data.processor.QueuedDataProcessorException;
 import org.dhis2.fhir.adapter.data.processor.StoredItemService;
 import org.dhis2.fhir.adapter.data.repository.DataGroupUpdateRepository;
 import org.dhis2.fhir.adapter.data.repository.ProcessedItemRepository;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingOutcome;
+import org.dhis2.fhir.adapter.metrics.ProcessingStage;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
 import org.dhis2.fhir.adapter.security.SystemAuthenticationToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -58,7 +63,12 @@ import javax.annotation.Nullable;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
@@ -83,6 +93,12 @@ import java.util.stream.Collectors;
 public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI, G>, PI extends ProcessedItemId<G>, S extends StoredItem<SI, SG>, SI extends StoredItemId<SG>, SG extends DataGroup, QG extends QueuedItemId<G>, QI extends QueuedItemId<G>,
     G extends DataGroup, GI extends DataGroupId> implements QueuedDataProcessor<G>
 {
+    /**
+     * The minimum number of new items that are persisted and enqueued together
+     * by a single parallel execution.
+     */
+    protected static final int MIN_PARTITION_SIZE = 100;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final JmsTemplate groupQueueJmsTemplate;
@@ -101,6 +117,8 @@ public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI
 
     private final ForkJoinPool itemProcessorForkJoinPool;
 
+    private final ProcessingMetrics processingMetrics;
+
     private boolean periodicInfoLogging = true;
 
     public AbstractQueuedDataProcessorImpl(
@@ -111,7 +129,8 @@ public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI
         @Nonnull JmsTemplate itemQueueJmsTemplate,
         @Nonnull PlatformTransactionManager platformTransactionManager,
         @Nonnull SystemAuthenticationToken systemAuthenticationToken,
-        @Nonnull ForkJoinPool itemProcessorForkJoinPool )
+        @Nonnull ForkJoinPool itemProcessorForkJoinPool,
+        @Nonnull ProcessingMetrics processingMetrics )
     {
         this.groupQueueJmsTemplate = groupQueueJmsTemplate;
         this.dataGroupUpdateRepository = dataGroupUpdateRepository;
@@ -121,6 +140,7 @@ public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI
         this.platformTransactionManager = platformTransactionManager;
         this.systemAuthenticationToken = systemAuthenticationToken;
         this.itemProcessorForkJoinPool = itemProcessorForkJoinPool;
+        this.processingMetrics = processingMetrics;
     }
 
     protected boolean isPeriodicInfoLogging()
@@ -204,30 +224,65 @@ public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI
         }
 
         final SG storedItemGroup = getStoredItemGroup( group );
+        final ProcessingTags tags = createProcessingTags( group );
         final Instant begin = Instant.now();
         final DataProcessorItemRetriever<G> itemRetriever = getDataProcessorItemRetriever( group );
         final AtomicLong count = new AtomicLong();
-        final Instant lastUpdated = itemRetriever.poll( group, origLastUpdated, getMaxSearchCount(), items -> {
-            final Instant processedAt = Instant.now();
-            final List<String> processableIds = items.stream().map( sr -> sr.toIdString( processedAt ) ).collect( Collectors.toList() );
-            final Set<String> processedIds = processedItemRepository.find( group, processableIds );
-            final Set<String> storedIds = storedItemService.findProcessedIds( storedItemGroup, processableIds );
-
-            final ForkJoinTask<?> task = itemProcessorForkJoinPool.submit( () -> items.parallelStream().forEach( item -> {
-                final String processedId = item.toIdString( processedAt );
-                if ( !processedIds.contains( processedId ) && !storedIds.contains( processedId ) )
+        final AtomicLong consumerNanos = new AtomicLong();
+        final long pollStartNanos = System.nanoTime();
+        ProcessingOutcome pollOutcome = ProcessingOutcome.FAILURE;
+        final Instant lastUpdated;
+
+        try ( final ProcessingMetrics.InFlight inFlight = processingMetrics.begin( tags.getPipeline() ) )
+        {
+            lastUpdated = itemRetriever.poll( group, origLastUpdated, getMaxSearchCount(), items -> {
+                final long consumerStartNanos = System.nanoTime();
+                try
                 {
-                    // persist processed item
-                    processedItemRepository.process( createProcessedItem( group, processedId, processedAt ), p -> {
-                        if ( enqueueDataItem( group, item, false ) )
+                    processingMetrics.count( ProcessingStage.POLL, tags, ProcessingOutcome.SUCCESS, items.size() );
+
+                    final Instant processedAt = Instant.now();
+                    final List<String> processableIds = items.stream().map( sr -> sr.toIdString( processedAt ) ).collect( Collectors.toList() );
+                    final Set<String> processedIds = processingMetrics.time( ProcessingStage.DEDUPLICATE, tags, () -> processedItemRepository.find( group, processableIds ) );
+                    final Set<String> storedIds = processingMetrics.time( ProcessingStage.DEDUPLICATE, tags, () -> storedItemService.findProcessedIds( storedItemGroup, processableIds ) );
+                    final Map<String, ProcessedItemInfo> newItems = new LinkedHashMap<>();
+                    items.forEach( item -> {
+                        final String processedId = item.toIdString( processedAt );
+                        if ( !processedIds.contains( processedId ) && !storedIds.contains( processedId ) )
                         {
-                            count.incrementAndGet();
+                            newItems.putIfAbsent( processedId, item );
                         }
                     } );
+
+                    final AtomicLong enqueuedCount = new AtomicLong();
+
+                    // each partition is persisted with a single statement and enqueued with a single session
+                    final List<List<String>> partitions = partition( new ArrayList<>( newItems.keySet() ), itemProcessorForkJoinPool.getParallelism() );
+                    final ForkJoinTask<?> task = itemProcessorForkJoinPool.submit( () -> partitions.parallelStream().forEach( partition -> {
+                        final List<P> partitionProcessedItems = partition.stream().map( id -> createProcessedItem( group, id, processedAt ) ).collect( Collectors.toList() );
+                        processedItemRepository.processAll( group, partitionProcessedItems, persistedItems -> {
+                            final List<ProcessedItemInfo> persistedItemInfos = persistedItems.stream()
+                                .map( p -> newItems.get( p.getId().getProcessedId() ) ).collect( Collectors.toList() );
+                            enqueuedCount.addAndGet( processingMetrics.time( ProcessingStage.ENQUEUE, tags, () -> enqueueDataItems( group, persistedItemInfos ) ) );
+                        } );
+                    } ) );
+                    awaitTaskTermination( task );
+                    count.addAndGet( enqueuedCount.longValue() );
+                    processingMetrics.count( ProcessingStage.DEDUPLICATE, tags, ProcessingOutcome.SKIPPED, items.size() - enqueuedCount.longValue() );
                 }
-            } ) );
-            awaitTaskTermination( task );
-        } );
+                finally
+                {
+                    consumerNanos.addAndGet( System.nanoTime() - consumerStartNanos );
+                }
+            } );
+            pollOutcome = ProcessingOutcome.SUCCESS;
+        }
+        finally
+        {
+            // time that has been spent by processing the polled items is recorded by the individual stages
+            processingMetrics.record( ProcessingStage.POLL, tags, pollOutcome, System.nanoTime() - pollStartNanos - consumerNanos.longValue() );
+        }
+
         dataGroupUpdateRepository.updateLastUpdated( group, lastUpdated );
         final Instant end = Instant.now();
 
@@ -258,6 +313,43 @@ public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI
         return true;
     }
 
+    /**
+     * Enqueues the specified items of the specified group by using a single JMS session.
+     *
+     * @param group the group to which the items belong to.
+     * @param items the items that should be enqueued.
+     * @return the number of enqueued items.
+     */
+    protected int enqueueDataItems( @Nonnull G group, @Nonnull Collection<ProcessedItemInfo> items )
+    {
+        itemQueueJmsTemplate.execute( (ProducerCallback<Object>) ( session, producer ) -> {
+            for ( final ProcessedItemInfo item : items )
+            {
+                producer.send( itemQueueJmsTemplate.getMessageConverter().toMessage( createDataItemQueueItem( group, item, false ), session ) );
+                logger.debug( "Item {} of group {} has been enqueued.", item.getId(), group.getGroupId() );
+            }
+            return null;
+        } );
+        return items.size();
+    }
+
+    @Nonnull
+    private static <T> List<List<T>> partition( @Nonnull List<T> values, int maxPartitions )
+    {
+        if ( values.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        final int partitionSize = Math.max( (values.size() + maxPartitions - 1) / maxPartitions, MIN_PARTITION_SIZE );
+        final List<List<T>> partitions = new ArrayList<>();
+        for ( int i = 0; i < values.size(); i += partitionSize )
+        {
+            partitions.add( values.subList( i, Math.min( i + partitionSize, values.size() ) ) );
+        }
+        return partitions;
+    }
+
     private void awaitTaskTermination( @Nonnull ForkJoinTask<?> task )
     {
         try
@@ -338,4 +430,7 @@ public abstract class AbstractQueuedDataProcessorImpl<P extends ProcessedItem<PI
 
     @Nonnull
     protected abstract SG getStoredItemGroup( @Nonnull G group );
+
+    @Nonnull
+    protected abstract ProcessingTags createProcessingTags( @Nonnull G group );
 }
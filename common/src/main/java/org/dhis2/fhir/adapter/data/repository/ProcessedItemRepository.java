@@ -53,5 +53,18 @@ public interface ProcessedItemRepository<T extends ProcessedItem<I, G>, I extend
 
     void process( @Nonnull T processedItem, @Nonnull Consumer<T> consumer );
 
+    /**
+     * Persists all specified processed items of the specified group that have not yet
+     * been persisted. The processed items that have been persisted by this invocation
+     * are passed to the specified consumer within the same transaction. If the consumer
+     * fails, none of the processed items remain persisted.
+     *
+     * @param prefix         the group of all processed items.
+     * @param processedItems the processed items that should be persisted.
+     * @param consumer       the consumer that receives the processed items that have
+     *                       been persisted by this invocation.
+     */
+    void processAll( @Nonnull G prefix, @Nonnull Collection<T> processedItems, @Nonnull Consumer<Collection<T>> consumer );
+
     int deleteOldest( @Nonnull G prefix, @Nonnull Instant timestamp );
 }
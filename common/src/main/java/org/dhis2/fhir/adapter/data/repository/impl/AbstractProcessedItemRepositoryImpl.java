@@ -28,10 +28,13 @@ package org.dhis2.fhir.adapter.data.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.data.filter.ItemFilter;
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
 import org.dhis2.fhir.adapter.data.model.DataGroup;
 import org.dhis2.fhir.adapter.data.model.ProcessedItem;
 import org.dhis2.fhir.adapter.data.model.ProcessedItemId;
 import org.dhis2.fhir.adapter.data.repository.ProcessedItemRepository;
+import org.hibernate.Session;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Nonnull;
@@ -41,14 +44,28 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
- * Implementation of a repository that stores already processed items.
+ * Implementation of a repository that stores already processed items. On PostgreSQL
+ * multiple processed items are persisted with a single multi-row insert statement
+ * that ignores already existing processed items. Lookups of processed items are
+ * filtered by an in-memory {@linkplain ItemFilter item filter}.
  *
  * @param <T> the concrete type of the processed item.
  * @param <I> the concrete type of the ID of the processed item.
@@ -57,17 +74,34 @@ import java.util.function.Consumer;
  */
 public abstract class AbstractProcessedItemRepositoryImpl<T extends ProcessedItem<I, G>, I extends ProcessedItemId<G>, G extends DataGroup> implements ProcessedItemRepository<T, I, G>
 {
+    /**
+     * The maximum number of rows that are inserted by a single statement (PostgreSQL
+     * supports at most 32767 bind parameters per statement).
+     */
+    public static final int MAX_INSERT_ROWS = 1000;
+
     @PersistenceContext
     private EntityManager entityManager;
 
-    protected AbstractProcessedItemRepositoryImpl( @Nonnull EntityManager entityManager )
+    private final ItemFilter<G> itemFilter;
+
+    private volatile Boolean postgreSql;
+
+    protected AbstractProcessedItemRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull ItemFilterFactory itemFilterFactory )
     {
         this.entityManager = entityManager;
+        this.itemFilter = itemFilterFactory.create( getProcessedItemClass().getSimpleName(), this::findAllIds );
     }
 
     @Override
     @Nonnull
     public Set<String> find( @Nonnull G prefix, @Nonnull Collection<String> processedIds )
+    {
+        return itemFilter.find( prefix, processedIds, ids -> findInternally( prefix, ids ) );
+    }
+
+    @Nonnull
+    protected Set<String> findInternally( @Nonnull G prefix, @Nonnull Collection<String> processedIds )
     {
         final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         final CriteriaQuery<String> criteria = cb.createQuery( String.class );
@@ -82,11 +116,38 @@ public abstract class AbstractProcessedItemRepositoryImpl<T extends ProcessedIte
     @Transactional
     public void process( @Nonnull T processedItem, @Nonnull Consumer<T> consumer )
     {
+        itemFilter.put( processedItem.getId().getGroup(), processedItem.getId().getProcessedId(), processedItem.getProcessedAt() );
         entityManager.persist( processedItem );
         entityManager.flush();
         consumer.accept( processedItem );
     }
 
+    @Override
+    @Transactional
+    public void processAll( @Nonnull G prefix, @Nonnull Collection<T> processedItems, @Nonnull Consumer<Collection<T>> consumer )
+    {
+        if ( processedItems.isEmpty() )
+        {
+            return;
+        }
+
+        processedItems.forEach( pi -> itemFilter.put( prefix, pi.getId().getProcessedId(), pi.getProcessedAt() ) );
+        final Collection<T> persistedItems;
+        if ( isPostgreSql() )
+        {
+            persistedItems = entityManager.unwrap( Session.class ).doReturningWork( connection -> insertAll( connection, prefix, processedItems ) );
+        }
+        else
+        {
+            persistedItems = persistAll( prefix, processedItems );
+        }
+
+        if ( !persistedItems.isEmpty() )
+        {
+            consumer.accept( persistedItems );
+        }
+    }
+
     @Override
     @Transactional
     public int deleteOldest( @Nonnull G prefix, @Nonnull Instant timestamp )
@@ -94,11 +155,112 @@ public abstract class AbstractProcessedItemRepositoryImpl<T extends ProcessedIte
         final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         final CriteriaDelete<T> criteriaDelete = cb.createCriteriaDelete( getProcessedItemClass() );
         final Root<T> root = criteriaDelete.from( getProcessedItemClass() );
-        return entityManager.createQuery( criteriaDelete.where(
+        final int count = entityManager.createQuery( criteriaDelete.where(
             cb.equal( root.get( "id" ).get( "group" ), prefix ),
             cb.lessThan( root.get( "processedAt" ), timestamp ) ) ).executeUpdate();
+        itemFilter.deleteOldest( prefix, timestamp );
+        return count;
+    }
+
+    protected void findAllIds( @Nonnull G prefix, @Nonnull BiConsumer<String, Instant> consumer )
+    {
+        ItemRepositoryUtils.loadAllIds( entityManager.getEntityManagerFactory(), cb -> {
+            final CriteriaQuery<Object[]> criteria = cb.createQuery( Object[].class );
+            final Root<T> root = criteria.from( getProcessedItemClass() );
+            return criteria.multiselect( root.get( "id" ).get( "processedId" ), root.get( "processedAt" ) )
+                .where( cb.equal( root.get( "id" ).get( "group" ), prefix ) ).orderBy( cb.asc( root.get( "processedAt" ) ) );
+        }, consumer );
+    }
+
+    @Nonnull
+    protected Collection<T> insertAll( @Nonnull Connection connection, @Nonnull G prefix, @Nonnull Collection<T> processedItems ) throws SQLException
+    {
+        final Map<String, T> processedItemsById = new LinkedHashMap<>();
+        processedItems.forEach( pi -> processedItemsById.putIfAbsent( pi.getId().getProcessedId(), pi ) );
+
+        final List<T> uniqueProcessedItems = new ArrayList<>( processedItemsById.values() );
+        final List<T> insertedItems = new ArrayList<>();
+        for ( int i = 0; i < uniqueProcessedItems.size(); i += MAX_INSERT_ROWS )
+        {
+            final List<T> rows = uniqueProcessedItems.subList( i, Math.min( i + MAX_INSERT_ROWS, uniqueProcessedItems.size() ) );
+            try ( final PreparedStatement statement = connection.prepareStatement( createInsertSql( rows.size() ) ) )
+            {
+                int index = 0;
+                for ( final T row : rows )
+                {
+                    statement.setObject( ++index, getGroupId( prefix ) );
+                    statement.setString( ++index, row.getId().getProcessedId() );
+                    statement.setTimestamp( ++index, Timestamp.from( row.getProcessedAt() ) );
+                }
+
+                // only rows that did not yet exist are returned
+                try ( final ResultSet rs = statement.executeQuery() )
+                {
+                    while ( rs.next() )
+                    {
+                        insertedItems.add( processedItemsById.get( rs.getString( 1 ) ) );
+                    }
+                }
+            }
+        }
+        return insertedItems;
+    }
+
+    @Nonnull
+    protected String createInsertSql( int rowCount )
+    {
+        final StringBuilder sql = new StringBuilder( "INSERT INTO " ).append( getTableName() ).append( '(' )
+            .append( getGroupColumnName() ).append( ',' ).append( getProcessedIdColumnName() ).append( ",processed_at) VALUES " );
+        for ( int i = 0; i < rowCount; i++ )
+        {
+            sql.append( (i == 0) ? "(?,?,?)" : ",(?,?,?)" );
+        }
+        return sql.append( " ON CONFLICT DO NOTHING RETURNING " ).append( getProcessedIdColumnName() ).toString();
+    }
+
+    @Nonnull
+    protected Collection<T> persistAll( @Nonnull G prefix, @Nonnull Collection<T> processedItems )
+    {
+        final Set<String> existingIds = new HashSet<>( findInternally( prefix,
+            processedItems.stream().map( pi -> pi.getId().getProcessedId() ).collect( Collectors.toSet() ) ) );
+        final List<T> persistedItems = new ArrayList<>();
+        for ( final T processedItem : processedItems )
+        {
+            if ( existingIds.add( processedItem.getId().getProcessedId() ) )
+            {
+                entityManager.persist( processedItem );
+                persistedItems.add( processedItem );
+            }
+        }
+        entityManager.flush();
+        return persistedItems;
+    }
+
+    protected boolean isPostgreSql()
+    {
+        if ( postgreSql == null )
+        {
+            postgreSql = entityManager.unwrap( Session.class ).doReturningWork(
+                connection -> "PostgreSQL".equalsIgnoreCase( connection.getMetaData().getDatabaseProductName() ) );
+        }
+        return postgreSql;
     }
 
     @Nonnull
     protected abstract Class<T> getProcessedItemClass();
+
+    @Nonnull
+    protected abstract String getTableName();
+
+    @Nonnull
+    protected abstract String getGroupColumnName();
+
+    @Nonnull
+    protected String getProcessedIdColumnName()
+    {
+        return "processed_id";
+    }
+
+    @Nonnull
+    protected abstract Object getGroupId( @Nonnull G group );
 }
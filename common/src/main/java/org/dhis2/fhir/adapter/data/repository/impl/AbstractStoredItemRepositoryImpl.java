@@ -28,6 +28,8 @@ package org.dhis2.fhir.adapter.data.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.data.filter.ItemFilter;
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
 import org.dhis2.fhir.adapter.data.model.DataGroup;
 import org.dhis2.fhir.adapter.data.model.StoredItem;
 import org.dhis2.fhir.adapter.data.model.StoredItemId;
@@ -54,9 +56,11 @@ import java.time.Instant;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
- * Implementation of a repository that stores already stored items.
+ * Implementation of a repository that stores already stored items. Lookups of stored
+ * items are filtered by an in-memory {@linkplain ItemFilter item filter}.
  *
  * @param <T> the concrete type of the stored item.
  * @param <I> the concrete type of the ID of the stored item.
@@ -72,21 +76,28 @@ public abstract class AbstractStoredItemRepositoryImpl<T extends StoredItem<I, G
 
     private final PersistenceExceptionTranslator persistenceExceptionTranslator;
 
-    protected AbstractStoredItemRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull PlatformTransactionManager platformTransactionManager, @Nonnull PersistenceExceptionTranslator persistenceExceptionTranslator )
+    private final ItemFilter<G> itemFilter;
+
+    protected AbstractStoredItemRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull PlatformTransactionManager platformTransactionManager, @Nonnull PersistenceExceptionTranslator persistenceExceptionTranslator,
+        @Nonnull ItemFilterFactory itemFilterFactory )
     {
         this.entityManager = entityManager;
         this.platformTransactionManager = platformTransactionManager;
         this.persistenceExceptionTranslator = persistenceExceptionTranslator;
+        this.itemFilter = itemFilterFactory.create( getStoredItemClass().getSimpleName(), this::findAllIds );
     }
 
     @Override
     @Transactional( propagation = Propagation.NOT_SUPPORTED )
     public boolean stored( @Nonnull G prefix, @Nonnull String storedId )
     {
+        final T storedItem = createStoredItem( prefix, storedId );
+        itemFilter.put( prefix, storedId, storedItem.getStoredAt() );
+
         final TransactionStatus transactionStatus = platformTransactionManager.getTransaction( new DefaultTransactionDefinition() );
         try
         {
-            entityManager.persist( createStoredItem( prefix, storedId ) );
+            entityManager.persist( storedItem );
             entityManager.flush();
         }
         catch ( PersistenceException e )
@@ -119,6 +130,11 @@ public abstract class AbstractStoredItemRepositoryImpl<T extends StoredItem<I, G
 
     @Override
     public boolean contains( @Nonnull G prefix, @Nonnull String storedId )
+    {
+        return itemFilter.contains( prefix, storedId, id -> containsInternally( prefix, id ) );
+    }
+
+    protected boolean containsInternally( @Nonnull G prefix, @Nonnull String storedId )
     {
         final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         final CriteriaQuery<T> criteria = cb.createQuery( getStoredItemClass() );
@@ -132,6 +148,12 @@ public abstract class AbstractStoredItemRepositoryImpl<T extends StoredItem<I, G
     @Override
     @Nonnull
     public Set<String> findProcessedIds( @Nonnull G prefix, @Nonnull Collection<String> processedIds )
+    {
+        return itemFilter.find( prefix, processedIds, ids -> findProcessedIdsInternally( prefix, ids ) );
+    }
+
+    @Nonnull
+    protected Set<String> findProcessedIdsInternally( @Nonnull G prefix, @Nonnull Collection<String> processedIds )
     {
         final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         final CriteriaQuery<String> criteria = cb.createQuery( String.class );
@@ -149,9 +171,21 @@ public abstract class AbstractStoredItemRepositoryImpl<T extends StoredItem<I, G
         final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         final CriteriaDelete<T> criteriaDelete = cb.createCriteriaDelete( getStoredItemClass() );
         final Root<T> root = criteriaDelete.from( getStoredItemClass() );
-        return entityManager.createQuery( criteriaDelete.where(
+        final int count = entityManager.createQuery( criteriaDelete.where(
             cb.equal( root.get( "id" ).get( "group" ), prefix ),
             cb.lessThan( root.get( "storedAt" ), timestamp ) ) ).executeUpdate();
+        itemFilter.deleteOldest( prefix, timestamp );
+        return count;
+    }
+
+    protected void findAllIds( @Nonnull G prefix, @Nonnull BiConsumer<String, Instant> consumer )
+    {
+        ItemRepositoryUtils.loadAllIds( entityManager.getEntityManagerFactory(), cb -> {
+            final CriteriaQuery<Object[]> criteria = cb.createQuery( Object[].class );
+            final Root<T> root = criteria.from( getStoredItemClass() );
+            return criteria.multiselect( root.get( "id" ).get( "storedId" ), root.get( "storedAt" ) )
+                .where( cb.equal( root.get( "id" ).get( "group" ), prefix ) ).orderBy( cb.asc( root.get( "storedAt" ) ) );
+        }, consumer );
     }
 
     @Nonnull
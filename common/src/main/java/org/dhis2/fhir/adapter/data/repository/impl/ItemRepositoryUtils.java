@@ -0,0 +1,87 @@
+package org.dhis2.fhir.adapter.data.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.hibernate.query.Query;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import java.time.Instant;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Utility class for repositories of stored and processed items.
+ *
+ * @author volsch
+ */
+public abstract class ItemRepositoryUtils
+{
+    public static final int LOAD_FETCH_SIZE = 1000;
+
+    /**
+     * Passes the ID and the timestamp of every row of the specified query to the
+     * specified consumer. The rows are read with a forward only cursor in chunks
+     * of {@value #LOAD_FETCH_SIZE} rows, so that the whole result is never kept in
+     * memory. The query uses its own entity manager and read-only transaction
+     * (PostgreSQL uses a cursor only inside a transaction). Therefore the method
+     * can be invoked by any thread.
+     *
+     * @param entityManagerFactory the entity manager factory that creates the entity manager.
+     * @param queryFactory         creates the query that selects the ID and the timestamp.
+     * @param consumer             the consumer that receives the ID and the timestamp of every row.
+     */
+    @SuppressWarnings( "unchecked" )
+    public static void loadAllIds( @Nonnull EntityManagerFactory entityManagerFactory, @Nonnull Function<CriteriaBuilder, CriteriaQuery<Object[]>> queryFactory,
+        @Nonnull BiConsumer<String, Instant> consumer )
+    {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try
+        {
+            entityManager.getTransaction().begin();
+            try ( final Stream<Object[]> rows = entityManager.createQuery( queryFactory.apply( entityManager.getCriteriaBuilder() ) ).unwrap( Query.class )
+                .setReadOnly( true ).setFetchSize( LOAD_FETCH_SIZE ).stream() )
+            {
+                rows.forEach( row -> consumer.accept( (String) row[0], (Instant) row[1] ) );
+            }
+            finally
+            {
+                entityManager.getTransaction().rollback();
+            }
+        }
+        finally
+        {
+            entityManager.close();
+        }
+    }
+}
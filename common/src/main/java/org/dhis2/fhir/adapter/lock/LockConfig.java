@@ -0,0 +1,95 @@
+package org.dhis2.fhir.adapter.lock;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+
+/**
+ * Configuration of the distributed locks.
+ *
+ * @author volsch
+ */
+@Configuration
+@Component
+@ConfigurationProperties( "dhis2.fhir-adapter.lock" )
+@Validated
+public class LockConfig implements Serializable
+{
+    private static final long serialVersionUID = -3327465384390813564L;
+
+    private boolean tryLock;
+
+    @Min( 1 )
+    private long timeoutMillis = 60_000;
+
+    @Min( 1 )
+    private long retryIntervalMillis = 25;
+
+    /**
+     * @return <code>true</code> if locks should be obtained without blocking the
+     * database session and by retrying until the timeout has been reached,
+     * <code>false</code> if the database session should block until the locks can
+     * be obtained (without any timeout).
+     */
+    public boolean isTryLock()
+    {
+        return tryLock;
+    }
+
+    public void setTryLock( boolean tryLock )
+    {
+        this.tryLock = tryLock;
+    }
+
+    public long getTimeoutMillis()
+    {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis( long timeoutMillis )
+    {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public long getRetryIntervalMillis()
+    {
+        return retryIntervalMillis;
+    }
+
+    public void setRetryIntervalMillis( long retryIntervalMillis )
+    {
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+}
@@ -29,6 +29,8 @@ package org.dhis2.fhir.adapter.lock;
  */
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.TreeSet;
 
 /**
  * The lock context to obtain distributed locks on names. All locks will be
@@ -44,6 +46,19 @@ public interface LockContext extends AutoCloseable
      */
     void lock( @Nonnull String key );
 
+    /**
+     * Locks the specified keys. The method may block until all keys can be locked.
+     * The keys are locked in a consistent order, so that lock contexts that lock
+     * the same keys concurrently do not block each other permanently. Implementations
+     * may lock all keys at once.
+     *
+     * @param keys the keys that should be locked.
+     */
+    default void lock( @Nonnull Collection<String> keys )
+    {
+        new TreeSet<>( keys ).forEach( this::lock );
+    }
+
     /**
      * Unlocks all keys that have been locked with this lock context.
      */
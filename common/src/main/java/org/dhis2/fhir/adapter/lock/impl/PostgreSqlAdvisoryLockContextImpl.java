@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.lock.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.lock.LockConfig;
 import org.dhis2.fhir.adapter.lock.LockContext;
 import org.dhis2.fhir.adapter.lock.LockException;
 import org.slf4j.Logger;
@@ -38,26 +39,45 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.sql.CallableStatement;
+import java.sql.Array;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Implementation of a lock context that uses the PostgreSQL Advisory Locking system
- * to implement a distributes lock.
+ * to implement a distributes lock. Multiple keys that are locked at once are locked
+ * with a single statement in the order of their fingerprints (which avoids deadlocks
+ * between lock contexts that lock the same keys). The statement is prepared once per
+ * lock context. If try locking has been configured, the locks are requested without
+ * blocking the database session and are requested again until the configured timeout
+ * has been reached.
  *
  * @author volsch
  */
 public class PostgreSqlAdvisoryLockContextImpl implements LockContext
 {
+    protected static final String LOCK_SQL = "SELECT COUNT(pg_advisory_xact_lock(k)) FROM (SELECT k FROM UNNEST(?::BIGINT[]) k ORDER BY k) s";
+
+    protected static final String TRY_LOCK_SQL = "SELECT k FROM (SELECT k FROM UNNEST(?::BIGINT[]) k ORDER BY k) s WHERE NOT pg_try_advisory_xact_lock(k)";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final PostgreSqlAdvisoryLockManagerImpl lockManager;
 
+    private final LockConfig lockConfig;
+
     private Connection connection;
 
+    private PreparedStatement lockStatement;
+
     private boolean resetAutoCommit;
 
     private Set<String> lockedKeys = new HashSet<>();
@@ -65,67 +85,60 @@ public class PostgreSqlAdvisoryLockContextImpl implements LockContext
     public PostgreSqlAdvisoryLockContextImpl( @Nonnull PostgreSqlAdvisoryLockManagerImpl lockManager )
     {
         this.lockManager = lockManager;
+        this.lockConfig = lockManager.getLockConfig();
     }
 
     @Override
     public void lock( @Nonnull String key )
     {
-        if ( lockedKeys.contains( key ) )
+        lock( Collections.singleton( key ) );
+    }
+
+    @Override
+    public void lock( @Nonnull Collection<String> keys )
+    {
+        // multiple keys may have the same fingerprint (same lock)
+        final TreeMap<Long, Set<String>> fingerprintKeys = new TreeMap<>();
+        for ( final String key : keys )
+        {
+            if ( !lockedKeys.contains( key ) )
+            {
+                fingerprintKeys.computeIfAbsent( Math.abs( createHash( key ) ), f -> new TreeSet<>() ).add( key );
+            }
+        }
+        if ( fingerprintKeys.isEmpty() )
         {
             return;
         }
 
-        if ( connection == null )
+        final PreparedStatement statement = getLockStatement();
+        logger.debug( "Locking {} with fingerprints {}.", fingerprintKeys.values(), fingerprintKeys.keySet() );
+
+        final long startNanos = System.nanoTime();
+        boolean acquired = false;
+        try
         {
-            boolean ok = false;
-            try
+            if ( lockConfig.isTryLock() )
             {
-                connection = lockManager.getDataSource().getConnection();
-                resetAutoCommit = connection.getAutoCommit();
-                if ( resetAutoCommit )
-                {
-                    connection.setAutoCommit( false );
-                }
-                ok = true;
-            }
-            catch ( SQLException e )
-            {
-                throw new LockException( "Unable to acquire lock due to a technical error.", e );
+                tryLock( statement, fingerprintKeys );
             }
-            finally
+            else
             {
-                if ( !ok && (connection != null) )
-                {
-                    try
-                    {
-                        connection.close();
-                    }
-                    catch ( SQLException e )
-                    {
-                        logger.error( "Could not close database connection.", e );
-                    }
-                    finally
-                    {
-                        connection = null;
-                    }
-                }
+                lock( statement, fingerprintKeys.keySet() );
             }
+            acquired = true;
         }
-
-        final long fingerprint = Math.abs( createHash( key ) );
-        logger.debug( "Locking {} with fingerprint {}.", key, fingerprint );
-        try ( final CallableStatement call = connection.prepareCall( "{call pg_advisory_xact_lock(?)}" ) )
+        catch ( SQLException e )
         {
-            call.setLong( 1, fingerprint );
-            call.execute();
+            throw new LockException( "Could not lock caches " + fingerprintKeys.values() + " due to a technical error.", e );
         }
-        catch ( SQLException e )
+        finally
         {
-            throw new LockException( "Could not lock cache " + key + " due to a technical error.", e );
+            lockManager.recordWait( acquired, fingerprintKeys.size(), System.nanoTime() - startNanos );
         }
 
-        lockedKeys.add( key );
-        logger.debug( "Locked {} with fingerprint {}.", key, fingerprint );
+        fingerprintKeys.values().forEach( lockedKeys::addAll );
+        logger.debug( "Locked {} with fingerprints {}.", fingerprintKeys.values(), fingerprintKeys.keySet() );
     }
 
     @Override
@@ -140,6 +153,18 @@ public class PostgreSqlAdvisoryLockContextImpl implements LockContext
         {
             try
             {
+                try
+                {
+                    if ( lockStatement != null )
+                    {
+                        lockStatement.close();
+                    }
+                }
+                finally
+                {
+                    lockStatement = null;
+                }
+
                 try
                 {
                     // commit releases the locks
@@ -176,6 +201,116 @@ public class PostgreSqlAdvisoryLockContextImpl implements LockContext
         lockManager.removeFromThread( this );
     }
 
+    protected void lock( @Nonnull PreparedStatement statement, @Nonnull Set<Long> fingerprints ) throws SQLException
+    {
+        statement.setArray( 1, createArray( fingerprints ) );
+        statement.execute();
+    }
+
+    protected void tryLock( @Nonnull PreparedStatement statement, @Nonnull TreeMap<Long, Set<String>> fingerprintKeys ) throws SQLException
+    {
+        final long endMillis = System.currentTimeMillis() + lockConfig.getTimeoutMillis();
+        Set<Long> fingerprints = new TreeSet<>( fingerprintKeys.keySet() );
+        while ( true )
+        {
+            statement.setArray( 1, createArray( fingerprints ) );
+
+            // locks that could be obtained are kept until the end of the transaction
+            final Set<Long> failedFingerprints = new TreeSet<>();
+            try ( final ResultSet rs = statement.executeQuery() )
+            {
+                while ( rs.next() )
+                {
+                    failedFingerprints.add( rs.getLong( 1 ) );
+                }
+            }
+            if ( failedFingerprints.isEmpty() )
+            {
+                return;
+            }
+
+            fingerprints = failedFingerprints;
+            if ( System.currentTimeMillis() + lockConfig.getRetryIntervalMillis() > endMillis )
+            {
+                final Set<String> failedKeys = new TreeSet<>();
+                fingerprints.forEach( f -> failedKeys.addAll( fingerprintKeys.get( f ) ) );
+                throw new LockException( "Locks on " + failedKeys + " could not be obtained within " + lockConfig.getTimeoutMillis() + " ms." );
+            }
+
+            try
+            {
+                Thread.sleep( lockConfig.getRetryIntervalMillis() );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new LockException( "Waiting for lock has been interrupted.", e );
+            }
+        }
+    }
+
+    @Nonnull
+    protected PreparedStatement getLockStatement()
+    {
+        if ( lockStatement != null )
+        {
+            return lockStatement;
+        }
+
+        if ( connection == null )
+        {
+            boolean ok = false;
+            try
+            {
+                connection = lockManager.getDataSource().getConnection();
+                resetAutoCommit = connection.getAutoCommit();
+                if ( resetAutoCommit )
+                {
+                    connection.setAutoCommit( false );
+                }
+                ok = true;
+            }
+            catch ( SQLException e )
+            {
+                throw new LockException( "Unable to acquire lock due to a technical error.", e );
+            }
+            finally
+            {
+                if ( !ok && (connection != null) )
+                {
+                    try
+                    {
+                        connection.close();
+                    }
+                    catch ( SQLException e )
+                    {
+                        logger.error( "Could not close database connection.", e );
+                    }
+                    finally
+                    {
+                        connection = null;
+                    }
+                }
+            }
+        }
+
+        try
+        {
+            lockStatement = connection.prepareStatement( lockConfig.isTryLock() ? TRY_LOCK_SQL : LOCK_SQL );
+        }
+        catch ( SQLException e )
+        {
+            throw new LockException( "Unable to acquire lock due to a technical error.", e );
+        }
+        return lockStatement;
+    }
+
+    @Nonnull
+    private Array createArray( @Nonnull Set<Long> fingerprints ) throws SQLException
+    {
+        return connection.createArrayOf( "bigint", fingerprints.toArray( new Long[0] ) );
+    }
+
     protected long createHash( @Nonnull String key )
     {
         final MessageDigest md;
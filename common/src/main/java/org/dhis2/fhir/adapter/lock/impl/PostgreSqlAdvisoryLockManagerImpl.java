@@ -28,30 +28,55 @@ package org.dhis2.fhir.adapter.lock.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dhis2.fhir.adapter.lock.LockConfig;
 import org.dhis2.fhir.adapter.lock.LockContext;
 import org.dhis2.fhir.adapter.lock.LockManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Lock manager that creates a lock context that uses the PostgreSQL Advisory Lock
- * to implement a distributed lock.
+ * to implement a distributed lock. The time that is spent waiting for locks is
+ * recorded by timer {@value #WAIT_TIMER_NAME}.
  *
  * @author volsch
  */
 @Service
 public class PostgreSqlAdvisoryLockManagerImpl implements LockManager
 {
+    public static final String WAIT_TIMER_NAME = "dhis2.fhir.adapter.lock.wait";
+
     private final ThreadLocal<LockContext> threadLocal = new ThreadLocal<>();
 
     private final DataSource dataSource;
 
-    public PostgreSqlAdvisoryLockManagerImpl( @Nonnull DataSource dataSource )
+    private final LockConfig lockConfig;
+
+    /**
+     * Wait timers indexed by {@link #getWaitTimerIndex(boolean, boolean, boolean)}.
+     */
+    private final Timer[] waitTimers;
+
+    @Autowired
+    public PostgreSqlAdvisoryLockManagerImpl( @Nonnull DataSource dataSource, @Nonnull LockConfig lockConfig, @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
+    {
+        this( dataSource, lockConfig, meterRegistry.getIfAvailable() );
+    }
+
+    public PostgreSqlAdvisoryLockManagerImpl( @Nonnull DataSource dataSource, @Nonnull LockConfig lockConfig, @Nullable MeterRegistry meterRegistry )
     {
         this.dataSource = dataSource;
+        this.lockConfig = lockConfig;
+        this.waitTimers = (meterRegistry == null) ? null : createWaitTimers( meterRegistry );
     }
 
     @Nonnull
@@ -80,6 +105,43 @@ public class PostgreSqlAdvisoryLockManagerImpl implements LockManager
         return dataSource;
     }
 
+    @Nonnull
+    LockConfig getLockConfig()
+    {
+        return lockConfig;
+    }
+
+    void recordWait( boolean acquired, int keyCount, long nanos )
+    {
+        if ( waitTimers != null )
+        {
+            waitTimers[getWaitTimerIndex( lockConfig.isTryLock(), acquired, keyCount > 1 )].record( nanos, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    @Nonnull
+    private static Timer[] createWaitTimers( @Nonnull MeterRegistry meterRegistry )
+    {
+        final Timer[] timers = new Timer[8];
+        for ( final boolean tryLock : new boolean[]{ false, true } )
+        {
+            for ( final boolean acquired : new boolean[]{ false, true } )
+            {
+                for ( final boolean batch : new boolean[]{ false, true } )
+                {
+                    timers[getWaitTimerIndex( tryLock, acquired, batch )] = Timer.builder( WAIT_TIMER_NAME ).tag( "mode", tryLock ? "try" : "blocking" )
+                        .tag( "outcome", acquired ? "acquired" : "failed" ).tag( "batch", Boolean.toString( batch ) ).register( meterRegistry );
+                }
+            }
+        }
+        return timers;
+    }
+
+    private static int getWaitTimerIndex( boolean tryLock, boolean acquired, boolean batch )
+    {
+        return (tryLock ? 4 : 0) + (acquired ? 2 : 0) + (batch ? 1 : 0);
+    }
+
     void removeFromThread( @Nonnull PostgreSqlAdvisoryLockContextImpl lockContext )
     {
         if ( threadLocal.get() == null )
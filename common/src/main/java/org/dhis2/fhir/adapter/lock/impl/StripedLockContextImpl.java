@@ -0,0 +1,105 @@
+package org.dhis2.fhir.adapter.lock.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Implementation of a lock context that uses the per key locks of
+ * {@link StripedLockManagerImpl}. These cannot be used in a clustered environment.
+ *
+ * @author volsch
+ */
+public class StripedLockContextImpl implements LockContext
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final StripedLockManagerImpl lockManager;
+
+    private final Set<String> lockedKeys = new LinkedHashSet<>();
+
+    private volatile StripedLockManagerImpl.KeyLock waitingFor;
+
+    public StripedLockContextImpl( @Nonnull StripedLockManagerImpl lockManager )
+    {
+        this.lockManager = lockManager;
+    }
+
+    @Override
+    public void lock( @Nonnull String key )
+    {
+        if ( lockedKeys.contains( key ) )
+        {
+            return;
+        }
+
+        lockManager.lock( this, key );
+        lockedKeys.add( key );
+        logger.debug( "Locked {}.", key );
+    }
+
+    @Override
+    public void unlockAll()
+    {
+        if ( !lockedKeys.isEmpty() )
+        {
+            logger.debug( "Unlocking keys {}.", lockedKeys );
+            for ( String key : lockedKeys )
+            {
+                lockManager.unlock( this, key );
+            }
+        }
+        lockedKeys.clear();
+    }
+
+    @Override
+    public void close()
+    {
+        unlockAll();
+        lockManager.removeFromThread( this );
+    }
+
+    @Nullable
+    StripedLockManagerImpl.KeyLock getWaitingFor()
+    {
+        return waitingFor;
+    }
+
+    void setWaitingFor( @Nullable StripedLockManagerImpl.KeyLock waitingFor )
+    {
+        this.waitingFor = waitingFor;
+    }
+}
@@ -0,0 +1,235 @@
+package org.dhis2.fhir.adapter.lock.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.dhis2.fhir.adapter.lock.LockException;
+import org.dhis2.fhir.adapter.lock.LockManager;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock manager that creates a lock context that uses internal JVM locks. These
+ * cannot be used in a clustered environment. In contrast to {@link EmbeddedLockManagerImpl}
+ * every key has its own fair lock, so that threads that lock different keys do not
+ * block each other and only one waiting thread is woken up when a key is unlocked.
+ * The lock of a key is removed as soon as it is no longer locked or requested.
+ * If a lock context would wait for a key that is locked by a lock context that
+ * waits (directly or indirectly) for a key that is locked by the first lock context,
+ * the deadlock is detected and locking the key fails.
+ *
+ * @author volsch
+ */
+public class StripedLockManagerImpl implements LockManager
+{
+    private static final int MAX_DEADLOCK_CHECK_DEPTH = 1_000;
+
+    private final ThreadLocal<LockContext> threadLocal = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, KeyLock> locks = new ConcurrentHashMap<>();
+
+    private final long timeoutMillis;
+
+    /**
+     * Creates a lock manager that waits without a timeout until a key can be locked.
+     */
+    public StripedLockManagerImpl()
+    {
+        this( 0 );
+    }
+
+    /**
+     * Creates a lock manager that waits at most the specified number of milliseconds
+     * until a key can be locked.
+     *
+     * @param timeoutMillis the maximum number of milliseconds to wait for a lock
+     *                      (<code>0</code> if there is no timeout).
+     */
+    public StripedLockManagerImpl( long timeoutMillis )
+    {
+        if ( timeoutMillis < 0 )
+        {
+            throw new IllegalArgumentException( "Timeout must not be negative." );
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Nonnull
+    @Override
+    public LockContext begin()
+    {
+        if ( threadLocal.get() != null )
+        {
+            throw new IllegalStateException( "The current thread already owns a lock context." );
+        }
+        final LockContext lockContext = new StripedLockContextImpl( this );
+        threadLocal.set( lockContext );
+        return lockContext;
+    }
+
+    @Nonnull
+    @Override
+    public Optional<LockContext> getCurrentLockContext()
+    {
+        return Optional.ofNullable( threadLocal.get() );
+    }
+
+    /**
+     * @return the number of keys that are currently locked or requested.
+     */
+    int getKeyCount()
+    {
+        return locks.size();
+    }
+
+    void lock( @Nonnull StripedLockContextImpl lockContext, @Nonnull String key )
+    {
+        final KeyLock keyLock = locks.compute( key, ( k, l ) -> {
+            final KeyLock result = ( l == null ) ? new KeyLock() : l;
+            result.references++;
+            return result;
+        } );
+
+        boolean ok = false;
+        try
+        {
+            acquire( lockContext, key, keyLock );
+            ok = true;
+        }
+        finally
+        {
+            if ( !ok )
+            {
+                release( key );
+            }
+        }
+    }
+
+    void unlock( @Nonnull StripedLockContextImpl lockContext, @Nonnull String key )
+    {
+        final KeyLock keyLock = locks.get( key );
+        if ( keyLock == null || keyLock.owner != lockContext )
+        {
+            throw new IllegalStateException( "Lock on " + key + " does not exist." );
+        }
+        keyLock.owner = null;
+        keyLock.semaphore.release();
+        release( key );
+    }
+
+    void removeFromThread( @Nonnull StripedLockContextImpl lockContext )
+    {
+        if ( threadLocal.get() == null )
+        {
+            throw new IllegalStateException( "Current thread does not own a lock context." );
+        }
+        threadLocal.set( null );
+    }
+
+    private void acquire( @Nonnull StripedLockContextImpl lockContext, @Nonnull String key, @Nonnull KeyLock keyLock )
+    {
+        // the waiting lock context must be published before checking for a deadlock, since
+        // otherwise two lock contexts that start waiting concurrently may not detect the deadlock
+        lockContext.setWaitingFor( keyLock );
+        try
+        {
+            if ( isDeadlocked( lockContext, keyLock ) )
+            {
+                throw new LockException( "Deadlock detected when waiting for lock on " + key + "." );
+            }
+
+            // waiting once keeps the position in the queue of the fair lock (fair hand-off)
+            if ( timeoutMillis == 0 )
+            {
+                keyLock.semaphore.acquire();
+            }
+            else if ( !keyLock.semaphore.tryAcquire( timeoutMillis, TimeUnit.MILLISECONDS ) )
+            {
+                throw new LockException( "Lock on " + key + " could not be obtained within " + timeoutMillis + " ms." );
+            }
+            keyLock.owner = lockContext;
+        }
+        catch ( InterruptedException e )
+        {
+            throw new LockException( "Waiting for lock has been interrupted.", e );
+        }
+        finally
+        {
+            lockContext.setWaitingFor( null );
+        }
+    }
+
+    private void release( @Nonnull String key )
+    {
+        locks.computeIfPresent( key, ( k, l ) -> ( --l.references == 0 ) ? null : l );
+    }
+
+    /**
+     * Follows the owners of the locks and the locks these owners are waiting for
+     * until the specified waiting lock context is reached (deadlock) or until the
+     * chain ends.
+     */
+    private boolean isDeadlocked( @Nonnull StripedLockContextImpl lockContext, @Nonnull KeyLock keyLock )
+    {
+        KeyLock currentKeyLock = keyLock;
+        for ( int i = 0; i < MAX_DEADLOCK_CHECK_DEPTH && currentKeyLock != null; i++ )
+        {
+            final StripedLockContextImpl owner = currentKeyLock.owner;
+            if ( owner == null )
+            {
+                return false;
+            }
+            if ( owner == lockContext )
+            {
+                return true;
+            }
+            currentKeyLock = owner.getWaitingFor();
+        }
+        return false;
+    }
+
+    /**
+     * The fair lock of a single key. The number of references (lock contexts
+     * that own or request the lock) must only be accessed when computing the
+     * entry of the map that contains the lock.
+     */
+    static final class KeyLock
+    {
+        private final Semaphore semaphore = new Semaphore( 1, true );
+
+        private volatile StripedLockContextImpl owner;
+
+        private int references;
+    }
+}
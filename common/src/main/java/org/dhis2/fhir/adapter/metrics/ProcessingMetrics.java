@@ -0,0 +1,202 @@
+package org.dhis2.fhir.adapter.metrics;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dhis2.fhir.adapter.queue.RetryQueueDeliveryException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Records the metrics of the processing pipelines (polling, queuing and processing
+ * of FHIR and DHIS2 resources). If no meter registry is available, nothing is
+ * recorded. The durations of all stages are recorded by timer {@value #TIMER_NAME},
+ * the number of processed items by counter {@value #ITEMS_COUNTER_NAME} and the
+ * number of currently processed messages by gauge {@value #IN_FLIGHT_GAUGE_NAME}.
+ * Meters are registered once per combination of tags and are reused afterwards.
+ *
+ * @author volsch
+ */
+@Component
+public class ProcessingMetrics
+{
+    public static final String TIMER_NAME = "dhis2.fhir.adapter.processing";
+
+    public static final String ITEMS_COUNTER_NAME = "dhis2.fhir.adapter.processing.items";
+
+    public static final String IN_FLIGHT_GAUGE_NAME = "dhis2.fhir.adapter.processing.in.flight";
+
+    public static final String STAGE_TAG_NAME = "stage";
+
+    public static final String OUTCOME_TAG_NAME = "outcome";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AtomicInteger> inFlightCounts = new ConcurrentHashMap<>();
+
+    private final Map<Object, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<Object, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProcessingMetrics( @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
+    {
+        this( meterRegistry.getIfAvailable() );
+    }
+
+    public ProcessingMetrics( @Nullable MeterRegistry meterRegistry )
+    {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Executes the specified supplier and records its duration. The outcome is
+     * derived from the exception that is thrown by the supplier (if any).
+     *
+     * @param stage    the stage that is executed by the supplier.
+     * @param tags     the tags of the pipeline.
+     * @param supplier the supplier that executes the stage.
+     * @param <T>      the concrete type of the result of the supplier.
+     * @return the result of the supplier.
+     */
+    public <T> T time( @Nonnull ProcessingStage stage, @Nonnull ProcessingTags tags, @Nonnull Supplier<T> supplier )
+    {
+        if ( meterRegistry == null )
+        {
+            return supplier.get();
+        }
+
+        final long startNanos = System.nanoTime();
+        ProcessingOutcome outcome = ProcessingOutcome.FAILURE;
+        try
+        {
+            final T result = supplier.get();
+            outcome = ProcessingOutcome.SUCCESS;
+            return result;
+        }
+        catch ( RetryQueueDeliveryException e )
+        {
+            outcome = ProcessingOutcome.RETRY;
+            throw e;
+        }
+        finally
+        {
+            record( stage, tags, outcome, System.nanoTime() - startNanos );
+        }
+    }
+
+    public void time( @Nonnull ProcessingStage stage, @Nonnull ProcessingTags tags, @Nonnull Runnable runnable )
+    {
+        time( stage, tags, () -> {
+            runnable.run();
+            return null;
+        } );
+    }
+
+    public void record( @Nonnull ProcessingStage stage, @Nonnull ProcessingTags tags, @Nonnull ProcessingOutcome outcome, long nanos )
+    {
+        if ( meterRegistry != null )
+        {
+            timers.computeIfAbsent( Arrays.asList( stage, tags, outcome ), k -> Timer.builder( TIMER_NAME ).tags( tags.toTags() )
+                .tag( STAGE_TAG_NAME, stage.getTagValue() ).tag( OUTCOME_TAG_NAME, outcome.getTagValue() ).register( meterRegistry ) )
+                .record( nanos, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    public void count( @Nonnull ProcessingStage stage, @Nonnull ProcessingTags tags, @Nonnull ProcessingOutcome outcome, long amount )
+    {
+        if ( meterRegistry != null && amount > 0 )
+        {
+            counters.computeIfAbsent( Arrays.asList( stage, tags, outcome ), k -> Counter.builder( ITEMS_COUNTER_NAME ).tags( tags.toTags() )
+                .tag( STAGE_TAG_NAME, stage.getTagValue() ).tag( OUTCOME_TAG_NAME, outcome.getTagValue() ).register( meterRegistry ) )
+                .increment( amount );
+        }
+    }
+
+    /**
+     * Marks the beginning of the processing of a message by the specified pipeline.
+     * The returned in flight must be closed when the processing of the message has
+     * been completed.
+     *
+     * @param pipeline the pipeline that processes the message.
+     * @return the in flight that must be closed.
+     */
+    @Nonnull
+    public InFlight begin( @Nonnull String pipeline )
+    {
+        return begin( pipeline, 1 );
+    }
+
+    /**
+     * Marks the beginning of the processing of the specified number of messages by
+     * the specified pipeline. The returned in flight must be closed when the
+     * processing of all messages has been completed.
+     *
+     * @param pipeline the pipeline that processes the messages.
+     * @param count    the number of messages that are processed.
+     * @return the in flight that must be closed.
+     */
+    @Nonnull
+    public InFlight begin( @Nonnull String pipeline, int count )
+    {
+        final AtomicInteger inFlightCount = inFlightCounts.computeIfAbsent( pipeline, p -> {
+            final AtomicInteger c = new AtomicInteger();
+            if ( meterRegistry != null )
+            {
+                Gauge.builder( IN_FLIGHT_GAUGE_NAME, c, AtomicInteger::get ).tag( ProcessingTags.PIPELINE_TAG_NAME, p ).register( meterRegistry );
+            }
+            return c;
+        } );
+        inFlightCount.addAndGet( count );
+        return () -> inFlightCount.addAndGet( -count );
+    }
+
+    /**
+     * The processing of a message that is in flight.
+     */
+    @FunctionalInterface
+    public interface InFlight extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,87 @@
+package org.dhis2.fhir.adapter.metrics;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+
+/**
+ * The stages of the processing pipelines for which metrics are recorded.
+ *
+ * @author volsch
+ */
+public enum ProcessingStage
+{
+    /**
+     * Polling of changed items from the source system.
+     */
+    POLL( "poll" ),
+
+    /**
+     * Lookup of already processed or stored items.
+     */
+    DEDUPLICATE( "deduplicate" ),
+
+    /**
+     * Enqueuing of an item or a group.
+     */
+    ENQUEUE( "enqueue" ),
+
+    /**
+     * Fetching of the complete item from the source system.
+     */
+    FETCH( "fetch" ),
+
+    /**
+     * Transformation of the item to the target system.
+     */
+    TRANSFORM( "transform" ),
+
+    /**
+     * Persisting the transformed item on the target system.
+     */
+    PERSIST( "persist" ),
+
+    /**
+     * Processing of an item that must be retried later.
+     */
+    RETRY( "retry" );
+
+    private final String tagValue;
+
+    ProcessingStage( @Nonnull String tagValue )
+    {
+        this.tagValue = tagValue;
+    }
+
+    @Nonnull
+    public String getTagValue()
+    {
+        return tagValue;
+    }
+}
@@ -0,0 +1,146 @@
+package org.dhis2.fhir.adapter.metrics;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Tags;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * The tags of the metrics of a processing pipeline. All tags are always included
+ * (tags that are not applicable have value {@value #NONE}) since some monitoring
+ * systems require the same tag keys for all meters with the same name.
+ *
+ * @author volsch
+ */
+public class ProcessingTags implements Serializable
+{
+    private static final long serialVersionUID = -1416766917418049391L;
+
+    public static final String PIPELINE_TAG_NAME = "pipeline";
+
+    public static final String FHIR_CLIENT_TAG_NAME = "fhirClient";
+
+    public static final String RESOURCE_TYPE_TAG_NAME = "resourceType";
+
+    public static final String SYNC_GROUP_TAG_NAME = "syncGroup";
+
+    public static final String NONE = "none";
+
+    private final String pipeline;
+
+    private final String fhirClient;
+
+    private final String resourceType;
+
+    private final String syncGroup;
+
+    public ProcessingTags( @Nonnull String pipeline )
+    {
+        this( pipeline, null, null, null );
+    }
+
+    protected ProcessingTags( @Nonnull String pipeline, @Nullable String fhirClient, @Nullable String resourceType, @Nullable String syncGroup )
+    {
+        this.pipeline = pipeline;
+        this.fhirClient = StringUtils.defaultIfBlank( fhirClient, NONE );
+        this.resourceType = StringUtils.defaultIfBlank( resourceType, NONE );
+        this.syncGroup = StringUtils.defaultIfBlank( syncGroup, NONE );
+    }
+
+    @Nonnull
+    public ProcessingTags fhirClient( @Nullable Object fhirClient )
+    {
+        return new ProcessingTags( pipeline, ( fhirClient == null ) ? null : fhirClient.toString(), resourceType, syncGroup );
+    }
+
+    @Nonnull
+    public ProcessingTags resourceType( @Nullable Object resourceType )
+    {
+        return new ProcessingTags( pipeline, fhirClient, ( resourceType == null ) ? null : resourceType.toString(), syncGroup );
+    }
+
+    @Nonnull
+    public ProcessingTags syncGroup( @Nullable Object syncGroup )
+    {
+        return new ProcessingTags( pipeline, fhirClient, resourceType, ( syncGroup == null ) ? null : syncGroup.toString() );
+    }
+
+    @Nonnull
+    public String getPipeline()
+    {
+        return pipeline;
+    }
+
+    @Nonnull
+    public String getFhirClient()
+    {
+        return fhirClient;
+    }
+
+    @Nonnull
+    public String getResourceType()
+    {
+        return resourceType;
+    }
+
+    @Nonnull
+    public String getSyncGroup()
+    {
+        return syncGroup;
+    }
+
+    @Nonnull
+    public Tags toTags()
+    {
+        return Tags.of( PIPELINE_TAG_NAME, pipeline, FHIR_CLIENT_TAG_NAME, fhirClient, RESOURCE_TYPE_TAG_NAME, resourceType, SYNC_GROUP_TAG_NAME, syncGroup );
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o ) return true;
+        if ( o == null || getClass() != o.getClass() ) return false;
+        ProcessingTags that = (ProcessingTags) o;
+        return pipeline.equals( that.pipeline ) &&
+            fhirClient.equals( that.fhirClient ) &&
+            resourceType.equals( that.resourceType ) &&
+            syncGroup.equals( that.syncGroup );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( pipeline, fhirClient, resourceType, syncGroup );
+    }
+}
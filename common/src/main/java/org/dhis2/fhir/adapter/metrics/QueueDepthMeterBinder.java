@@ -0,0 +1,105 @@
+package org.dhis2.fhir.adapter.metrics;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.activemq.artemis.api.core.SimpleString;
+import org.apache.activemq.artemis.core.server.ActiveMQServer;
+import org.apache.activemq.artemis.core.server.Queue;
+import org.apache.activemq.artemis.jms.server.embedded.EmbeddedJMS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Binds the number of messages that are contained in the specified queues to gauge
+ * {@value #GAUGE_NAME}. The number of messages is the message count that is maintained
+ * by the embedded Artemis broker, so that reading the gauge does not cause any load on
+ * the broker. If the adapter uses an external broker, the gauge is not available and
+ * the message count must be monitored on the broker itself.
+ *
+ * @author volsch
+ */
+public class QueueDepthMeterBinder implements MeterBinder
+{
+    public static final String GAUGE_NAME = "dhis2.fhir.adapter.queue.depth";
+
+    public static final String QUEUE_TAG_NAME = "queue";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final EmbeddedJMS embeddedJms;
+
+    private final Set<String> queueNames;
+
+    /**
+     * @param embeddedJms the embedded broker or <code>null</code> if an external broker is used.
+     * @param queueNames  the names of the queues for which the number of messages should be provided.
+     */
+    public QueueDepthMeterBinder( @Nullable EmbeddedJMS embeddedJms, @Nonnull String... queueNames )
+    {
+        this.embeddedJms = embeddedJms;
+        this.queueNames = Collections.unmodifiableSet( new LinkedHashSet<>( Arrays.asList( queueNames ) ) );
+    }
+
+    @Override
+    public void bindTo( @Nonnull MeterRegistry registry )
+    {
+        if ( embeddedJms == null )
+        {
+            logger.info( "No embedded message broker is used. Number of messages in queues {} is not provided.", queueNames );
+            return;
+        }
+
+        queueNames.forEach( queueName -> Gauge.builder( GAUGE_NAME, this, b -> b.getDepth( queueName ) )
+            .tag( QUEUE_TAG_NAME, queueName ).description( "Number of messages in the queue." ).register( registry ) );
+    }
+
+    protected double getDepth( @Nonnull String queueName )
+    {
+        final ActiveMQServer server = embeddedJms.getActiveMQServer();
+
+        if ( (server == null) || !server.isActive() )
+        {
+            return Double.NaN;
+        }
+
+        final Queue queue = server.locateQueue( SimpleString.toSimpleString( queueName ) );
+
+        return (queue == null) ? Double.NaN : queue.getMessageCount();
+    }
+}
@@ -28,8 +28,10 @@ package org.dhis2.fhir.adapter.queue;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.validation.annotation.Validated;
 
+import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import java.io.Serializable;
@@ -54,6 +56,11 @@ public class QueueListenerConfig implements Serializable
     @Pattern( regexp = "\\d+-\\d+" )
     private String concurrency = DEFAULT_CONCURRENCY;
 
+    @NotNull
+    @NestedConfigurationProperty
+    @Valid
+    private QueueListenerBatchConfig batch = new QueueListenerBatchConfig();
+
     public String getConcurrency()
     {
         return concurrency;
@@ -63,4 +70,14 @@ public class QueueListenerConfig implements Serializable
     {
         this.concurrency = concurrency;
     }
+
+    public QueueListenerBatchConfig getBatch()
+    {
+        return batch;
+    }
+
+    public void setBatch( QueueListenerBatchConfig batch )
+    {
+        this.batch = batch;
+    }
 }
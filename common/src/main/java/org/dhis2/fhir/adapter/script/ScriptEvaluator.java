@@ -66,4 +66,19 @@ public interface ScriptEvaluator
      *                                    or cannot be compiled due to other issues.
      */
     boolean compile( @Nonnull String script ) throws ScriptCompilationException;
+
+    /**
+     * Compiles the script and caches the compiled script with the specified key
+     * in the same way as {@link #eval(Object, String, Map)} would do. A subsequent
+     * evaluation of the script with the same key does not need to compile the
+     * script anymore. Compiling scripts may not be supported.
+     *
+     * @param key    unique key of the script.
+     * @param script the script that should be compiled.
+     * @return <code>true</code> if the script has been compiled and cached,
+     * <code>false</code> if script compilation is not supported.
+     * @throws ScriptCompilationException thrown if the script has syntactical errors
+     *                                    or cannot be compiled due to other issues.
+     */
+    boolean precompile( @Nonnull Object key, @Nonnull String script ) throws ScriptCompilationException;
 }
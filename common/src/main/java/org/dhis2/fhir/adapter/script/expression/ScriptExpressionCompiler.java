@@ -0,0 +1,791 @@
+package org.dhis2.fhir.adapter.script.expression;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles trivial JavaScript scripts to Java expressions that can be evaluated
+ * without the use of a script engine. Only a small subset of the script language
+ * that is free of side effects is supported:
+ *
+ * <ul>
+ * <li>boolean, null, number and string literals,</li>
+ * <li>variables and property paths (e.g. <code>input.status</code>),</li>
+ * <li>index access with string literals (e.g. <code>args['dataElement']</code>),</li>
+ * <li>invocation of getter methods without arguments (e.g. <code>input.hasCode()</code>),</li>
+ * <li>the operators <code>!</code>, <code>==</code>, <code>!=</code>, <code>===</code>,
+ * <code>!==</code>, <code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code>, <code>&gt;=</code>,
+ * <code>&amp;&amp;</code>, <code>||</code> and <code>?:</code>.</li>
+ * </ul>
+ *
+ * Scripts that use anything outside this subset are not compiled. If a compiled
+ * expression detects values whose handling by the script language is not
+ * supported, {@link UnsupportedScriptExpressionException} is thrown and the script
+ * must be evaluated by the script engine instead. Since the supported subset is
+ * free of side effects, the script can always be evaluated by the script engine
+ * afterwards.
+ *
+ * @author volsch
+ */
+public class ScriptExpressionCompiler
+{
+    private static final Set<String> RESERVED_WORDS = Collections.unmodifiableSet( new HashSet<>( Arrays.asList(
+        "break", "case", "catch", "class", "const", "continue", "debugger", "default", "delete", "do", "else", "export", "extends",
+        "finally", "for", "function", "if", "import", "in", "instanceof", "let", "new", "return", "super", "switch", "this",
+        "throw", "try", "typeof", "undefined", "var", "void", "while", "with", "yield", "NaN", "Infinity" ) ) );
+
+    private static final Set<String> GETTER_PREFIXES = Collections.unmodifiableSet( new HashSet<>( Arrays.asList( "get", "is", "has" ) ) );
+
+    private final Map<Class<?>, Map<String, Optional<Method>>> methods = new ConcurrentHashMap<>();
+
+    /**
+     * Compiles the specified script to an expression.
+     *
+     * @param script the script that should be compiled.
+     * @return the compiled expression or <code>null</code> if the script uses
+     * anything that is not included in the supported subset of the script language.
+     */
+    @Nullable
+    public ScriptExpression compile( @Nonnull String script )
+    {
+        final List<Token> tokens = tokenize( script );
+        if ( tokens == null || tokens.size() == 1 )
+        {
+            return null;
+        }
+
+        final Parser parser = new Parser( tokens );
+        final ScriptExpression expression = parser.parseTernary();
+        if ( expression == null )
+        {
+            return null;
+        }
+        parser.accept( ";" );
+        return parser.isEnd() ? expression : null;
+    }
+
+    @Nullable
+    protected List<Token> tokenize( @Nonnull String script )
+    {
+        final List<Token> tokens = new ArrayList<>();
+        int pos = 0;
+        while ( pos < script.length() )
+        {
+            final char c = script.charAt( pos );
+            if ( Character.isWhitespace( c ) )
+            {
+                pos++;
+            }
+            else if ( Character.isJavaIdentifierStart( c ) )
+            {
+                final int start = pos;
+                while ( pos < script.length() && Character.isJavaIdentifierPart( script.charAt( pos ) ) )
+                {
+                    pos++;
+                }
+                tokens.add( new Token( TokenType.IDENTIFIER, script.substring( start, pos ) ) );
+            }
+            else if ( c >= '0' && c <= '9' )
+            {
+                final int start = pos;
+                while ( pos < script.length() && ( ( script.charAt( pos ) >= '0' && script.charAt( pos ) <= '9' ) || script.charAt( pos ) == '.' ) )
+                {
+                    pos++;
+                }
+                if ( pos < script.length() && Character.isJavaIdentifierPart( script.charAt( pos ) ) )
+                {
+                    // exponents, hexadecimal numbers and similar are not supported
+                    return null;
+                }
+                tokens.add( new Token( TokenType.NUMBER, script.substring( start, pos ) ) );
+            }
+            else if ( c == '\'' || c == '"' )
+            {
+                final StringBuilder value = new StringBuilder();
+                pos++;
+                while ( pos < script.length() && script.charAt( pos ) != c )
+                {
+                    if ( script.charAt( pos ) == '\\' || script.charAt( pos ) == '\n' )
+                    {
+                        // escape sequences are not supported
+                        return null;
+                    }
+                    value.append( script.charAt( pos++ ) );
+                }
+                if ( pos >= script.length() )
+                {
+                    return null;
+                }
+                pos++;
+                tokens.add( new Token( TokenType.STRING, value.toString() ) );
+            }
+            else
+            {
+                final String operator = getOperator( script, pos );
+                if ( operator == null )
+                {
+                    return null;
+                }
+                pos += operator.length();
+                tokens.add( new Token( TokenType.OPERATOR, operator ) );
+            }
+        }
+        tokens.add( new Token( TokenType.END, "" ) );
+        return tokens;
+    }
+
+    @Nullable
+    private static String getOperator( @Nonnull String script, int pos )
+    {
+        for ( final String operator : Arrays.asList( "===", "!==", "==", "!=", "<=", ">=", "&&", "||", "<", ">", "!", "(", ")", "[", "]", ".", "?", ":", ";", "-" ) )
+        {
+            if ( script.startsWith( operator, pos ) )
+            {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    protected Object getProperty( @Nullable Object target, @Nonnull String name )
+    {
+        if ( target instanceof Map )
+        {
+            final Map<?, ?> map = (Map<?, ?>) target;
+            if ( !map.containsKey( name ) )
+            {
+                throw new UnsupportedScriptExpressionException( "Map does not contain key: " + name );
+            }
+            return checkValue( map.get( name ) );
+        }
+
+        final Class<?> targetClass = getTargetClass( target );
+        final String suffix = Character.toUpperCase( name.charAt( 0 ) ) + name.substring( 1 );
+        Method method = getMethod( targetClass, "get" + suffix );
+        if ( method == null )
+        {
+            method = getMethod( targetClass, "is" + suffix );
+            if ( method != null && method.getReturnType() != boolean.class )
+            {
+                method = null;
+            }
+        }
+        if ( method == null )
+        {
+            throw new UnsupportedScriptExpressionException( "No getter for property " + name + " of " + targetClass.getName() );
+        }
+        return invoke( method, target );
+    }
+
+    @Nullable
+    protected Object invokeGetter( @Nullable Object target, @Nonnull String name )
+    {
+        final Class<?> targetClass = getTargetClass( target );
+        final Method method = getMethod( targetClass, name );
+        if ( method == null )
+        {
+            throw new UnsupportedScriptExpressionException( "No method " + name + " of " + targetClass.getName() );
+        }
+        return invoke( method, target );
+    }
+
+    @Nonnull
+    private static Class<?> getTargetClass( @Nullable Object target )
+    {
+        if ( target == null || target instanceof String || target instanceof Number || target instanceof Boolean ||
+            target.getClass().getName().startsWith( "jdk.nashorn." ) )
+        {
+            throw new UnsupportedScriptExpressionException( "Unsupported target of property access: " + target );
+        }
+        return target.getClass();
+    }
+
+    @Nullable
+    private Method getMethod( @Nonnull Class<?> targetClass, @Nonnull String name )
+    {
+        return methods.computeIfAbsent( targetClass, c -> new ConcurrentHashMap<>() )
+            .computeIfAbsent( name, n -> Optional.ofNullable( findMethod( targetClass, n ) ) ).orElse( null );
+    }
+
+    @Nullable
+    private static Method findMethod( @Nonnull Class<?> targetClass, @Nonnull String name )
+    {
+        final Method method;
+        try
+        {
+            method = targetClass.getMethod( name );
+        }
+        catch ( NoSuchMethodException e )
+        {
+            return null;
+        }
+        if ( Modifier.isStatic( method.getModifiers() ) || method.getReturnType() == void.class )
+        {
+            return null;
+        }
+        return findAccessibleMethod( method.getDeclaringClass(), method );
+    }
+
+    @Nullable
+    private static Method findAccessibleMethod( @Nullable Class<?> c, @Nonnull Method method )
+    {
+        if ( c == null )
+        {
+            return null;
+        }
+        if ( Modifier.isPublic( c.getModifiers() ) )
+        {
+            try
+            {
+                return c.getMethod( method.getName() );
+            }
+            catch ( NoSuchMethodException e )
+            {
+                // continue with super types
+            }
+        }
+        for ( final Class<?> i : c.getInterfaces() )
+        {
+            final Method m = findAccessibleMethod( i, method );
+            if ( m != null )
+            {
+                return m;
+            }
+        }
+        return findAccessibleMethod( c.getSuperclass(), method );
+    }
+
+    @Nullable
+    private static Object invoke( @Nonnull Method method, @Nonnull Object target )
+    {
+        try
+        {
+            return checkValue( method.invoke( target ) );
+        }
+        catch ( IllegalAccessException | InvocationTargetException e )
+        {
+            throw new UnsupportedScriptExpressionException( "Could not invoke method " + method.getName() + " of " + target.getClass().getName(), e );
+        }
+    }
+
+    @Nullable
+    private static Object checkValue( @Nullable Object value )
+    {
+        if ( value instanceof Number && !( value instanceof Integer || value instanceof Long || value instanceof Double ) )
+        {
+            throw new UnsupportedScriptExpressionException( "Unsupported number type: " + value.getClass().getName() );
+        }
+        if ( value instanceof Character || value instanceof CharSequence && !( value instanceof String ) )
+        {
+            throw new UnsupportedScriptExpressionException( "Unsupported character type: " + value.getClass().getName() );
+        }
+        return value;
+    }
+
+    protected static boolean isTrue( @Nullable Object value )
+    {
+        if ( value == null )
+        {
+            return false;
+        }
+        if ( value instanceof Boolean )
+        {
+            return (Boolean) value;
+        }
+        if ( value instanceof Number )
+        {
+            final double d = ( (Number) value ).doubleValue();
+            return d != 0 && !Double.isNaN( d );
+        }
+        if ( value instanceof String )
+        {
+            return !( (String) value ).isEmpty();
+        }
+        return true;
+    }
+
+    private static boolean isPrimitive( @Nullable Object value )
+    {
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    protected static boolean isEqual( @Nullable Object value1, @Nullable Object value2 )
+    {
+        if ( value1 == null || value2 == null )
+        {
+            return value1 == value2;
+        }
+        if ( value1 instanceof Number && value2 instanceof Number )
+        {
+            return ( (Number) value1 ).doubleValue() == ( (Number) value2 ).doubleValue();
+        }
+        if ( isPrimitive( value1 ) && isPrimitive( value2 ) )
+        {
+            if ( value1.getClass() != value2.getClass() )
+            {
+                throw new UnsupportedScriptExpressionException( "Type conversion is not supported: " + value1.getClass().getName() + " and " + value2.getClass().getName() );
+            }
+            return value1.equals( value2 );
+        }
+        if ( value1 instanceof String && value2 instanceof Enum )
+        {
+            return value1.equals( value2.toString() );
+        }
+        if ( value1 instanceof Enum && value2 instanceof String )
+        {
+            return value1.toString().equals( value2 );
+        }
+        if ( isPrimitive( value1 ) || isPrimitive( value2 ) )
+        {
+            throw new UnsupportedScriptExpressionException( "Type conversion is not supported: " + value1.getClass().getName() + " and " + value2.getClass().getName() );
+        }
+        return value1 == value2;
+    }
+
+    protected static boolean isStrictEqual( @Nullable Object value1, @Nullable Object value2 )
+    {
+        if ( value1 == null || value2 == null )
+        {
+            return value1 == value2;
+        }
+        if ( value1 instanceof Number && value2 instanceof Number )
+        {
+            return ( (Number) value1 ).doubleValue() == ( (Number) value2 ).doubleValue();
+        }
+        if ( isPrimitive( value1 ) || isPrimitive( value2 ) )
+        {
+            return value1.getClass() == value2.getClass() && value1.equals( value2 );
+        }
+        return value1 == value2;
+    }
+
+    protected static int compare( @Nullable Object value1, @Nullable Object value2 )
+    {
+        if ( value1 instanceof Number && value2 instanceof Number )
+        {
+            final double d1 = ( (Number) value1 ).doubleValue();
+            final double d2 = ( (Number) value2 ).doubleValue();
+            if ( Double.isNaN( d1 ) || Double.isNaN( d2 ) )
+            {
+                throw new UnsupportedScriptExpressionException( "Comparison of NaN is not supported." );
+            }
+            return Double.compare( d1, d2 );
+        }
+        if ( value1 instanceof String && value2 instanceof String )
+        {
+            return ( (String) value1 ).compareTo( (String) value2 );
+        }
+        throw new UnsupportedScriptExpressionException( "Comparison is not supported: " + value1 + " and " + value2 );
+    }
+
+    protected enum TokenType
+    {
+        IDENTIFIER, NUMBER, STRING, OPERATOR, END
+    }
+
+    protected static class Token
+    {
+        private final TokenType type;
+
+        private final String value;
+
+        public Token( @Nonnull TokenType type, @Nonnull String value )
+        {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Nonnull
+        public TokenType getType()
+        {
+            return type;
+        }
+
+        @Nonnull
+        public String getValue()
+        {
+            return value;
+        }
+
+        public boolean isOperator( @Nonnull String operator )
+        {
+            return type == TokenType.OPERATOR && value.equals( operator );
+        }
+    }
+
+    /**
+     * Recursive descent parser that creates the expression. All parse methods
+     * return <code>null</code> if the script is not supported.
+     */
+    protected class Parser
+    {
+        private final List<Token> tokens;
+
+        private int pos;
+
+        public Parser( @Nonnull List<Token> tokens )
+        {
+            this.tokens = tokens;
+        }
+
+        public boolean isEnd()
+        {
+            return peek().getType() == TokenType.END;
+        }
+
+        public boolean accept( @Nonnull String operator )
+        {
+            if ( peek().isOperator( operator ) )
+            {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        @Nonnull
+        private Token peek()
+        {
+            return tokens.get( pos );
+        }
+
+        @Nonnull
+        private Token next()
+        {
+            final Token token = tokens.get( pos );
+            if ( token.getType() != TokenType.END )
+            {
+                pos++;
+            }
+            return token;
+        }
+
+        @Nullable
+        public ScriptExpression parseTernary()
+        {
+            final ScriptExpression condition = parseOr();
+            if ( condition == null || !accept( "?" ) )
+            {
+                return condition;
+            }
+            final ScriptExpression trueExpression = parseTernary();
+            if ( trueExpression == null || !accept( ":" ) )
+            {
+                return null;
+            }
+            final ScriptExpression falseExpression = parseTernary();
+            if ( falseExpression == null )
+            {
+                return null;
+            }
+            return v -> isTrue( condition.evaluate( v ) ) ? trueExpression.evaluate( v ) : falseExpression.evaluate( v );
+        }
+
+        @Nullable
+        private ScriptExpression parseOr()
+        {
+            ScriptExpression expression = parseAnd();
+            while ( expression != null && accept( "||" ) )
+            {
+                final ScriptExpression left = expression;
+                final ScriptExpression right = parseAnd();
+                if ( right == null )
+                {
+                    return null;
+                }
+                expression = v -> {
+                    final Object value = left.evaluate( v );
+                    return isTrue( value ) ? value : right.evaluate( v );
+                };
+            }
+            return expression;
+        }
+
+        @Nullable
+        private ScriptExpression parseAnd()
+        {
+            ScriptExpression expression = parseEquality();
+            while ( expression != null && accept( "&&" ) )
+            {
+                final ScriptExpression left = expression;
+                final ScriptExpression right = parseEquality();
+                if ( right == null )
+                {
+                    return null;
+                }
+                expression = v -> {
+                    final Object value = left.evaluate( v );
+                    return isTrue( value ) ? right.evaluate( v ) : value;
+                };
+            }
+            return expression;
+        }
+
+        @Nullable
+        private ScriptExpression parseEquality()
+        {
+            ScriptExpression expression = parseRelational();
+            while ( expression != null && peek().getType() == TokenType.OPERATOR )
+            {
+                final String operator = peek().getValue();
+                if ( !operator.equals( "==" ) && !operator.equals( "!=" ) && !operator.equals( "===" ) && !operator.equals( "!==" ) )
+                {
+                    break;
+                }
+                next();
+
+                final ScriptExpression left = expression;
+                final ScriptExpression right = parseRelational();
+                if ( right == null )
+                {
+                    return null;
+                }
+                switch ( operator )
+                {
+                    case "==":
+                        expression = v -> isEqual( left.evaluate( v ), right.evaluate( v ) );
+                        break;
+                    case "!=":
+                        expression = v -> !isEqual( left.evaluate( v ), right.evaluate( v ) );
+                        break;
+                    case "===":
+                        expression = v -> isStrictEqual( left.evaluate( v ), right.evaluate( v ) );
+                        break;
+                    default:
+                        expression = v -> !isStrictEqual( left.evaluate( v ), right.evaluate( v ) );
+                        break;
+                }
+            }
+            return expression;
+        }
+
+        @Nullable
+        private ScriptExpression parseRelational()
+        {
+            ScriptExpression expression = parseUnary();
+            while ( expression != null && peek().getType() == TokenType.OPERATOR )
+            {
+                final String operator = peek().getValue();
+                if ( !operator.equals( "<" ) && !operator.equals( "<=" ) && !operator.equals( ">" ) && !operator.equals( ">=" ) )
+                {
+                    break;
+                }
+                next();
+
+                final ScriptExpression left = expression;
+                final ScriptExpression right = parseUnary();
+                if ( right == null )
+                {
+                    return null;
+                }
+                switch ( operator )
+                {
+                    case "<":
+                        expression = v -> compare( left.evaluate( v ), right.evaluate( v ) ) < 0;
+                        break;
+                    case "<=":
+                        expression = v -> compare( left.evaluate( v ), right.evaluate( v ) ) <= 0;
+                        break;
+                    case ">":
+                        expression = v -> compare( left.evaluate( v ), right.evaluate( v ) ) > 0;
+                        break;
+                    default:
+                        expression = v -> compare( left.evaluate( v ), right.evaluate( v ) ) >= 0;
+                        break;
+                }
+            }
+            return expression;
+        }
+
+        @Nullable
+        private ScriptExpression parseUnary()
+        {
+            if ( accept( "!" ) )
+            {
+                final ScriptExpression expression = parseUnary();
+                return ( expression == null ) ? null : v -> !isTrue( expression.evaluate( v ) );
+            }
+            if ( accept( "-" ) )
+            {
+                if ( peek().getType() != TokenType.NUMBER )
+                {
+                    return null;
+                }
+                final Number number = parseNumber( "-" + next().getValue() );
+                return ( number == null ) ? null : v -> number;
+            }
+            return parsePostfix();
+        }
+
+        @Nullable
+        private ScriptExpression parsePostfix()
+        {
+            ScriptExpression expression = parsePrimary();
+            while ( expression != null )
+            {
+                final ScriptExpression target = expression;
+                if ( accept( "." ) )
+                {
+                    final Token name = next();
+                    if ( name.getType() != TokenType.IDENTIFIER )
+                    {
+                        return null;
+                    }
+                    if ( accept( "(" ) )
+                    {
+                        // only getter methods without any arguments are assumed to be free of side effects
+                        if ( !accept( ")" ) || !isGetterName( name.getValue() ) )
+                        {
+                            return null;
+                        }
+                        expression = v -> invokeGetter( target.evaluate( v ), name.getValue() );
+                    }
+                    else
+                    {
+                        expression = v -> getProperty( target.evaluate( v ), name.getValue() );
+                    }
+                }
+                else if ( accept( "[" ) )
+                {
+                    final Token name = next();
+                    if ( name.getType() != TokenType.STRING || name.getValue().isEmpty() || !accept( "]" ) )
+                    {
+                        return null;
+                    }
+                    expression = v -> getProperty( target.evaluate( v ), name.getValue() );
+                }
+                else
+                {
+                    break;
+                }
+            }
+            return expression;
+        }
+
+        @Nullable
+        private ScriptExpression parsePrimary()
+        {
+            final Token token = next();
+            switch ( token.getType() )
+            {
+                case NUMBER:
+                    final Number number = parseNumber( token.getValue() );
+                    return ( number == null ) ? null : v -> number;
+                case STRING:
+                    final String string = token.getValue();
+                    return v -> string;
+                case IDENTIFIER:
+                    return parseIdentifier( token.getValue() );
+                case OPERATOR:
+                    if ( token.isOperator( "(" ) )
+                    {
+                        final ScriptExpression expression = parseTernary();
+                        return ( expression != null && accept( ")" ) ) ? expression : null;
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        @Nullable
+        private ScriptExpression parseIdentifier( @Nonnull String name )
+        {
+            switch ( name )
+            {
+                case "true":
+                    return v -> Boolean.TRUE;
+                case "false":
+                    return v -> Boolean.FALSE;
+                case "null":
+                    return v -> null;
+                default:
+                    if ( RESERVED_WORDS.contains( name ) || peek().isOperator( "(" ) )
+                    {
+                        return null;
+                    }
+                    return v -> {
+                        if ( !v.containsKey( name ) )
+                        {
+                            throw new UnsupportedScriptExpressionException( "Variable has not been defined: " + name );
+                        }
+                        return checkValue( v.get( name ) );
+                    };
+            }
+        }
+
+        private boolean isGetterName( @Nonnull String name )
+        {
+            for ( final String prefix : GETTER_PREFIXES )
+            {
+                if ( name.length() > prefix.length() && name.startsWith( prefix ) && Character.isUpperCase( name.charAt( prefix.length() ) ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Nullable
+        private Number parseNumber( @Nonnull String value )
+        {
+            try
+            {
+                if ( value.indexOf( '.' ) < 0 )
+                {
+                    final long longValue = Long.parseLong( value );
+                    if ( longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE )
+                    {
+                        return (int) longValue;
+                    }
+                }
+                return Double.parseDouble( value );
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+    }
+}
@@ -30,6 +30,8 @@ package org.dhis2.fhir.adapter.script.impl;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
 import org.dhis2.fhir.adapter.script.FatalScriptCompilationException;
 import org.dhis2.fhir.adapter.script.ScriptCompilationException;
@@ -39,14 +41,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.script.Bindings;
 import javax.script.Compilable;
 import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Standard implementation of {@link ScriptEvaluator}. The used script engine itself
@@ -56,19 +65,45 @@ import java.util.Map;
  * For Nashorn Javascript engine see this article:
  * https://stackoverflow.com/questions/30140103/should-i-use-a-separate-scriptengine-and-compiledscript-instances-per-each-threa
  *
+ * If an engine pool size is specified, a pool of script engines is created and
+ * each evaluation uses a script engine (and its compiled scripts) exclusively. A
+ * nested evaluation on the same thread uses the script engine that is already used
+ * by the thread. Otherwise one script engine is shared by all threads.<br>
+ *
+ * If a meter registry is specified, the compile and evaluation times are recorded
+ * per script key. The timers are registered once per script key and are reused.
+ *
  * @author volsch
  */
 public class ScriptEvaluatorImpl implements ScriptEvaluator
 {
+    public static final String COMPILE_TIMER_NAME = "dhis2.fhir.adapter.script.compile";
+
+    public static final String EVAL_TIMER_NAME = "dhis2.fhir.adapter.script.eval";
+
+    public static final String SCRIPT_TAG_NAME = "script";
+
     private final Logger logger = LoggerFactory.getLogger( ScriptEvaluatorImpl.class );
 
-    private final ScriptEngine scriptEngine;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Object, Timer> compileTimers = new ConcurrentHashMap<>();
+
+    private final Map<Object, Timer> evalTimers = new ConcurrentHashMap<>();
+
+    private final List<PooledScriptEngine> scriptEngines;
 
-    private final Compilable compilable;
+    private final BlockingQueue<PooledScriptEngine> availableScriptEngines;
 
-    private final Cache<Object, CompiledScript> compiledScriptCache;
+    private final ThreadLocal<PooledScriptEngine> currentScriptEngine = new ThreadLocal<>();
 
     public ScriptEvaluatorImpl( @Nonnull String scriptEngineName, @Nonnull List<String> scriptEngineArgs, int maxCachedScriptLifetimeSecs, int maxCachedScripts )
+    {
+        this( scriptEngineName, scriptEngineArgs, maxCachedScriptLifetimeSecs, maxCachedScripts, 0, null );
+    }
+
+    public ScriptEvaluatorImpl( @Nonnull String scriptEngineName, @Nonnull List<String> scriptEngineArgs, int maxCachedScriptLifetimeSecs, int maxCachedScripts,
+        int scriptEnginePoolSize, @Nullable MeterRegistry meterRegistry )
     {
         if ( !"nashorn".equals( scriptEngineName ) )
         {
@@ -76,64 +111,173 @@ public class ScriptEvaluatorImpl implements ScriptEvaluator
         }
         final NashornScriptEngineFactory scriptEngineFactory = new NashornScriptEngineFactory();
 
-        scriptEngine = scriptEngineFactory.getScriptEngine( scriptEngineArgs.toArray( new String[0] ) );
-        if ( scriptEngine == null )
+        final List<PooledScriptEngine> scriptEngines = new ArrayList<>();
+        for ( int i = 0; i < Math.max( 1, scriptEnginePoolSize ); i++ )
         {
-            throw new FatalScriptCompilationException( "Script engine has not been configured: " + scriptEngineName );
+            final ScriptEngine scriptEngine = scriptEngineFactory.getScriptEngine( scriptEngineArgs.toArray( new String[0] ) );
+            if ( scriptEngine == null )
+            {
+                throw new FatalScriptCompilationException( "Script engine has not been configured: " + scriptEngineName );
+            }
+            scriptEngines.add( new PooledScriptEngine( scriptEngine, maxCachedScriptLifetimeSecs, maxCachedScripts ) );
         }
-        if ( scriptEngine instanceof Compilable )
+
+        this.meterRegistry = meterRegistry;
+        this.scriptEngines = Collections.unmodifiableList( scriptEngines );
+        this.availableScriptEngines = ( scriptEnginePoolSize > 0 ) ? new ArrayBlockingQueue<>( scriptEngines.size(), true, scriptEngines ) : null;
+    }
+
+    @Override
+    public Object eval( @Nonnull Object key, @Nonnull String script, @Nonnull Map<String, Object> args ) throws ScriptCompilationException
+    {
+        final PooledScriptEngine scriptEngine = acquire();
+        try
         {
-            compilable = (Compilable) scriptEngine;
-            compiledScriptCache = Caffeine.newBuilder()
-                .expireAfterAccess( Duration.ofSeconds( maxCachedScriptLifetimeSecs ) )
-                .maximumSize( maxCachedScripts ).build();
+            return eval( scriptEngine, key, script, args );
         }
-        else
+        finally
         {
-            compilable = null;
-            compiledScriptCache = null;
+            release( scriptEngine );
         }
     }
 
     @Override
-    public Object eval( @Nonnull Object key, @Nonnull String script, @Nonnull Map<String, Object> args ) throws ScriptCompilationException
+    public boolean compile( @Nonnull String script )
     {
-        final Bindings bindings = scriptEngine.createBindings();
+        final PooledScriptEngine scriptEngine = acquire();
+        try
+        {
+            if ( scriptEngine.getCompilable() == null )
+            {
+                return false;
+            }
+
+            try
+            {
+                scriptEngine.getCompilable().compile( script );
+            }
+            catch ( ScriptException e )
+            {
+                final StringBuilder message = new StringBuilder( e.getMessage() );
+                if ( e.getFileName() == null )
+                {
+                    if ( e.getLineNumber() != -1 )
+                    {
+                        message.append( " at line number " ).append( e.getLineNumber() );
+                    }
+                    if ( e.getColumnNumber() != -1 )
+                    {
+                        message.append( " at column number " ).append( e.getColumnNumber() );
+                    }
+                }
+                throw new ScriptCompilationException( message.toString(), e );
+            }
+        }
+        finally
+        {
+            release( scriptEngine );
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean precompile( @Nonnull Object key, @Nonnull String script ) throws ScriptCompilationException
+    {
+        boolean compiled = false;
+        // compiled scripts are bound to the script engine that compiled them
+        for ( final PooledScriptEngine scriptEngine : scriptEngines )
+        {
+            if ( scriptEngine.getCompilable() != null )
+            {
+                getCompiledScript( scriptEngine, key, script );
+                compiled = true;
+            }
+        }
+        return compiled;
+    }
+
+    @Nonnull
+    protected PooledScriptEngine acquire()
+    {
+        if ( availableScriptEngines == null )
+        {
+            return scriptEngines.get( 0 );
+        }
+
+        PooledScriptEngine scriptEngine = currentScriptEngine.get();
+        if ( scriptEngine != null )
+        {
+            scriptEngine.nested++;
+            return scriptEngine;
+        }
+
+        try
+        {
+            scriptEngine = availableScriptEngines.poll();
+            if ( scriptEngine == null )
+            {
+                logger.debug( "Waiting for an available script engine." );
+                scriptEngine = availableScriptEngines.take();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ScriptExecutionException( e );
+        }
+        currentScriptEngine.set( scriptEngine );
+        return scriptEngine;
+    }
+
+    protected void release( @Nonnull PooledScriptEngine scriptEngine )
+    {
+        if ( availableScriptEngines == null )
+        {
+            return;
+        }
+
+        if ( scriptEngine.nested > 0 )
+        {
+            scriptEngine.nested--;
+        }
+        else
+        {
+            currentScriptEngine.remove();
+            availableScriptEngines.add( scriptEngine );
+        }
+    }
+
+    private Object eval( @Nonnull PooledScriptEngine scriptEngine, @Nonnull Object key, @Nonnull String script, @Nonnull Map<String, Object> args )
+    {
+        final Bindings bindings = scriptEngine.getScriptEngine().createBindings();
         bindings.putAll( args );
 
         final Object result;
-        if ( compilable == null )
+        if ( scriptEngine.getCompilable() == null )
         {
             logger.debug( "Executing non-compilable script {}.", key );
+            final long startNanos = System.nanoTime();
             try
             {
-                result = scriptEngine.eval( script, bindings );
+                result = scriptEngine.getScriptEngine().eval( script, bindings );
             }
             catch ( ScriptException e )
             {
                 throw new ScriptExecutionException( e );
             }
+            finally
+            {
+                record( evalTimers, EVAL_TIMER_NAME, key, startNanos );
+            }
             logger.debug( "Executed non-compilable script {}.", key );
         }
         else
         {
-            CompiledScript compiledScript = compiledScriptCache.getIfPresent( key );
-            if ( compiledScript == null )
-            {
-                logger.debug( "Compiling script {}.", key );
-                try
-                {
-                    compiledScript = compilable.compile( script );
-                }
-                catch ( ScriptException e )
-                {
-                    throw new ScriptCompilationException( e );
-                }
-                compiledScriptCache.put( key, compiledScript );
-                logger.debug( "Compiled script {}.", key );
-            }
+            final CompiledScript compiledScript = getCompiledScript( scriptEngine, key, script );
 
             logger.debug( "Executing compiled script {}.", key );
+            final long startNanos = System.nanoTime();
             try
             {
                 result = compiledScript.eval( bindings );
@@ -142,40 +286,99 @@ public class ScriptEvaluatorImpl implements ScriptEvaluator
             {
                 throw new ScriptExecutionException( e );
             }
+            finally
+            {
+                record( evalTimers, EVAL_TIMER_NAME, key, startNanos );
+            }
             logger.debug( "Executed compiled script {}.", key );
         }
         return result;
     }
 
-    @Override
-    public boolean compile( @Nonnull String script )
+    @Nonnull
+    private CompiledScript getCompiledScript( @Nonnull PooledScriptEngine scriptEngine, @Nonnull Object key, @Nonnull String script ) throws ScriptCompilationException
     {
-        if ( compilable == null )
+        CompiledScript compiledScript = scriptEngine.getCompiledScriptCache().getIfPresent( key );
+        if ( compiledScript == null )
         {
-            return false;
+            logger.debug( "Compiling script {}.", key );
+            final long startNanos = System.nanoTime();
+            try
+            {
+                compiledScript = scriptEngine.getCompilable().compile( script );
+            }
+            catch ( ScriptException e )
+            {
+                throw new ScriptCompilationException( e );
+            }
+            finally
+            {
+                record( compileTimers, COMPILE_TIMER_NAME, key, startNanos );
+            }
+            scriptEngine.getCompiledScriptCache().put( key, compiledScript );
+            logger.debug( "Compiled script {}.", key );
         }
+        return compiledScript;
+    }
 
-        try
+    private void record( @Nonnull Map<Object, Timer> timers, @Nonnull String timerName, @Nonnull Object key, long startNanos )
+    {
+        if ( meterRegistry != null )
         {
-            compilable.compile( script );
+            timers.computeIfAbsent( key, k -> Timer.builder( timerName ).tag( SCRIPT_TAG_NAME, k.toString() ).publishPercentileHistogram().register( meterRegistry ) )
+                .record( System.nanoTime() - startNanos, TimeUnit.NANOSECONDS );
         }
-        catch ( ScriptException e )
+    }
+
+    /**
+     * A script engine with the scripts that have been compiled by it.
+     */
+    protected static class PooledScriptEngine
+    {
+        private final ScriptEngine scriptEngine;
+
+        private final Compilable compilable;
+
+        private final Cache<Object, CompiledScript> compiledScriptCache;
+
+        /**
+         * Number of nested evaluations of the thread that currently uses the script engine.
+         */
+        private int nested;
+
+        public PooledScriptEngine( @Nonnull ScriptEngine scriptEngine, int maxCachedScriptLifetimeSecs, int maxCachedScripts )
         {
-            final StringBuilder message = new StringBuilder( e.getMessage() );
-            if ( e.getFileName() == null )
+            this.scriptEngine = scriptEngine;
+            if ( scriptEngine instanceof Compilable )
             {
-                if ( e.getLineNumber() != -1 )
-                {
-                    message.append( " at line number " ).append( e.getLineNumber() );
-                }
-                if ( e.getColumnNumber() != -1 )
-                {
-                    message.append( " at column number " ).append( e.getColumnNumber() );
-                }
+                compilable = (Compilable) scriptEngine;
+                compiledScriptCache = Caffeine.newBuilder()
+                    .expireAfterAccess( Duration.ofSeconds( maxCachedScriptLifetimeSecs ) )
+                    .maximumSize( maxCachedScripts ).build();
+            }
+            else
+            {
+                compilable = null;
+                compiledScriptCache = null;
             }
-            throw new ScriptCompilationException( message.toString(), e );
         }
 
-        return true;
+        @Nonnull
+        public ScriptEngine getScriptEngine()
+        {
+            return scriptEngine;
+        }
+
+        @Nullable
+        public Compilable getCompilable()
+        {
+            return compilable;
+        }
+
+        @Nullable
+        public Cache<Object, CompiledScript> getCompiledScriptCache()
+        {
+            return compiledScriptCache;
+        }
     }
 }
@@ -0,0 +1,142 @@
+package org.dhis2.fhir.adapter.cache;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link SingleFlight}.
+ *
+ * @author volsch
+ */
+public class SingleFlightTest
+{
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SingleFlight singleFlight = new SingleFlight( "test", meterRegistry );
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    @After
+    public void after()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void coalesced() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger calls = new AtomicInteger();
+        final List<String> value = new ArrayList<>( Collections.singletonList( "a" ) );
+
+        final Future<List<String>> issued = executorService.submit( () -> singleFlight.execute( Collections.singletonList( "x" ), () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try
+            {
+                release.await();
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IllegalStateException( e );
+            }
+            return value;
+        }, ArrayList::new ) );
+
+        Assert.assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+        final Thread releaseThread = new Thread( () -> {
+            try
+            {
+                while ( meterRegistry.get( SingleFlight.CALLS_COUNTER_NAME ).tag( SingleFlight.RESULT_TAG_NAME, "coalesced" ).counter().count() < 1 )
+                {
+                    Thread.sleep( 10 );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                // ignored
+            }
+            release.countDown();
+        } );
+        releaseThread.start();
+
+        final List<String> coalesced = singleFlight.execute( Collections.singletonList( "x" ), () -> {
+            calls.incrementAndGet();
+            return Collections.emptyList();
+        }, ArrayList::new );
+
+        Assert.assertSame( value, issued.get( 10, TimeUnit.SECONDS ) );
+        Assert.assertNotSame( value, coalesced );
+        Assert.assertEquals( value, coalesced );
+        Assert.assertEquals( 1, calls.get() );
+        Assert.assertEquals( 1, meterRegistry.get( SingleFlight.CALLS_COUNTER_NAME ).tag( SingleFlight.RESULT_TAG_NAME, "issued" ).counter().count(), 0 );
+        Assert.assertEquals( 1, meterRegistry.get( SingleFlight.CALLS_COUNTER_NAME ).tag( SingleFlight.RESULT_TAG_NAME, "coalesced" ).counter().count(), 0 );
+    }
+
+    @Test
+    public void notCoalescedAfterCompletion()
+    {
+        final AtomicInteger calls = new AtomicInteger();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            Assert.assertEquals( "a", singleFlight.execute( "x", () -> {
+                calls.incrementAndGet();
+                return "a";
+            }, v -> v ) );
+        }
+
+        Assert.assertEquals( 2, calls.get() );
+        Assert.assertEquals( 2, meterRegistry.get( SingleFlight.CALLS_COUNTER_NAME ).tag( SingleFlight.RESULT_TAG_NAME, "issued" ).counter().count(), 0 );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void failure()
+    {
+        singleFlight.execute( "x", () -> {
+            throw new IllegalStateException( "Test" );
+        }, v -> v );
+    }
+}
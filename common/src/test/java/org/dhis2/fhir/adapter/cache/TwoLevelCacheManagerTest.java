@@ -0,0 +1,154 @@
+package org.dhis2.fhir.adapter.cache;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Unit tests for {@link TwoLevelCacheManager} and {@link TwoLevelCache}. Two
+ * instances share the same remote cache and exchange invalidation messages directly.
+ *
+ * @author volsch
+ */
+public class TwoLevelCacheManagerTest
+{
+    private final CacheManager remoteCacheManager = new ConcurrentMapCacheManager();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CacheManager localCacheManager1 = new ConcurrentMapCacheManager();
+
+    private final CacheManager localCacheManager2 = new ConcurrentMapCacheManager();
+
+    private TestTwoLevelCacheManager cacheManager1;
+
+    private TestTwoLevelCacheManager cacheManager2;
+
+    private final Object key = Arrays.asList( UUID.fromString( "0b6b7a5f-4d1f-4ba2-9aa7-33d2e8a5ef94" ), "Patient", true );
+
+    @Before
+    public void before()
+    {
+        cacheManager1 = new TestTwoLevelCacheManager( localCacheManager1, meterRegistry );
+        cacheManager2 = new TestTwoLevelCacheManager( localCacheManager2, null );
+        cacheManager1.other = cacheManager2;
+        cacheManager2.other = cacheManager1;
+    }
+
+    @Test
+    public void getFromRemote()
+    {
+        final Cache cache1 = cacheManager1.getCache( "test" );
+        remoteCacheManager.getCache( "test" ).put( key, "value" );
+
+        Assert.assertEquals( "value", cache1.get( key ).get() );
+        Assert.assertEquals( "value", localCacheManager1.getCache( "test" ).get( "0b6b7a5f-4d1f-4ba2-9aa7-33d2e8a5ef94,Patient,true" ).get() );
+        Assert.assertEquals( "value", cache1.get( key ).get() );
+        Assert.assertNull( cache1.get( "other" ) );
+
+        Assert.assertEquals( 1.0, meterRegistry.get( TwoLevelCache.GETS_COUNTER_NAME ).tag( TwoLevelCache.RESULT_TAG_NAME, "local-hit" ).counter().count(), 0 );
+        Assert.assertEquals( 1.0, meterRegistry.get( TwoLevelCache.GETS_COUNTER_NAME ).tag( TwoLevelCache.RESULT_TAG_NAME, "remote-hit" ).counter().count(), 0 );
+        Assert.assertEquals( 1.0, meterRegistry.get( TwoLevelCache.GETS_COUNTER_NAME ).tag( TwoLevelCache.RESULT_TAG_NAME, "miss" ).counter().count(), 0 );
+    }
+
+    @Test
+    public void putInvalidatesOtherInstance()
+    {
+        final Cache cache1 = cacheManager1.getCache( "test" );
+        final Cache cache2 = cacheManager2.getCache( "test" );
+        cache1.put( key, "value1" );
+        Assert.assertEquals( "value1", cache2.get( key ).get() );
+
+        cache1.put( key, "value2" );
+        Assert.assertEquals( "value2", cache1.get( key ).get() );
+        Assert.assertEquals( "value2", cache2.get( key ).get() );
+    }
+
+    @Test
+    public void evictInvalidatesOtherInstance()
+    {
+        final Cache cache1 = cacheManager1.getCache( "test" );
+        final Cache cache2 = cacheManager2.getCache( "test" );
+        cache1.put( key, "value1" );
+        Assert.assertEquals( "value1", cache2.get( key ).get() );
+
+        cache2.evict( key );
+        Assert.assertNull( cache1.get( key ) );
+        Assert.assertNull( cache2.get( key ) );
+    }
+
+    @Test
+    public void clearInvalidatesOtherInstance()
+    {
+        final Cache cache1 = cacheManager1.getCache( "test" );
+        final Cache cache2 = cacheManager2.getCache( "test" );
+        cache1.put( key, "value1" );
+        Assert.assertEquals( "value1", cache2.get( key ).get() );
+
+        cache1.clear();
+        Assert.assertNull( cache2.get( key ) );
+    }
+
+    @Test
+    public void ownMessageIgnored()
+    {
+        final Cache cache1 = cacheManager1.getCache( "test" );
+        cache1.put( key, "value1" );
+        cacheManager1.receive( cacheManager1.createMessage( "test", null ) );
+        Assert.assertNotNull( localCacheManager1.getCache( "test" ).get( "0b6b7a5f-4d1f-4ba2-9aa7-33d2e8a5ef94,Patient,true" ) );
+    }
+
+    private class TestTwoLevelCacheManager extends TwoLevelCacheManager
+    {
+        private TwoLevelCacheManager other;
+
+        public TestTwoLevelCacheManager( @Nonnull CacheManager localCacheManager, @Nullable MeterRegistry meterRegistry )
+        {
+            super( "testCacheManager", localCacheManager, remoteCacheManager, "test:invalidation", meterRegistry );
+        }
+
+        @Override
+        protected void publish( @Nonnull String cacheName, @Nullable String localKey )
+        {
+            other.receive( createMessage( cacheName, localKey ) );
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.dhis2.fhir.adapter.data.filter;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.data.model.DataGroup;
+import org.dhis2.fhir.adapter.data.model.UuidDataGroupId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Unit tests for {@link ItemFilter}.
+ *
+ * @author volsch
+ */
+public class ItemFilterTest
+{
+    private final DataGroup group = new TestDataGroup();
+
+    private final Instant now = Instant.now();
+
+    private final ItemFilterConfig config = new ItemFilterConfig();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Set<String> database = new HashSet<>();
+
+    private final List<Collection<String>> lookups = new ArrayList<>();
+
+    private int loadCount;
+
+    @Before
+    public void before()
+    {
+        config.setEnabled( true );
+        config.setExpectedInsertions( 1000 );
+        config.setGenerationMinutes( 60 );
+        database.add( "a" );
+    }
+
+    @Test
+    public void disabled()
+    {
+        config.setEnabled( false );
+        final ItemFilter<DataGroup> filter = createFilter();
+
+        Assert.assertEquals( Collections.singleton( "a" ), filter.find( group, Arrays.asList( "a", "b" ), this::lookup ) );
+        Assert.assertFalse( filter.contains( group, "b", id -> lookup( Collections.singleton( id ) ).contains( id ) ) );
+        Assert.assertEquals( 2, lookups.size() );
+        Assert.assertEquals( 0, loadCount );
+    }
+
+    @Test
+    public void find()
+    {
+        final ItemFilter<DataGroup> filter = createFilter();
+
+        Assert.assertEquals( Collections.singleton( "a" ), filter.find( group, Arrays.asList( "a", "b", "c" ), this::lookup ) );
+        Assert.assertEquals( Collections.singletonList( Collections.singletonList( "a" ) ), lookups );
+        Assert.assertEquals( 1, loadCount );
+
+        Assert.assertTrue( filter.find( group, Arrays.asList( "d", "e" ), this::lookup ).isEmpty() );
+        Assert.assertEquals( 1, lookups.size() );
+        Assert.assertEquals( 1, loadCount );
+
+        Assert.assertEquals( 4, count( "hit" ), 0 );
+        Assert.assertEquals( 1, count( "miss" ), 0 );
+    }
+
+    @Test
+    public void put()
+    {
+        final ItemFilter<DataGroup> filter = createFilter();
+
+        Assert.assertFalse( filter.contains( group, "b", id -> lookup( Collections.singleton( id ) ).contains( id ) ) );
+        filter.put( group, "b", now );
+        Assert.assertFalse( filter.contains( group, "b", id -> lookup( Collections.singleton( id ) ).contains( id ) ) );
+
+        Assert.assertEquals( 1, lookups.size() );
+        Assert.assertEquals( 1, count( "hit" ), 0 );
+        Assert.assertEquals( 1, count( "false-positive" ), 0 );
+    }
+
+    @Test
+    public void deleteOldest()
+    {
+        final ItemFilter<DataGroup> filter = createFilter();
+        filter.put( group, "b", now );
+        filter.put( group, "c", now.plus( 2, ChronoUnit.HOURS ) );
+
+        final ItemFilter<DataGroup>.GroupFilter groupFilter = filter.getGroupFilter( group );
+        Assert.assertEquals( 3, groupFilter.getGenerationCount() );
+
+        filter.deleteOldest( group, now.plus( 1, ChronoUnit.HOURS ) );
+        Assert.assertEquals( 1, groupFilter.getGenerationCount() );
+        Assert.assertFalse( groupFilter.mightContain( "a" ) );
+        Assert.assertFalse( groupFilter.mightContain( "b" ) );
+        Assert.assertTrue( groupFilter.mightContain( "c" ) );
+    }
+
+    @Test
+    public void loadInBackground()
+    {
+        final List<Runnable> loads = new ArrayList<>();
+        final ItemFilter<DataGroup> filter = new ItemFilter<>( "test", config, ( g, consumer ) -> {
+            loadCount++;
+            database.forEach( id -> consumer.accept( id, now.minus( 2, ChronoUnit.HOURS ) ) );
+        }, loads::add, meterRegistry );
+
+        Assert.assertEquals( Collections.singleton( "a" ), filter.find( group, Arrays.asList( "a", "b" ), this::lookup ) );
+        Assert.assertEquals( Collections.singletonList( Arrays.asList( "a", "b" ) ), lookups );
+        Assert.assertEquals( 1, loads.size() );
+        Assert.assertEquals( 0, loadCount );
+
+        loads.get( 0 ).run();
+        Assert.assertEquals( 1, loadCount );
+        Assert.assertEquals( Collections.singleton( "a" ), filter.find( group, Arrays.asList( "a", "b" ), this::lookup ) );
+        Assert.assertEquals( Collections.singletonList( "a" ), lookups.get( 1 ) );
+        Assert.assertEquals( 1, loads.size() );
+    }
+
+    @Test
+    public void loadFailure()
+    {
+        final ItemFilter<DataGroup> filter = new ItemFilter<>( "test", config, ( g, c ) -> {
+            throw new IllegalStateException( "Test" );
+        }, meterRegistry );
+
+        Assert.assertEquals( Collections.singleton( "a" ), filter.find( group, Arrays.asList( "a", "b" ), this::lookup ) );
+        Assert.assertEquals( 1, lookups.size() );
+    }
+
+    @Nonnull
+    private ItemFilter<DataGroup> createFilter()
+    {
+        return new ItemFilter<>( "test", config, ( g, consumer ) -> {
+            loadCount++;
+            database.forEach( id -> consumer.accept( id, now.minus( 2, ChronoUnit.HOURS ) ) );
+        }, meterRegistry );
+    }
+
+    @Nonnull
+    private Set<String> lookup( @Nonnull Collection<String> ids )
+    {
+        lookups.add( new ArrayList<>( ids ) );
+
+        final Set<String> result = new HashSet<>( ids );
+        result.retainAll( database );
+        return result;
+    }
+
+    private double count( @Nonnull String result )
+    {
+        return meterRegistry.get( ItemFilter.LOOKUP_COUNTER_NAME ).tag( ItemFilter.RESULT_TAG_NAME, result ).counter().count();
+    }
+
+    private static class TestDataGroup implements DataGroup
+    {
+        private static final long serialVersionUID = -3196458151096539727L;
+
+        private final UuidDataGroupId groupId = new UuidDataGroupId( UUID.randomUUID() );
+
+        @Override
+        public UuidDataGroupId getGroupId()
+        {
+            return groupId;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.dhis2.fhir.adapter.lock.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.lock.LockConfig;
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.dhis2.fhir.adapter.lock.LockException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PostgreSqlAdvisoryLockContextImpl}.
+ *
+ * @author volsch
+ */
+public class PostgreSqlAdvisoryLockContextImplTest
+{
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private Array array;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final LockConfig lockConfig = new LockConfig();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PostgreSqlAdvisoryLockManagerImpl lockManager;
+
+    @Before
+    public void before() throws Exception
+    {
+        Mockito.when( dataSource.getConnection() ).thenReturn( connection );
+        Mockito.when( connection.getAutoCommit() ).thenReturn( true );
+        Mockito.when( connection.prepareStatement( ArgumentMatchers.anyString() ) ).thenReturn( statement );
+        Mockito.when( connection.createArrayOf( ArgumentMatchers.eq( "bigint" ), ArgumentMatchers.any() ) ).thenReturn( array );
+        Mockito.when( statement.executeQuery() ).thenReturn( resultSet );
+
+        lockManager = new PostgreSqlAdvisoryLockManagerImpl( dataSource, lockConfig, meterRegistry );
+    }
+
+    @Test
+    public void lockMultiple() throws Exception
+    {
+        final ArgumentCaptor<Object[]> fingerprints = ArgumentCaptor.forClass( Object[].class );
+
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( Arrays.asList( "c", "a", "b", "a" ) );
+            lockContext.lock( "a" );
+            lockContext.lock( "d" );
+        }
+
+        Mockito.verify( dataSource ).getConnection();
+        Mockito.verify( connection ).prepareStatement( PostgreSqlAdvisoryLockContextImpl.LOCK_SQL );
+        Mockito.verify( statement, Mockito.times( 2 ) ).execute();
+        Mockito.verify( connection, Mockito.times( 2 ) ).createArrayOf( ArgumentMatchers.eq( "bigint" ), fingerprints.capture() );
+
+        final List<Object[]> values = fingerprints.getAllValues();
+        Assert.assertEquals( 3, values.get( 0 ).length );
+        Assert.assertTrue( (Long) values.get( 0 )[0] < (Long) values.get( 0 )[1] );
+        Assert.assertTrue( (Long) values.get( 0 )[1] < (Long) values.get( 0 )[2] );
+        Assert.assertEquals( 1, values.get( 1 ).length );
+
+        final InOrder inOrder = Mockito.inOrder( statement, connection );
+        inOrder.verify( statement ).close();
+        inOrder.verify( connection ).commit();
+        inOrder.verify( connection ).setAutoCommit( true );
+        inOrder.verify( connection ).close();
+
+        Assert.assertEquals( 2, meterRegistry.get( PostgreSqlAdvisoryLockManagerImpl.WAIT_TIMER_NAME ).tag( "outcome", "acquired" ).timers().stream().mapToLong( t -> t.count() ).sum() );
+    }
+
+    @Test
+    public void lockNothing() throws Exception
+    {
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( "a" );
+            lockContext.lock( Arrays.asList( "a", "a" ) );
+        }
+
+        Mockito.verify( statement ).execute();
+    }
+
+    @Test
+    public void tryLockRetry() throws Exception
+    {
+        lockConfig.setTryLock( true );
+        lockConfig.setRetryIntervalMillis( 1 );
+        Mockito.when( resultSet.next() ).thenReturn( true, false, false );
+        Mockito.when( resultSet.getLong( 1 ) ).thenReturn( Math.abs( new PostgreSqlAdvisoryLockContextImpl( lockManager ).createHash( "a" ) ) );
+
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( Arrays.asList( "a", "b" ) );
+        }
+
+        Mockito.verify( connection ).prepareStatement( PostgreSqlAdvisoryLockContextImpl.TRY_LOCK_SQL );
+        Mockito.verify( statement, Mockito.times( 2 ) ).executeQuery();
+    }
+
+    @Test
+    public void tryLockTimeout() throws Exception
+    {
+        lockConfig.setTryLock( true );
+        lockConfig.setTimeoutMillis( 20 );
+        lockConfig.setRetryIntervalMillis( 5 );
+        Mockito.when( resultSet.next() ).thenAnswer( invocation -> Mockito.mockingDetails( resultSet ).getInvocations().stream()
+            .filter( i -> i.getMethod().getName().equals( "next" ) ).count() % 2 == 1 );
+        Mockito.when( resultSet.getLong( 1 ) ).thenReturn( Math.abs( new PostgreSqlAdvisoryLockContextImpl( lockManager ).createHash( "b" ) ) );
+
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( Arrays.asList( "a", "b" ) );
+            Assert.fail( "Lock must not be obtained." );
+        }
+        catch ( LockException e )
+        {
+            // expected
+        }
+
+        Mockito.verify( connection ).commit();
+        Mockito.verify( connection ).close();
+        Assert.assertEquals( 1, meterRegistry.get( PostgreSqlAdvisoryLockManagerImpl.WAIT_TIMER_NAME )
+            .tag( "mode", "try" ).tag( "outcome", "failed" ).tag( "batch", "true" ).timer().count() );
+    }
+}
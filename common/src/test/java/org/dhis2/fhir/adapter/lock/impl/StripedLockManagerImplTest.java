@@ -0,0 +1,184 @@
+package org.dhis2.fhir.adapter.lock.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.dhis2.fhir.adapter.lock.LockException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link StripedLockManagerImpl}.
+ *
+ * @author volsch
+ */
+public class StripedLockManagerImplTest
+{
+    private final ExecutorService executorService = Executors.newFixedThreadPool( 8 );
+
+    @After
+    public void after()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void lockAndUnlock()
+    {
+        final StripedLockManagerImpl lockManager = new StripedLockManagerImpl();
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            Assert.assertSame( lockContext, lockManager.getCurrentLockContext().orElse( null ) );
+            lockContext.lock( "a" );
+            lockContext.lock( "b" );
+            lockContext.lock( "a" );
+            Assert.assertEquals( 2, lockManager.getKeyCount() );
+        }
+        Assert.assertFalse( lockManager.getCurrentLockContext().isPresent() );
+        Assert.assertEquals( 0, lockManager.getKeyCount() );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void beginTwice()
+    {
+        final StripedLockManagerImpl lockManager = new StripedLockManagerImpl();
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockManager.begin();
+        }
+    }
+
+    @Test
+    public void mutualExclusion() throws Exception
+    {
+        final StripedLockManagerImpl lockManager = new StripedLockManagerImpl();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        final Future<?>[] futures = new Future[8];
+        for ( int i = 0; i < futures.length; i++ )
+        {
+            futures[i] = executorService.submit( () -> {
+                for ( int j = 0; j < 200; j++ )
+                {
+                    try ( final LockContext lockContext = lockManager.begin() )
+                    {
+                        lockContext.lock( "a" );
+                        maxActive.accumulateAndGet( active.incrementAndGet(), Math::max );
+                        Thread.yield();
+                        active.decrementAndGet();
+                    }
+                }
+            } );
+        }
+        for ( final Future<?> future : futures )
+        {
+            future.get( 30, TimeUnit.SECONDS );
+        }
+
+        Assert.assertEquals( 1, maxActive.get() );
+        Assert.assertEquals( 0, lockManager.getKeyCount() );
+    }
+
+    @Test
+    public void timeout() throws Exception
+    {
+        final StripedLockManagerImpl lockManager = new StripedLockManagerImpl( 50 );
+        final CountDownLatch locked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        final Future<?> future = executorService.submit( () -> {
+            try ( final LockContext lockContext = lockManager.begin() )
+            {
+                lockContext.lock( "a" );
+                locked.countDown();
+                release.await();
+            }
+            return null;
+        } );
+        locked.await();
+
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( "a" );
+            Assert.fail( "Timeout expected." );
+        }
+        catch ( LockException e )
+        {
+            Assert.assertTrue( e.getMessage().contains( "could not be obtained" ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+        future.get( 30, TimeUnit.SECONDS );
+
+        Assert.assertEquals( 0, lockManager.getKeyCount() );
+    }
+
+    @Test
+    public void deadlock() throws Exception
+    {
+        final StripedLockManagerImpl lockManager = new StripedLockManagerImpl();
+        final CountDownLatch locked = new CountDownLatch( 2 );
+        final AtomicInteger deadlocks = new AtomicInteger();
+
+        final Future<?> future1 = executorService.submit( () -> lockCrosswise( lockManager, "a", "b", locked, deadlocks ) );
+        final Future<?> future2 = executorService.submit( () -> lockCrosswise( lockManager, "b", "a", locked, deadlocks ) );
+        future1.get( 30, TimeUnit.SECONDS );
+        future2.get( 30, TimeUnit.SECONDS );
+
+        Assert.assertTrue( deadlocks.get() > 0 );
+        Assert.assertEquals( 0, lockManager.getKeyCount() );
+    }
+
+    private static Void lockCrosswise( StripedLockManagerImpl lockManager, String key1, String key2, CountDownLatch locked, AtomicInteger deadlocks ) throws InterruptedException
+    {
+        try ( final LockContext lockContext = lockManager.begin() )
+        {
+            lockContext.lock( key1 );
+            locked.countDown();
+            locked.await();
+            lockContext.lock( key2 );
+        }
+        catch ( LockException e )
+        {
+            deadlocks.incrementAndGet();
+        }
+        return null;
+    }
+}
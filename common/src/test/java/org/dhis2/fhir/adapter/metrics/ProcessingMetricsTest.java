@@ -0,0 +1,151 @@
+package org.dhis2.fhir.adapter.metrics;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.queue.RetryQueueDeliveryException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ProcessingMetrics}.
+ *
+ * @author volsch
+ */
+public class ProcessingMetricsTest
+{
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ProcessingMetrics processingMetrics = new ProcessingMetrics( meterRegistry );
+
+    private final ProcessingTags tags = new ProcessingTags( "test" ).fhirClient( "client1" ).resourceType( "PATIENT" );
+
+    @Test
+    public void timeSuccess()
+    {
+        Assert.assertEquals( "Test", processingMetrics.time( ProcessingStage.FETCH, tags, () -> "Test" ) );
+
+        final Timer timer = meterRegistry.find( ProcessingMetrics.TIMER_NAME ).tag( ProcessingMetrics.STAGE_TAG_NAME, "fetch" )
+            .tag( ProcessingMetrics.OUTCOME_TAG_NAME, "success" ).tag( ProcessingTags.PIPELINE_TAG_NAME, "test" )
+            .tag( ProcessingTags.FHIR_CLIENT_TAG_NAME, "client1" ).tag( ProcessingTags.RESOURCE_TYPE_TAG_NAME, "PATIENT" )
+            .tag( ProcessingTags.SYNC_GROUP_TAG_NAME, ProcessingTags.NONE ).timer();
+        Assert.assertNotNull( timer );
+        Assert.assertEquals( 1, timer.count() );
+    }
+
+    @Test
+    public void timeRetry()
+    {
+        try
+        {
+            processingMetrics.time( ProcessingStage.PERSIST, tags, () -> {
+                throw new RetryQueueDeliveryException( new IllegalStateException() );
+            } );
+            Assert.fail( "Exception expected." );
+        }
+        catch ( RetryQueueDeliveryException e )
+        {
+            // expected
+        }
+
+        final Timer timer = meterRegistry.find( ProcessingMetrics.TIMER_NAME ).tag( ProcessingMetrics.STAGE_TAG_NAME, "persist" )
+            .tag( ProcessingMetrics.OUTCOME_TAG_NAME, "retry" ).timer();
+        Assert.assertNotNull( timer );
+        Assert.assertEquals( 1, timer.count() );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void timeFailure()
+    {
+        try
+        {
+            processingMetrics.time( ProcessingStage.TRANSFORM, tags, () -> {
+                throw new IllegalStateException();
+            } );
+        }
+        finally
+        {
+            Assert.assertNotNull( meterRegistry.find( ProcessingMetrics.TIMER_NAME ).tag( ProcessingMetrics.STAGE_TAG_NAME, "transform" )
+                .tag( ProcessingMetrics.OUTCOME_TAG_NAME, "failure" ).timer() );
+        }
+    }
+
+    @Test
+    public void count()
+    {
+        processingMetrics.count( ProcessingStage.DEDUPLICATE, tags, ProcessingOutcome.SKIPPED, 3 );
+        processingMetrics.count( ProcessingStage.DEDUPLICATE, tags, ProcessingOutcome.SKIPPED, 0 );
+        processingMetrics.count( ProcessingStage.DEDUPLICATE, tags, ProcessingOutcome.SKIPPED, 2 );
+
+        Assert.assertEquals( 5.0, meterRegistry.find( ProcessingMetrics.ITEMS_COUNTER_NAME ).tag( ProcessingMetrics.STAGE_TAG_NAME, "deduplicate" )
+            .tag( ProcessingMetrics.OUTCOME_TAG_NAME, "skipped" ).counter().count(), 0.0 );
+    }
+
+    @Test
+    public void timerReused()
+    {
+        processingMetrics.time( ProcessingStage.FETCH, tags, () -> "Test" );
+        processingMetrics.time( ProcessingStage.FETCH, new ProcessingTags( "test" ).fhirClient( "client1" ).resourceType( "PATIENT" ), () -> "Test" );
+
+        Assert.assertEquals( 1, meterRegistry.find( ProcessingMetrics.TIMER_NAME ).timers().size() );
+        Assert.assertEquals( 2, meterRegistry.find( ProcessingMetrics.TIMER_NAME ).timer().count() );
+    }
+
+    @Test
+    public void inFlight()
+    {
+        try ( final ProcessingMetrics.InFlight inFlight1 = processingMetrics.begin( "test" ) )
+        {
+            try ( final ProcessingMetrics.InFlight inFlight2 = processingMetrics.begin( "test", 5 ) )
+            {
+                Assert.assertEquals( 6.0, inFlightGauge().value(), 0.0 );
+            }
+            Assert.assertEquals( 1.0, inFlightGauge().value(), 0.0 );
+        }
+        Assert.assertEquals( 0.0, inFlightGauge().value(), 0.0 );
+    }
+
+    @Test
+    public void withoutRegistry()
+    {
+        final ProcessingMetrics metrics = new ProcessingMetrics( (MeterRegistry) null );
+
+        Assert.assertEquals( "Test", metrics.time( ProcessingStage.POLL, tags, () -> "Test" ) );
+        metrics.count( ProcessingStage.POLL, tags, ProcessingOutcome.SUCCESS, 1 );
+        metrics.begin( "test" ).close();
+    }
+
+    private Gauge inFlightGauge()
+    {
+        return meterRegistry.find( ProcessingMetrics.IN_FLIGHT_GAUGE_NAME ).tag( ProcessingTags.PIPELINE_TAG_NAME, "test" ).gauge();
+    }
+}
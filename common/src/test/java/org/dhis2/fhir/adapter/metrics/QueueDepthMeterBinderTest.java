@@ -0,0 +1,91 @@
+package org.dhis2.fhir.adapter.metrics;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.artemis.api.core.SimpleString;
+import org.apache.activemq.artemis.core.server.ActiveMQServer;
+import org.apache.activemq.artemis.core.server.Queue;
+import org.apache.activemq.artemis.jms.server.embedded.EmbeddedJMS;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/**
+ * Unit tests for {@link QueueDepthMeterBinder}.
+ *
+ * @author volsch
+ */
+public class QueueDepthMeterBinderTest
+{
+    @Mock
+    private EmbeddedJMS embeddedJms;
+
+    @Mock
+    private ActiveMQServer server;
+
+    @Mock
+    private Queue queue;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Before
+    public void before()
+    {
+        Mockito.when( embeddedJms.getActiveMQServer() ).thenReturn( server );
+        Mockito.when( server.isActive() ).thenReturn( true );
+        Mockito.when( server.locateQueue( SimpleString.toSimpleString( "test1" ) ) ).thenReturn( queue );
+        Mockito.when( queue.getMessageCount() ).thenReturn( 12_345L );
+    }
+
+    @Test
+    public void embedded()
+    {
+        new QueueDepthMeterBinder( embeddedJms, "test1", "test2" ).bindTo( meterRegistry );
+
+        Assert.assertEquals( 12_345.0, meterRegistry.find( QueueDepthMeterBinder.GAUGE_NAME ).tag( QueueDepthMeterBinder.QUEUE_TAG_NAME, "test1" ).gauge().value(), 0.0 );
+        Assert.assertTrue( Double.isNaN( meterRegistry.find( QueueDepthMeterBinder.GAUGE_NAME ).tag( QueueDepthMeterBinder.QUEUE_TAG_NAME, "test2" ).gauge().value() ) );
+    }
+
+    @Test
+    public void external()
+    {
+        new QueueDepthMeterBinder( null, "test1" ).bindTo( meterRegistry );
+
+        Assert.assertNull( meterRegistry.find( QueueDepthMeterBinder.GAUGE_NAME ).gauge() );
+    }
+}
@@ -0,0 +1,240 @@
+package org.dhis2.fhir.adapter.script.expression;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.script.impl.ScriptEvaluatorImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link ScriptExpressionCompiler}. The results of the compiled
+ * expressions are compared with the results of the script engine.
+ *
+ * @author volsch
+ */
+public class ScriptExpressionCompilerTest
+{
+    private final ScriptExpressionCompiler compiler = new ScriptExpressionCompiler();
+
+    private final ScriptEvaluatorImpl scriptEvaluator = new ScriptEvaluatorImpl( "nashorn", Arrays.asList( "-doe", "--no-java", "--no-syntax-extensions" ), 3600, 1000 );
+
+    private final Map<String, Object> variables = new HashMap<>();
+
+    @Before
+    public void before()
+    {
+        final Map<String, Object> args = new HashMap<>();
+        args.put( "level", 3 );
+        args.put( "code", "ABC" );
+        args.put( "empty", null );
+
+        variables.put( "input", new TestBean( "Test", true, TestStatus.COMPLETED, 4, new TestBean( "Child", false, null, 0, null ) ) );
+        variables.put( "args", args );
+        variables.put( "value", null );
+    }
+
+    @Test
+    public void evaluateSupported()
+    {
+        assertSameResult( "true" );
+        assertSameResult( "false;" );
+        assertSameResult( "null" );
+        assertSameResult( "-12" );
+        assertSameResult( "12.5" );
+        assertSameResult( "'test'" );
+        assertSameResult( "value == null" );
+        assertSameResult( "value === null" );
+        assertSameResult( "value != null" );
+        assertSameResult( "input.name" );
+        assertSameResult( "input.active" );
+        assertSameResult( "!input.active" );
+        assertSameResult( "input.child.name" );
+        assertSameResult( "input.child.status == null" );
+        assertSameResult( "input.getName()" );
+        assertSameResult( "input.hasChild() && input.getChild().isActive()" );
+        assertSameResult( "input.child.active || input.name" );
+        assertSameResult( "input.status == 'COMPLETED'" );
+        assertSameResult( "input.status != 'ACTIVE'" );
+        assertSameResult( "input.status === 'COMPLETED'" );
+        assertSameResult( "input.getLevel() >= args['level']" );
+        assertSameResult( "input.level < args.level" );
+        assertSameResult( "input.level == 4 ? 'four' : 'other'" );
+        assertSameResult( "(args['code'] == 'ABC') && (args['empty'] == null)" );
+        assertSameResult( "args['code'] > 'AAA'" );
+        assertSameResult( "input.level === 4.0" );
+        assertSameResult( "input.child == input.child" );
+    }
+
+    @Test
+    public void compileUnsupported()
+    {
+        Assert.assertNull( compiler.compile( "" ) );
+        Assert.assertNull( compiler.compile( "var x = 1; x" ) );
+        Assert.assertNull( compiler.compile( "input.setName('x')" ) );
+        Assert.assertNull( compiler.compile( "input.clear()" ) );
+        Assert.assertNull( compiler.compile( "test()" ) );
+        Assert.assertNull( compiler.compile( "input.level + 1" ) );
+        Assert.assertNull( compiler.compile( "'a\\'b'" ) );
+        Assert.assertNull( compiler.compile( "1e5" ) );
+        Assert.assertNull( compiler.compile( "value === undefined" ) );
+        Assert.assertNull( compiler.compile( "typeof value" ) );
+        Assert.assertNull( compiler.compile( "args[code]" ) );
+        Assert.assertNull( compiler.compile( "true; false" ) );
+        Assert.assertNull( compiler.compile( "(true" ) );
+    }
+
+    @Test( expected = UnsupportedScriptExpressionException.class )
+    public void evaluateUndefinedVariable()
+    {
+        evaluate( "unknown == null" );
+    }
+
+    @Test( expected = UnsupportedScriptExpressionException.class )
+    public void evaluateTypeConversion()
+    {
+        evaluate( "input.level == '4'" );
+    }
+
+    @Test( expected = UnsupportedScriptExpressionException.class )
+    public void evaluateNullTarget()
+    {
+        evaluate( "value.name" );
+    }
+
+    @Test( expected = UnsupportedScriptExpressionException.class )
+    public void evaluateUnsupportedNumber()
+    {
+        evaluate( "input.floatValue > 1" );
+    }
+
+    @Test( expected = UnsupportedScriptExpressionException.class )
+    public void evaluateMissingProperty()
+    {
+        evaluate( "input.other" );
+    }
+
+    private Object evaluate( @Nonnull String script )
+    {
+        final ScriptExpression expression = compiler.compile( script );
+        Assert.assertNotNull( "Script has not been compiled: " + script, expression );
+        return expression.evaluate( variables );
+    }
+
+    private void assertSameResult( @Nonnull String script )
+    {
+        final Object expected = scriptEvaluator.eval( script, script, variables );
+        final Object result = evaluate( script );
+        if ( expected instanceof Number && result instanceof Number )
+        {
+            Assert.assertEquals( script, ( (Number) expected ).doubleValue(), ( (Number) result ).doubleValue(), 0 );
+        }
+        else
+        {
+            Assert.assertEquals( script, expected, result );
+        }
+    }
+
+    public enum TestStatus
+    {
+        ACTIVE, COMPLETED
+    }
+
+    public static class TestBean
+    {
+        private final String name;
+
+        private final boolean active;
+
+        private final TestStatus status;
+
+        private final int level;
+
+        private final TestBean child;
+
+        public TestBean( String name, boolean active, TestStatus status, int level, TestBean child )
+        {
+            this.name = name;
+            this.active = active;
+            this.status = status;
+            this.level = level;
+            this.child = child;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public boolean isActive()
+        {
+            return active;
+        }
+
+        public TestStatus getStatus()
+        {
+            return status;
+        }
+
+        public int getLevel()
+        {
+            return level;
+        }
+
+        public float getFloatValue()
+        {
+            return 1.5f;
+        }
+
+        public TestBean getChild()
+        {
+            return child;
+        }
+
+        public boolean hasChild()
+        {
+            return child != null;
+        }
+
+        public void clear()
+        {
+            // method with side effects
+        }
+
+        public void setName( String name )
+        {
+            // method with side effects
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.dhis2.fhir.adapter.script.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.script.ScriptCompilationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Unit tests for {@link ScriptEvaluatorImpl}.
+ *
+ * @author volsch
+ */
+public class ScriptEvaluatorImplTest
+{
+    private static final List<String> SCRIPT_ENGINE_ARGS = Arrays.asList( "-doe", "--no-java", "--no-syntax-extensions" );
+
+    @Test
+    public void evalShared()
+    {
+        final ScriptEvaluatorImpl scriptEvaluator = new ScriptEvaluatorImpl( "nashorn", SCRIPT_ENGINE_ARGS, 3600, 1000 );
+        Assert.assertEquals( 7, ( (Number) scriptEvaluator.eval( "test", "a + 4", Collections.singletonMap( "a", 3 ) ) ).intValue() );
+    }
+
+    @Test
+    public void evalPooled() throws Exception
+    {
+        final ScriptEvaluatorImpl scriptEvaluator = new ScriptEvaluatorImpl( "nashorn", SCRIPT_ENGINE_ARGS, 3600, 1000, 2, null );
+        final ExecutorService executorService = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            final Future<?>[] futures = new Future[20];
+            for ( int i = 0; i < futures.length; i++ )
+            {
+                final int value = i;
+                futures[i] = executorService.submit( () -> scriptEvaluator.eval( "test", "a * 2", Collections.singletonMap( "a", value ) ) );
+            }
+            for ( int i = 0; i < futures.length; i++ )
+            {
+                Assert.assertEquals( i * 2, ( (Number) futures[i].get() ).intValue() );
+            }
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void evalPooledNested()
+    {
+        final ScriptEvaluatorImpl scriptEvaluator = new ScriptEvaluatorImpl( "nashorn", SCRIPT_ENGINE_ARGS, 3600, 1000, 1, null );
+        final Object result = scriptEvaluator.eval( "outer", "nested.get() + 1", Collections.singletonMap( "nested",
+            (Supplier<Object>) () -> ( (Number) scriptEvaluator.eval( "inner", "2", Collections.emptyMap() ) ).intValue() ) );
+        Assert.assertEquals( 3, ( (Number) result ).intValue() );
+        // engine must have been returned to the pool
+        Assert.assertEquals( 5, ( (Number) scriptEvaluator.eval( "test", "5", Collections.emptyMap() ) ).intValue() );
+    }
+
+    @Test
+    public void precompile()
+    {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final ScriptEvaluatorImpl scriptEvaluator = new ScriptEvaluatorImpl( "nashorn", SCRIPT_ENGINE_ARGS, 3600, 1000, 2, meterRegistry );
+
+        Assert.assertTrue( scriptEvaluator.precompile( "test", "a + 1" ) );
+        final Timer compileTimer = meterRegistry.get( ScriptEvaluatorImpl.COMPILE_TIMER_NAME ).tag( ScriptEvaluatorImpl.SCRIPT_TAG_NAME, "test" ).timer();
+        Assert.assertEquals( 2, compileTimer.count() );
+
+        Assert.assertEquals( 2, ( (Number) scriptEvaluator.eval( "test", "a + 1", Collections.singletonMap( "a", 1 ) ) ).intValue() );
+        Assert.assertEquals( 2, compileTimer.count() );
+        Assert.assertEquals( 1, meterRegistry.get( ScriptEvaluatorImpl.EVAL_TIMER_NAME ).tag( ScriptEvaluatorImpl.SCRIPT_TAG_NAME, "test" ).timer().count() );
+    }
+
+    @Test( expected = ScriptCompilationException.class )
+    public void precompileInvalid()
+    {
+        final ScriptEvaluatorImpl scriptEvaluator = new ScriptEvaluatorImpl( "nashorn", SCRIPT_ENGINE_ARGS, 3600, 1000 );
+        scriptEvaluator.precompile( "test", "a +" );
+    }
+}
@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.dhis.config;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.dhis2.fhir.adapter.cache.AbstractSimpleCacheConfig;
 import org.dhis2.fhir.adapter.cache.RequestCacheService;
@@ -73,9 +74,10 @@ public class DhisMetadataCacheConfig extends AbstractSimpleCacheConfig
     @Primary
     @Bean
     @Nonnull
-    protected CacheManager dhisCacheManager( @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull GenericJackson2JsonRedisSerializer redisSerializer )
+    protected CacheManager dhisCacheManager( @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull GenericJackson2JsonRedisSerializer redisSerializer,
+        @Nonnull ObjectProvider<MeterRegistry> meterRegistryProvider )
     {
-        return createCacheManager( requestCacheService, redisConnectionFactoryProvider, redisSerializer );
+        return createCacheManager( requestCacheService, redisConnectionFactoryProvider, redisSerializer, meterRegistryProvider.getIfAvailable() );
     }
 
     @Nonnull
@@ -87,17 +89,30 @@ public class DhisMetadataCacheConfig extends AbstractSimpleCacheConfig
             @Override
             protected Collection<String> getCacheNames( @Nonnull CacheOperationInvocationContext<?> context )
             {
-                String name = context.getTarget().getClass().getSimpleName();
+                return Collections.singletonList( getMetadataCacheName( context.getTarget().getClass() ) );
+            }
+        };
+    }
 
-                final int index = name.indexOf( "Service" );
+    /**
+     * Returns the name of the cache that is used by {@link #dhisMetadataCacheResolver(CacheManager)}
+     * for the specified metadata service implementation.
+     *
+     * @param serviceClass the implementation class of the metadata service.
+     * @return the name of the cache.
+     */
+    @Nonnull
+    public static String getMetadataCacheName( @Nonnull Class<?> serviceClass )
+    {
+        String name = serviceClass.getSimpleName();
 
-                if ( index > 0 )
-                {
-                    name = name.substring( 0, index );
-                }
+        final int index = name.indexOf( "Service" );
 
-                return Collections.singletonList( StringUtils.uncapitalize( name ) );
-            }
-        };
+        if ( index > 0 )
+        {
+            name = name.substring( 0, index );
+        }
+
+        return StringUtils.uncapitalize( name );
     }
 }
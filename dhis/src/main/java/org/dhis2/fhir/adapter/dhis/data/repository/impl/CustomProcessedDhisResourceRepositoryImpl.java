@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.dhis.data.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
 import org.dhis2.fhir.adapter.data.repository.impl.AbstractProcessedItemRepositoryImpl;
 import org.dhis2.fhir.adapter.dhis.data.model.ProcessedDhisResource;
 import org.dhis2.fhir.adapter.dhis.data.model.ProcessedDhisResourceId;
@@ -44,9 +45,9 @@ import javax.persistence.EntityManager;
  */
 public class CustomProcessedDhisResourceRepositoryImpl extends AbstractProcessedItemRepositoryImpl<ProcessedDhisResource, ProcessedDhisResourceId, DhisSyncGroup> implements CustomProcessedDhisResourceRepository
 {
-    public CustomProcessedDhisResourceRepositoryImpl( @Nonnull EntityManager entityManager )
+    public CustomProcessedDhisResourceRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull ItemFilterFactory itemFilterFactory )
     {
-        super( entityManager );
+        super( entityManager, itemFilterFactory );
     }
 
     @Nonnull
@@ -55,4 +56,25 @@ public class CustomProcessedDhisResourceRepositoryImpl extends AbstractProcessed
     {
         return ProcessedDhisResource.class;
     }
+
+    @Nonnull
+    @Override
+    protected String getTableName()
+    {
+        return "fhir_processed_dhis_resource";
+    }
+
+    @Nonnull
+    @Override
+    protected String getGroupColumnName()
+    {
+        return "dhis_sync_group_id";
+    }
+
+    @Nonnull
+    @Override
+    protected Object getGroupId( @Nonnull DhisSyncGroup group )
+    {
+        return group.getId();
+    }
 }
@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.dhis.data.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
 import org.dhis2.fhir.adapter.data.repository.impl.AbstractStoredItemRepositoryImpl;
 import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResource;
 import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResourceId;
@@ -49,9 +50,9 @@ import java.time.Instant;
 public class CustomStoredDhisResourceRepositoryImpl extends AbstractStoredItemRepositoryImpl<StoredDhisResource, StoredDhisResourceId, DhisSyncGroup> implements CustomStoredDhisResourceRepository
 {
     public CustomStoredDhisResourceRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull PlatformTransactionManager platformTransactionManager,
-        @Nonnull @Qualifier( "&entityManagerFactory" ) PersistenceExceptionTranslator persistenceExceptionTranslator )
+        @Nonnull @Qualifier( "&entityManagerFactory" ) PersistenceExceptionTranslator persistenceExceptionTranslator, @Nonnull ItemFilterFactory itemFilterFactory )
     {
-        super( entityManager, platformTransactionManager, persistenceExceptionTranslator );
+        super( entityManager, platformTransactionManager, persistenceExceptionTranslator, itemFilterFactory );
     }
 
     @Nonnull
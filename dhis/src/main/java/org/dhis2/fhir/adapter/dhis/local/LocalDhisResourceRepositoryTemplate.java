@@ -34,9 +34,14 @@ import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -56,6 +61,15 @@ public class LocalDhisResourceRepositoryTemplate<T extends DhisResource>
 
     public static final String RESOURCE_KEY_REQUEST_CACHE_ATTRIBUTE_NAME = LocalDhisResourceRepositoryTemplate.class.getSimpleName().concat( ".resourceKey" );
 
+    /**
+     * Name of the request cache attribute that contains an {@link AtomicInteger} that is
+     * incremented whenever a single resource is not included in the local repository and
+     * must be loaded on demand.
+     */
+    public static final String LOADED_COUNT_REQUEST_CACHE_ATTRIBUTE_NAME = LocalDhisResourceRepositoryTemplate.class.getSimpleName().concat( ".loadedCount" );
+
+    protected static final String FOUND_COLLECTION_KEY = "found";
+
     private final Class<T> resourceClass;
 
     private final RequestCacheService requestCacheService;
@@ -118,12 +132,88 @@ public class LocalDhisResourceRepositoryTemplate<T extends DhisResource>
 
         if ( result == null )
         {
+            if ( repository.isPresent() )
+            {
+                final AtomicInteger loadedCount = context.getAttribute( LOADED_COUNT_REQUEST_CACHE_ATTRIBUTE_NAME, AtomicInteger.class );
+
+                if ( loadedCount != null )
+                {
+                    loadedCount.incrementAndGet();
+                }
+            }
+
             result = callback.apply( id );
         }
 
         return Optional.ofNullable( result );
     }
 
+    /**
+     * Finds the resources with the specified IDs. Resources that are not available in
+     * the local repository are retrieved with a single invocation of the specified callback.
+     *
+     * @param ids      the IDs of the resources that should be returned.
+     * @param callback the callback that returns the resources for the IDs that are not
+     *                 available in the local repository.
+     * @return the found resources.
+     */
+    @Nonnull
+    public Collection<T> findAllByIds( @Nonnull Collection<String> ids, @Nonnull Function<Collection<String>, Collection<T>> callback )
+    {
+        final RequestCacheContext context = requestCacheService.getCurrentRequestCacheContext();
+        final Optional<LocalDhisResourceRepository<T>> repository = getRepository( context );
+
+        final List<T> result = new ArrayList<>();
+        final Set<String> missingIds = new LinkedHashSet<>();
+
+        for ( final String id : new LinkedHashSet<>( ids ) )
+        {
+            final T resource = repository.flatMap( r -> r.findOneById( id ) ).orElse( null );
+
+            if ( resource == null )
+            {
+                missingIds.add( id );
+            }
+            else
+            {
+                result.add( resource );
+            }
+        }
+
+        if ( !missingIds.isEmpty() )
+        {
+            if ( repository.isPresent() )
+            {
+                final AtomicInteger loadedCount = context.getAttribute( LOADED_COUNT_REQUEST_CACHE_ATTRIBUTE_NAME, AtomicInteger.class );
+
+                if ( loadedCount != null )
+                {
+                    loadedCount.addAndGet( missingIds.size() );
+                }
+            }
+
+            result.addAll( callback.apply( missingIds ) );
+        }
+
+        return result;
+    }
+
+    /**
+     * Registers resources that have been loaded from DHIS2 (e.g. by a prefetch that has been
+     * performed by other threads) in the local repository. If there is no local repository,
+     * the resources are not registered.
+     *
+     * @param resources the resources that have been loaded from DHIS2.
+     * @return the number of resources that have been registered.
+     */
+    public int found( @Nonnull Collection<T> resources )
+    {
+        final RequestCacheContext context = requestCacheService.getCurrentRequestCacheContext();
+        final Optional<LocalDhisResourceRepository<T>> repository = getRepository( context );
+
+        return repository.map( r -> r.found( resources, FOUND_COLLECTION_KEY ).size() ).orElse( 0 );
+    }
+
     public boolean isLocal( @Nonnull String id )
     {
         final RequestCacheContext context = requestCacheService.getCurrentRequestCacheContext();
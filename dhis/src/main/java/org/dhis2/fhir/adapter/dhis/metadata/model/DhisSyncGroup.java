@@ -31,9 +31,15 @@ package org.dhis2.fhir.adapter.dhis.metadata.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.dhis2.fhir.adapter.data.model.DataGroup;
 import org.dhis2.fhir.adapter.data.model.UuidDataGroupId;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.model.VersionedBaseMetadata;
 
+import javax.annotation.Nonnull;
+import javax.persistence.Basic;
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 import java.io.Serializable;
@@ -41,8 +47,11 @@ import java.util.UUID;
 
 /**
  * Contains a DHIS2 synchronization group (data that is synchronized together).
- * At the moment there is just one default synchronization group since all data
- * is synchronized together.
+ * By default there is just one synchronization group that synchronizes all data.
+ * The data can be split into several synchronization groups (shards) that are
+ * restricted to a DHIS2 resource type, a program or an organization unit subtree.
+ * Each synchronization group is polled and processed independently. The enabled
+ * synchronization groups must not overlap and must cover all synchronized data.
  *
  * @author volsch
  */
@@ -54,6 +63,124 @@ public class DhisSyncGroup extends VersionedBaseMetadata implements DataGroup, S
 
     public static final UUID DEFAULT_ID = UUID.fromString( "22204dd4-05d9-4cdd-96a8-ed742087d469" );
 
+    private boolean enabled = true;
+
+    private DhisResourceType dhisResourceType;
+
+    private String programId;
+
+    private String orgUnitId;
+
+    @Basic
+    @Column( name = "enabled", nullable = false, columnDefinition = "BOOLEAN DEFAULT TRUE NOT NULL" )
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    @Basic
+    @Column( name = "dhis_resource_type", length = 30 )
+    @Enumerated( EnumType.STRING )
+    public DhisResourceType getDhisResourceType()
+    {
+        return dhisResourceType;
+    }
+
+    public void setDhisResourceType( DhisResourceType dhisResourceType )
+    {
+        this.dhisResourceType = dhisResourceType;
+    }
+
+    @Basic
+    @Column( name = "program_id", length = 11 )
+    public String getProgramId()
+    {
+        return programId;
+    }
+
+    public void setProgramId( String programId )
+    {
+        this.programId = programId;
+    }
+
+    @Basic
+    @Column( name = "org_unit_id", length = 11 )
+    public String getOrgUnitId()
+    {
+        return orgUnitId;
+    }
+
+    public void setOrgUnitId( String orgUnitId )
+    {
+        this.orgUnitId = orgUnitId;
+    }
+
+    /**
+     * Checks if the specified DHIS2 resource type is polled by this synchronization group.
+     * A group that is restricted to a program polls only events. A group that is
+     * restricted to an organization unit subtree polls only tracked entity instances and
+     * events.
+     *
+     * @param resourceType the DHIS2 resource type to check.
+     * @return <code>true</code> if the resource type is polled by this group, <code>false</code> otherwise.
+     */
+    @Transient
+    @JsonIgnore
+    public boolean isPolled( @Nonnull DhisResourceType resourceType )
+    {
+        if ( (dhisResourceType != null) && (dhisResourceType != resourceType) )
+        {
+            return false;
+        }
+        if ( programId != null )
+        {
+            return resourceType == DhisResourceType.PROGRAM_STAGE_EVENT;
+        }
+        if ( orgUnitId != null )
+        {
+            return (resourceType == DhisResourceType.TRACKED_ENTITY) || (resourceType == DhisResourceType.PROGRAM_STAGE_EVENT);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if this synchronization group and the specified synchronization group
+     * poll the same data. Groups that are restricted to different programs or to
+     * different organization units are regarded as disjoint. Organization unit
+     * subtrees that are nested into each other cannot be detected without the
+     * organization unit hierarchy and must be avoided by the configuration.
+     *
+     * @param other the other synchronization group to check.
+     * @return <code>true</code> if both groups poll the same data, <code>false</code> otherwise.
+     */
+    @Transient
+    @JsonIgnore
+    public boolean overlaps( @Nonnull DhisSyncGroup other )
+    {
+        if ( (programId != null) && (other.getProgramId() != null) && !programId.equals( other.getProgramId() ) )
+        {
+            return false;
+        }
+        if ( (orgUnitId != null) && (other.getOrgUnitId() != null) && !orgUnitId.equals( other.getOrgUnitId() ) )
+        {
+            return false;
+        }
+
+        for ( final DhisResourceType resourceType : DhisResourceType.values() )
+        {
+            if ( isPolled( resourceType ) && other.isPolled( resourceType ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @JsonIgnore
     @Transient
     @Override
@@ -33,6 +33,7 @@ import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.querydsl.QuerydslPredicateExecutor;
@@ -56,6 +57,11 @@ public interface DhisSyncGroupRepository extends JpaRepository<DhisSyncGroup, UU
     @Cacheable( key = "{#a0}" )
     Optional<DhisSyncGroup> findByIdCached( @Param( "id" ) @Nonnull UUID id );
 
+    @Query( "SELECT g FROM #{#entityName} g WHERE g.enabled=true ORDER BY g.id" )
+    @Nonnull
+    @Cacheable( key = "'findAllEnabled'" )
+    List<DhisSyncGroup> findAllEnabledCached();
+
     @Override
     @Nonnull
     @CacheEvict( allEntries = true )
@@ -63,12 +69,12 @@ public interface DhisSyncGroupRepository extends JpaRepository<DhisSyncGroup, UU
 
     @Override
     @Nonnull
-    @CachePut( key = "#a0.id" )
+    @Caching( put = @CachePut( key = "#a0.id" ), evict = @CacheEvict( key = "'findAllEnabled'" ) )
     <S extends DhisSyncGroup> S saveAndFlush( @Nonnull S entity );
 
     @Override
     @Nonnull
-    @CachePut( key = "#a0.id" )
+    @Caching( put = @CachePut( key = "#a0.id" ), evict = @CacheEvict( key = "'findAllEnabled'" ) )
     <S extends DhisSyncGroup> S save( @Nonnull S entity );
 
     @Override
@@ -80,11 +86,11 @@ public interface DhisSyncGroupRepository extends JpaRepository<DhisSyncGroup, UU
     void deleteAllInBatch();
 
     @Override
-    @CacheEvict( key = "#a0" )
+    @Caching( evict = { @CacheEvict( key = "#a0" ), @CacheEvict( key = "'findAllEnabled'" ) } )
     void deleteById( @Nonnull UUID id );
 
     @Override
-    @CacheEvict( key = "#a0.id" )
+    @Caching( evict = { @CacheEvict( key = "#a0.id" ), @CacheEvict( key = "'findAllEnabled'" ) } )
     void delete( @Nonnull DhisSyncGroup entity );
 
     @Override
@@ -39,6 +39,7 @@ import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -51,6 +52,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -63,6 +66,12 @@ import java.util.stream.Collectors;
  */
 public abstract class AbstractPolledItemRetriever<P extends PolledItems<I>, I extends PolledItem>
 {
+    /**
+     * The maximum number of slices in which a polled time window is split. If the window
+     * is bigger (e.g. on the first poll), the slices are widened accordingly.
+     */
+    public static final int MAX_SLICE_COUNT = 1000;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final DhisResourceType resourceType;
@@ -81,6 +90,8 @@ public abstract class AbstractPolledItemRetriever<P extends PolledItems<I>, I ex
 
     private int maxConsumedSize = 1000;
 
+    private PolledItemSlicing slicing;
+
     protected AbstractPolledItemRetriever( @Nonnull DhisResourceType resourceType, @Nonnull RestTemplate restTemplate, @Nonnull String queryUri, int toleranceMillis, int maxSearchCount, @Nonnull Class<P> polledItemsClass, @Nonnull ZoneId zoneId )
     {
         this.resourceType = resourceType;
@@ -102,31 +113,139 @@ public abstract class AbstractPolledItemRetriever<P extends PolledItems<I>, I ex
         this.maxConsumedSize = maxConsumedSize;
     }
 
+    @Nonnull
+    public DhisResourceType getResourceType()
+    {
+        return resourceType;
+    }
+
+    @Nonnull
+    protected RestTemplate getRestTemplate()
+    {
+        return restTemplate;
+    }
+
+    @Nonnull
+    protected Class<P> getPolledItemsClass()
+    {
+        return polledItemsClass;
+    }
+
     @Nonnull
     public ZoneId getZoneId()
     {
         return zoneId;
     }
 
+    @Nullable
+    public PolledItemSlicing getSlicing()
+    {
+        return slicing;
+    }
+
+    /**
+     * @param slicing the slicing that is used to retrieve the polled time window concurrently in time slices or
+     *                <code>null</code> if the polled time window should be retrieved at once.
+     */
+    public void setSlicing( @Nullable PolledItemSlicing slicing )
+    {
+        this.slicing = slicing;
+    }
+
     @Nonnull
     public Instant poll( @Nonnull final Instant lastUpdated, @Nonnull final Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer, @Nullable List<Object> variables )
     {
         final Instant fromLastUpdated = lastUpdated.minus( toleranceMillis, ChronoUnit.MILLIS );
+        // last updated must be determined before the first search invocation
+        final Instant processedLastUpdated = Instant.now();
+
+        if ( (slicing == null) || !processedLastUpdated.isAfter( fromLastUpdated ) )
+        {
+            consume( pollSlice( fromLastUpdated, null, excludedStoredBy, variables ), consumer );
+        }
+        else
+        {
+            pollSlices( fromLastUpdated, processedLastUpdated, slicing, excludedStoredBy, consumer, variables );
+        }
+        return processedLastUpdated;
+    }
+
+    /**
+     * Polls the time window from the specified from last updated timestamp up to the specified processed last
+     * updated timestamp in time slices. The time slices are retrieved concurrently, but the items of the time
+     * slices are passed to the consumer in chronological order of the slices as soon as a slice and all its
+     * predecessors have been retrieved. The last slice is open ended in order to get the same result as
+     * retrieving the window at once.
+     */
+    private void pollSlices( @Nonnull Instant fromLastUpdated, @Nonnull Instant processedLastUpdated, @Nonnull PolledItemSlicing slicing,
+        @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer, @Nullable List<Object> variables )
+    {
+        final long windowMillis = Duration.between( fromLastUpdated, processedLastUpdated ).toMillis();
+        final long sliceMillis = Math.max( slicing.getSliceMillis(), (windowMillis + MAX_SLICE_COUNT - 1) / MAX_SLICE_COUNT );
+        final List<Instant> sliceStarts = new ArrayList<>();
+        for ( Instant sliceStart = fromLastUpdated; sliceStart.isBefore( processedLastUpdated ); sliceStart = sliceStart.plusMillis( sliceMillis ) )
+        {
+            sliceStarts.add( sliceStart );
+        }
+        logger.debug( "Loading from {} in {} slices of {} ms with parallel count {}.",
+            fromLastUpdated, sliceStarts.size(), sliceMillis, slicing.getParallelCount() );
+
+        final List<CompletableFuture<List<ProcessedItemInfo>>> futures = new ArrayList<>( sliceStarts.size() );
+        try
+        {
+            for ( int i = 0; i < sliceStarts.size(); i++ )
+            {
+                // only the specified number of slices must be retrieved concurrently and must be kept in memory
+                while ( futures.size() < Math.min( i + slicing.getParallelCount(), sliceStarts.size() ) )
+                {
+                    final int index = futures.size();
+                    final Instant sliceStart = sliceStarts.get( index );
+                    // the end timestamp of the last slice is open ended, others are exclusive
+                    final Instant sliceToLastUpdated = (index + 1 < sliceStarts.size()) ? sliceStarts.get( index + 1 ).minus( 1, ChronoUnit.MILLIS ) : null;
+                    futures.add( CompletableFuture.supplyAsync( () -> pollSlice( sliceStart, sliceToLastUpdated, excludedStoredBy, variables ), slicing.getExecutor() ) );
+                }
+
+                final List<ProcessedItemInfo> resources;
+                try
+                {
+                    resources = futures.get( i ).join();
+                }
+                catch ( CompletionException e )
+                {
+                    if ( e.getCause() instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+                futures.set( i, null );
+                consume( resources, consumer );
+            }
+        }
+        finally
+        {
+            futures.stream().filter( Objects::nonNull ).forEach( f -> f.cancel( false ) );
+        }
+    }
+
+    /**
+     * Polls the items of the specified time window. Since DHIS2 returns the items in descending order of their
+     * last updated timestamp, the time window is shrunk from its end until all items have been retrieved.
+     *
+     * @return the unique polled items in ascending order of their last updated timestamp.
+     */
+    @Nonnull
+    private List<ProcessedItemInfo> pollSlice( @Nonnull Instant fromLastUpdated, @Nullable Instant toLastUpdated, @Nonnull Set<String> excludedStoredBy, @Nullable List<Object> variables )
+    {
         final Set<ProcessedItemInfo> allResources = new HashSet<>();
         final List<ProcessedItemInfo> orderedAllResources = new ArrayList<>();
         Set<PolledItem> previousPolledItems = null;
-        Instant processedLastUpdated = null;
-        Instant currentToLastUpdated = null;
+        Instant currentToLastUpdated = toLastUpdated;
         boolean moreAvailable;
         do
         {
             logger.debug( "Loading next from {} to {} with maximum count {}.",
                 fromLastUpdated, currentToLastUpdated, maxSearchCount );
-            if ( processedLastUpdated == null )
-            {
-                // last updated must only bet set on the first search invocation
-                processedLastUpdated = Instant.now();
-            }
 
             final P polledItems = getPolledItems( fromLastUpdated, currentToLastUpdated, variables );
             final List<ProcessedItemInfo> resources =
@@ -160,12 +279,16 @@ public abstract class AbstractPolledItemRetriever<P extends PolledItems<I>, I ex
         }
         while ( moreAvailable );
 
-        if ( !orderedAllResources.isEmpty() )
+        Collections.reverse( orderedAllResources );
+        return orderedAllResources;
+    }
+
+    private void consume( @Nonnull List<ProcessedItemInfo> resources, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
+    {
+        if ( !resources.isEmpty() )
         {
-            Collections.reverse( orderedAllResources );
-            Lists.partition( orderedAllResources, maxConsumedSize ).forEach( consumer );
+            Lists.partition( resources, maxConsumedSize ).forEach( consumer );
         }
-        return processedLastUpdated;
     }
 
     private boolean hasMorePolledItems( @Nonnull Instant fromLastUpdated, @Nullable Instant currentToLastUpdated, @Nullable List<Object> variables )
@@ -208,8 +331,7 @@ public abstract class AbstractPolledItemRetriever<P extends PolledItems<I>, I ex
         queryParams.append( "&page={page}" );
         queryVariables.add( page );
 
-        final ResponseEntity<P> entity = restTemplate.getForEntity( queryUri + queryParams, polledItemsClass, queryVariables.toArray() );
-        final P response = Objects.requireNonNull( entity.getBody() );
+        final P response = retrievePolledItems( queryUri + queryParams, queryVariables.toArray() );
         // DHIS metadata may return the next available page
         if ((response.getPager() != null) && (response.getPager().getPage() < page))
         {
@@ -218,6 +340,20 @@ public abstract class AbstractPolledItemRetriever<P extends PolledItems<I>, I ex
         return response;
     }
 
+    /**
+     * Retrieves the polled items from DHIS2.
+     *
+     * @param uri          the URI with the query parameters.
+     * @param uriVariables the variables of the URI.
+     * @return the polled items.
+     */
+    @Nonnull
+    protected P retrievePolledItems( @Nonnull String uri, @Nonnull Object[] uriVariables )
+    {
+        final ResponseEntity<P> entity = restTemplate.getForEntity( uri, polledItemsClass, uriVariables );
+        return Objects.requireNonNull( entity.getBody() );
+    }
+
     @Nonnull
     protected String getStartDateInclFilter()
     {
@@ -0,0 +1,112 @@
+package org.dhis2.fhir.adapter.dhis.poll;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Polled item retriever that may poll the full payload of the created or updated
+ * data from DHIS2. The polled resources with their full payload are passed to a
+ * staging, so that they need not be retrieved again when they are processed.
+ *
+ * @param <P> the concrete type of the polled items.
+ * @param <I> the concrete type of the polled item.
+ * @author volsch
+ */
+public abstract class AbstractStagingPolledItemRetriever<P extends PolledItems<I>, I extends PolledItem> extends AbstractPolledItemRetriever<P, I>
+{
+    private final PolledResourceStaging staging;
+
+    /**
+     * @param queryUri the query URI that must request the full payload of the resources if a staging is specified.
+     * @param staging  the staging that receives the full payload of the polled resources or <code>null</code>
+     *                 if the polled resources should not be staged.
+     */
+    protected AbstractStagingPolledItemRetriever( @Nonnull DhisResourceType resourceType, @Nonnull RestTemplate restTemplate, @Nonnull String queryUri, int toleranceMillis, int maxSearchCount,
+        @Nonnull Class<P> polledItemsClass, @Nonnull ZoneId zoneId, @Nullable PolledResourceStaging staging )
+    {
+        super( resourceType, restTemplate, queryUri, toleranceMillis, maxSearchCount, polledItemsClass, zoneId );
+        this.staging = staging;
+    }
+
+    @Nullable
+    public PolledResourceStaging getStaging()
+    {
+        return staging;
+    }
+
+    /**
+     * Returns the DHIS2 resources with their full payload that are included in the specified
+     * response of DHIS2. This method is only invoked if a staging has been specified.
+     *
+     * @param objectMapper the object mapper that is used to convert the response.
+     * @param response     the response of DHIS2.
+     * @return the included DHIS2 resources.
+     * @throws JsonProcessingException thrown if the response cannot be converted.
+     */
+    @Nonnull
+    protected abstract Collection<? extends DhisResource> getResources( @Nonnull ObjectMapper objectMapper, @Nonnull JsonNode response ) throws JsonProcessingException;
+
+    @Nonnull
+    @Override
+    protected P retrievePolledItems( @Nonnull String uri, @Nonnull Object[] uriVariables )
+    {
+        if ( staging == null )
+        {
+            return super.retrievePolledItems( uri, uriVariables );
+        }
+
+        final JsonNode response = Objects.requireNonNull( getRestTemplate().getForObject( uri, JsonNode.class, uriVariables ) );
+        final ObjectMapper objectMapper = getRestTemplate().getMessageConverters().stream().filter( MappingJackson2HttpMessageConverter.class::isInstance )
+            .map( c -> ((MappingJackson2HttpMessageConverter) c).getObjectMapper() ).findFirst()
+            .orElseThrow( () -> new PolledItemRetrieverException( "REST template does not support JSON." ) );
+
+        try
+        {
+            getResources( objectMapper, response ).forEach( staging::stage );
+            return objectMapper.treeToValue( response, getPolledItemsClass() );
+        }
+        catch ( JsonProcessingException e )
+        {
+            throw new PolledItemRetrieverException( "Polled " + getResourceType() + " resources could not be converted: " + e.getMessage(), e );
+        }
+    }
+}
@@ -41,4 +41,9 @@ public class PolledItemRetrieverException extends RuntimeException
     {
         super( message );
     }
+
+    public PolledItemRetrieverException( String message, Throwable cause )
+    {
+        super( message, cause );
+    }
 }
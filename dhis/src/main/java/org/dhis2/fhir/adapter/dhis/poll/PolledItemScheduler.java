@@ -0,0 +1,198 @@
+package org.dhis2.fhir.adapter.dhis.poll;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
+import org.dhis2.fhir.adapter.dhis.DhisResourceException;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Executes independent {@linkplain PollTask poll tasks} concurrently on the given
+ * executor. The executor limits the number of poll tasks that are executed
+ * concurrently and should therefore be shared by all polls of the same DHIS2
+ * instance. The polled items are passed to the consumer on the thread that
+ * invoked the scheduler in the order in which they have been retrieved. Only the
+ * given number of retrieved but not yet consumed item collections is kept in
+ * memory. The resulting last updated timestamp is the minimum of the last updated
+ * timestamps of all poll tasks. If one poll task fails, the remaining poll tasks
+ * are aborted.
+ *
+ * @author volsch
+ */
+public class PolledItemScheduler
+{
+    private static final long ABORT_CHECK_MILLIS = 100;
+
+    private final int parallelCount;
+
+    private final Executor executor;
+
+    public PolledItemScheduler( int parallelCount, @Nonnull Executor executor )
+    {
+        if ( parallelCount < 1 )
+        {
+            throw new IllegalArgumentException( "Parallel count must be positive: " + parallelCount );
+        }
+        this.parallelCount = parallelCount;
+        this.executor = executor;
+    }
+
+    public int getParallelCount()
+    {
+        return parallelCount;
+    }
+
+    @Nonnull
+    public Instant poll( @Nonnull List<PollTask> tasks, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
+    {
+        Instant result = Instant.now();
+
+        if ( (parallelCount < 2) || (tasks.size() < 2) )
+        {
+            for ( final PollTask task : tasks )
+            {
+                result = ObjectUtils.min( result, task.poll( consumer ) );
+            }
+            return result;
+        }
+
+        // an empty optional marks a completed poll task
+        final BlockingQueue<Optional<Collection<ProcessedItemInfo>>> queue = new LinkedBlockingQueue<>();
+        final Semaphore pendingPermits = new Semaphore( parallelCount );
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final List<CompletableFuture<Instant>> futures = new ArrayList<>( tasks.size() );
+
+        tasks.forEach( task -> futures.add( CompletableFuture.supplyAsync( () -> task.poll( items -> enqueue( queue, pendingPermits, aborted, items ) ), executor )
+            .whenComplete( ( r, e ) -> {
+                if ( e != null )
+                {
+                    aborted.set( true );
+                }
+                queue.add( Optional.empty() );
+            } ) ) );
+
+        int completed = 0;
+        try
+        {
+            while ( completed < futures.size() )
+            {
+                final Optional<Collection<ProcessedItemInfo>> items = queue.take();
+
+                if ( items.isPresent() )
+                {
+                    pendingPermits.release();
+                    if ( !aborted.get() )
+                    {
+                        consumer.accept( items.get() );
+                    }
+                }
+                else
+                {
+                    completed++;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            aborted.set( true );
+            Thread.currentThread().interrupt();
+            throw new DhisResourceException( "Polling of DHIS2 resources has been interrupted." );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            aborted.set( true );
+            throw e;
+        }
+
+        for ( final CompletableFuture<Instant> future : futures )
+        {
+            try
+            {
+                result = ObjectUtils.min( result, future.join() );
+            }
+            catch ( CompletionException e )
+            {
+                if ( e.getCause() instanceof RuntimeException )
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    private static void enqueue( @Nonnull BlockingQueue<Optional<Collection<ProcessedItemInfo>>> queue, @Nonnull Semaphore pendingPermits,
+        @Nonnull AtomicBoolean aborted, @Nonnull Collection<ProcessedItemInfo> items )
+    {
+        try
+        {
+            while ( !pendingPermits.tryAcquire( ABORT_CHECK_MILLIS, TimeUnit.MILLISECONDS ) )
+            {
+                checkAborted( aborted );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new DhisResourceException( "Polling of DHIS2 resources has been interrupted." );
+        }
+
+        if ( aborted.get() )
+        {
+            pendingPermits.release();
+            checkAborted( aborted );
+        }
+        queue.add( Optional.of( items ) );
+    }
+
+    private static void checkAborted( @Nonnull AtomicBoolean aborted )
+    {
+        if ( aborted.get() )
+        {
+            throw new DhisResourceException( "Polling of DHIS2 resources has been aborted." );
+        }
+    }
+}
@@ -1,4 +1,4 @@
-package org.dhis2.fhir.adapter.fhir.server.provider;
+package org.dhis2.fhir.adapter.dhis.poll;
 
 /*
  * Copyright (c) 2004-2019, University of Oslo
@@ -28,51 +28,52 @@ package org.dhis2.fhir.adapter.fhir.server.provider;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-import ca.uhn.fhir.rest.api.server.IBundleProvider;
-import ca.uhn.fhir.rest.server.IPagingProvider;
-import org.dhis2.fhir.adapter.fhir.transform.config.FhirRestInterfaceConfig;
-import org.springframework.stereotype.Component;
-
 import javax.annotation.Nonnull;
+import java.util.concurrent.Executor;
 
 /**
- * A paging provider that do not support paging.
+ * Specifies how a polled time window is split into time slices that are
+ * retrieved concurrently. Only the given number of slices is retrieved
+ * concurrently by one poll operation on the given executor.
  *
  * @author volsch
  */
-@Component
-public class NonPagingProvider implements IPagingProvider
+public class PolledItemSlicing
 {
-    private final FhirRestInterfaceConfig restInterfaceConfig;
+    private final long sliceMillis;
 
-    public NonPagingProvider( @Nonnull FhirRestInterfaceConfig restInterfaceConfig )
-    {
-        this.restInterfaceConfig = restInterfaceConfig;
-    }
+    private final int parallelCount;
+
+    private final Executor executor;
 
-    @Override
-    public int getDefaultPageSize()
+    public PolledItemSlicing( long sliceMillis, int parallelCount, @Nonnull Executor executor )
     {
-        return restInterfaceConfig.getDefaultSearchCount();
+        if ( sliceMillis < 1 )
+        {
+            throw new IllegalArgumentException( "Slice millis must be positive: " + sliceMillis );
+        }
+        if ( parallelCount < 1 )
+        {
+            throw new IllegalArgumentException( "Parallel count must be positive: " + parallelCount );
+        }
+        this.sliceMillis = sliceMillis;
+        this.parallelCount = parallelCount;
+        this.executor = executor;
     }
 
-    @Override
-    public int getMaximumPageSize()
+    public long getSliceMillis()
     {
-        return restInterfaceConfig.getMaxSearchCount();
+        return sliceMillis;
     }
 
-    @Override
-    public IBundleProvider retrieveResultList( String theSearchId )
+    public int getParallelCount()
     {
-        // retrieving result list is not supported
-        return null;
+        return parallelCount;
     }
 
-    @Override
-    public String storeResultList( IBundleProvider theList )
+    @Nonnull
+    public Executor getExecutor()
     {
-        // storing result list is not supported
-        return null;
+        return executor;
     }
 }
@@ -31,9 +31,12 @@ package org.dhis2.fhir.adapter.dhis.queue;
 import com.google.common.collect.ImmutableMap;
 import org.apache.activemq.artemis.jms.server.config.JMSQueueConfiguration;
 import org.apache.activemq.artemis.jms.server.config.impl.JMSQueueConfigurationImpl;
+import org.apache.activemq.artemis.jms.server.embedded.EmbeddedJMS;
 import org.dhis2.fhir.adapter.dhis.sync.DhisResourceQueueItem;
 import org.dhis2.fhir.adapter.dhis.sync.impl.DhisSyncConfig;
 import org.dhis2.fhir.adapter.dhis.sync.impl.DhisSyncRequestQueueItem;
+import org.dhis2.fhir.adapter.metrics.QueueDepthMeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.jms.artemis.ArtemisConfigurationCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -122,6 +125,14 @@ public class DhisQueueConfig
         return jmsTemplate;
     }
 
+    @Bean
+    @Nonnull
+    protected QueueDepthMeterBinder dhisQueueDepthMeterBinder( @Nonnull ObjectProvider<EmbeddedJMS> embeddedJms )
+    {
+        return new QueueDepthMeterBinder( embeddedJms.getIfAvailable(), syncConfig.getSyncRequestQueue().getQueueName(),
+            syncConfig.getDhisResourceQueue().getQueueName(), syncConfig.getDhisResourceDlQueue().getQueueName() );
+    }
+
     @Bean
     @Nonnull
     protected JmsJsonTypeIdMapping dhisJmsJsonTypeIdMapping()
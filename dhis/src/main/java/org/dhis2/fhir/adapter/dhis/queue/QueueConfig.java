@@ -30,6 +30,7 @@ package org.dhis2.fhir.adapter.dhis.queue;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.dhis2.fhir.adapter.queue.QueueListenerErrorHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.jms.JmsProperties;
 import org.springframework.context.annotation.Bean;
@@ -75,10 +76,16 @@ public class QueueConfig
     @SuppressWarnings( "ConstantConditions" )
     @Bean
     @Nonnull
-    protected DefaultJmsListenerContainerFactory jmsListenerContainerFactory( @Nonnull ConnectionFactory connectionFactory, @Nonnull DefaultJmsListenerContainerFactoryConfigurer configurer )
+    protected DefaultJmsListenerContainerFactory jmsListenerContainerFactory( @Nonnull ConnectionFactory connectionFactory, @Nonnull DefaultJmsListenerContainerFactoryConfigurer configurer,
+        @Value( "${dhis2.fhir-adapter.metadata-warm-up.enabled:false}" ) boolean metadataWarmUpEnabled )
     {
         final DefaultJmsListenerContainerFactory listenerFactory = new DefaultJmsListenerContainerFactory();
         configurer.configure( listenerFactory, connectionFactory );
+        if ( metadataWarmUpEnabled )
+        {
+            // listeners are started when all metadata has been loaded
+            listenerFactory.setAutoStartup( false );
+        }
         listenerFactory.setSessionTransacted( false );
         listenerFactory.setTransactionManager( null );
         listenerFactory.setSessionAcknowledgeMode( JmsProperties.AcknowledgeMode.CLIENT.getMode() );
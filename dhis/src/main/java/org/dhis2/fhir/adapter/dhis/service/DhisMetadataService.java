@@ -35,6 +35,9 @@ import org.dhis2.fhir.adapter.dhis.model.Reference;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -51,9 +54,31 @@ public interface DhisMetadataService<T extends DhisResource & DhisMetadata> exte
     @Nonnull
     Optional<T> findMetadataRefreshedByReference( @Nonnull Reference reference );
 
+    /**
+     * Returns the metadata for all specified references. References that are of the
+     * same type are retrieved with a single request and the individual results are
+     * cached like the results of {@link #findMetadataByReference(Reference)}.
+     * Concurrent requests for the same references are performed only once.
+     *
+     * @param references the references for which the metadata should be returned.
+     * @return the found metadata by the requested reference (references for which
+     * no metadata could be found are not included).
+     */
+    @Nonnull
+    Map<Reference, T> findMetadataByReferences( @Nonnull Collection<Reference> references );
+
     @Nonnull
     Optional<T> findOneByReference( @Nonnull Reference reference );
 
     @Nonnull
     DhisResourceResult<T> find( @Nonnull UriFilterApplier uriFilterApplier, int from, int max );
+
+    /**
+     * Returns all metadata of this type with a single request. The result is not
+     * cached and is used to warm up the metadata cache.
+     *
+     * @return all metadata of this type.
+     */
+    @Nonnull
+    List<T> findAllMetadata();
 }
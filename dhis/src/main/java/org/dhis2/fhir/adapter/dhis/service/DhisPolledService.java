@@ -31,10 +31,16 @@ package org.dhis2.fhir.adapter.dhis.service;
 import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
 import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.poll.PollTask;
+import org.dhis2.fhir.adapter.dhis.poll.PolledItemSlicing;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -46,7 +52,48 @@ import java.util.function.Consumer;
  */
 public interface DhisPolledService<T extends DhisResource> extends DhisService<T>
 {
+    /**
+     * Polls the created, updated or deleted data since the specified last updated timestamp.
+     *
+     * @param group            the sync group for which the data should be polled.
+     * @param lastUpdated      the last updated timestamp of the previous poll.
+     * @param toleranceMillis  the milli seconds that are subtracted from the last updated timestamp.
+     * @param maxSearchCount   the maximum number of items that should be returned by one request.
+     * @param slicing          the slicing that is used to retrieve the data concurrently in time
+     *                         slices or <code>null</code> if the data should be retrieved at once.
+     * @param staging          the staging that receives the full payload of the polled data or
+     *                         <code>null</code> if the full payload should not be polled. The
+     *                         staging may be ignored if the data does not support it.
+     * @param excludedStoredBy the user names of the users who stored data that should be excluded.
+     * @param consumer         the consumer that receives the polled items.
+     * @return the last updated timestamp that should be used for the next poll.
+     */
     @Nonnull
     Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis,
-        int maxSearchCount, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer );
+        int maxSearchCount, @Nullable PolledItemSlicing slicing, @Nullable PolledResourceStaging staging, @Nonnull Set<String> excludedStoredBy,
+        @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer );
+
+    /**
+     * Creates the independent poll tasks that poll the created, updated or deleted data
+     * since the specified last updated timestamp. The returned tasks may be executed
+     * concurrently. By default a single task is returned that performs the complete poll.
+     *
+     * @param group            the sync group for which the data should be polled.
+     * @param lastUpdated      the last updated timestamp of the previous poll.
+     * @param toleranceMillis  the milli seconds that are subtracted from the last updated timestamp.
+     * @param maxSearchCount   the maximum number of items that should be returned by one request.
+     * @param slicing          the slicing that is used to retrieve the data concurrently in time
+     *                         slices or <code>null</code> if the data should be retrieved at once.
+     * @param staging          the staging that receives the full payload of the polled data or
+     *                         <code>null</code> if the full payload should not be polled. The
+     *                         staging may be ignored if the data does not support it.
+     * @param excludedStoredBy the user names of the users who stored data that should be excluded.
+     * @return the poll tasks that poll the data.
+     */
+    @Nonnull
+    default List<PollTask> createPollTasks( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis,
+        int maxSearchCount, @Nullable PolledItemSlicing slicing, @Nullable PolledResourceStaging staging, @Nonnull Set<String> excludedStoredBy )
+    {
+        return Collections.singletonList( consumer -> poll( group, lastUpdated, toleranceMillis, maxSearchCount, slicing, staging, excludedStoredBy, consumer ) );
+    }
 }
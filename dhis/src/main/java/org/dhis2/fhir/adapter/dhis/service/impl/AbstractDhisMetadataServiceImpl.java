@@ -29,23 +29,30 @@ package org.dhis2.fhir.adapter.dhis.service.impl;
  */
 
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
+import org.apache.commons.lang3.StringUtils;
 import org.dhis2.fhir.adapter.auth.UnauthorizedException;
 import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
 import org.dhis2.fhir.adapter.dhis.DhisFindException;
+import org.dhis2.fhir.adapter.dhis.config.DhisMetadataCacheConfig;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
 import org.dhis2.fhir.adapter.dhis.model.DhisMetadata;
 import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceResult;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.dhis.model.Reference;
+import org.dhis2.fhir.adapter.dhis.model.ReferenceType;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
 import org.dhis2.fhir.adapter.dhis.orgunit.OrganizationUnitService;
+import org.dhis2.fhir.adapter.dhis.poll.PolledItemSlicing;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.dhis2.fhir.adapter.dhis.service.DhisMetadataService;
 import org.dhis2.fhir.adapter.dhis.util.DhisPagingQuery;
 import org.dhis2.fhir.adapter.dhis.util.DhisPagingUtils;
 import org.dhis2.fhir.adapter.rest.RestTemplateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpStatus;
@@ -56,15 +63,24 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -77,17 +93,28 @@ import java.util.stream.Collectors;
 @Service
 public abstract class AbstractDhisMetadataServiceImpl<T extends DhisResource & DhisMetadata> implements DhisMetadataService<T>
 {
+    /**
+     * The maximum number of references that are included in a single request.
+     */
+    protected static final int MAX_REFERENCES_PER_REQUEST = 50;
+
     private final RestTemplate systemRestTemplate;
 
     private final RestTemplate userRestTemplate;
 
+    private final CacheManager cacheManager;
+
     private final ZoneId zoneId = ZoneId.systemDefault();
 
+    private final ConcurrentMap<Reference, CompletableFuture<Optional<T>>> inFlightReferences = new ConcurrentHashMap<>();
+
     @Autowired
-    protected AbstractDhisMetadataServiceImpl( @Nonnull @Qualifier( "systemDhis2RestTemplate" ) RestTemplate systemRestTemplate, @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate userRestTemplate )
+    protected AbstractDhisMetadataServiceImpl( @Nonnull @Qualifier( "systemDhis2RestTemplate" ) RestTemplate systemRestTemplate, @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate userRestTemplate,
+        @Nonnull @Qualifier( "dhisCacheManager" ) CacheManager cacheManager )
     {
         this.systemRestTemplate = systemRestTemplate;
         this.userRestTemplate = userRestTemplate;
+        this.cacheManager = cacheManager;
     }
 
     @Nonnull
@@ -120,6 +147,80 @@ public abstract class AbstractDhisMetadataServiceImpl<T extends DhisResource & D
         return findOneByReference( systemRestTemplate, reference );
     }
 
+    @HystrixCommand
+    @Nonnull
+    @Override
+    public Map<Reference, T> findMetadataByReferences( @Nonnull Collection<Reference> references )
+    {
+        final Cache cache = cacheManager.getCache( DhisMetadataCacheConfig.getMetadataCacheName( getClass() ) );
+        final Map<Reference, T> result = new HashMap<>();
+        final Map<Reference, CompletableFuture<Optional<T>>> awaitedReferences = new HashMap<>();
+        final Map<ReferenceType, List<Reference>> ownedReferences = new EnumMap<>( ReferenceType.class );
+
+        for ( final Reference reference : new LinkedHashSet<>( references ) )
+        {
+            final Cache.ValueWrapper valueWrapper = ( cache == null ) ? null : cache.get( reference );
+
+            if ( valueWrapper != null )
+            {
+                if ( valueWrapper.get() != null )
+                {
+                    result.put( reference, (T) valueWrapper.get() );
+                }
+                continue;
+            }
+
+            // concurrent requests for the same reference wait for the request that is already in progress
+            final CompletableFuture<Optional<T>> future = inFlightReferences.putIfAbsent( reference, new CompletableFuture<>() );
+
+            if ( future == null )
+            {
+                ownedReferences.computeIfAbsent( reference.getType(), k -> new ArrayList<>() ).add( reference );
+            }
+            else
+            {
+                awaitedReferences.put( reference, future );
+            }
+        }
+
+        try
+        {
+            ownedReferences.forEach( ( type, typeReferences ) -> {
+                for ( int i = 0; i < typeReferences.size(); i += MAX_REFERENCES_PER_REQUEST )
+                {
+                    findMetadataByReferences( cache, type, typeReferences.subList( i, Math.min( i + MAX_REFERENCES_PER_REQUEST, typeReferences.size() ) ), result );
+                }
+            } );
+        }
+        catch ( RuntimeException e )
+        {
+            ownedReferences.values().stream().flatMap( Collection::stream ).forEach( r -> {
+                final CompletableFuture<Optional<T>> future = inFlightReferences.remove( r );
+
+                if ( future != null )
+                {
+                    future.completeExceptionally( e );
+                }
+            } );
+
+            throw e;
+        }
+
+        awaitedReferences.forEach( ( reference, future ) -> {
+            try
+            {
+                future.join().ifPresent( item -> result.put( reference, item ) );
+            }
+            catch ( CompletionException e )
+            {
+                // the reference is retrieved individually since the request of the other caller failed
+                findMetadataRefreshedByReference( reference ).ifPresent( item -> result.put( reference, item ) );
+            }
+        } );
+
+        return result;
+    }
+
     @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
     @Nonnull
     @Override
@@ -161,6 +262,86 @@ public abstract class AbstractDhisMetadataServiceImpl<T extends DhisResource & D
             ( items.getPager().getNextPage() != null ) );
     }
 
+    @HystrixCommand
+    @Nonnull
+    @Override
+    public List<T> findAllMetadata()
+    {
+        final ResponseEntity<? extends DhisMetadataItems<? extends T>> result = systemRestTemplate.getForEntity(
+            "/" + getDhisResourceType().getTypeName() + ".json?paging=false&fields=" + getFieldNames(), getItemsClass() );
+
+        return Objects.requireNonNull( result.getBody() ).getItems().stream().map( item -> (T) item ).collect( Collectors.toList() );
+    }
+
+    protected void findMetadataByReferences( @Nullable Cache cache, @Nonnull ReferenceType referenceType, @Nonnull List<Reference> references, @Nonnull Map<Reference, T> result )
+    {
+        final List<Reference> bulkReferences = new ArrayList<>();
+
+        for ( final Reference reference : references )
+        {
+            // values that cannot be included in a list filter are retrieved individually
+            if ( StringUtils.containsAny( reference.getValue(), ',', '[', ']' ) )
+            {
+                completeReference( cache, reference, findOneByReference( systemRestTemplate, reference ).orElse( null ), result );
+            }
+            else
+            {
+                bulkReferences.add( reference );
+            }
+        }
+
+        if ( bulkReferences.isEmpty() )
+        {
+            return;
+        }
+
+        final ResponseEntity<? extends DhisMetadataItems<? extends T>> response = systemRestTemplate.getForEntity(
+            "/" + getDhisResourceType().getTypeName() + ".json?paging=false&fields=" + getFieldNames() + "&filter=" + getFilterPropertyName( referenceType ) + ":in:[{values}]",
+            getItemsClass(), bulkReferences.stream().map( Reference::getValue ).collect( Collectors.joining( "," ) ) );
+        final List<? extends T> items = Objects.requireNonNull( response.getBody() ).getItems();
+
+        for ( final Reference reference : bulkReferences )
+        {
+            completeReference( cache, reference, items.stream().filter( item -> item.isReference( reference ) ).findFirst().orElse( null ), result );
+        }
+    }
+
+    private void completeReference( @Nullable Cache cache, @Nonnull Reference reference, @Nullable T item, @Nonnull Map<Reference, T> result )
+    {
+        if ( item != null )
+        {
+            result.put( reference, item );
+
+            if ( cache != null )
+            {
+                cache.put( reference, item );
+            }
+        }
+
+        final CompletableFuture<Optional<T>> future = inFlightReferences.remove( reference );
+
+        if ( future != null )
+        {
+            future.complete( Optional.ofNullable( item ) );
+        }
+    }
+
+    @Nonnull
+    private static String getFilterPropertyName( @Nonnull ReferenceType referenceType )
+    {
+        switch ( referenceType )
+        {
+            case ID:
+                return "id";
+            case CODE:
+                return "code";
+            case NAME:
+                return "name";
+            default:
+                throw new AssertionError( "Unhandled reference type: " + referenceType );
+        }
+    }
+
     @Nonnull
     protected Optional<T> findOneByReference( @Nonnull RestTemplate restTemplate, @Nonnull Reference reference )
     {
@@ -197,10 +378,11 @@ public abstract class AbstractDhisMetadataServiceImpl<T extends DhisResource & D
 
     @Nonnull
     @Override
-    public Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
+    public Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nullable PolledItemSlicing slicing, @Nullable PolledResourceStaging staging, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
     {
         final DhisMetadataPolledItemRetriever eventPolledItemRetriever = new DhisMetadataPolledItemRetriever( getDhisResourceType(), systemRestTemplate,
             toleranceMillis, maxSearchCount, zoneId );
+        eventPolledItemRetriever.setSlicing( slicing );
 
         return eventPolledItemRetriever.poll( lastUpdated, excludedStoredBy, consumer, null );
     }
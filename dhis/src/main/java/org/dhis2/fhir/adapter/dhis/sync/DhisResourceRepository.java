@@ -32,6 +32,7 @@ import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 import java.util.Optional;
 
 /**
@@ -50,6 +51,17 @@ public interface DhisResourceRepository
     @Nonnull
     Optional<? extends DhisResource> find( @Nonnull DhisResourceId dhisResourceId );
 
+    /**
+     * Finds the DHIS2 resources with the specified IDs. DHIS2 resources of the same type
+     * are retrieved in bulk (which may include cached DHIS2 resources). DHIS2 resources
+     * that cannot be found are not included in the result.
+     *
+     * @param dhisResourceIds the IDs of the DHIS2 resources that should be returned.
+     * @return the found DHIS2 resources.
+     */
+    @Nonnull
+    Collection<? extends DhisResource> findAll( @Nonnull Collection<DhisResourceId> dhisResourceIds );
+
     @Nonnull
     DhisResource save( @Nonnull DhisResource resource );
 
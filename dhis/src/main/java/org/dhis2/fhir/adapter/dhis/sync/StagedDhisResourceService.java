@@ -0,0 +1,65 @@
+package org.dhis2.fhir.adapter.dhis.sync;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Service that keeps the full payload of polled DHIS2 resources for a short time,
+ * so that the DHIS2 resources need not to be retrieved again when the polled items
+ * are processed.
+ *
+ * @author volsch
+ */
+public interface StagedDhisResourceService extends PolledResourceStaging
+{
+    /**
+     * @return <code>true</code> if the full payload of polled DHIS2 resources should be staged,
+     * <code>false</code> otherwise.
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns and removes the staged DHIS2 resource with the specified ID if its last updated
+     * timestamp matches the specified last updated timestamp.
+     *
+     * @param resourceId  the ID of the DHIS2 resource.
+     * @param lastUpdated the last updated timestamp of the polled DHIS2 resource.
+     * @return the staged DHIS2 resource or an empty optional if no DHIS2 resource with the
+     * specified version has been staged.
+     */
+    @Nonnull
+    Optional<DhisResource> findStaged( @Nonnull DhisResourceId resourceId, @Nonnull Instant lastUpdated );
+}
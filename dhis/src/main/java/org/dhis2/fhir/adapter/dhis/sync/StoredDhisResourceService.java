@@ -32,8 +32,10 @@ import org.dhis2.fhir.adapter.data.processor.StoredItemService;
 import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResource;
 import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResourceId;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -46,4 +48,15 @@ public interface StoredDhisResourceService extends StoredItemService<StoredDhisR
 {
     @Nonnull
     Optional<DhisSyncGroup> findSyncGroupById( @Nonnull UUID id );
+
+    /**
+     * Returns all enabled DHIS2 sync groups that poll resources of the specified type.
+     * Resources that have been stored by the adapter must be registered for
+     * all of these groups.
+     *
+     * @param resourceType the DHIS2 resource type for which the groups should be returned.
+     * @return the enabled DHIS2 sync groups that poll the specified resource type.
+     */
+    @Nonnull
+    List<DhisSyncGroup> findPollingSyncGroups( @Nonnull DhisResourceType resourceType );
 }
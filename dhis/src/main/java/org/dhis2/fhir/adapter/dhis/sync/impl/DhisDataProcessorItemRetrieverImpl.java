@@ -29,7 +29,6 @@ package org.dhis2.fhir.adapter.dhis.sync.impl;
  */
 
 
-import org.apache.commons.lang3.ObjectUtils;
 import org.dhis2.fhir.adapter.auth.Authorization;
 import org.dhis2.fhir.adapter.auth.AuthorizationContext;
 import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
@@ -38,27 +37,36 @@ import org.dhis2.fhir.adapter.dhis.config.DhisConfig;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
 import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.dhis2.fhir.adapter.dhis.poll.PollTask;
+import org.dhis2.fhir.adapter.dhis.poll.PolledItemScheduler;
+import org.dhis2.fhir.adapter.dhis.poll.PolledItemSlicing;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.dhis2.fhir.adapter.dhis.service.DhisPolledService;
 import org.dhis2.fhir.adapter.dhis.service.DhisService;
+import org.dhis2.fhir.adapter.dhis.sync.StagedDhisResourceService;
 import org.dhis2.fhir.adapter.dhis.sync.SyncExcludedDhisUsernameRetriever;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * The item retriever that polls DHIS2 resources. All relevant resources are
- * processed during a poll.
+ * processed during a poll. The resource types and programs are polled concurrently
+ * up to the configured poll concurrency, which is shared by all polls.
  *
  * @author volsch
  */
@@ -75,12 +83,23 @@ public class DhisDataProcessorItemRetrieverImpl implements DataProcessorItemRetr
 
     private final DhisSyncProcessorConfig processorConfig;
 
+    private final StagedDhisResourceService stagedDhisResourceService;
+
+    private final ExecutorService pollExecutorService;
+
+    private final PolledItemSlicing slicing;
+
+    private final ExecutorService schedulerExecutorService;
+
+    private final PolledItemScheduler scheduler;
+
     public DhisDataProcessorItemRetrieverImpl(
         @Nonnull AuthorizationContext authorizationContext,
         @Nonnull @Qualifier( "systemDhis2Authorization" ) Authorization systemDhis2Authorization,
         @Nonnull SyncExcludedDhisUsernameRetriever excludedDhisUsernameRetriever,
         @Nonnull List<DhisPolledService<? extends DhisResource>> polledServices,
         @Nonnull DhisSyncProcessorConfig processorConfig,
+        @Nonnull StagedDhisResourceService stagedDhisResourceService,
         @Nonnull DhisConfig config )
     {
         this.authorizationContext = authorizationContext;
@@ -88,6 +107,44 @@ public class DhisDataProcessorItemRetrieverImpl implements DataProcessorItemRetr
         this.excludedDhisUsernameRetriever = excludedDhisUsernameRetriever;
         this.polledServices = polledServices.stream().collect( Collectors.toMap( DhisService::getDhisResourceType, ps -> ps ) );
         this.processorConfig = processorConfig;
+        this.stagedDhisResourceService = stagedDhisResourceService;
+
+        if ( processorConfig.getPollSliceMillis() > 0 )
+        {
+            pollExecutorService = Executors.newFixedThreadPool( processorConfig.getPollParallelCount(), new CustomizableThreadFactory( "dhis-poll-" ) );
+            slicing = new PolledItemSlicing( processorConfig.getPollSliceMillis(), processorConfig.getPollParallelCount(),
+                command -> executeAuthorized( pollExecutorService, command ) );
+        }
+        else
+        {
+            pollExecutorService = null;
+            slicing = null;
+        }
+
+        if ( processorConfig.getPollConcurrency() > 1 )
+        {
+            // poll tasks wait for their slices and must not use the same executor
+            schedulerExecutorService = Executors.newFixedThreadPool( processorConfig.getPollConcurrency(), new CustomizableThreadFactory( "dhis-poll-task-" ) );
+            scheduler = new PolledItemScheduler( processorConfig.getPollConcurrency(), command -> executeAuthorized( schedulerExecutorService, command ) );
+        }
+        else
+        {
+            schedulerExecutorService = null;
+            scheduler = new PolledItemScheduler( 1, Runnable::run );
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        if ( pollExecutorService != null )
+        {
+            pollExecutorService.shutdownNow();
+        }
+        if ( schedulerExecutorService != null )
+        {
+            schedulerExecutorService.shutdownNow();
+        }
     }
 
     @Nonnull
@@ -96,25 +153,44 @@ public class DhisDataProcessorItemRetrieverImpl implements DataProcessorItemRetr
     {
         final int toleranceMillis = processorConfig.getToleranceMillis();
         final Set<DhisResourceType> resourceTypes = processorConfig.getResourceTypes();
+        final PolledResourceStaging staging = stagedDhisResourceService.isEnabled() ? stagedDhisResourceService : null;
 
         authorizationContext.setAuthorization( systemDhis2Authorization );
         try
         {
             final Set<String> excludedDhisUsernames = excludedDhisUsernameRetriever.findAllDhisUsernames();
-            final AtomicReference<Instant> result = new AtomicReference<>( Instant.now() );
-
-            Stream.of( DhisResourceType.values() ).filter( resourceTypes::contains ).map( polledServices::get ).filter( Objects::nonNull )
-                .forEach( polledService -> {
-                    final Instant currentResult = polledService.poll( group, lastUpdated, toleranceMillis, maxSearchCount,
-                        excludedDhisUsernames, consumer );
-                    result.set( ObjectUtils.min( result.get(), currentResult ) );
-                } );
+            final List<PollTask> tasks = Stream.of( DhisResourceType.values() ).filter( resourceTypes::contains ).filter( group::isPolled ).map( polledServices::get ).filter( Objects::nonNull )
+                .flatMap( polledService -> polledService.createPollTasks( group, lastUpdated, toleranceMillis, maxSearchCount, slicing, staging, excludedDhisUsernames ).stream() )
+                .collect( Collectors.toList() );
 
-            return result.get();
+            return scheduler.poll( tasks, consumer );
         }
         finally
         {
             authorizationContext.resetAuthorization();
         }
     }
+
+    /**
+     * Executes the specified command with the authorization of the submitting thread,
+     * since the authorization context is bound to the current thread.
+     *
+     * @param executorService the executor service that executes the command.
+     * @param command         the command that should be executed.
+     */
+    private void executeAuthorized( @Nonnull ExecutorService executorService, @Nonnull Runnable command )
+    {
+        final Authorization authorization = authorizationContext.getAuthorization();
+        executorService.execute( () -> {
+            authorizationContext.setAuthorization( authorization );
+            try
+            {
+                command.run();
+            }
+            finally
+            {
+                authorizationContext.resetAuthorization();
+            }
+        } );
+    }
 }
@@ -32,6 +32,7 @@ import org.dhis2.fhir.adapter.dhis.aggregate.DataValueSet;
 import org.dhis2.fhir.adapter.dhis.aggregate.DataValueSetService;
 import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.dhis.model.Reference;
 import org.dhis2.fhir.adapter.dhis.model.ReferenceType;
 import org.dhis2.fhir.adapter.dhis.orgunit.OrganizationUnitService;
@@ -49,9 +50,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Implementation of {@link DhisResourceRepository}.
@@ -145,6 +151,52 @@ public class DhisResourceRepositoryImpl implements DhisResourceRepository
         return findRefreshed( dhisResourceId );
     }
 
+    @Nonnull
+    @Override
+    public Collection<? extends DhisResource> findAll( @Nonnull Collection<DhisResourceId> dhisResourceIds )
+    {
+        final Map<DhisResourceType, List<String>> idsByType = new EnumMap<>( DhisResourceType.class );
+        dhisResourceIds.forEach( id -> idsByType.computeIfAbsent( id.getType(), k -> new ArrayList<>() ).add( id.getId() ) );
+
+        final List<DhisResource> result = new ArrayList<>();
+
+        idsByType.forEach( ( type, ids ) -> {
+            switch ( type )
+            {
+                case ORGANIZATION_UNIT:
+                    result.addAll( organizationUnitService.findMetadataByReferences( createIdReferences( ids ) ).values() );
+                    break;
+                case PROGRAM_METADATA:
+                    result.addAll( programMetadataService.findMetadataByReferences( createIdReferences( ids ) ).values() );
+                    break;
+                case PROGRAM_STAGE_METADATA:
+                    result.addAll( programStageMetadataService.findMetadataByReferences( createIdReferences( ids ) ).values() );
+                    break;
+                case TRACKED_ENTITY:
+                    result.addAll( trackedEntityService.findAllByIds( ids ) );
+                    break;
+                case PROGRAM_STAGE_EVENT:
+                    result.addAll( eventService.findAllByIds( ids ) );
+                    break;
+                case ENROLLMENT:
+                    result.addAll( enrollmentService.findAllByIds( ids ) );
+                    break;
+                case DATA_VALUE_SET:
+                    throw new UnsupportedOperationException( "Finding DHIS2 DataValueSet resources is not supported." );
+                default:
+                    throw new AssertionError( "Unhandled DHIS2 resource type: " + type );
+            }
+        } );
+
+        return result;
+    }
+
+    @Nonnull
+    private static List<Reference> createIdReferences( @Nonnull Collection<String> ids )
+    {
+        return ids.stream().map( Reference::createIdReference ).collect( Collectors.toList() );
+    }
+
     @Override
     @Nonnull
     public DhisResource save( @Nonnull DhisResource resource )
@@ -64,6 +64,17 @@ public class DhisSyncProcessorConfig implements Serializable
     @Min( value = 1 )
     private int parallelCount = 1;
 
+    @Min( value = 0 )
+    private int pollSliceMillis = 0;
+
+    @Min( value = 1 )
+    private int pollParallelCount = 2;
+
+    @Min( value = 1 )
+    private int pollConcurrency = 4;
+
+    private boolean pollFullPayload;
+
     @NotNull
     private Set<DhisResourceType> resourceTypes = new HashSet<>();
 
@@ -117,6 +128,46 @@ public class DhisSyncProcessorConfig implements Serializable
         this.parallelCount = parallelCount;
     }
 
+    public int getPollSliceMillis()
+    {
+        return pollSliceMillis;
+    }
+
+    public void setPollSliceMillis( int pollSliceMillis )
+    {
+        this.pollSliceMillis = pollSliceMillis;
+    }
+
+    public int getPollParallelCount()
+    {
+        return pollParallelCount;
+    }
+
+    public void setPollParallelCount( int pollParallelCount )
+    {
+        this.pollParallelCount = pollParallelCount;
+    }
+
+    public int getPollConcurrency()
+    {
+        return pollConcurrency;
+    }
+
+    public void setPollConcurrency( int pollConcurrency )
+    {
+        this.pollConcurrency = pollConcurrency;
+    }
+
+    public boolean isPollFullPayload()
+    {
+        return pollFullPayload;
+    }
+
+    public void setPollFullPayload( boolean pollFullPayload )
+    {
+        this.pollFullPayload = pollFullPayload;
+    }
+
     @Nonnull
     public Set<DhisResourceType> getResourceTypes()
     {
@@ -42,17 +42,20 @@ import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResource;
 import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResourceId;
 import org.dhis2.fhir.adapter.dhis.data.repository.ProcessedDhisResourceRepository;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
+import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroupUpdate;
 import org.dhis2.fhir.adapter.dhis.metadata.repository.DhisSyncGroupRepository;
 import org.dhis2.fhir.adapter.dhis.metadata.repository.DhisSyncGroupUpdateRepository;
 import org.dhis2.fhir.adapter.dhis.sync.DhisResourceQueueItem;
 import org.dhis2.fhir.adapter.dhis.sync.DhisSyncProcessor;
-import org.dhis2.fhir.adapter.dhis.sync.DhisSyncProcessorException;
 import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
 import org.dhis2.fhir.adapter.security.SystemAuthenticationToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -65,6 +68,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 
 /**
@@ -78,12 +84,16 @@ public class DhisSyncProcessorImpl extends
     AbstractQueuedDataProcessorImpl<ProcessedDhisResource, ProcessedDhisResourceId, StoredDhisResource, StoredDhisResourceId, DhisSyncGroup, QueuedDhisSyncRequestId, QueuedDhisResourceId,
         DhisSyncGroup, UuidDataGroupId> implements DhisSyncProcessor
 {
+    public static final String PROCESSING_PIPELINE = "dhis-sync";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final DhisSyncProcessorConfig processorConfig;
 
     private final DhisSyncGroupRepository dhisSyncGroupRepository;
 
+    private final DhisSyncGroupUpdateRepository dhisSyncGroupUpdateRepository;
+
     private final DataProcessorItemRetriever<DhisSyncGroup> dataProcessorItemRetriever;
 
     public DhisSyncProcessorImpl( @Nonnull @Qualifier( "dhisSyncRequestQueueJmsTemplate" ) JmsTemplate groupQueueJmsTemplate,
@@ -91,12 +101,13 @@ public class DhisSyncProcessorImpl extends
         @Nonnull @Qualifier( "dhisResourceQueueJmsTemplate" ) JmsTemplate itemQueueJmsTemplate,
         @Nonnull PlatformTransactionManager platformTransactionManager, @Nonnull SystemAuthenticationToken systemAuthenticationToken,
         @Nonnull DhisSyncProcessorConfig processorConfig, @Nonnull DhisSyncGroupRepository dhisSyncGroupRepository,
-        @Nonnull DataProcessorItemRetriever<DhisSyncGroup> dataProcessorItemRetriever )
+        @Nonnull DataProcessorItemRetriever<DhisSyncGroup> dataProcessorItemRetriever, @Nonnull ProcessingMetrics processingMetrics )
     {
         super( groupQueueJmsTemplate, dataGroupUpdateRepository, storedItemService, processedItemRepository, itemQueueJmsTemplate,
-            platformTransactionManager, systemAuthenticationToken, new ForkJoinPool( processorConfig.getParallelCount() ) );
+            platformTransactionManager, systemAuthenticationToken, new ForkJoinPool( processorConfig.getParallelCount() ), processingMetrics );
         this.processorConfig = processorConfig;
         this.dhisSyncGroupRepository = dhisSyncGroupRepository;
+        this.dhisSyncGroupUpdateRepository = dataGroupUpdateRepository;
         this.dataProcessorItemRetriever = dataProcessorItemRetriever;
 
         // no every execution by the scheduler must result in a logging
@@ -108,9 +119,18 @@ public class DhisSyncProcessorImpl extends
     @Transactional( propagation = Propagation.NOT_SUPPORTED )
     public void process()
     {
-        final DhisSyncGroup group = dhisSyncGroupRepository.findByIdCached( DhisSyncGroup.DEFAULT_ID )
-            .orElseThrow( () -> new DhisSyncProcessorException( "DHIS2 Sync Group with default ID could not be found." ) );
-        process( group, processorConfig.getRequestRateMillis() );
+        final List<DhisSyncGroup> groups = getPolledGroups( dhisSyncGroupRepository.findAllEnabledCached() );
+        if ( groups.isEmpty() )
+        {
+            logger.debug( "No enabled DHIS2 Sync Group exists." );
+            return;
+        }
+
+        for ( final DhisSyncGroup group : groups )
+        {
+            initializeUpdate( group );
+            process( group, processorConfig.getRequestRateMillis() );
+        }
     }
 
     @HystrixCommand
@@ -122,6 +142,70 @@ public class DhisSyncProcessorImpl extends
         super.receive( dhisSyncRequestQueueItem );
     }
 
+    /**
+     * Each group keeps its own processed items. Groups that overlap would
+     * transform the same resources several times. Therefore only the first
+     * of overlapping groups is polled, where the default group takes precedence
+     * since it covers all data.
+     *
+     * @param groups the enabled groups.
+     * @return the enabled groups that do not overlap with each other.
+     */
+    @Nonnull
+    protected List<DhisSyncGroup> getPolledGroups( @Nonnull List<DhisSyncGroup> groups )
+    {
+        final List<DhisSyncGroup> orderedGroups = new ArrayList<>( groups );
+        orderedGroups.sort( Comparator.comparing( g -> !DhisSyncGroup.DEFAULT_ID.equals( g.getId() ) ) );
+
+        final List<DhisSyncGroup> polledGroups = new ArrayList<>();
+        for ( final DhisSyncGroup group : orderedGroups )
+        {
+            final DhisSyncGroup overlappingGroup = polledGroups.stream().filter( g -> g.overlaps( group ) ).findFirst().orElse( null );
+            if ( overlappingGroup == null )
+            {
+                polledGroups.add( group );
+            }
+            else
+            {
+                logger.warn( "DHIS2 Sync Group {} overlaps with DHIS2 Sync Group {} and is not polled.", group.getId(), overlappingGroup.getId() );
+            }
+        }
+        return polledGroups;
+    }
+
+    /**
+     * Groups that have been added in order to split the data of the default
+     * group (shards) do not have any update status yet. Their polling starts
+     * at the last updated timestamp of the default group, so that no data is
+     * missed when switching from the default group to the shards.
+     *
+     * @param group the group for which the update status should be initialized.
+     */
+    protected void initializeUpdate( @Nonnull DhisSyncGroup group )
+    {
+        if ( DhisSyncGroup.DEFAULT_ID.equals( group.getId() ) || dhisSyncGroupUpdateRepository.existsById( group.getId() ) )
+        {
+            return;
+        }
+
+        final Instant lastUpdated = dhisSyncGroupUpdateRepository.findById( DhisSyncGroup.DEFAULT_ID )
+            .map( DhisSyncGroupUpdate::getLastUpdated ).orElseGet( Instant::now );
+        logger.info( "Initializing update status of DHIS2 Sync Group {} with last updated timestamp {}.", group.getId(), lastUpdated );
+
+        final DhisSyncGroupUpdate update = new DhisSyncGroupUpdate();
+        update.setGroup( group );
+        update.setLastRequested( Instant.EPOCH );
+        update.setLastUpdated( lastUpdated );
+        try
+        {
+            dhisSyncGroupUpdateRepository.save( update );
+        }
+        catch ( DataIntegrityViolationException e )
+        {
+            logger.debug( "Update status of DHIS2 Sync Group {} has been initialized concurrently.", group.getId() );
+        }
+    }
+
     @Override
     protected QueuedDhisSyncRequestId createQueuedGroupId( @Nonnull DhisSyncGroup group )
     {
@@ -188,4 +272,11 @@ public class DhisSyncProcessorImpl extends
     {
         return group;
     }
+
+    @Nonnull
+    @Override
+    protected ProcessingTags createProcessingTags( @Nonnull DhisSyncGroup group )
+    {
+        return new ProcessingTags( PROCESSING_PIPELINE ).syncGroup( group.getId() );
+    }
 }
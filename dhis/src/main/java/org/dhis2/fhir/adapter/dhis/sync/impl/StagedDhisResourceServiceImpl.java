@@ -0,0 +1,107 @@
+package org.dhis2.fhir.adapter.dhis.sync.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.sync.StagedDhisResourceService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Implementation of {@link StagedDhisResourceService} that keeps the staged DHIS2
+ * resources in a separate cache with a short lifetime (see {@link StagedDhisResourceCacheConfig}).
+ * The staged DHIS2 resources are available on all adapter instances only if the cache
+ * is shared (e.g. Redis). Otherwise the DHIS2 resources are retrieved again if they
+ * are processed on a different adapter instance.
+ *
+ * @author volsch
+ */
+@Service
+public class StagedDhisResourceServiceImpl implements StagedDhisResourceService
+{
+    public static final String CACHE_NAME = "stagedDhisResources";
+
+    private final DhisSyncProcessorConfig processorConfig;
+
+    private final CacheManager cacheManager;
+
+    public StagedDhisResourceServiceImpl( @Nonnull DhisSyncProcessorConfig processorConfig, @Nonnull @Qualifier( "stagedDhisCacheManager" ) CacheManager cacheManager )
+    {
+        this.processorConfig = processorConfig;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return processorConfig.isPollFullPayload();
+    }
+
+    @Override
+    public void stage( @Nonnull DhisResource resource )
+    {
+        if ( !resource.isDeleted() && (resource.getLastUpdated() != null) )
+        {
+            getCache().put( resource.getResourceId().toString(), resource );
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Optional<DhisResource> findStaged( @Nonnull DhisResourceId resourceId, @Nonnull Instant lastUpdated )
+    {
+        final Cache cache = getCache();
+        final String key = resourceId.toString();
+        final DhisResource resource = cache.get( key, DhisResource.class );
+
+        if ( (resource == null) || (resource.getLastUpdated() == null) || !lastUpdated.equals( resource.getLastUpdated().toInstant() ) )
+        {
+            // a newer staged version is kept for the item that has been queued for that version
+            return Optional.empty();
+        }
+
+        cache.evict( key );
+
+        return Optional.of( resource );
+    }
+
+    @Nonnull
+    protected Cache getCache()
+    {
+        return Objects.requireNonNull( cacheManager.getCache( CACHE_NAME ) );
+    }
+}
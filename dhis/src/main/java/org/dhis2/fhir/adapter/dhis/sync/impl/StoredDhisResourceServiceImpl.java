@@ -35,12 +35,15 @@ import org.dhis2.fhir.adapter.dhis.data.model.StoredDhisResourceId;
 import org.dhis2.fhir.adapter.dhis.data.repository.StoredDhisResourceRepository;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
 import org.dhis2.fhir.adapter.dhis.metadata.repository.DhisSyncGroupRepository;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Stored item service for {@link StoredDhisResource}s.
@@ -64,4 +67,11 @@ public class StoredDhisResourceServiceImpl extends AbstractStoredItemService<Sto
     {
         return syncGroupRepository.findByIdCached( id );
     }
+
+    @Nonnull
+    @Override
+    public List<DhisSyncGroup> findPollingSyncGroups( @Nonnull DhisResourceType resourceType )
+    {
+        return syncGroupRepository.findAllEnabledCached().stream().filter( g -> g.isPolled( resourceType ) ).collect( Collectors.toList() );
+    }
 }
@@ -31,8 +31,10 @@ package org.dhis2.fhir.adapter.dhis.tracker.program;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceResult;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
 import org.dhis2.fhir.adapter.dhis.service.DhisService;
+import org.dhis2.fhir.adapter.dhis.util.DhisPagingUtils;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 import java.util.Optional;
 
 /**
@@ -53,6 +55,18 @@ public interface EnrollmentService extends DhisService<Enrollment>
     @Nonnull
     Optional<Enrollment> findOneById( @Nonnull String id );
 
+    /**
+     * Finds the enrollments with the specified IDs. Enrollments that are not available in
+     * the local repository of the current request are retrieved with one request per
+     * {@value DhisPagingUtils#MAX_IDS_PER_REQUEST} IDs. Enrollments that cannot be found
+     * are not included in the result.
+     *
+     * @param ids the IDs of the enrollments that should be returned.
+     * @return the found enrollments.
+     */
+    @Nonnull
+    Collection<Enrollment> findAllByIds( @Nonnull Collection<String> ids );
+
     @Nonnull
     Enrollment createOrUpdate( @Nonnull Enrollment enrollment );
 
@@ -32,6 +32,7 @@ import org.dhis2.fhir.adapter.dhis.model.DhisResourceResult;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
 import org.dhis2.fhir.adapter.dhis.service.DhisPolledService;
 import org.dhis2.fhir.adapter.dhis.service.DhisService;
+import org.dhis2.fhir.adapter.dhis.util.DhisPagingUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -57,6 +58,18 @@ public interface EventService extends DhisService<Event>, DhisPolledService<Even
     @Nonnull
     Optional<Event> findOneById( @Nonnull String eventId );
 
+    /**
+     * Finds the events with the specified IDs. Events that are not available in the local
+     * repository of the current request are retrieved with one request per
+     * {@value DhisPagingUtils#MAX_IDS_PER_REQUEST} IDs. Events that cannot be found are
+     * not included in the result.
+     *
+     * @param ids the IDs of the events that should be returned.
+     * @return the found events.
+     */
+    @Nonnull
+    Collection<Event> findAllByIds( @Nonnull Collection<String> ids );
+
     @Nonnull
     Optional<Event> findOneDeletedById( @Nonnull String eventId );
 
@@ -106,6 +106,9 @@ public class EnrollmentServiceImpl implements EnrollmentService, LocalDhisReposi
 
     protected static final String ENROLLMENT_DELETES_URI = "/enrollments.json?strategy=DELETE";
 
+    protected static final String ENROLLMENT_IDS_URI = "/enrollments.json?" +
+        "enrollment={ids}&ouMode=ACCESSIBLE&fields=:all&skipPaging=true";
+
     protected static final String LATEST_ACTIVE_URI = "/enrollments.json?" +
         "program={programId}&programStatus=ACTIVE&trackedEntityInstance={trackedEntityInstanceId}&" +
         "ouMode=ACCESSIBLE&fields=:all&order=lastUpdated:desc&pageSize=1";
@@ -231,6 +234,28 @@ public class EnrollmentServiceImpl implements EnrollmentService, LocalDhisReposi
         return instance;
     }
 
+    @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
+    @Nonnull
+    @Override
+    public Collection<Enrollment> findAllByIds( @Nonnull Collection<String> ids )
+    {
+        return resourceRepositoryTemplate.findAllByIds( ids, this::_findAllByIds );
+    }
+
+    @Nonnull
+    protected Collection<Enrollment> _findAllByIds( @Nonnull Collection<String> ids )
+    {
+        final List<Enrollment> result = new ArrayList<>();
+
+        for ( final List<String> chunk : DhisPagingUtils.createChunks( ids, DhisPagingUtils.MAX_IDS_PER_REQUEST ) )
+        {
+            final ResponseEntity<DhisEnrollments> response = restTemplate.getForEntity( ENROLLMENT_IDS_URI, DhisEnrollments.class, String.join( ";", chunk ) );
+            result.addAll( Objects.requireNonNull( response.getBody() ).getEnrollments() );
+        }
+
+        return result;
+    }
+
     @HystrixCommand( ignoreExceptions = { DhisConflictException.class, UnauthorizedException.class } )
     @Nonnull
     @Override
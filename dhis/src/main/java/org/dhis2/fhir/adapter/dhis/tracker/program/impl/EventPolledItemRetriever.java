@@ -28,8 +28,13 @@ package org.dhis2.fhir.adapter.dhis.tracker.program.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
-import org.dhis2.fhir.adapter.dhis.poll.AbstractPolledItemRetriever;
+import org.dhis2.fhir.adapter.dhis.poll.AbstractStagingPolledItemRetriever;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
@@ -37,6 +42,7 @@ import javax.annotation.Nullable;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -45,13 +51,51 @@ import java.util.stream.Collectors;
  *
  * @author volsch
  */
-public class EventPolledItemRetriever extends AbstractPolledItemRetriever<EventPolledItems, EventPolledItem>
+public class EventPolledItemRetriever extends AbstractStagingPolledItemRetriever<EventPolledItems, EventPolledItem>
 {
     protected static final String POLL_URI = "/events.json?ouMode=ACCESSIBLE&fields=event,lastUpdated,deleted,storedBy&program={programId}&includeDeleted=true";
 
+    protected static final String ORG_UNIT_SUBTREE_POLL_URI = "/events.json?ouMode=DESCENDANTS&ou={orgUnitId}&fields=event,lastUpdated,deleted,storedBy&program={programId}&includeDeleted=true";
+
+    protected static final String FULL_POLL_URI = "/events.json?ouMode=ACCESSIBLE&fields=" + "storedBy," + EventServiceImpl.FIELDS + "&program={programId}&includeDeleted=true";
+
+    protected static final String ORG_UNIT_SUBTREE_FULL_POLL_URI = "/events.json?ouMode=DESCENDANTS&ou={orgUnitId}&fields=" + "storedBy," + EventServiceImpl.FIELDS + "&program={programId}&includeDeleted=true";
+
     public EventPolledItemRetriever( @Nonnull RestTemplate restTemplate, int toleranceMillis, int maxSearchCount, @Nonnull ZoneId zoneId )
     {
-        super( DhisResourceType.PROGRAM_STAGE_EVENT, restTemplate, POLL_URI, toleranceMillis, maxSearchCount, EventPolledItems.class, zoneId );
+        this( restTemplate, toleranceMillis, maxSearchCount, zoneId, false, null );
+    }
+
+    /**
+     * @param orgUnitSubtree <code>true</code> if only the organization unit subtree
+     *                       of which the ID is passed as first variable should be
+     *                       polled, <code>false</code> if all accessible
+     *                       organization units should be polled.
+     * @param staging        the staging that receives the full payload of the polled
+     *                       events or <code>null</code> if only the IDs and last
+     *                       updated timestamps should be polled.
+     */
+    public EventPolledItemRetriever( @Nonnull RestTemplate restTemplate, int toleranceMillis, int maxSearchCount, @Nonnull ZoneId zoneId, boolean orgUnitSubtree, @Nullable PolledResourceStaging staging )
+    {
+        super( DhisResourceType.PROGRAM_STAGE_EVENT, restTemplate, getPollUri( orgUnitSubtree, staging != null ), toleranceMillis, maxSearchCount, EventPolledItems.class, zoneId, staging );
+    }
+
+    @Nonnull
+    private static String getPollUri( boolean orgUnitSubtree, boolean fullPayload )
+    {
+        if ( fullPayload )
+        {
+            return orgUnitSubtree ? ORG_UNIT_SUBTREE_FULL_POLL_URI : FULL_POLL_URI;
+        }
+
+        return orgUnitSubtree ? ORG_UNIT_SUBTREE_POLL_URI : POLL_URI;
+    }
+
+    @Nonnull
+    @Override
+    protected Collection<? extends DhisResource> getResources( @Nonnull ObjectMapper objectMapper, @Nonnull JsonNode response ) throws JsonProcessingException
+    {
+        return objectMapper.treeToValue( response, DhisEvents.class ).getEvents();
     }
 
     @Nonnull
@@ -51,6 +51,9 @@ import org.dhis2.fhir.adapter.dhis.model.ImportSummariesWebMessage;
 import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
 import org.dhis2.fhir.adapter.dhis.model.Status;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
+import org.dhis2.fhir.adapter.dhis.poll.PollTask;
+import org.dhis2.fhir.adapter.dhis.poll.PolledItemSlicing;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
 import org.dhis2.fhir.adapter.dhis.util.CodeGenerator;
@@ -76,6 +79,7 @@ import javax.annotation.Nullable;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -117,6 +121,9 @@ public class EventServiceImpl implements EventService, LocalDhisRepositoryPersis
         "program={programId}&trackedEntityInstance={trackedEntityInstanceId}&ouMode=ACCESSIBLE&" +
         "fields=" + FIELDS + "&skipPaging=true";
 
+    protected static final String FIND_IDS_URI = "/events.json?" +
+        "event={ids}&fields=" + FIELDS + "&skipPaging=true";
+
     protected static final String FIND_DELETED_ID_URI = "/events.json?" +
         "event={eventId}&includeDeleted=true&fields=" + FIELDS + "&skipPaging=true";
 
@@ -355,6 +362,28 @@ public class EventServiceImpl implements EventService, LocalDhisRepositoryPersis
         return instance;
     }
 
+    @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
+    @Nonnull
+    @Override
+    public Collection<Event> findAllByIds( @Nonnull Collection<String> ids )
+    {
+        return resourceRepositoryTemplate.findAllByIds( ids, this::_findAllByIds );
+    }
+
+    @Nonnull
+    protected Collection<Event> _findAllByIds( @Nonnull Collection<String> ids )
+    {
+        final List<Event> result = new ArrayList<>();
+
+        for ( final List<String> chunk : DhisPagingUtils.createChunks( ids, DhisPagingUtils.MAX_IDS_PER_REQUEST ) )
+        {
+            final ResponseEntity<DhisEvents> response = restTemplate.getForEntity( FIND_IDS_URI, DhisEvents.class, String.join( ";", chunk ) );
+            result.addAll( Objects.requireNonNull( response.getBody() ).getEvents() );
+        }
+
+        return result;
+    }
+
     @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
     @Nonnull
     @Override
@@ -366,18 +395,33 @@ public class EventServiceImpl implements EventService, LocalDhisRepositoryPersis
 
     @Nonnull
     @Override
-    public Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
+    public Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nullable PolledItemSlicing slicing, @Nullable PolledResourceStaging staging, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
     {
-        final EventPolledItemRetriever eventPolledItemRetriever = new EventPolledItemRetriever( restTemplate, toleranceMillis, maxSearchCount, zoneId );
         Instant result = Instant.now();
-        for ( final String programId : polledProgramRetriever.findAllPolledProgramIds() )
+        for ( final PollTask task : createPollTasks( group, lastUpdated, toleranceMillis, maxSearchCount, slicing, staging, excludedStoredBy ) )
         {
-            final Instant currentResult = eventPolledItemRetriever.poll( lastUpdated, excludedStoredBy, consumer, Collections.singletonList( programId ) );
+            final Instant currentResult = task.poll( consumer );
             result = ObjectUtils.min( result, currentResult );
         }
         return result;
     }
 
+    @Nonnull
+    @Override
+    public List<PollTask> createPollTasks( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nullable PolledItemSlicing slicing, @Nullable PolledResourceStaging staging, @Nonnull Set<String> excludedStoredBy )
+    {
+        final String orgUnitId = group.getOrgUnitId();
+
+        // the events of each program are polled independently and may be polled concurrently
+        return polledProgramRetriever.findAllPolledProgramIds().stream()
+            .filter( programId -> ( group.getProgramId() == null ) || group.getProgramId().equals( programId ) ).map( programId -> (PollTask) consumer -> {
+                final EventPolledItemRetriever eventPolledItemRetriever = new EventPolledItemRetriever( restTemplate, toleranceMillis, maxSearchCount, zoneId, orgUnitId != null, staging );
+                eventPolledItemRetriever.setSlicing( slicing );
+                return eventPolledItemRetriever.poll( lastUpdated, excludedStoredBy, consumer,
+                    ( orgUnitId == null ) ? Collections.singletonList( programId ) : Arrays.asList( orgUnitId, programId ) );
+            } ).collect( Collectors.toList() );
+    }
+
     @Nonnull
     protected Event create( @Nonnull Event event )
     {
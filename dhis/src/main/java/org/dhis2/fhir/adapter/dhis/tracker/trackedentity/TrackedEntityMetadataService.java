@@ -32,6 +32,7 @@ import org.dhis2.fhir.adapter.dhis.model.Reference;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.impl.RequiredValues;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 import java.util.Optional;
 
 public interface TrackedEntityMetadataService
@@ -42,6 +43,9 @@ public interface TrackedEntityMetadataService
     @Nonnull
     Optional<? extends TrackedEntityType> findTypeByReferenceRefreshed( @Nonnull Reference reference );
 
+    @Nonnull
+    List<? extends TrackedEntityType> findAllTypes();
+
     @Nonnull
     TrackedEntityAttributes getAttributes();
 
@@ -32,6 +32,7 @@ import org.dhis2.fhir.adapter.dhis.model.DhisResourceResult;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
 import org.dhis2.fhir.adapter.dhis.service.DhisPolledService;
 import org.dhis2.fhir.adapter.dhis.service.DhisService;
+import org.dhis2.fhir.adapter.dhis.util.DhisPagingUtils;
 
 import javax.annotation.Nonnull;
 import java.util.Collection;
@@ -56,6 +57,42 @@ public interface TrackedEntityService extends DhisService<TrackedEntityInstance>
 
     boolean isLocal( @Nonnull String id );
 
+    /**
+     * Finds the tracked entity instances with the specified IDs with a single request.
+     * The number of specified IDs should therefore be limited by the caller. Tracked
+     * entity instances that cannot be found or that are not accessible are not included
+     * in the result. The result is not stored in the local repository of the current
+     * request, which allows to invoke this method on any thread.
+     *
+     * @param ids the IDs of the tracked entity instances that should be returned.
+     * @return the found tracked entity instances.
+     */
+    @Nonnull
+    Collection<TrackedEntityInstance> findAllByIdsRefreshed( @Nonnull Collection<String> ids );
+
+    /**
+     * Finds the tracked entity instances with the specified IDs. Tracked entity instances
+     * that are neither available in the local repository of the current request nor in
+     * the DHIS2 cache are retrieved with one request per {@value DhisPagingUtils#MAX_IDS_PER_REQUEST}
+     * IDs. These tracked entity instances are cached like the results of {@link #findOneById(String)}.
+     * Tracked entity instances that cannot be found are not included in the result.
+     *
+     * @param ids the IDs of the tracked entity instances that should be returned.
+     * @return the found tracked entity instances.
+     */
+    @Nonnull
+    Collection<TrackedEntityInstance> findAllByIds( @Nonnull Collection<String> ids );
+
+    /**
+     * Registers the specified tracked entity instances that have been loaded from DHIS2
+     * in the local repository of the current request (if any). Subsequent lookups by ID
+     * of the current request will use these tracked entity instances.
+     *
+     * @param trackedEntityInstances the tracked entity instances that have been loaded.
+     * @return the number of tracked entity instances that have been registered.
+     */
+    int registerFound( @Nonnull Collection<TrackedEntityInstance> trackedEntityInstances );
+
     @Nonnull
     Collection<TrackedEntityInstance> findByAttrValueRefreshed( @Nonnull String typeId,
         @Nonnull String attributeId, @Nonnull String value, int maxResult );
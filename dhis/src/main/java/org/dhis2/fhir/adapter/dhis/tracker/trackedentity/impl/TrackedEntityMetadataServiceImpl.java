@@ -45,8 +45,10 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 public class TrackedEntityMetadataServiceImpl implements TrackedEntityMetadataService
@@ -61,6 +63,8 @@ public class TrackedEntityMetadataServiceImpl implements TrackedEntityMetadataSe
     protected static final String TRACKED_ENTITY_TYPE_BY_NAME_URI = "/trackedEntityTypes.json?" +
         "paging=false&filter=name:eq:{name}&fields=" + TRACKED_ENTITY_TYPE_FIELDS;
 
+    protected static final String TRACKED_ENTITY_TYPES_URI = "/trackedEntityTypes.json?paging=false&fields=" + TRACKED_ENTITY_TYPE_FIELDS;
+
     protected static final String TRACKED_ENTITY_ATTRIBUTES_URI = "/trackedEntityAttributes.json?paging=false&fields=" + TRACKED_ENTITY_ATTRIBUTE_FIELDS;
 
     protected static final String REQUIRED_VALUE_URI = "/trackedEntityAttributes/{attributeId}/requiredValues.json";
@@ -106,6 +110,15 @@ public class TrackedEntityMetadataServiceImpl implements TrackedEntityMetadataSe
         }
     }
 
+    @HystrixCommand
+    @Nonnull
+    @Override
+    public List<? extends TrackedEntityType> findAllTypes()
+    {
+        return Objects.requireNonNull( restTemplate.getForEntity( TRACKED_ENTITY_TYPES_URI, TrackedEntityTypes.class ).getBody() )
+            .getTrackedEntityTypes().stream().map( ImmutableTrackedEntityType::new ).collect( Collectors.toList() );
+    }
+
     @HystrixCommand
     @Cacheable( value = "trackedEntityTypes", cacheManager = "dhisCacheManager" )
     @Nonnull
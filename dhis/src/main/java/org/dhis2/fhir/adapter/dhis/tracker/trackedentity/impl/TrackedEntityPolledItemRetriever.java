@@ -28,8 +28,13 @@ package org.dhis2.fhir.adapter.dhis.tracker.trackedentity.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
-import org.dhis2.fhir.adapter.dhis.poll.AbstractPolledItemRetriever;
+import org.dhis2.fhir.adapter.dhis.poll.AbstractStagingPolledItemRetriever;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Nonnull;
@@ -37,6 +42,7 @@ import javax.annotation.Nullable;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -45,13 +51,51 @@ import java.util.stream.Collectors;
  *
  * @author volsch
  */
-public class TrackedEntityPolledItemRetriever extends AbstractPolledItemRetriever<TrackedEntityPolledItems, TrackedEntityPolledItem>
+public class TrackedEntityPolledItemRetriever extends AbstractStagingPolledItemRetriever<TrackedEntityPolledItems, TrackedEntityPolledItem>
 {
     protected static final String POLL_URI = "/trackedEntityInstances.json?ouMode=ACCESSIBLE&fields=trackedEntityInstance,lastUpdated";
 
+    protected static final String ORG_UNIT_SUBTREE_POLL_URI = "/trackedEntityInstances.json?ouMode=DESCENDANTS&ou={orgUnitId}&fields=trackedEntityInstance,lastUpdated";
+
+    protected static final String FULL_POLL_URI = "/trackedEntityInstances.json?ouMode=ACCESSIBLE&fields=" + TrackedEntityServiceImpl.TEI_FIELDS;
+
+    protected static final String ORG_UNIT_SUBTREE_FULL_POLL_URI = "/trackedEntityInstances.json?ouMode=DESCENDANTS&ou={orgUnitId}&fields=" + TrackedEntityServiceImpl.TEI_FIELDS;
+
     public TrackedEntityPolledItemRetriever( @Nonnull RestTemplate restTemplate, int toleranceMillis, int maxSearchCount, @Nonnull ZoneId zoneId )
     {
-        super( DhisResourceType.TRACKED_ENTITY, restTemplate, POLL_URI, toleranceMillis, maxSearchCount, TrackedEntityPolledItems.class, zoneId );
+        this( restTemplate, toleranceMillis, maxSearchCount, zoneId, false, null );
+    }
+
+    /**
+     * @param orgUnitSubtree <code>true</code> if only the organization unit subtree
+     *                       of which the ID is passed as first variable should be
+     *                       polled, <code>false</code> if all accessible
+     *                       organization units should be polled.
+     * @param staging        the staging that receives the full payload of the polled
+     *                       tracked entity instances or <code>null</code> if only the IDs and last
+     *                       updated timestamps should be polled.
+     */
+    public TrackedEntityPolledItemRetriever( @Nonnull RestTemplate restTemplate, int toleranceMillis, int maxSearchCount, @Nonnull ZoneId zoneId, boolean orgUnitSubtree, @Nullable PolledResourceStaging staging )
+    {
+        super( DhisResourceType.TRACKED_ENTITY, restTemplate, getPollUri( orgUnitSubtree, staging != null ), toleranceMillis, maxSearchCount, TrackedEntityPolledItems.class, zoneId, staging );
+    }
+
+    @Nonnull
+    private static String getPollUri( boolean orgUnitSubtree, boolean fullPayload )
+    {
+        if ( fullPayload )
+        {
+            return orgUnitSubtree ? ORG_UNIT_SUBTREE_FULL_POLL_URI : FULL_POLL_URI;
+        }
+
+        return orgUnitSubtree ? ORG_UNIT_SUBTREE_POLL_URI : POLL_URI;
+    }
+
+    @Nonnull
+    @Override
+    protected Collection<? extends DhisResource> getResources( @Nonnull ObjectMapper objectMapper, @Nonnull JsonNode response ) throws JsonProcessingException
+    {
+        return objectMapper.treeToValue( response, TrackedEntityInstances.class ).getTrackedEntityInstances();
     }
 
     @Nonnull
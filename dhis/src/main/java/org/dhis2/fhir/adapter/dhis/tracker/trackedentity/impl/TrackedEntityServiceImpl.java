@@ -29,14 +29,17 @@ package org.dhis2.fhir.adapter.dhis.tracker.trackedentity.impl;
  */
 
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
 import org.dhis2.fhir.adapter.auth.UnauthorizedException;
 import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.cache.SingleFlight;
 import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
 import org.dhis2.fhir.adapter.dhis.DhisConflictException;
 import org.dhis2.fhir.adapter.dhis.DhisFindException;
 import org.dhis2.fhir.adapter.dhis.DhisImportUnsuccessfulException;
-import org.dhis2.fhir.adapter.dhis.DhisResourceException;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistCallback;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistResult;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistStatus;
@@ -51,6 +54,8 @@ import org.dhis2.fhir.adapter.dhis.model.ImportSummariesWebMessage;
 import org.dhis2.fhir.adapter.dhis.model.ImportSummary;
 import org.dhis2.fhir.adapter.dhis.model.Status;
 import org.dhis2.fhir.adapter.dhis.model.UriFilterApplier;
+import org.dhis2.fhir.adapter.dhis.poll.PolledItemSlicing;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.dhis2.fhir.adapter.dhis.sync.DhisLastUpdated;
 import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
@@ -65,8 +70,11 @@ import org.dhis2.fhir.adapter.dhis.util.DhisPagingUtils;
 import org.dhis2.fhir.adapter.rest.RestTemplateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpEntity;
@@ -85,6 +93,7 @@ import javax.annotation.Nullable;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -109,6 +118,8 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
         "deleted,trackedEntityInstance,trackedEntityType,orgUnit,coordinates,lastUpdated," +
             "attributes[attribute,value,lastUpdated,storedBy]";
 
+    protected static final String CACHE_NAME = "trackedEntityInstances";
+
     protected static final String GENERATE_URI = "/trackedEntityAttributes/{attributeId}/generate.json";
 
     protected static final String CREATE_URI = "/trackedEntityInstances.json?strategy=CREATE";
@@ -121,6 +132,8 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
 
     protected static final String ID_URI = "/trackedEntityInstances/{id}.json?fields=" + TEI_FIELDS;
 
+    protected static final String IDS_URI = "/trackedEntityInstances.json?ouMode=ACCESSIBLE&trackedEntityInstance={ids}&pageSize={maxResult}&fields=" + TEI_FIELDS;
+
     protected static final String LAST_UPDATED_URI = "/trackedEntityInstances/{id}.json?fields=lastUpdated";
 
     protected static final String UPDATE_URI = "/trackedEntityInstances/{id}.json?mergeMode=MERGE";
@@ -138,23 +151,40 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
 
     private final RestTemplate restTemplate;
 
+    private final AuthorizationContext authorizationContext;
+
     private final TrackedEntityMetadataService metadataService;
 
     private final StoredDhisResourceService storedItemService;
 
+    private final CacheManager cacheManager;
+
     private final Instant epochStartInstant = Instant.ofEpochMilli( 0 );
 
     private final ZoneId zoneId = ZoneId.systemDefault();
 
     private final LocalDhisResourceRepositoryTemplate<TrackedEntityInstance> resourceRepositoryTemplate;
 
+    private final SingleFlight singleFlight;
+
     @Autowired
-    public TrackedEntityServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull RequestCacheService requestCacheService,
-        @Nonnull TrackedEntityMetadataService metadataService, @Nonnull StoredDhisResourceService storedItemService )
+    public TrackedEntityServiceImpl( @Nonnull @Qualifier( "userDhis2RestTemplate" ) RestTemplate restTemplate, @Nonnull AuthorizationContext authorizationContext,
+        @Nonnull RequestCacheService requestCacheService, @Nonnull TrackedEntityMetadataService metadataService, @Nonnull StoredDhisResourceService storedItemService, @Nonnull @Qualifier( "dhisCacheManager" ) CacheManager cacheManager,
+        @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
+    {
+        this( restTemplate, authorizationContext, requestCacheService, metadataService, storedItemService, cacheManager, meterRegistry.getIfAvailable() );
+    }
+
+    public TrackedEntityServiceImpl( @Nonnull RestTemplate restTemplate, @Nonnull AuthorizationContext authorizationContext, @Nonnull RequestCacheService requestCacheService,
+        @Nonnull TrackedEntityMetadataService metadataService, @Nonnull StoredDhisResourceService storedItemService, @Nonnull CacheManager cacheManager,
+        @Nullable MeterRegistry meterRegistry )
     {
         this.restTemplate = restTemplate;
+        this.authorizationContext = authorizationContext;
         this.metadataService = metadataService;
         this.storedItemService = storedItemService;
+        this.cacheManager = cacheManager;
+        this.singleFlight = new SingleFlight( CACHE_NAME, meterRegistry );
 
         this.resourceRepositoryTemplate = new LocalDhisResourceRepositoryTemplate<>( TrackedEntityInstance.class, requestCacheService, this );
     }
@@ -203,7 +233,18 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
     @CachePut( key = "{'findOneById', #a0}", cacheManager = "dhisCacheManager", cacheNames = "trackedEntityInstances" )
     public Optional<TrackedEntityInstance> findOneByIdRefreshed( @Nonnull String id )
     {
-        return resourceRepositoryTemplate.findOneById( id, this::_findOneByIdRefreshed );
+        return resourceRepositoryTemplate.findOneById( id, i -> singleFlight.execute( Arrays.asList( "findOneById", getCurrentAuthorization(), i ),
+            () -> _findOneByIdRefreshed( i ), SerializationUtils::clone ) );
+    }
+
+    /**
+     * @return the authorization with which the current thread accesses DHIS2. In-flight
+     * requests must only be shared between callers that use the same authorization.
+     */
+    @Nullable
+    protected String getCurrentAuthorization()
+    {
+        return authorizationContext.getAuthorization().getAuthorization();
     }
 
     @Nullable
@@ -243,6 +284,78 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
         return resourceRepositoryTemplate.isLocal( id );
     }
 
+    @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
+    @Nonnull
+    @Override
+    public Collection<TrackedEntityInstance> findAllByIdsRefreshed( @Nonnull Collection<String> ids )
+    {
+        if ( ids.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        return Objects.requireNonNull( restTemplate.getForEntity( IDS_URI, TrackedEntityInstances.class, String.join( ";", ids ), ids.size() )
+            .getBody() ).getTrackedEntityInstances();
+    }
+
+    @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
+    @Nonnull
+    @Override
+    public Collection<TrackedEntityInstance> findAllByIds( @Nonnull Collection<String> ids )
+    {
+        return resourceRepositoryTemplate.findAllByIds( ids, this::_findAllByIds );
+    }
+
+    @Nonnull
+    protected Collection<TrackedEntityInstance> _findAllByIds( @Nonnull Collection<String> ids )
+    {
+        final Cache cache = cacheManager.getCache( CACHE_NAME );
+        final List<TrackedEntityInstance> result = new ArrayList<>();
+        final List<String> missingIds = new ArrayList<>();
+
+        for ( final String id : ids )
+        {
+            final Cache.ValueWrapper valueWrapper = ( cache == null ) ? null : cache.get( createFindOneByIdCacheKey( id ) );
+
+            if ( valueWrapper == null )
+            {
+                missingIds.add( id );
+            }
+            else if ( valueWrapper.get() != null )
+            {
+                result.add( (TrackedEntityInstance) valueWrapper.get() );
+            }
+        }
+
+        for ( final List<String> chunk : DhisPagingUtils.createChunks( missingIds, DhisPagingUtils.MAX_IDS_PER_REQUEST ) )
+        {
+            for ( final TrackedEntityInstance trackedEntityInstance : findAllByIdsRefreshed( chunk ) )
+            {
+                result.add( trackedEntityInstance );
+
+                // same entry as the one of findOneById
+                if ( cache != null )
+                {
+                    cache.put( createFindOneByIdCacheKey( trackedEntityInstance.getId() ), trackedEntityInstance );
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Nonnull
+    private static Object createFindOneByIdCacheKey( @Nonnull String id )
+    {
+        return Arrays.asList( "findOneById", id );
+    }
+
+    @Override
+    public int registerFound( @Nonnull Collection<TrackedEntityInstance> trackedEntityInstances )
+    {
+        return resourceRepositoryTemplate.found( trackedEntityInstances );
+    }
+
     @HystrixCommand( ignoreExceptions = UnauthorizedException.class )
     @Nonnull
     @Override
@@ -250,7 +363,9 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
     public Collection<TrackedEntityInstance> findByAttrValueRefreshed( @Nonnull String typeId, @Nonnull String attributeId, @Nonnull String value, int maxResult )
     {
         return resourceRepositoryTemplate.find( tei -> Objects.equals( tei.getTypeId(), typeId ) && tei.containsAttribute( attributeId, value ),
-            () -> _findByAttrValueRefreshed( typeId, attributeId, value, maxResult ),
+            () -> singleFlight.execute( Arrays.asList( "findByAttrValue", getCurrentAuthorization(), typeId, attributeId, value, maxResult ),
+                () -> _findByAttrValueRefreshed( typeId, attributeId, value, maxResult ),
+                teis -> teis.stream().map( SerializationUtils::clone ).collect( Collectors.toList() ) ),
             false, "findByAttrValueRefreshed", typeId, attributeId, value, maxResult );
     }
 
@@ -291,9 +406,13 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
 
     @Nonnull
     @Override
-    public Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
+    public Instant poll( @Nonnull DhisSyncGroup group, @Nonnull Instant lastUpdated, int toleranceMillis, int maxSearchCount, @Nullable PolledItemSlicing slicing, @Nullable PolledResourceStaging staging, @Nonnull Set<String> excludedStoredBy, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
     {
-        return new TrackedEntityPolledItemRetriever( restTemplate, toleranceMillis, maxSearchCount, zoneId ).poll( lastUpdated, excludedStoredBy, consumer, null );
+        final TrackedEntityPolledItemRetriever polledItemRetriever = new TrackedEntityPolledItemRetriever( restTemplate, toleranceMillis, maxSearchCount, zoneId, group.getOrgUnitId() != null, staging );
+        polledItemRetriever.setSlicing( slicing );
+
+        return polledItemRetriever.poll( lastUpdated, excludedStoredBy, consumer,
+            ( group.getOrgUnitId() == null ) ? null : Collections.singletonList( group.getOrgUnitId() ) );
     }
 
     @HystrixCommand( ignoreExceptions = { DhisConflictException.class, UnauthorizedException.class } )
@@ -318,8 +437,7 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
             return;
         }
 
-        final DhisSyncGroup syncGroup = storedItemService.findSyncGroupById( DhisSyncGroup.DEFAULT_ID )
-            .orElseThrow( () -> new DhisResourceException( "Could not load default DHIS2 sync group." ) );
+        final List<DhisSyncGroup> syncGroups = storedItemService.findPollingSyncGroups( DhisResourceType.TRACKED_ENTITY );
         final List<TrackedEntityInstance> trackedEntityInstances = resources.stream().sorted( DhisResourceComparator.INSTANCE ).collect( Collectors.toList() );
 
         trackedEntityInstances.forEach( this::clear );
@@ -351,7 +469,7 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
                 trackedEntityInstance.resetNewResource();
                 trackedEntityInstance.setLocal( false );
 
-                storeItem( syncGroup, trackedEntityInstance.getId(), response );
+                storeItem( syncGroups, trackedEntityInstance.getId(), response );
 
                 persistResult = new LocalDhisRepositoryPersistResult( LocalDhisRepositoryPersistStatus.SUCCESS, trackedEntityInstance.getId() );
             }
@@ -486,8 +604,7 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
     @Nonnull
     protected TrackedEntityInstance create( @Nonnull TrackedEntityInstance trackedEntityInstance )
     {
-        final DhisSyncGroup syncGroup = storedItemService.findSyncGroupById( DhisSyncGroup.DEFAULT_ID )
-            .orElseThrow( () -> new DhisResourceException( "Could not load default DHIS2 sync group." ) );
+        final List<DhisSyncGroup> syncGroups = storedItemService.findPollingSyncGroups( DhisResourceType.TRACKED_ENTITY );
         final ResponseEntity<ImportSummariesWebMessage> response;
 
         if ( trackedEntityInstance.getId() == null )
@@ -521,15 +638,14 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
         trackedEntityInstance.resetNewResource();
         trackedEntityInstance.setLocal( false );
 
-        storeItem( syncGroup, trackedEntityInstance.getId(), response );
+        storeItem( syncGroups, trackedEntityInstance.getId(), response );
         return trackedEntityInstance;
     }
 
     @Nonnull
     protected TrackedEntityInstance update( @Nonnull TrackedEntityInstance trackedEntityInstance )
     {
-        final DhisSyncGroup syncGroup = storedItemService.findSyncGroupById( DhisSyncGroup.DEFAULT_ID )
-            .orElseThrow( () -> new DhisResourceException( "Could not load default DHIS2 sync group." ) );
+        final List<DhisSyncGroup> syncGroups = storedItemService.findPollingSyncGroups( DhisResourceType.TRACKED_ENTITY );
 
         final ResponseEntity<ImportSummariesWebMessage> response;
         try
@@ -552,16 +668,18 @@ public class TrackedEntityServiceImpl implements TrackedEntityService, LocalDhis
             throw new DhisImportUnsuccessfulException( "Response indicates an unsuccessful import of tracked entity instance: " + result.getStatus() );
         }
 
-        storeItem( syncGroup, trackedEntityInstance.getId(), response );
+        storeItem( syncGroups, trackedEntityInstance.getId(), response );
         return trackedEntityInstance;
     }
 
-    protected void storeItem( @Nonnull DhisSyncGroup syncGroup, @Nonnull String id, @Nonnull ResponseEntity<?> responseEntity )
+    protected void storeItem( @Nonnull Collection<DhisSyncGroup> syncGroups, @Nonnull String id, @Nonnull ResponseEntity<?> responseEntity )
     {
-        if ( storedItemService.isEnabled() )
+        if ( storedItemService.isEnabled() && !syncGroups.isEmpty() )
         {
-            getProcessedItemInfo( id, responseEntity )
-                .ifPresent( pii -> storedItemService.stored( syncGroup, pii.toIdString( epochStartInstant ) ) );
+            getProcessedItemInfo( id, responseEntity ).ifPresent( pii -> {
+                final String storedId = pii.toIdString( epochStartInstant );
+                syncGroups.forEach( syncGroup -> storedItemService.stored( syncGroup, storedId ) );
+            } );
         }
     }
 
@@ -29,6 +29,9 @@ package org.dhis2.fhir.adapter.dhis.util;
  */
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * DHIS paging utilities.
@@ -37,6 +40,11 @@ import javax.annotation.Nonnull;
  */
 public abstract class DhisPagingUtils
 {
+    /**
+     * The maximum number of IDs that are included in a single request that filters by IDs.
+     */
+    public static final int MAX_IDS_PER_REQUEST = 50;
+
     @Nonnull
     public static DhisPagingQuery createPagingQuery( int from, int max )
     {
@@ -46,6 +54,28 @@ public abstract class DhisPagingUtils
         return new DhisPagingQuery( page, max + resultOffset, resultOffset );
     }
 
+    /**
+     * Splits the specified values into chunks that can be included in separate requests.
+     *
+     * @param values    the values that should be split.
+     * @param chunkSize the maximum number of values of a single chunk.
+     * @param <T>       the concrete type of the values.
+     * @return the chunks in the order of the specified values.
+     */
+    @Nonnull
+    public static <T> List<List<T>> createChunks( @Nonnull Collection<T> values, int chunkSize )
+    {
+        final List<T> list = new ArrayList<>( values );
+        final List<List<T>> chunks = new ArrayList<>();
+
+        for ( int i = 0; i < list.size(); i += chunkSize )
+        {
+            chunks.add( list.subList( i, Math.min( i + chunkSize, list.size() ) ) );
+        }
+
+        return chunks;
+    }
+
     private DhisPagingUtils()
     {
         super();
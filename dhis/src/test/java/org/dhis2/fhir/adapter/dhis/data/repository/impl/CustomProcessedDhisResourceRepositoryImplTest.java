@@ -0,0 +1,149 @@
+package org.dhis2.fhir.adapter.dhis.data.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dhis2.fhir.adapter.data.filter.ItemFilterConfig;
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
+import org.dhis2.fhir.adapter.dhis.data.model.ProcessedDhisResource;
+import org.dhis2.fhir.adapter.dhis.data.model.ProcessedDhisResourceId;
+import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link CustomProcessedDhisResourceRepositoryImpl}.
+ *
+ * @author volsch
+ */
+public class CustomProcessedDhisResourceRepositoryImplTest
+{
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private DatabaseMetaData databaseMetaData;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final DhisSyncGroup group = new DhisSyncGroup();
+
+    private final Instant processedAt = Instant.now();
+
+    private CustomProcessedDhisResourceRepositoryImpl repository;
+
+    @Before
+    public void before() throws Exception
+    {
+        group.setId( UUID.randomUUID() );
+
+        Mockito.when( entityManager.unwrap( Session.class ) ).thenReturn( session );
+        Mockito.when( session.doReturningWork( ArgumentMatchers.any() ) ).thenAnswer( invocation -> invocation.<ReturningWork<?>>getArgument( 0 ).execute( connection ) );
+        Mockito.when( connection.getMetaData() ).thenReturn( databaseMetaData );
+        Mockito.when( databaseMetaData.getDatabaseProductName() ).thenReturn( "PostgreSQL" );
+        Mockito.when( connection.prepareStatement( ArgumentMatchers.anyString() ) ).thenReturn( statement );
+        Mockito.when( statement.executeQuery() ).thenReturn( resultSet );
+
+        repository = new CustomProcessedDhisResourceRepositoryImpl( entityManager, new ItemFilterFactory( new ItemFilterConfig(), (MeterRegistry) null ) );
+    }
+
+    @Test
+    public void processAll() throws Exception
+    {
+        Mockito.when( resultSet.next() ).thenReturn( true, true, false );
+        Mockito.when( resultSet.getString( 1 ) ).thenReturn( "a", "c" );
+
+        final List<Collection<ProcessedDhisResource>> consumed = new ArrayList<>();
+        repository.processAll( group, Arrays.asList( processed( "a" ), processed( "b" ), processed( "c" ), processed( "a" ) ), consumed::add );
+
+        Mockito.verify( connection ).prepareStatement( "INSERT INTO fhir_processed_dhis_resource(dhis_sync_group_id,processed_id,processed_at) " +
+            "VALUES (?,?,?),(?,?,?),(?,?,?) ON CONFLICT DO NOTHING RETURNING processed_id" );
+        Mockito.verify( statement, Mockito.times( 3 ) ).setObject( ArgumentMatchers.anyInt(), ArgumentMatchers.eq( group.getId() ) );
+        Mockito.verify( statement ).setString( 5, "b" );
+        Mockito.verify( statement ).executeQuery();
+        Mockito.verify( entityManager, Mockito.never() ).persist( ArgumentMatchers.any() );
+
+        Assert.assertEquals( 1, consumed.size() );
+        Assert.assertEquals( Arrays.asList( "a", "c" ), consumed.get( 0 ).stream().map( p -> p.getId().getProcessedId() ).collect( Collectors.toList() ) );
+    }
+
+    @Test
+    public void processAllExisting() throws Exception
+    {
+        Mockito.when( resultSet.next() ).thenReturn( false );
+
+        final List<Collection<ProcessedDhisResource>> consumed = new ArrayList<>();
+        repository.processAll( group, Arrays.asList( processed( "a" ), processed( "b" ) ), consumed::add );
+
+        Mockito.verify( statement ).executeQuery();
+        Assert.assertTrue( consumed.isEmpty() );
+    }
+
+    @Nonnull
+    private ProcessedDhisResource processed( @Nonnull String id )
+    {
+        return new ProcessedDhisResource( new ProcessedDhisResourceId( group, id ), processedAt );
+    }
+}
@@ -0,0 +1,174 @@
+package org.dhis2.fhir.adapter.dhis.metadata.model;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DhisSyncGroup}.
+ *
+ * @author volsch
+ */
+public class DhisSyncGroupTest
+{
+    @Test
+    public void isPolledUnrestricted()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+
+        for ( final DhisResourceType resourceType : DhisResourceType.values() )
+        {
+            Assert.assertTrue( group.isPolled( resourceType ) );
+        }
+    }
+
+    @Test
+    public void isPolledResourceType()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+
+        Assert.assertTrue( group.isPolled( DhisResourceType.TRACKED_ENTITY ) );
+        Assert.assertFalse( group.isPolled( DhisResourceType.PROGRAM_STAGE_EVENT ) );
+    }
+
+    @Test
+    public void isPolledProgram()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setProgramId( "EPDyQuoRnXk" );
+
+        Assert.assertTrue( group.isPolled( DhisResourceType.PROGRAM_STAGE_EVENT ) );
+        Assert.assertFalse( group.isPolled( DhisResourceType.TRACKED_ENTITY ) );
+        Assert.assertFalse( group.isPolled( DhisResourceType.ORGANIZATION_UNIT ) );
+    }
+
+    @Test
+    public void isPolledOrgUnit()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setOrgUnitId( "ldXIdLNUNEn" );
+
+        Assert.assertTrue( group.isPolled( DhisResourceType.PROGRAM_STAGE_EVENT ) );
+        Assert.assertTrue( group.isPolled( DhisResourceType.TRACKED_ENTITY ) );
+        Assert.assertFalse( group.isPolled( DhisResourceType.ORGANIZATION_UNIT ) );
+    }
+
+    @Test
+    public void isPolledOrgUnitResourceType()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setOrgUnitId( "ldXIdLNUNEn" );
+        group.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+
+        Assert.assertTrue( group.isPolled( DhisResourceType.TRACKED_ENTITY ) );
+        Assert.assertFalse( group.isPolled( DhisResourceType.PROGRAM_STAGE_EVENT ) );
+    }
+
+    @Test
+    public void overlapsUnrestricted()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setOrgUnitId( "ldXIdLNUNEn" );
+
+        Assert.assertTrue( group.overlaps( other ) );
+        Assert.assertTrue( other.overlaps( group ) );
+    }
+
+    @Test
+    public void overlapsSameResourceType()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+
+        Assert.assertTrue( group.overlaps( other ) );
+    }
+
+    @Test
+    public void overlapsDifferentResourceTypes()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setDhisResourceType( DhisResourceType.PROGRAM_STAGE_EVENT );
+
+        Assert.assertFalse( group.overlaps( other ) );
+    }
+
+    @Test
+    public void overlapsProgramAndOrgUnit()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setProgramId( "EPDyQuoRnXk" );
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setOrgUnitId( "ldXIdLNUNEn" );
+
+        Assert.assertTrue( group.overlaps( other ) );
+        Assert.assertTrue( other.overlaps( group ) );
+    }
+
+    @Test
+    public void overlapsDifferentPrograms()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setProgramId( "EPDyQuoRnXk" );
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setProgramId( "IpHINAT79UW" );
+
+        Assert.assertFalse( group.overlaps( other ) );
+    }
+
+    @Test
+    public void overlapsDifferentOrgUnits()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setOrgUnitId( "ldXIdLNUNEn" );
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setOrgUnitId( "DiszpKrYNg8" );
+
+        Assert.assertFalse( group.overlaps( other ) );
+    }
+
+    @Test
+    public void overlapsOrgUnitAndTrackedEntities()
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setOrgUnitId( "ldXIdLNUNEn" );
+        group.setDhisResourceType( DhisResourceType.PROGRAM_STAGE_EVENT );
+        final DhisSyncGroup other = new DhisSyncGroup();
+        other.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+
+        Assert.assertFalse( group.overlaps( other ) );
+    }
+}
@@ -37,6 +37,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -46,6 +47,9 @@ import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
@@ -71,7 +75,7 @@ public class OrganizationUnitServiceImplTest
         systemRestTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).build();
         userRestTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).build();
         mockServer = MockRestServiceServer.createServer( systemRestTemplate );
-        service = new OrganizationUnitServiceImpl( systemRestTemplate, userRestTemplate );
+        service = new OrganizationUnitServiceImpl( systemRestTemplate, userRestTemplate, new ConcurrentMapCacheManager() );
     }
 
     @Test
@@ -147,4 +151,32 @@ public class OrganizationUnitServiceImplTest
         Optional<OrganizationUnit> ou = service.findMetadataByReference( new Reference( "Freetown", ReferenceType.NAME ) );
         Assert.assertFalse( ou.isPresent() );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findMetadataByReferences() throws IOException
+    {
+        mockServer.expect( requestTo( "http://localhost:8080/api/organisationUnits.json?paging=false&fields=lastUpdated,id,code,name,shortName,displayName,level,openingDate,closedDate,coordinates,leaf,parent%5Bid%5D&filter=code:in:%5BOU_3783%5D" ) )
+            .andExpect( method( HttpMethod.GET ) )
+            .andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/orgunit/impl/organisationUnits.json" ), MediaType.APPLICATION_JSON ) );
+        mockServer.expect( requestTo( "http://localhost:8080/api/organisationUnits.json?paging=false&fields=lastUpdated,id,code,name,shortName,displayName,level,openingDate,closedDate,coordinates,leaf,parent%5Bid%5D&filter=id:in:%5B93783,12345%5D" ) )
+            .andExpect( method( HttpMethod.GET ) )
+            .andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/orgunit/impl/organisationUnits.json" ), MediaType.APPLICATION_JSON ) );
+
+        final List<Reference> references = Arrays.asList( new Reference( "93783", ReferenceType.ID ), new Reference( "12345", ReferenceType.ID ), new Reference( "OU_3783", ReferenceType.CODE ) );
+        Map<Reference, OrganizationUnit> result = service.findMetadataByReferences( references );
+        Assert.assertEquals( 2, result.size() );
+        Assert.assertEquals( "93783", result.get( new Reference( "93783", ReferenceType.ID ) ).getId() );
+        Assert.assertEquals( "93783", result.get( new Reference( "OU_3783", ReferenceType.CODE ) ).getId() );
+        mockServer.verify();
+
+        // found references are cached
+        mockServer.reset();
+        mockServer.expect( requestTo( "http://localhost:8080/api/organisationUnits.json?paging=false&fields=lastUpdated,id,code,name,shortName,displayName,level,openingDate,closedDate,coordinates,leaf,parent%5Bid%5D&filter=id:in:%5B12345%5D" ) )
+            .andExpect( method( HttpMethod.GET ) )
+            .andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/orgunit/impl/emptyOrganisationUnits.json" ), MediaType.APPLICATION_JSON ) );
+
+        result = service.findMetadataByReferences( references );
+        Assert.assertEquals( 2, result.size() );
+        mockServer.verify();
+    }
+}
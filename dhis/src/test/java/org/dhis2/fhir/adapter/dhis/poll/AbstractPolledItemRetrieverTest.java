@@ -0,0 +1,181 @@
+package org.dhis2.fhir.adapter.dhis.poll;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link AbstractPolledItemRetriever}.
+ *
+ * @author volsch
+ */
+public class AbstractPolledItemRetrieverTest
+{
+    private static final ZoneId ZONE_ID = ZoneOffset.UTC;
+
+    private final List<PolledItem> availableItems = new ArrayList<>();
+
+    private final AtomicInteger currentRequests = new AtomicInteger();
+
+    private final AtomicInteger maxCurrentRequests = new AtomicInteger();
+
+    private ExecutorService executorService;
+
+    private Instant lastUpdated;
+
+    @Before
+    public void before()
+    {
+        executorService = Executors.newFixedThreadPool( 4 );
+        lastUpdated = Instant.now().minus( 1, ChronoUnit.HOURS );
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            final PolledItem item = new PolledItem();
+            item.setId( "item" + i );
+            item.setLastUpdated( LocalDateTime.ofInstant( lastUpdated.plusSeconds( i * 70 ), ZONE_ID ) );
+            item.setStoredBy( (i % 10 == 0) ? "excluded" : "admin" );
+            availableItems.add( item );
+        }
+    }
+
+    @After
+    public void after()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void pollSliced()
+    {
+        final List<ProcessedItemInfo> expected = new ArrayList<>();
+        new TestPolledItemRetriever().poll( lastUpdated, Collections.singleton( "excluded" ), expected::addAll, null );
+        Assert.assertEquals( 45, expected.size() );
+
+        final TestPolledItemRetriever retriever = new TestPolledItemRetriever();
+        retriever.setSlicing( new PolledItemSlicing( 5 * 60_000, 2, executorService ) );
+        final List<ProcessedItemInfo> consumed = new ArrayList<>();
+        final Instant begin = Instant.now();
+        final Instant result = retriever.poll( lastUpdated, Collections.singleton( "excluded" ), consumed::addAll, null );
+
+        Assert.assertEquals( expected, consumed );
+        Assert.assertFalse( result.isBefore( begin ) );
+        Assert.assertFalse( result.isAfter( Instant.now() ) );
+        Assert.assertTrue( maxCurrentRequests.get() <= 2 );
+    }
+
+    @Test
+    public void pollSlicedOrdered()
+    {
+        final TestPolledItemRetriever retriever = new TestPolledItemRetriever();
+        retriever.setSlicing( new PolledItemSlicing( 60_000, 3, executorService ) );
+        retriever.setMaxConsumedSize( 4 );
+        final List<ProcessedItemInfo> consumed = new ArrayList<>();
+        retriever.poll( lastUpdated, Collections.emptySet(), items -> {
+            Assert.assertTrue( items.size() <= 4 );
+            consumed.addAll( items );
+        }, null );
+
+        Assert.assertEquals( 50, consumed.size() );
+        Assert.assertEquals( consumed.stream().sorted( Comparator.comparing( ProcessedItemInfo::getLastUpdated ) ).collect( Collectors.toList() ), consumed );
+        Assert.assertTrue( maxCurrentRequests.get() <= 3 );
+    }
+
+    @Test( expected = PolledItemRetrieverException.class )
+    public void pollSlicedFailure()
+    {
+        for ( int i = 0; i < 20; i++ )
+        {
+            final PolledItem item = new PolledItem();
+            item.setId( "same" + i );
+            item.setLastUpdated( LocalDateTime.ofInstant( lastUpdated.plusSeconds( 10 * 60 ), ZONE_ID ) );
+            availableItems.add( item );
+        }
+
+        final TestPolledItemRetriever retriever = new TestPolledItemRetriever();
+        retriever.setSlicing( new PolledItemSlicing( 5 * 60_000, 2, executorService ) );
+        retriever.poll( lastUpdated, Collections.emptySet(), items -> {
+        }, null );
+    }
+
+    protected class TestPolledItemRetriever extends AbstractPolledItemRetriever<PolledItems<PolledItem>, PolledItem>
+    {
+        @SuppressWarnings( "unchecked" )
+        public TestPolledItemRetriever()
+        {
+            super( DhisResourceType.TRACKED_ENTITY, Mockito.mock( RestTemplate.class ), "/test", 0, 10, (Class<PolledItems<PolledItem>>) (Class<?>) PolledItems.class, ZONE_ID );
+        }
+
+        @Nonnull
+        @Override
+        protected PolledItems<PolledItem> getPolledItems( @Nonnull Instant fromLastUpdated, @Nullable Instant currentToLastUpdated, int page, @Nullable List<Object> variables )
+        {
+            maxCurrentRequests.accumulateAndGet( currentRequests.incrementAndGet(), Math::max );
+            try
+            {
+                final LocalDateTime from = LocalDateTime.ofInstant( fromLastUpdated, ZONE_ID );
+                final LocalDateTime to = (currentToLastUpdated == null) ? null : LocalDateTime.ofInstant( currentToLastUpdated, ZONE_ID );
+                final List<PolledItem> items = availableItems.stream()
+                    .filter( i -> !i.getLastUpdated().isBefore( from ) && ((to == null) || !i.getLastUpdated().isAfter( to )) )
+                    .sorted( Comparator.comparing( PolledItem::getLastUpdated ).reversed() )
+                    .skip( (page - 1) * 10L ).limit( 10 ).collect( Collectors.toList() );
+                final PolledItems<PolledItem> polledItems = new PolledItems<>();
+                polledItems.setItems( items );
+                return polledItems;
+            }
+            finally
+            {
+                currentRequests.decrementAndGet();
+            }
+        }
+    }
+}
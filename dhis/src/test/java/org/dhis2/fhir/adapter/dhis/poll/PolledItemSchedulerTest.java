@@ -0,0 +1,131 @@
+package org.dhis2.fhir.adapter.dhis.poll;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link PolledItemScheduler}.
+ *
+ * @author volsch
+ */
+public class PolledItemSchedulerTest
+{
+    private final ExecutorService executorService = Executors.newFixedThreadPool( 2 );
+
+    @After
+    public void after()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void pollConcurrently()
+    {
+        final PolledItemScheduler scheduler = new PolledItemScheduler( 2, executorService );
+        final Thread callerThread = Thread.currentThread();
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final Instant lastUpdated = Instant.now().minusSeconds( 60 );
+        final List<ProcessedItemInfo> consumed = new ArrayList<>();
+
+        final Instant result = scheduler.poll( Arrays.asList(
+            consumer -> {
+                await( started );
+                consumer.accept( Collections.singletonList( new ProcessedItemInfo( "a", null, null, false ) ) );
+                return lastUpdated;
+            },
+            consumer -> {
+                await( started );
+                consumer.accept( Collections.singletonList( new ProcessedItemInfo( "b", null, null, false ) ) );
+                return Instant.now();
+            } ), items -> {
+            Assert.assertSame( callerThread, Thread.currentThread() );
+            consumed.addAll( items );
+        } );
+
+        Assert.assertEquals( lastUpdated, result );
+        Assert.assertEquals( 2, consumed.size() );
+    }
+
+    @Test
+    public void pollSequentially()
+    {
+        final PolledItemScheduler scheduler = new PolledItemScheduler( 1, executorService );
+        final Thread callerThread = Thread.currentThread();
+        final Instant lastUpdated = Instant.now().minusSeconds( 60 );
+
+        final Instant result = scheduler.poll( Arrays.asList(
+            consumer -> {
+                Assert.assertSame( callerThread, Thread.currentThread() );
+                return Instant.now();
+            },
+            consumer -> lastUpdated ), items -> Assert.fail( "No items expected." ) );
+
+        Assert.assertEquals( lastUpdated, result );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void pollFailure()
+    {
+        final PolledItemScheduler scheduler = new PolledItemScheduler( 2, executorService );
+
+        scheduler.poll( Arrays.asList(
+            consumer -> {
+                throw new IllegalStateException( "Test" );
+            },
+            consumer -> Instant.now() ), items -> {
+        } );
+    }
+
+    private static void await( CountDownLatch latch )
+    {
+        latch.countDown();
+        try
+        {
+            Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+        }
+        catch ( InterruptedException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.dhis2.fhir.adapter.dhis.sync.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.data.processor.DataProcessorItemRetriever;
+import org.dhis2.fhir.adapter.dhis.data.repository.ProcessedDhisResourceRepository;
+import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
+import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroupUpdate;
+import org.dhis2.fhir.adapter.dhis.metadata.repository.DhisSyncGroupRepository;
+import org.dhis2.fhir.adapter.dhis.metadata.repository.DhisSyncGroupUpdateRepository;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.security.SystemAuthenticationToken;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Unit tests for {@link DhisSyncProcessorImpl}.
+ *
+ * @author volsch
+ */
+public class DhisSyncProcessorImplTest
+{
+    @Mock
+    private JmsTemplate groupQueueJmsTemplate;
+
+    @Mock
+    private DhisSyncGroupUpdateRepository dhisSyncGroupUpdateRepository;
+
+    @Mock
+    private StoredDhisResourceService storedItemService;
+
+    @Mock
+    private ProcessedDhisResourceRepository processedItemRepository;
+
+    @Mock
+    private JmsTemplate itemQueueJmsTemplate;
+
+    @Mock
+    private PlatformTransactionManager platformTransactionManager;
+
+    @Mock
+    private SystemAuthenticationToken systemAuthenticationToken;
+
+    @Mock
+    private DhisSyncGroupRepository dhisSyncGroupRepository;
+
+    @Mock
+    private DataProcessorItemRetriever<DhisSyncGroup> dataProcessorItemRetriever;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final DhisSyncProcessorConfig processorConfig = new DhisSyncProcessorConfig();
+
+    private DhisSyncProcessorImpl processor;
+
+    @Before
+    public void before()
+    {
+        processor = new DhisSyncProcessorImpl( groupQueueJmsTemplate, dhisSyncGroupUpdateRepository, storedItemService, processedItemRepository, itemQueueJmsTemplate,
+            platformTransactionManager, systemAuthenticationToken, processorConfig, dhisSyncGroupRepository, dataProcessorItemRetriever, new ProcessingMetrics( new SimpleMeterRegistry() ) );
+    }
+
+    @Test
+    public void initializeUpdate()
+    {
+        final DhisSyncGroup group = createGroup( UUID.randomUUID() );
+        final DhisSyncGroupUpdate defaultUpdate = new DhisSyncGroupUpdate();
+        defaultUpdate.setLastUpdated( Instant.parse( "2019-06-12T10:11:32.123Z" ) );
+        Mockito.doReturn( false ).when( dhisSyncGroupUpdateRepository ).existsById( Mockito.eq( group.getId() ) );
+        Mockito.doReturn( Optional.of( defaultUpdate ) ).when( dhisSyncGroupUpdateRepository ).findById( Mockito.eq( DhisSyncGroup.DEFAULT_ID ) );
+
+        processor.initializeUpdate( group );
+
+        final ArgumentCaptor<DhisSyncGroupUpdate> captor = ArgumentCaptor.forClass( DhisSyncGroupUpdate.class );
+        Mockito.verify( dhisSyncGroupUpdateRepository ).save( captor.capture() );
+        Assert.assertSame( group, captor.getValue().getGroup() );
+        Assert.assertEquals( Instant.EPOCH, captor.getValue().getLastRequested() );
+        Assert.assertEquals( Instant.parse( "2019-06-12T10:11:32.123Z" ), captor.getValue().getLastUpdated() );
+    }
+
+    @Test
+    public void initializeUpdateExisting()
+    {
+        final DhisSyncGroup group = createGroup( UUID.randomUUID() );
+        Mockito.doReturn( true ).when( dhisSyncGroupUpdateRepository ).existsById( Mockito.eq( group.getId() ) );
+
+        processor.initializeUpdate( group );
+
+        Mockito.verify( dhisSyncGroupUpdateRepository, Mockito.never() ).save( Mockito.any() );
+    }
+
+    @Test
+    public void initializeUpdateDefault()
+    {
+        processor.initializeUpdate( createGroup( DhisSyncGroup.DEFAULT_ID ) );
+
+        Mockito.verifyZeroInteractions( dhisSyncGroupUpdateRepository );
+    }
+
+    @Test
+    public void initializeUpdateConcurrently()
+    {
+        final DhisSyncGroup group = createGroup( UUID.randomUUID() );
+        Mockito.doReturn( false ).when( dhisSyncGroupUpdateRepository ).existsById( Mockito.eq( group.getId() ) );
+        Mockito.doReturn( Optional.empty() ).when( dhisSyncGroupUpdateRepository ).findById( Mockito.eq( DhisSyncGroup.DEFAULT_ID ) );
+        Mockito.doThrow( new DataIntegrityViolationException( "Duplicate key" ) ).when( dhisSyncGroupUpdateRepository ).save( Mockito.any( DhisSyncGroupUpdate.class ) );
+
+        processor.initializeUpdate( group );
+
+        Mockito.verify( dhisSyncGroupUpdateRepository ).save( Mockito.any( DhisSyncGroupUpdate.class ) );
+    }
+
+    @Test
+    public void getPolledGroupsDefaultPrecedence()
+    {
+        final DhisSyncGroup shard = createGroup( UUID.fromString( "00000000-05d9-4cdd-96a8-ed742087d469" ) );
+        shard.setOrgUnitId( "ldXIdLNUNEn" );
+        final DhisSyncGroup defaultGroup = createGroup( DhisSyncGroup.DEFAULT_ID );
+
+        Assert.assertEquals( Collections.singletonList( defaultGroup ), processor.getPolledGroups( Arrays.asList( shard, defaultGroup ) ) );
+    }
+
+    @Test
+    public void getPolledGroupsOverlapping()
+    {
+        final DhisSyncGroup trackedEntities = createGroup( UUID.randomUUID() );
+        trackedEntities.setDhisResourceType( DhisResourceType.TRACKED_ENTITY );
+        final DhisSyncGroup program1 = createGroup( UUID.randomUUID() );
+        program1.setProgramId( "EPDyQuoRnXk" );
+        final DhisSyncGroup program2 = createGroup( UUID.randomUUID() );
+        program2.setProgramId( "IpHINAT79UW" );
+        final DhisSyncGroup orgUnit = createGroup( UUID.randomUUID() );
+        orgUnit.setOrgUnitId( "ldXIdLNUNEn" );
+
+        Assert.assertEquals( Arrays.asList( trackedEntities, program1, program2 ), processor.getPolledGroups( Arrays.asList( trackedEntities, program1, program2, orgUnit ) ) );
+    }
+
+    @Test
+    public void processOverlapping()
+    {
+        final DhisSyncGroup defaultGroup = createGroup( DhisSyncGroup.DEFAULT_ID );
+        final DhisSyncGroup shard = createGroup( UUID.randomUUID() );
+        shard.setProgramId( "EPDyQuoRnXk" );
+        Mockito.doReturn( Arrays.asList( defaultGroup, shard ) ).when( dhisSyncGroupRepository ).findAllEnabledCached();
+
+        processor.process();
+
+        Mockito.verify( dhisSyncGroupUpdateRepository ).requested( Mockito.same( defaultGroup ), Mockito.eq( processorConfig.getRequestRateMillis() ) );
+        Mockito.verify( dhisSyncGroupUpdateRepository, Mockito.never() ).requested( Mockito.same( shard ), Mockito.anyInt() );
+        Mockito.verify( dhisSyncGroupUpdateRepository, Mockito.never() ).existsById( Mockito.eq( shard.getId() ) );
+    }
+
+    private static DhisSyncGroup createGroup( UUID id )
+    {
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setId( id );
+        return group;
+    }
+}
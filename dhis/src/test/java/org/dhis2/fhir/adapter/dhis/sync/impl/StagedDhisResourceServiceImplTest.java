@@ -0,0 +1,108 @@
+package org.dhis2.fhir.adapter.dhis.sync.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+/**
+ * Unit tests for {@link StagedDhisResourceServiceImpl}.
+ *
+ * @author volsch
+ */
+public class StagedDhisResourceServiceImplTest
+{
+    private final DhisSyncProcessorConfig processorConfig = new DhisSyncProcessorConfig();
+
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+
+    private final ZonedDateTime lastUpdated = ZonedDateTime.parse( "2019-06-12T10:11:32.123Z" );
+
+    private StagedDhisResourceServiceImpl service;
+
+    @Before
+    public void before()
+    {
+        service = new StagedDhisResourceServiceImpl( processorConfig, cacheManager );
+    }
+
+    @Test
+    public void isEnabled()
+    {
+        Assert.assertFalse( service.isEnabled() );
+        processorConfig.setPollFullPayload( true );
+        Assert.assertTrue( service.isEnabled() );
+    }
+
+    @Test
+    public void findStaged()
+    {
+        final Event event = createEvent();
+        service.stage( event );
+
+        final Optional<DhisResource> staged = service.findStaged( event.getResourceId(), lastUpdated.toInstant() );
+        Assert.assertTrue( staged.isPresent() );
+        Assert.assertSame( event, staged.get() );
+        Assert.assertFalse( service.findStaged( event.getResourceId(), lastUpdated.toInstant() ).isPresent() );
+    }
+
+    @Test
+    public void findStagedOtherVersion()
+    {
+        final Event event = createEvent();
+        service.stage( event );
+
+        Assert.assertFalse( service.findStaged( event.getResourceId(), lastUpdated.minusSeconds( 1 ).toInstant() ).isPresent() );
+        Assert.assertTrue( service.findStaged( event.getResourceId(), lastUpdated.toInstant() ).isPresent() );
+    }
+
+    @Test
+    public void stageDeleted()
+    {
+        final Event event = createEvent();
+        event.setDeleted( true );
+        service.stage( event );
+
+        Assert.assertFalse( service.findStaged( event.getResourceId(), lastUpdated.toInstant() ).isPresent() );
+    }
+
+    private Event createEvent()
+    {
+        final Event event = new Event( "jShdkweusi2" );
+        event.setLastUpdated( lastUpdated );
+        return event;
+    }
+}
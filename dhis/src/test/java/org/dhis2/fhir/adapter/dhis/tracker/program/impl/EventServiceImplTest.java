@@ -33,10 +33,15 @@ import org.apache.commons.io.IOUtils;
 import org.dhis2.fhir.adapter.cache.RequestCacheContext;
 import org.dhis2.fhir.adapter.cache.RequestCacheService;
 import org.dhis2.fhir.adapter.cache.impl.RequestCacheServiceImpl;
+import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryContainer;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryTemplate;
 import org.dhis2.fhir.adapter.dhis.local.impl.LocalDhisResourceRepositoryContainerImpl;
+import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.dhis.model.WritableDataValue;
+import org.dhis2.fhir.adapter.dhis.poll.PolledResourceStaging;
 import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EventService;
 import org.dhis2.fhir.adapter.dhis.tracker.program.EventStatus;
@@ -48,7 +53,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.springframework.boot.web.client.RestTemplateBuilder;
@@ -62,8 +69,12 @@ import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -249,6 +260,30 @@ public class EventServiceImplTest
         Assert.assertEquals( new Location( 64.89767, -86.78866 ), ou.get().getCoordinate() );
     }
 
+    @Test
+    public void findAllByIds() throws IOException
+    {
+        final List<String> ids = new ArrayList<>();
+        ids.add( "jShdkweusi2" );
+        ids.add( "jShdkweusi3" );
+
+        for ( int i = 0; i < 49; i++ )
+        {
+            ids.add( "jShdkwe" + ( 1000 + i ) );
+        }
+
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.startsWith( "http://localhost:8080/api/events.json?event=jShdkweusi2;jShdkweusi3;jShdkwe1000;" ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/events.json" ), MediaType.APPLICATION_JSON ) );
+        mockServer.expect( ExpectedCount.once(), requestTo( "http://localhost:8080/api/events.json?event=jShdkwe1048&fields=deleted,event,orgUnit,program,enrollment,trackedEntityInstance,programStage,status," +
+            "eventDate,dueDate,coordinate,lastUpdated,dataValues%5BdataElement,value,providedElsewhere,lastUpdated,storedBy%5D&skipPaging=true" ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( "{\"events\":[]}", MediaType.APPLICATION_JSON ) );
+
+        final Collection<Event> events = service.findAllByIds( ids );
+        Assert.assertEquals( 2, events.size() );
+
+        mockServer.verify();
+    }
+
     @Test
     public void findOneByIdNotFound()
     {
@@ -429,4 +464,64 @@ public class EventServiceImplTest
 
         mockServer.verify();
     }
+
+    @Test
+    public void pollOrgUnitSubtree()
+    {
+        Mockito.doReturn( Arrays.asList( "kgdyunhUgg", "EPDyQuoRnXk" ) ).when( polledProgramRetriever ).findAllPolledProgramIds();
+
+        final Instant lastUpdated = Instant.now().minus( 1, ChronoUnit.HOURS );
+        final String itemLastUpdated = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format( LocalDateTime.ofInstant( lastUpdated.plus( 10, ChronoUnit.MINUTES ), ZoneId.systemDefault() ) );
+        final String response = "{\"events\":[{\"event\":\"jShdkweusi2\",\"lastUpdated\":\"" + itemLastUpdated + "\",\"deleted\":false,\"storedBy\":\"admin\"}]}";
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.startsWith(
+            "http://localhost:8080/api/events.json?ouMode=DESCENDANTS&ou=ldXIdLNUNEn&fields=event,lastUpdated,deleted,storedBy&program=kgdyunhUgg&includeDeleted=true&lastUpdatedStartDate=" ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( response, MediaType.APPLICATION_JSON ) );
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.startsWith(
+            "http://localhost:8080/api/events.json?ouMode=DESCENDANTS&ou=ldXIdLNUNEn&fields=event,lastUpdated,deleted,storedBy&program=kgdyunhUgg&includeDeleted=true&lastUpdatedStartDate=" ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( "{\"events\":[]}", MediaType.APPLICATION_JSON ) );
+
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setOrgUnitId( "ldXIdLNUNEn" );
+        group.setProgramId( "kgdyunhUgg" );
+        final List<ProcessedItemInfo> consumed = new ArrayList<>();
+        service.poll( group, lastUpdated, 0, 100, null, null, Collections.emptySet(), consumed::addAll );
+
+        Assert.assertEquals( 1, consumed.size() );
+        Assert.assertEquals( DhisResourceId.toString( DhisResourceType.PROGRAM_STAGE_EVENT, "jShdkweusi2" ), consumed.get( 0 ).getId() );
+        mockServer.verify();
+    }
+
+    @Test
+    public void pollFullPayload()
+    {
+        Mockito.doReturn( Collections.singletonList( "kgdyunhUgg" ) ).when( polledProgramRetriever ).findAllPolledProgramIds();
+
+        final Instant lastUpdated = Instant.now().minus( 1, ChronoUnit.HOURS );
+        final String itemLastUpdated = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format( LocalDateTime.ofInstant( lastUpdated.plus( 10, ChronoUnit.MINUTES ), ZoneId.systemDefault() ) );
+        final String response = "{\"events\":[{\"event\":\"jShdkweusi2\",\"lastUpdated\":\"" + itemLastUpdated + "\",\"deleted\":false,\"storedBy\":\"admin\"," +
+            "\"status\":\"ACTIVE\",\"orgUnit\":\"jhgtJgrygffg\",\"program\":\"kgdyunhUgg\",\"programStage\":\"gjddShhdfgh\",\"enrollment\":\"Jskdsjeua1s\",\"trackedEntityInstance\":\"jdhshdfj\"," +
+            "\"dataValues\":[{\"dataElement\":\"dsf84sfsdf\",\"value\":\"Test 1\",\"providedElsewhere\":false}]}]}";
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.allOf(
+            Matchers.startsWith( "http://localhost:8080/api/events.json?ouMode=ACCESSIBLE&fields=storedBy,deleted,event,orgUnit,program,enrollment,trackedEntityInstance,programStage,status," ),
+            Matchers.containsString( "&program=kgdyunhUgg&includeDeleted=true&lastUpdatedStartDate=" ) ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( response, MediaType.APPLICATION_JSON ) );
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.startsWith( "http://localhost:8080/api/events.json?ouMode=ACCESSIBLE&fields=storedBy," ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( "{\"events\":[]}", MediaType.APPLICATION_JSON ) );
+
+        final PolledResourceStaging staging = Mockito.mock( PolledResourceStaging.class );
+        final List<ProcessedItemInfo> consumed = new ArrayList<>();
+        service.poll( new DhisSyncGroup(), lastUpdated, 0, 100, null, staging, Collections.emptySet(), consumed::addAll );
+
+        Assert.assertEquals( 1, consumed.size() );
+        Assert.assertEquals( DhisResourceId.toString( DhisResourceType.PROGRAM_STAGE_EVENT, "jShdkweusi2" ), consumed.get( 0 ).getId() );
+
+        final ArgumentCaptor<Event> captor = ArgumentCaptor.forClass( Event.class );
+        Mockito.verify( staging ).stage( captor.capture() );
+        Assert.assertEquals( "jShdkweusi2", captor.getValue().getId() );
+        Assert.assertEquals( "gjddShhdfgh", captor.getValue().getProgramStageId() );
+        Assert.assertEquals( lastUpdated.plus( 10, ChronoUnit.MINUTES ), captor.getValue().getLastUpdated().toInstant() );
+        Assert.assertEquals( 1, captor.getValue().getDataValues().size() );
+        Assert.assertEquals( "Test 1", captor.getValue().getDataValues().get( 0 ).getValue() );
+        mockServer.verify();
+    }
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -75,7 +76,7 @@ public class ProgramMetadataServiceImplTest
         systemRestTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).build();
         userRestTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).build();
         mockServer = MockRestServiceServer.createServer( systemRestTemplate );
-        service = new ProgramMetadataServiceImpl( systemRestTemplate, userRestTemplate );
+        service = new ProgramMetadataServiceImpl( systemRestTemplate, userRestTemplate, new ConcurrentMapCacheManager() );
     }
 
     @Test
@@ -29,14 +29,21 @@ package org.dhis2.fhir.adapter.dhis.tracker.trackedentity.impl;
  */
 
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.io.IOUtils;
+import org.dhis2.fhir.adapter.auth.Authorization;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.auth.ThreadLocalAuthorizationContext;
 import org.dhis2.fhir.adapter.cache.RequestCacheContext;
 import org.dhis2.fhir.adapter.cache.RequestCacheService;
 import org.dhis2.fhir.adapter.cache.impl.RequestCacheServiceImpl;
+import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryContainer;
 import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryTemplate;
 import org.dhis2.fhir.adapter.dhis.local.impl.LocalDhisResourceRepositoryContainerImpl;
 import org.dhis2.fhir.adapter.dhis.metadata.model.DhisSyncGroup;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
 import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityMetadataService;
@@ -54,6 +61,7 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -62,14 +70,27 @@ import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
@@ -95,6 +116,10 @@ public class TrackedEntityServiceImplTest
 
     private RequestCacheService requestCacheService;
 
+    private final AuthorizationContext authorizationContext = new ThreadLocalAuthorizationContext();
+
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+
     private WritableTrackedEntityType trackedEntityType;
 
     @Rule
@@ -116,9 +141,9 @@ public class TrackedEntityServiceImplTest
 
         restTemplate = new RestTemplateBuilder().rootUri( "http://localhost:8080/api" ).messageConverters( messageConverter ).build();
         mockServer = MockRestServiceServer.createServer( restTemplate );
-        service = new TrackedEntityServiceImpl( restTemplate, requestCacheService, metadataService, storedDhisResourceService );
+        service = new TrackedEntityServiceImpl( restTemplate, authorizationContext, requestCacheService, metadataService, storedDhisResourceService, cacheManager, new SimpleMeterRegistry() );
 
-        Mockito.doReturn( Optional.of( new DhisSyncGroup() ) ).when( storedDhisResourceService ).findSyncGroupById( Mockito.eq( DhisSyncGroup.DEFAULT_ID ) );
+        Mockito.doReturn( Collections.singletonList( new DhisSyncGroup() ) ).when( storedDhisResourceService ).findPollingSyncGroups( Mockito.eq( DhisResourceType.TRACKED_ENTITY ) );
     }
 
     @Test
@@ -206,6 +231,23 @@ public class TrackedEntityServiceImplTest
         Assert.assertEquals( "pMEnu7BjqMz", ou.get().getOrgUnitId() );
     }
 
+    @Test
+    public void findAllByIds() throws IOException
+    {
+        final TrackedEntityInstance cachedTrackedEntityInstance = new TrackedEntityInstance( trackedEntityType, "Jskdsjeua2s", false );
+        cacheManager.getCache( "trackedEntityInstances" ).put( Arrays.asList( "findOneById", "Jskdsjeua2s" ), cachedTrackedEntityInstance );
+
+        mockServer.expect( ExpectedCount.once(), requestTo( "http://localhost:8080/api/trackedEntityInstances.json?ouMode=ACCESSIBLE&trackedEntityInstance=Jskdsjeua1s;Jskdsjeua3s&pageSize=2&" +
+            "fields=deleted,trackedEntityInstance,trackedEntityType,orgUnit,coordinates,lastUpdated,attributes%5Battribute,value,lastUpdated,storedBy%5D" ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( IOUtils.resourceToByteArray( "/org/dhis2/fhir/adapter/dhis/tracker/program/impl/trackedEntityInstances.json" ), MediaType.APPLICATION_JSON ) );
+
+        final Collection<TrackedEntityInstance> trackedEntityInstances = service.findAllByIds( Arrays.asList( "Jskdsjeua1s", "Jskdsjeua2s", "Jskdsjeua3s", "Jskdsjeua1s" ) );
+        Assert.assertThat( trackedEntityInstances.stream().map( TrackedEntityInstance::getId ).collect( Collectors.toList() ), Matchers.containsInAnyOrder( "Jskdsjeua1s", "Jskdsjeua2s" ) );
+        Assert.assertNotNull( cacheManager.getCache( "trackedEntityInstances" ).get( Arrays.asList( "findOneById", "Jskdsjeua1s" ), TrackedEntityInstance.class ) );
+
+        mockServer.verify();
+    }
+
     @Test
     public void findOneByIdNotFound()
     {
@@ -216,6 +258,41 @@ public class TrackedEntityServiceImplTest
         Assert.assertFalse( ou.isPresent() );
     }
 
+    @Test( timeout = 30_000 )
+    public void findOneByIdRefreshedConcurrentAuthorizations() throws Exception
+    {
+        final RestTemplate userRestTemplate = Mockito.mock( RestTemplate.class );
+        final TrackedEntityService userService = new TrackedEntityServiceImpl( userRestTemplate, authorizationContext, requestCacheService,
+            metadataService, storedDhisResourceService, cacheManager, new SimpleMeterRegistry() );
+
+        final CountDownLatch requestedLatch = new CountDownLatch( 2 );
+        Mockito.doAnswer( invocation -> {
+            // the requests of both callers must be in flight at the same time without being shared
+            requestedLatch.countDown();
+            requestedLatch.await( 5, TimeUnit.SECONDS );
+
+            final TrackedEntityInstance trackedEntityInstance = new TrackedEntityInstance( "Jskdsjeua1s" );
+            trackedEntityInstance.setOrgUnitId( authorizationContext.getAuthorization().getAuthorization() );
+            return trackedEntityInstance;
+        } ).when( userRestTemplate ).getForObject( Mockito.anyString(), Mockito.eq( TrackedEntityInstance.class ), Mockito.eq( "Jskdsjeua1s" ) );
+
+        final ExecutorService executorService = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            final Future<Optional<TrackedEntityInstance>> result1 = executorService.submit( () -> findOneByIdRefreshed( userService, "Basic dXNlcjE6cGFzc3dvcmQ=" ) );
+            final Future<Optional<TrackedEntityInstance>> result2 = executorService.submit( () -> findOneByIdRefreshed( userService, "Basic dXNlcjI6cGFzc3dvcmQ=" ) );
+
+            Assert.assertEquals( "Basic dXNlcjE6cGFzc3dvcmQ=", result1.get().map( TrackedEntityInstance::getOrgUnitId ).orElse( null ) );
+            Assert.assertEquals( "Basic dXNlcjI6cGFzc3dvcmQ=", result2.get().map( TrackedEntityInstance::getOrgUnitId ).orElse( null ) );
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+
+        Mockito.verify( userRestTemplate, Mockito.times( 2 ) ).getForObject( Mockito.anyString(), Mockito.eq( TrackedEntityInstance.class ), Mockito.eq( "Jskdsjeua1s" ) );
+    }
+
     @Test
     public void create() throws IOException
     {
@@ -338,4 +415,41 @@ public class TrackedEntityServiceImplTest
 
         mockServer.verify();
     }
+
+    @Test
+    public void pollOrgUnitSubtree()
+    {
+        final Instant lastUpdated = Instant.now().minus( 1, ChronoUnit.HOURS );
+        final String itemLastUpdated = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format( LocalDateTime.ofInstant( lastUpdated.plus( 10, ChronoUnit.MINUTES ), ZoneId.systemDefault() ) );
+        final String response = "{\"trackedEntityInstances\":[{\"trackedEntityInstance\":\"JeR2Ul4mZfx\",\"lastUpdated\":\"" + itemLastUpdated + "\"}]}";
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.startsWith(
+            "http://localhost:8080/api/trackedEntityInstances.json?ouMode=DESCENDANTS&ou=ldXIdLNUNEn&fields=trackedEntityInstance,lastUpdated&lastUpdatedStartDate=" ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( response, MediaType.APPLICATION_JSON ) );
+        mockServer.expect( ExpectedCount.once(), requestTo( Matchers.startsWith(
+            "http://localhost:8080/api/trackedEntityInstances.json?ouMode=DESCENDANTS&ou=ldXIdLNUNEn&fields=trackedEntityInstance,lastUpdated&lastUpdatedStartDate=" ) ) )
+            .andExpect( method( HttpMethod.GET ) ).andRespond( withSuccess( "{\"trackedEntityInstances\":[]}", MediaType.APPLICATION_JSON ) );
+
+        final DhisSyncGroup group = new DhisSyncGroup();
+        group.setOrgUnitId( "ldXIdLNUNEn" );
+        final List<ProcessedItemInfo> consumed = new ArrayList<>();
+        service.poll( group, lastUpdated, 0, 100, null, null, Collections.emptySet(), consumed::addAll );
+
+        Assert.assertEquals( 1, consumed.size() );
+        Assert.assertEquals( DhisResourceId.toString( DhisResourceType.TRACKED_ENTITY, "JeR2Ul4mZfx" ), consumed.get( 0 ).getId() );
+        mockServer.verify();
+    }
+
+    @Nonnull
+    private Optional<TrackedEntityInstance> findOneByIdRefreshed( @Nonnull TrackedEntityService service, @Nonnull String authorization )
+    {
+        authorizationContext.setAuthorization( new Authorization( authorization ) );
+        try
+        {
+            return service.findOneByIdRefreshed( "Jskdsjeua1s" );
+        }
+        finally
+        {
+            authorizationContext.resetAuthorization();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,235 @@
+package org.dhis2.fhir.adapter.fhir.transform.util.dstu3;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.dhis2.fhir.adapter.fhir.transform.util.FhirBeanTransformerUtils;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.DateType;
+import org.hl7.fhir.dstu3.model.Enumerations;
+import org.hl7.fhir.dstu3.model.InstantType;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.QuestionnaireResponse;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.StringType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Unit tests for {@link FhirBeanTransformerUtils} with FHIR version DSTU3.
+ *
+ * @author volsch
+ */
+public class Dstu3FhirBeanTransformerUtilsTest
+{
+    private final FhirContext fhirContext = FhirContext.forDstu3();
+
+    @Test
+    public void cloneNull()
+    {
+        Assert.assertNull( FhirBeanTransformerUtils.clone( fhirContext, (Patient) null ) );
+    }
+
+    @Test
+    public void clonePatient()
+    {
+        final Patient patient = createPatient();
+        final Patient clonedPatient = assertCloneEquals( patient );
+
+        clonedPatient.getNameFirstRep().setFamily( "Miller" );
+        clonedPatient.getExtension().get( 0 ).setValue( new StringType( "Test" ) );
+        Assert.assertEquals( "Doe", patient.getNameFirstRep().getFamily() );
+        Assert.assertEquals( "Value", ( (StringType) patient.getExtension().get( 0 ).getValue() ).getValue() );
+    }
+
+    @Test
+    public void clonePatientQualifiedId()
+    {
+        final Patient patient = createPatient();
+        patient.setId( "http://localhost/fhir/Patient/123/_history/5" );
+        patient.getMeta().setVersionId( "4" );
+
+        final Patient clonedPatient = assertCloneEquals( patient );
+        Assert.assertEquals( "Patient/123/_history/4", clonedPatient.getIdElement().getValue() );
+    }
+
+    @Test
+    public void clonePatientWithoutMetaVersion()
+    {
+        final Patient patient = createPatient();
+        patient.setId( "Patient/123/_history/5" );
+        patient.setMeta( null );
+
+        final Patient clonedPatient = assertCloneEquals( patient );
+        Assert.assertEquals( "5", clonedPatient.getMeta().getVersionId() );
+    }
+
+    @Test
+    public void clonePatientWithoutId()
+    {
+        final Patient patient = createPatient();
+        patient.setIdElement( null );
+
+        assertCloneEquals( patient );
+    }
+
+    @Test
+    public void clonePatientContained()
+    {
+        final IParser parser = fhirContext.newJsonParser();
+        final Patient patient = createPatient();
+        final Organization organization = new Organization().setName( "Test Organization" );
+        patient.getManagingOrganization().setResource( organization );
+        final Patient parsedPatient = parser.parseResource( Patient.class, parser.encodeResourceToString( patient ) );
+        Assert.assertEquals( 1, parsedPatient.getContained().size() );
+
+        final Patient clonedPatient = assertCloneEquals( parsedPatient );
+        Assert.assertEquals( 1, clonedPatient.getContained().size() );
+        Assert.assertNotSame( parsedPatient.getContained().get( 0 ), clonedPatient.getContained().get( 0 ) );
+        Assert.assertSame( clonedPatient.getContained().get( 0 ), clonedPatient.getManagingOrganization().getResource() );
+    }
+
+    @Test
+    public void clonePatientIncludedReference()
+    {
+        final Patient patient = createPatient();
+        final Organization organization = new Organization().setName( "Test Organization" );
+        organization.setId( "Organization/9" );
+        patient.getManagingOrganization().setReference( "Organization/9" ).setResource( organization );
+
+        final Patient clonedPatient = assertCloneEquals( patient );
+        Assert.assertEquals( "Organization/9", clonedPatient.getManagingOrganization().getReference() );
+        Assert.assertNull( clonedPatient.getManagingOrganization().getResource() );
+    }
+
+    @Test
+    public void clonePatientResolvedReferences()
+    {
+        final Patient patient = createPatient();
+        patient.getManagingOrganization().setResource( new Organization().setName( "Test Organization" ) );
+        final Organization organization = new Organization().setName( "Test Organization 2" );
+        organization.setId( "Organization/9" );
+        patient.addGeneralPractitioner().setResource( organization );
+
+        final Patient clonedPatient = assertCloneEquals( patient );
+        Assert.assertEquals( "Organization/9", clonedPatient.getGeneralPractitionerFirstRep().getReference() );
+        Assert.assertEquals( 1, clonedPatient.getContained().size() );
+    }
+
+    @Test
+    public void cloneQuestionnaireResponse()
+    {
+        final QuestionnaireResponse questionnaireResponse = new QuestionnaireResponse();
+        questionnaireResponse.setId( "QuestionnaireResponse/91" );
+        questionnaireResponse.getMeta().setVersionId( "1" );
+        questionnaireResponse.setStatus( QuestionnaireResponse.QuestionnaireResponseStatus.COMPLETED );
+        questionnaireResponse.setSubject( new Reference( "Patient/123" ) );
+        questionnaireResponse.setQuestionnaire( new Reference( "Questionnaire/4711" ) );
+        for ( int i = 0; i < 20; i++ )
+        {
+            final QuestionnaireResponse.QuestionnaireResponseItemComponent item = questionnaireResponse.addItem().setLinkId( "group" + i );
+            item.addItem().setLinkId( "string" + i ).addAnswer().setValue( new StringType( "Value " + i ) );
+            item.addItem().setLinkId( "date" + i ).addAnswer().setValue( new DateType( "2019-03-" + ( 10 + i ) ) );
+        }
+
+        final QuestionnaireResponse clonedQuestionnaireResponse = assertCloneEquals( questionnaireResponse );
+        clonedQuestionnaireResponse.getItemFirstRep().getItemFirstRep().getAnswerFirstRep().setValue( new StringType( "Changed" ) );
+        Assert.assertEquals( "Value 0", questionnaireResponse.getItemFirstRep().getItemFirstRep().getAnswerFirstRep().getValueStringType().getValue() );
+    }
+
+    @Test
+    public void cloneList()
+    {
+        final Patient patient1 = createPatient();
+        final Patient patient2 = createPatient();
+        patient2.setId( "Patient/456" );
+
+        final List<Patient> clonedPatients = FhirBeanTransformerUtils.clone( fhirContext, Arrays.asList( patient1, patient2 ) );
+        Assert.assertNotNull( clonedPatients );
+        Assert.assertEquals( 2, clonedPatients.size() );
+        Assert.assertTrue( Objects.requireNonNull( FhirBeanTransformerUtils.cloneBySerialization( fhirContext, patient1 ) ).equalsDeep( clonedPatients.get( 0 ) ) );
+        Assert.assertEquals( "Patient/456/_history/2", clonedPatients.get( 1 ).getIdElement().getValue() );
+    }
+
+    @Test
+    public void cloneBundle()
+    {
+        final Bundle bundle = new Bundle();
+        bundle.setId( "Bundle/1" );
+        bundle.setType( Bundle.BundleType.TRANSACTION );
+        for ( int i = 0; i < 10; i++ )
+        {
+            final Patient patient = createPatient();
+            patient.setId( "Patient/" + i );
+            bundle.addEntry().setFullUrl( "http://localhost/fhir/Patient/" + i ).setResource( patient )
+                .getRequest().setMethod( Bundle.HTTPVerb.PUT ).setUrl( "Patient/" + i );
+        }
+
+        final Bundle clonedBundle = assertCloneEquals( bundle );
+        Assert.assertNotSame( bundle.getEntryFirstRep().getResource(), clonedBundle.getEntryFirstRep().getResource() );
+    }
+
+    private <T extends Resource> T assertCloneEquals( T resource )
+    {
+        final IParser parser = fhirContext.newJsonParser();
+        final T expected = FhirBeanTransformerUtils.cloneBySerialization( fhirContext, resource );
+        final T cloned = FhirBeanTransformerUtils.clone( fhirContext, resource );
+
+        Assert.assertNotNull( expected );
+        Assert.assertNotNull( cloned );
+        Assert.assertNotSame( resource, cloned );
+        Assert.assertSame( resource.getClass(), cloned.getClass() );
+        Assert.assertEquals( expected.getIdElement().getValue(), cloned.getIdElement().getValue() );
+        Assert.assertTrue( expected.equalsDeep( cloned ) );
+        Assert.assertEquals( parser.encodeResourceToString( expected ), parser.encodeResourceToString( cloned ) );
+
+        return cloned;
+    }
+
+    private static Patient createPatient()
+    {
+        final Patient patient = new Patient();
+        patient.setId( "Patient/123" );
+        patient.getMeta().setVersionId( "2" ).setLastUpdatedElement( new InstantType( "2019-03-15T10:31:11.123+01:00" ) );
+        patient.addIdentifier().setSystem( "http://example.com/national-id" ).setValue( "4711" );
+        patient.addName().setFamily( "Doe" ).addGiven( "John" ).addGiven( "Michael" );
+        patient.setGender( Enumerations.AdministrativeGender.MALE );
+        patient.setBirthDateElement( new DateType( "2011-05-13" ) );
+        patient.addAddress().addLine( "Main Street 1" ).setCity( "Freetown" ).setCountry( "Sierra Leone" );
+        patient.addExtension().setUrl( "http://example.com/extension" ).setValue( new StringType( "Value" ) );
+        return patient;
+    }
+}
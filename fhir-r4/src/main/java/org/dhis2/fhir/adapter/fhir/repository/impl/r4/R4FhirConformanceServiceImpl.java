@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.repository.impl.r4;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
 import org.dhis2.fhir.adapter.fhir.repository.impl.AbstractFhirConformanceService;
 import org.hl7.fhir.instance.model.api.IBaseConformance;
 import org.hl7.fhir.r4.model.CapabilityStatement;
@@ -44,6 +45,13 @@ import java.util.Set;
 @Service( "r4FhirConformanceService" )
 public class R4FhirConformanceServiceImpl extends AbstractFhirConformanceService
 {
+    @Nonnull
+    @Override
+    public Set<FhirVersion> getFhirVersions()
+    {
+        return FhirVersion.R4_ONLY;
+    }
+
     @Nonnull
     @Override
     protected Class<? extends IBaseConformance> getBaseConformanceClass()
@@ -63,4 +71,12 @@ public class R4FhirConformanceServiceImpl extends AbstractFhirConformanceService
         return restComponent.getResource().stream().filter( r -> resourceType.equals( r.getType() ) )
             .anyMatch( r -> r.getSearchParam().stream().anyMatch( sp -> searchParameterNames.contains( sp.getName() ) ) );
     }
+
+    @Override
+    protected boolean supportConditionalRead( @Nonnull IBaseConformance baseConformance, @Nonnull String resourceType )
+    {
+        final CapabilityStatement capabilityStatement = (CapabilityStatement) baseConformance;
+        return capabilityStatement.getRestFirstRep().getResource().stream().filter( r -> resourceType.equals( r.getType() ) )
+            .anyMatch( r -> (r.getConditionalRead() == CapabilityStatement.ConditionalReadStatus.NOTMATCH) || (r.getConditionalRead() == CapabilityStatement.ConditionalReadStatus.FULLSUPPORT) );
+    }
 }
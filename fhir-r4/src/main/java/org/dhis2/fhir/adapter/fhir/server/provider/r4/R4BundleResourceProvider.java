@@ -43,6 +43,7 @@ import org.dhis2.fhir.adapter.fhir.repository.FhirOperationIssueSeverity;
 import org.dhis2.fhir.adapter.fhir.repository.FhirOperationIssueType;
 import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
 import org.dhis2.fhir.adapter.fhir.server.provider.AbstractBundleResourceProvider;
+import org.dhis2.fhir.adapter.fhir.server.provider.BundlePrefetcher;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.springframework.stereotype.Component;
@@ -60,9 +61,10 @@ import java.util.List;
 public class R4BundleResourceProvider extends AbstractBundleResourceProvider<Bundle>
 {
     public R4BundleResourceProvider( @Nonnull FhirClientResourceRepository fhirClientResourceRepository, @Nonnull FhirClientSystemRepository fhirClientSystemRepository,
-        @Nonnull FhirRepository fhirRepository, @Nonnull DhisRepository dhisRepository, @Nonnull RequestCacheService requestCacheService )
+        @Nonnull FhirRepository fhirRepository, @Nonnull DhisRepository dhisRepository, @Nonnull RequestCacheService requestCacheService,
+        @Nonnull BundlePrefetcher bundlePrefetcher )
     {
-        super( fhirClientResourceRepository, fhirClientSystemRepository, fhirRepository, dhisRepository, requestCacheService );
+        super( fhirClientResourceRepository, fhirClientSystemRepository, fhirRepository, dhisRepository, requestCacheService, bundlePrefetcher );
     }
 
     @Nonnull
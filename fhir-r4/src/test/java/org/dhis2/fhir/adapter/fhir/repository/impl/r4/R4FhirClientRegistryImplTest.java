@@ -0,0 +1,122 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl.r4;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientConfig;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ClientFhirEndpoint;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RequestHeader;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirClientRegistryImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Unit tests for {@link FhirClientRegistryImpl}.
+ *
+ * @author volsch
+ */
+public class R4FhirClientRegistryImplTest
+{
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    private final UUID fhirClientId = UUID.randomUUID();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FhirClientRegistryImpl registry;
+
+    private ClientFhirEndpoint fhirEndpoint;
+
+    @Before
+    public void before()
+    {
+        registry = new FhirClientRegistryImpl( new FhirClientConfig(), meterRegistry );
+
+        fhirEndpoint = new ClientFhirEndpoint();
+        fhirEndpoint.setBaseUrl( "http://localhost:8082/hapi-fhir-jpaserver/fhir" );
+        fhirEndpoint.setUseJsonFormat( true );
+        fhirEndpoint.setHeaders( new ArrayList<>() );
+        fhirEndpoint.getHeaders().add( new RequestHeader( "Authorization", "Bearer 1", true ) );
+    }
+
+    @After
+    public void after()
+    {
+        registry.close();
+    }
+
+    @Test
+    public void getClientReused()
+    {
+        final IGenericClient client = registry.getClient( fhirClientId, fhirContext, fhirEndpoint );
+        Assert.assertEquals( fhirEndpoint.getBaseUrl(), client.getServerBase() );
+        Assert.assertSame( client, registry.getClient( fhirClientId, fhirContext, fhirEndpoint ) );
+        Assert.assertNotSame( client, registry.getClient( UUID.randomUUID(), fhirContext, fhirEndpoint ) );
+    }
+
+    @Test
+    public void getClientChangedEndpoint()
+    {
+        final IGenericClient client = registry.getClient( fhirClientId, fhirContext, fhirEndpoint );
+        fhirEndpoint.getHeaders().get( 0 ).setValue( "Bearer 2" );
+        final IGenericClient changedClient = registry.getClient( fhirClientId, fhirContext, fhirEndpoint );
+        Assert.assertNotSame( client, changedClient );
+        Assert.assertSame( changedClient, registry.getClient( fhirClientId, fhirContext, fhirEndpoint ) );
+    }
+
+    @Test
+    public void invalidate()
+    {
+        final IGenericClient client = registry.getClient( fhirClientId, fhirContext, fhirEndpoint );
+        registry.invalidate( fhirClientId );
+        Assert.assertNotSame( client, registry.getClient( fhirClientId, fhirContext, fhirEndpoint ) );
+    }
+
+    @Test
+    public void connectionStatistics()
+    {
+        registry.getClient( fhirClientId, fhirContext, fhirEndpoint );
+        Assert.assertEquals( 20.0, meterRegistry.get( FhirClientRegistryImpl.CONNECTIONS_GAUGE_NAME )
+            .tag( "fhirClient", fhirClientId.toString() ).tag( FhirClientRegistryImpl.STATE_TAG_NAME, "max" ).gauge().value(), 0 );
+        Assert.assertEquals( 0.0, meterRegistry.get( FhirClientRegistryImpl.CONNECTIONS_GAUGE_NAME )
+            .tag( "fhirClient", fhirClientId.toString() ).tag( FhirClientRegistryImpl.STATE_TAG_NAME, "leased" ).gauge().value(), 0 );
+
+        registry.invalidate( fhirClientId );
+        Assert.assertEquals( 0.0, meterRegistry.get( FhirClientRegistryImpl.CONNECTIONS_GAUGE_NAME )
+            .tag( "fhirClient", fhirClientId.toString() ).tag( FhirClientRegistryImpl.STATE_TAG_NAME, "max" ).gauge().value(), 0 );
+    }
+}
@@ -0,0 +1,111 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl.r4;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceRedisSerializer;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceSerializationFormat;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Unit tests for {@link FhirResourceRedisSerializer}.
+ *
+ * @author volsch
+ */
+public class R4FhirResourceRedisSerializerTest
+{
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    private final FhirResourceRedisSerializer jsonSerializer = new FhirResourceRedisSerializer( Collections.singletonList( fhirContext ), FhirResourceSerializationFormat.JSON );
+
+    private final FhirResourceRedisSerializer deflateSerializer = new FhirResourceRedisSerializer( Collections.singletonList( fhirContext ), FhirResourceSerializationFormat.DEFLATE_JSON );
+
+    private Patient patient;
+
+    @Before
+    public void before()
+    {
+        patient = new Patient();
+        patient.setId( "Patient/4711" );
+        patient.addIdentifier().setSystem( "http://example.sl/national-id" ).setValue( "9876543210" );
+        patient.addName().setFamily( "Doe" ).addGiven( "John" );
+        patient.setGender( Enumerations.AdministrativeGender.MALE );
+        patient.addExtension().setUrl( "http://example.sl/fhir/StructureDefinition/nationality" ).setValue( new StringType( "SL" ) );
+    }
+
+    @Test
+    public void json()
+    {
+        final byte[] bytes = jsonSerializer.serialize( patient );
+        Assert.assertEquals( 0, bytes[0] );
+        assertPatient( (Patient) jsonSerializer.deserialize( bytes ) );
+        assertPatient( (Patient) deflateSerializer.deserialize( bytes ) );
+    }
+
+    @Test
+    public void deflateJson()
+    {
+        final byte[] bytes = deflateSerializer.serialize( patient );
+        Assert.assertEquals( FhirResourceRedisSerializer.DEFLATE_JSON_VERSION, bytes[0] );
+        Assert.assertTrue( bytes.length < jsonSerializer.serialize( patient ).length );
+        assertPatient( (Patient) deflateSerializer.deserialize( bytes ) );
+        assertPatient( (Patient) jsonSerializer.deserialize( bytes ) );
+    }
+
+    @Test
+    public void unknownFormatVersion()
+    {
+        final byte[] bytes = deflateSerializer.serialize( patient );
+        bytes[0] = 99;
+        Assert.assertNull( deflateSerializer.deserialize( bytes ) );
+    }
+
+    @Test
+    public void empty()
+    {
+        Assert.assertEquals( 0, deflateSerializer.serialize( null ).length );
+        Assert.assertNull( deflateSerializer.deserialize( new byte[0] ) );
+    }
+
+    private void assertPatient( Patient result )
+    {
+        Assert.assertEquals( "4711", result.getIdElement().getIdPart() );
+        Assert.assertEquals( "9876543210", result.getIdentifierFirstRep().getValue() );
+        Assert.assertEquals( "Doe", result.getNameFirstRep().getFamily() );
+        Assert.assertEquals( Enumerations.AdministrativeGender.MALE, result.getGender() );
+        Assert.assertEquals( "SL", ( (StringType) result.getExtension().get( 0 ).getValue() ).getValue() );
+    }
+}
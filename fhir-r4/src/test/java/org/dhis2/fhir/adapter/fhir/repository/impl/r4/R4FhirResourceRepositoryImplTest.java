@@ -0,0 +1,191 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl.r4;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IReadExecutable;
+import ca.uhn.fhir.rest.gclient.IReadIfNoneMatch;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dhis2.fhir.adapter.fhir.client.StoredFhirResourceService;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientProcessorConfig;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ClientFhirEndpoint;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceRepository;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
+import org.dhis2.fhir.adapter.fhir.repository.FhirConformanceService;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceRepositoryImpl;
+import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
+import org.dhis2.fhir.adapter.spring.StaticObjectProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Unit tests for conditional reads of {@link FhirResourceRepositoryImpl}.
+ *
+ * @author volsch
+ */
+public class R4FhirResourceRepositoryImplTest
+{
+    @Mock
+    private ScriptExecutor scriptExecutor;
+
+    @Mock
+    private StoredFhirResourceService storedItemService;
+
+    @Mock
+    private FhirClientResourceRepository fhirClientResourceRepository;
+
+    @Mock
+    private FhirClientRegistry fhirClientRegistry;
+
+    @Mock
+    private FhirConformanceService conformanceService;
+
+    @Mock( answer = Answers.RETURNS_DEEP_STUBS )
+    private IGenericClient client;
+
+    @Mock
+    private IReadExecutable<IBaseResource> read;
+
+    @Mock
+    private IReadIfNoneMatch<IBaseResource> readIfNoneMatch;
+
+    @Mock
+    private IReadExecutable<IBaseResource> conditionalRead;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule().silent();
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    private final FhirClientProcessorConfig processorConfig = new FhirClientProcessorConfig();
+
+    private final ClientFhirEndpoint fhirEndpoint = new ClientFhirEndpoint();
+
+    private final UUID fhirClientId = UUID.randomUUID();
+
+    private FhirResourceRepositoryImpl repository;
+
+    private Patient patient;
+
+    @Before
+    public void setUp()
+    {
+        processorConfig.setConditionalRead( true );
+
+        patient = new Patient();
+        patient.setId( "Patient/123/_history/1" );
+        patient.getMeta().setVersionId( "1" );
+        patient.setActive( true );
+
+        Mockito.when( conformanceService.getFhirVersions() ).thenReturn( FhirVersion.R4_ONLY );
+        Mockito.when( conformanceService.supportConditionalRead( ArgumentMatchers.same( client ), ArgumentMatchers.eq( "Patient" ) ) ).thenReturn( true );
+        Mockito.when( fhirClientRegistry.getClient( ArgumentMatchers.eq( fhirClientId ), ArgumentMatchers.same( fhirContext ), ArgumentMatchers.same( fhirEndpoint ) ) ).thenReturn( client );
+        Mockito.when( client.read().resource( "Patient" ).withId( "123" ) ).thenReturn( read );
+        Mockito.when( read.cacheControl( ArgumentMatchers.any() ) ).thenReturn( read );
+        Mockito.when( read.execute() ).thenAnswer( invocation -> patient.copy() );
+        Mockito.when( read.ifVersionMatches( ArgumentMatchers.anyString() ) ).thenReturn( readIfNoneMatch );
+        Mockito.when( conditionalRead.cacheControl( ArgumentMatchers.any() ) ).thenReturn( conditionalRead );
+
+        repository = new FhirResourceRepositoryImpl( scriptExecutor, storedItemService, fhirClientResourceRepository, fhirClientRegistry,
+            new StaticObjectProvider<>( Collections.singletonList( fhirContext ) ), new StaticObjectProvider<>( Collections.emptyList() ), processorConfig,
+            new ConcurrentMapCacheManager(), new StaticObjectProvider<>( Collections.singletonList( conformanceService ) ), (MeterRegistry) null );
+    }
+
+    @Test
+    public void findRefreshedNotModified()
+    {
+        Mockito.when( readIfNoneMatch.returnResource( ArgumentMatchers.any() ) ).thenAnswer( invocation -> {
+            final IBaseResource unmodifiedResource = invocation.getArgument( 0 );
+            Mockito.when( conditionalRead.execute() ).thenReturn( unmodifiedResource );
+            return conditionalRead;
+        } );
+
+        final Optional<IBaseResource> first = repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+        Assert.assertTrue( first.isPresent() );
+        Mockito.verify( read, Mockito.never() ).ifVersionMatches( ArgumentMatchers.anyString() );
+
+        final Optional<IBaseResource> second = repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+        Assert.assertTrue( second.isPresent() );
+        Assert.assertNotSame( first.get(), second.get() );
+        Assert.assertTrue( ( (Patient) second.get() ).getActive() );
+        Assert.assertEquals( "1", second.get().getMeta().getVersionId() );
+        Mockito.verify( read ).ifVersionMatches( "1" );
+        Mockito.verify( read, Mockito.times( 1 ) ).execute();
+    }
+
+    @Test
+    public void findRefreshedModified()
+    {
+        Mockito.when( readIfNoneMatch.returnResource( ArgumentMatchers.any() ) ).thenReturn( conditionalRead );
+        Mockito.when( conditionalRead.execute() ).thenAnswer( invocation -> {
+            patient.getMeta().setVersionId( "2" );
+            patient.setActive( false );
+            return patient.copy();
+        } );
+
+        repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+        final Optional<IBaseResource> second = repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+        Assert.assertTrue( second.isPresent() );
+        Assert.assertFalse( ( (Patient) second.get() ).getActive() );
+
+        repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+        Mockito.verify( read ).ifVersionMatches( "1" );
+        Mockito.verify( read ).ifVersionMatches( "2" );
+    }
+
+    @Test
+    public void findRefreshedDisabled()
+    {
+        processorConfig.setConditionalRead( false );
+
+        repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+        repository.findRefreshed( fhirClientId, FhirVersion.R4, fhirEndpoint, "Patient", "123", false );
+
+        Mockito.verify( read, Mockito.times( 2 ) ).execute();
+        Mockito.verify( read, Mockito.never() ).ifVersionMatches( ArgumentMatchers.anyString() );
+        Mockito.verify( conformanceService, Mockito.never() ).supportConditionalRead( ArgumentMatchers.any(), ArgumentMatchers.any() );
+    }
+}
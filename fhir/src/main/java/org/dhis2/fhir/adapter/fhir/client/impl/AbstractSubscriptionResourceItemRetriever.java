@@ -44,7 +44,7 @@ import org.dhis2.fhir.adapter.data.processor.QueuedDataProcessorException;
 import org.dhis2.fhir.adapter.fhir.client.ProcessedFhirItemInfoUtils;
 import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersionRestricted;
-import org.dhis2.fhir.adapter.fhir.repository.FhirClientUtils;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseConformance;
@@ -86,11 +86,14 @@ public abstract class AbstractSubscriptionResourceItemRetriever implements DataP
 
     private final FhirContext fhirContext;
 
+    private final FhirClientRegistry fhirClientRegistry;
+
     private int maxConsumedSize = 1000;
 
-    protected AbstractSubscriptionResourceItemRetriever( @Nonnull FhirContext fhirContext )
+    protected AbstractSubscriptionResourceItemRetriever( @Nonnull FhirContext fhirContext, @Nonnull FhirClientRegistry fhirClientRegistry )
     {
         this.fhirContext = fhirContext;
+        this.fhirClientRegistry = fhirClientRegistry;
     }
 
     public int getMaxConsumedSize()
@@ -108,7 +111,7 @@ public abstract class AbstractSubscriptionResourceItemRetriever implements DataP
     public Instant poll( @Nonnull FhirClientResource group, @Nonnull Instant lastUpdated, int maxSearchCount, @Nonnull Consumer<Collection<ProcessedItemInfo>> consumer )
     {
         final String resourceName = group.getFhirResourceType().getResourceTypeName();
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, group.getFhirClient().getFhirEndpoint() );
+        final IGenericClient client = fhirClientRegistry.getClient( group.getFhirClient().getId(), fhirContext, group.getFhirClient().getFhirEndpoint() );
         final boolean sortSupported = group.getFhirClient().getFhirEndpoint().isSortSupported();
 
         Instant processedLastUpdated = null;
@@ -58,6 +58,11 @@ public class FhirClientConfig implements Serializable
     @Valid
     private QueueConfig restHookRequestQueue = new QueueConfig();
 
+    @NotNull
+    @NestedConfigurationProperty
+    @Valid
+    private FhirClientConnectionPoolConfig connectionPool = new FhirClientConnectionPoolConfig();
+
     public QueueConfig getRestHookRequestQueue()
     {
         return restHookRequestQueue;
@@ -67,4 +72,14 @@ public class FhirClientConfig implements Serializable
     {
         this.restHookRequestQueue = restHookRequestQueue;
     }
+
+    public FhirClientConnectionPoolConfig getConnectionPool()
+    {
+        return connectionPool;
+    }
+
+    public void setConnectionPool( @Nonnull FhirClientConnectionPoolConfig connectionPool )
+    {
+        this.connectionPool = connectionPool;
+    }
 }
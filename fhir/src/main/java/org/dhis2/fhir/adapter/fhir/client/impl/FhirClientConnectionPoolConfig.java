@@ -0,0 +1,144 @@
+package org.dhis2.fhir.adapter.fhir.client.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Min;
+import java.io.Serializable;
+
+/**
+ * Configuration of the HTTP connection pool that is used for each single FHIR client.
+ *
+ * @author volsch
+ */
+@Validated
+public class FhirClientConnectionPoolConfig implements Serializable
+{
+    private static final long serialVersionUID = 3380155263187474393L;
+
+    @Min( 1 )
+    private int maxTotal = 20;
+
+    @Min( 1 )
+    private int maxPerRoute = 10;
+
+    @Min( 0 )
+    private long keepAliveMillis = 30_000;
+
+    @Min( 1 )
+    private long idleTimeoutMillis = 60_000;
+
+    @Min( 0 )
+    private int validateAfterInactivityMillis = 2_000;
+
+    private boolean contentCompression = true;
+
+    /**
+     * @return the maximum number of connections of the pool of a single FHIR client.
+     */
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    public void setMaxTotal( int maxTotal )
+    {
+        this.maxTotal = maxTotal;
+    }
+
+    /**
+     * @return the maximum number of connections of the pool of a single FHIR client to
+     * a single route (host and port).
+     */
+    public int getMaxPerRoute()
+    {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute( int maxPerRoute )
+    {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * @return the maximum milliseconds an idle connection is kept alive. A shorter
+     * duration that is returned by the FHIR endpoint takes precedence.
+     */
+    public long getKeepAliveMillis()
+    {
+        return keepAliveMillis;
+    }
+
+    public void setKeepAliveMillis( long keepAliveMillis )
+    {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * @return the milliseconds after which an idle connection is closed in the background.
+     */
+    public long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis( long idleTimeoutMillis )
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @return the milliseconds of inactivity after which a pooled connection is
+     * validated before it is reused.
+     */
+    public int getValidateAfterInactivityMillis()
+    {
+        return validateAfterInactivityMillis;
+    }
+
+    public void setValidateAfterInactivityMillis( int validateAfterInactivityMillis )
+    {
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+    }
+
+    /**
+     * @return <code>true</code> if compressed (gzip or deflate) responses are
+     * requested from the FHIR endpoint, <code>false</code> otherwise.
+     */
+    public boolean isContentCompression()
+    {
+        return contentCompression;
+    }
+
+    public void setContentCompression( boolean contentCompression )
+    {
+        this.contentCompression = contentCompression;
+    }
+}
@@ -55,6 +55,8 @@ public class FhirClientProcessorConfig implements Serializable
 
     private boolean storeFhirResource;
 
+    private boolean conditionalRead;
+
     public int getMaxSearchCount()
     {
         return maxSearchCount;
@@ -94,4 +96,19 @@ public class FhirClientProcessorConfig implements Serializable
     {
         this.storeFhirResource = storeFhirResource;
     }
+
+    /**
+     * @return <code>true</code> if FHIR resources that are read again should be read
+     * conditionally with the last known version ID if the FHIR client supports this,
+     * <code>false</code> if FHIR resources should always be read completely.
+     */
+    public boolean isConditionalRead()
+    {
+        return conditionalRead;
+    }
+
+    public void setConditionalRead( boolean conditionalRead )
+    {
+        this.conditionalRead = conditionalRead;
+    }
 }
@@ -57,6 +57,8 @@ import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
 import org.dhis2.fhir.adapter.fhir.repository.FhirResource;
 import org.dhis2.fhir.adapter.fhir.util.FhirParserException;
 import org.dhis2.fhir.adapter.fhir.util.FhirParserUtils;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
 import org.dhis2.fhir.adapter.security.SystemAuthenticationToken;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
@@ -95,6 +97,8 @@ public class FhirClientRestHookProcessorImpl extends
         FhirClientResource, UuidDataGroupId>
     implements FhirClientRestHookProcessor
 {
+    public static final String PROCESSING_PIPELINE = "fhir-rest-hook";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final Map<FhirVersion, FhirContext> fhirContexts;
@@ -119,10 +123,11 @@ public class FhirClientRestHookProcessorImpl extends
         @Nonnull FhirClientResourceRepository fhirClientResourceRepository,
         @Nonnull SubscriptionFhirResourceRepository subscriptionFhirResourceRepository,
         @Nonnull ObjectProvider<List<AbstractSubscriptionResourceItemRetriever>> itemRetrievers,
-        @Nonnull Set<FhirContext> fhirContexts )
+        @Nonnull Set<FhirContext> fhirContexts,
+        @Nonnull ProcessingMetrics processingMetrics )
     {
         super( groupQueueJmsTemplate, dataGroupUpdateRepository, storedItemService, processedItemRepository, itemQueueJmsTemplate,
-            platformTransactionManager, systemAuthenticationToken, new ForkJoinPool( processorConfig.getParallelCount() ) );
+            platformTransactionManager, systemAuthenticationToken, new ForkJoinPool( processorConfig.getParallelCount() ), processingMetrics );
         this.processorConfig = processorConfig;
         this.fhirClientResourceRepository = fhirClientResourceRepository;
         this.subscriptionFhirResourceRepository = subscriptionFhirResourceRepository;
@@ -254,4 +259,11 @@ public class FhirClientRestHookProcessorImpl extends
     {
         return new FhirResource( group.getGroupId(), processedItemInfo, persistedDataItem );
     }
+
+    @Nonnull
+    @Override
+    protected ProcessingTags createProcessingTags( @Nonnull FhirClientResource group )
+    {
+        return new ProcessingTags( PROCESSING_PIPELINE ).fhirClient( group.getFhirClient().getCode() ).resourceType( group.getFhirResourceType() );
+    }
 }
@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.data.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
 import org.dhis2.fhir.adapter.data.repository.impl.AbstractProcessedItemRepositoryImpl;
 import org.dhis2.fhir.adapter.fhir.data.model.ProcessedFhirResource;
 import org.dhis2.fhir.adapter.fhir.data.model.ProcessedFhirResourceId;
@@ -44,9 +45,9 @@ import javax.persistence.EntityManager;
  */
 public class CustomProcessedFhirResourceRepositoryImpl extends AbstractProcessedItemRepositoryImpl<ProcessedFhirResource, ProcessedFhirResourceId, FhirClientResource> implements CustomProcessedFhirResourceRepository
 {
-    public CustomProcessedFhirResourceRepositoryImpl( @Nonnull EntityManager entityManager )
+    public CustomProcessedFhirResourceRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull ItemFilterFactory itemFilterFactory )
     {
-        super( entityManager );
+        super( entityManager, itemFilterFactory );
     }
 
     @Nonnull
@@ -55,4 +56,32 @@ public class CustomProcessedFhirResourceRepositoryImpl extends AbstractProcessed
     {
         return ProcessedFhirResource.class;
     }
+
+    @Nonnull
+    @Override
+    protected String getTableName()
+    {
+        return "fhir_processed_resource";
+    }
+
+    @Nonnull
+    @Override
+    protected String getGroupColumnName()
+    {
+        return "fhir_client_resource_id";
+    }
+
+    @Nonnull
+    @Override
+    protected String getProcessedIdColumnName()
+    {
+        return "versioned_fhir_resource_id";
+    }
+
+    @Nonnull
+    @Override
+    protected Object getGroupId( @Nonnull FhirClientResource group )
+    {
+        return group.getId();
+    }
 }
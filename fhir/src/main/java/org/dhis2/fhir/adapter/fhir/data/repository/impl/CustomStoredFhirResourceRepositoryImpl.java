@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.data.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.data.filter.ItemFilterFactory;
 import org.dhis2.fhir.adapter.data.repository.impl.AbstractStoredItemRepositoryImpl;
 import org.dhis2.fhir.adapter.fhir.data.model.StoredFhirResource;
 import org.dhis2.fhir.adapter.fhir.data.model.StoredFhirResourceId;
@@ -49,9 +50,9 @@ import java.time.Instant;
 public class CustomStoredFhirResourceRepositoryImpl extends AbstractStoredItemRepositoryImpl<StoredFhirResource, StoredFhirResourceId, FhirClient> implements CustomStoredFhirResourceRepository
 {
     public CustomStoredFhirResourceRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull PlatformTransactionManager platformTransactionManager,
-        @Nonnull @Qualifier( "&entityManagerFactory" ) PersistenceExceptionTranslator persistenceExceptionTranslator )
+        @Nonnull @Qualifier( "&entityManagerFactory" ) PersistenceExceptionTranslator persistenceExceptionTranslator, @Nonnull ItemFilterFactory itemFilterFactory )
     {
-        super( entityManager, platformTransactionManager, persistenceExceptionTranslator );
+        super( entityManager, platformTransactionManager, persistenceExceptionTranslator, itemFilterFactory );
     }
 
     @Nonnull
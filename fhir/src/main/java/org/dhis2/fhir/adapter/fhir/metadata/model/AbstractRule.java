@@ -77,26 +77,13 @@ import java.util.List;
 @Inheritance( strategy = InheritanceType.JOINED )
 @DiscriminatorColumn( name = "dhis_resource_type", discriminatorType = DiscriminatorType.STRING )
 @NamedQueries( {
-    @NamedQuery( name = AbstractRule.FIND_IMP_RULES_BY_FHIR_TYPE_NAMED_QUERY, query = "SELECT r FROM AbstractRule r " +
-        "WHERE r.fhirResourceType=:fhirResourceType AND r.applicableCodeSet IS NULL AND r.enabled=true AND r.impEnabled=true" ),
-    @NamedQuery( name = AbstractRule.FIND_IMP_RULES_BY_FHIR_TYPE_CODES_NAMED_QUERY, query =
-        "SELECT r FROM AbstractRule r WHERE r.fhirResourceType=:fhirResourceType AND r.enabled=true " +
-            "AND r.impEnabled=true AND (r.applicableCodeSet IS NULL OR (r.applicableCodeSet IS NOT NULL AND EXISTS " +
-            "(SELECT 1 FROM CodeSetValue csv JOIN csv.code c ON c.enabled=true JOIN c.systemCodes sc ON sc.enabled=true AND " +
-            "sc.systemCodeValue IN (:systemCodeValues) JOIN sc.system s ON s.enabled=true WHERE csv.codeSet=r.applicableCodeSet AND csv.enabled=true)))" ),
-    @NamedQuery( name = AbstractRule.FIND_IMP_RULES_BY_FHIR_TYPE_CODE_SETS_NAMED_QUERY, query =
-        "SELECT r FROM AbstractRule r JOIN r.applicableCodeSet acs WHERE r.fhirResourceType=:fhirResourceType AND r.enabled=true " +
-            "AND r.impEnabled=true AND acs.code IN (:codeSetCodes)" ),
+    @NamedQuery( name = AbstractRule.FIND_ALL_ENABLED_NAMED_QUERY, query = "SELECT r FROM AbstractRule r " +
+        "WHERE r.enabled=true AND (r.impEnabled=true OR r.expEnabled=true)" ),
+    @NamedQuery( name = AbstractRule.FIND_ALL_APPLICABLE_SYSTEM_CODE_VALUES_NAMED_QUERY, query =
+        "SELECT DISTINCT csv.codeSet.id, sc.systemCodeValue FROM CodeSetValue csv JOIN csv.code c ON c.enabled=true JOIN c.systemCodes sc ON sc.enabled=true " +
+            "JOIN sc.system s ON s.enabled=true WHERE csv.enabled=true AND EXISTS (SELECT 1 FROM AbstractRule r WHERE r.applicableCodeSet=csv.codeSet AND r.enabled=true)" ),
     @NamedQuery( name = AbstractRule.FIND_EXP_RULES_BY_FHIR_TYPE_NAMED_QUERY, query = "SELECT r FROM AbstractRule r " +
         "WHERE r.fhirResourceType=:fhirResourceType AND r.enabled=true AND r.expEnabled=true" ),
-    @NamedQuery( name = AbstractRule.FIND_EXP_RULES_BY_FHIR_TYPE_CODES_NAMED_QUERY, query =
-        "SELECT r FROM AbstractRule r WHERE r.fhirResourceType=:fhirResourceType AND r.enabled=true " +
-            "AND r.expEnabled=true AND (r.applicableCodeSet IS NULL OR (r.applicableCodeSet IS NOT NULL AND EXISTS " +
-            "(SELECT 1 FROM CodeSetValue csv JOIN csv.code c ON c.enabled=true JOIN c.systemCodes sc ON sc.enabled=true AND " +
-            "sc.systemCodeValue IN (:systemCodeValues) JOIN sc.system s ON s.enabled=true WHERE csv.codeSet=r.applicableCodeSet AND csv.enabled=true)))" ),
-    @NamedQuery( name = AbstractRule.FIND_EXP_RULES_BY_FHIR_TYPE_CODE_SETS_NAMED_QUERY, query =
-        "SELECT r FROM AbstractRule r JOIN r.applicableCodeSet acs WHERE r.fhirResourceType=:fhirResourceType AND r.enabled=true " +
-            "AND r.expEnabled=true AND acs.code IN (:codeSetCodes)" ),
     @NamedQuery( name = AbstractRule.FIND_IMP_RULE_BY_ID_NAMED_QUERY, query =
         "SELECT r FROM AbstractRule r WHERE r.fhirResourceType=:fhirResourceType AND TYPE(r)=:dhisResourceType AND r.id=:ruleId AND r.enabled=true AND r.impEnabled=true" )
 } )
@@ -115,18 +102,12 @@ public abstract class AbstractRule extends VersionedBaseMetadata implements Seri
 {
     private static final long serialVersionUID = 3426378271314934021L;
 
-    public static final String FIND_IMP_RULES_BY_FHIR_TYPE_NAMED_QUERY = "AbstractRule.findImpByFhirType";
+    public static final String FIND_ALL_ENABLED_NAMED_QUERY = "AbstractRule.findAllEnabled";
 
-    public static final String FIND_IMP_RULES_BY_FHIR_TYPE_CODES_NAMED_QUERY = "AbstractRule.findImpByFhirTypeAndCodes";
-
-    public static final String FIND_IMP_RULES_BY_FHIR_TYPE_CODE_SETS_NAMED_QUERY = "AbstractRule.findImpByFhirTypeAndCodeSets";
+    public static final String FIND_ALL_APPLICABLE_SYSTEM_CODE_VALUES_NAMED_QUERY = "AbstractRule.findAllApplicableSystemCodeValues";
 
     public static final String FIND_EXP_RULES_BY_FHIR_TYPE_NAMED_QUERY = "AbstractRule.findExpByFhirType";
 
-    public static final String FIND_EXP_RULES_BY_FHIR_TYPE_CODES_NAMED_QUERY = "AbstractRule.findExpByFhirTypeAndCodes";
-
-    public static final String FIND_EXP_RULES_BY_FHIR_TYPE_CODE_SETS_NAMED_QUERY = "AbstractRule.findExpByFhirTypeAndCodeSets";
-
     public static final String FIND_IMP_RULE_BY_ID_NAMED_QUERY = "AbstractRule.findImpById";
 
     public static final int MAX_NAME_LENGTH = 230;
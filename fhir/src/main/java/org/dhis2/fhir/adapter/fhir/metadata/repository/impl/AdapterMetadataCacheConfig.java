@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.metadata.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.dhis2.fhir.adapter.cache.AbstractSimpleCacheConfig;
 import org.dhis2.fhir.adapter.cache.RequestCacheService;
 import org.springframework.beans.factory.ObjectProvider;
@@ -41,6 +42,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
 import javax.annotation.Nonnull;
+import javax.validation.constraints.Min;
 
 /**
  * Cache configuration for adapter metadata.
@@ -55,6 +57,19 @@ public class AdapterMetadataCacheConfig extends AbstractSimpleCacheConfig
 {
     private static final long serialVersionUID = 3060542002074294407L;
 
+    @Min( 1 )
+    private int ruleIndexLifetimeSecs = 300;
+
+    public int getRuleIndexLifetimeSecs()
+    {
+        return ruleIndexLifetimeSecs;
+    }
+
+    public void setRuleIndexLifetimeSecs( int ruleIndexLifetimeSecs )
+    {
+        this.ruleIndexLifetimeSecs = ruleIndexLifetimeSecs;
+    }
+
     @Nonnull
     @Override
     protected String getCacheManagerName()
@@ -64,8 +79,9 @@ public class AdapterMetadataCacheConfig extends AbstractSimpleCacheConfig
 
     @Bean
     @Nonnull
-    protected CacheManager metadataCacheManager( @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull GenericJackson2JsonRedisSerializer redisSerializer )
+    protected CacheManager metadataCacheManager( @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull GenericJackson2JsonRedisSerializer redisSerializer,
+        @Nonnull ObjectProvider<MeterRegistry> meterRegistryProvider )
     {
-        return createCacheManager( requestCacheService, redisConnectionFactoryProvider, redisSerializer );
+        return createCacheManager( requestCacheService, redisConnectionFactoryProvider, redisSerializer, meterRegistryProvider.getIfAvailable() );
     }
 }
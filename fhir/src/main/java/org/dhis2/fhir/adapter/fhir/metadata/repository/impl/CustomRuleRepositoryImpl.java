@@ -34,9 +34,9 @@ import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
 import org.dhis2.fhir.adapter.fhir.metadata.model.OrganizationUnitRule;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ProgramStageRule;
 import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
-import org.dhis2.fhir.adapter.fhir.metadata.model.System;
 import org.dhis2.fhir.adapter.fhir.metadata.model.TrackedEntityRule;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.CustomRuleRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
 import org.dhis2.fhir.adapter.fhir.model.SystemCodeValue;
 import org.hibernate.Hibernate;
 import org.springframework.cache.annotation.Cacheable;
@@ -50,12 +50,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -70,9 +66,12 @@ public class CustomRuleRepositoryImpl implements CustomRuleRepository
     @PersistenceContext
     private EntityManager entityManager;
 
-    public CustomRuleRepositoryImpl( @Nonnull EntityManager entityManager )
+    private final RuleIndexManager ruleIndexManager;
+
+    public CustomRuleRepositoryImpl( @Nonnull EntityManager entityManager, @Nonnull RuleIndexManager ruleIndexManager )
     {
         this.entityManager = entityManager;
+        this.ruleIndexManager = ruleIndexManager;
     }
 
     @RestResource( exported = false )
@@ -89,24 +88,18 @@ public class CustomRuleRepositoryImpl implements CustomRuleRepository
 
     @Override
     @RestResource( exported = false )
-    @Cacheable( keyGenerator = "ruleFindAllByInputDataKeyGenerator", cacheManager = "metadataCacheManager", cacheNames = "rule" )
-    @Transactional( readOnly = true )
     @Nonnull
     public List<RuleInfo<? extends AbstractRule>> findAllImpByInputData( @Nonnull FhirResourceType fhirResourceType, @Nullable Collection<SystemCodeValue> systemCodeValues )
     {
-        return findAllByInputData( fhirResourceType, systemCodeValues, AbstractRule.FIND_IMP_RULES_BY_FHIR_TYPE_NAMED_QUERY,
-            AbstractRule.FIND_IMP_RULES_BY_FHIR_TYPE_CODES_NAMED_QUERY, AbstractRule.FIND_IMP_RULES_BY_FHIR_TYPE_CODE_SETS_NAMED_QUERY );
+        return ruleIndexManager.getRuleIndex().findAllImpByInputData( fhirResourceType, systemCodeValues );
     }
 
     @Override
     @RestResource( exported = false )
-    @Cacheable( keyGenerator = "ruleFindAllByInputDataKeyGenerator", cacheManager = "metadataCacheManager", cacheNames = "rule" )
-    @Transactional( readOnly = true )
     @Nonnull
     public List<RuleInfo<? extends AbstractRule>> findAllExpByInputData( @Nonnull FhirResourceType fhirResourceType, @Nullable Collection<SystemCodeValue> systemCodeValues )
     {
-        return findAllByInputData( fhirResourceType, systemCodeValues, AbstractRule.FIND_EXP_RULES_BY_FHIR_TYPE_NAMED_QUERY,
-            AbstractRule.FIND_EXP_RULES_BY_FHIR_TYPE_CODES_NAMED_QUERY, AbstractRule.FIND_EXP_RULES_BY_FHIR_TYPE_CODE_SETS_NAMED_QUERY );
+        return ruleIndexManager.getRuleIndex().findAllExpByInputData( fhirResourceType, systemCodeValues );
     }
 
     @RestResource( exported = false )
@@ -143,51 +136,6 @@ public class CustomRuleRepositoryImpl implements CustomRuleRepository
         } ).collect( Collectors.toList() );
     }
 
-    @Nonnull
-    protected List<RuleInfo<? extends AbstractRule>> findAllByInputData( @Nonnull FhirResourceType fhirResourceType, @Nullable Collection<SystemCodeValue> systemCodeValues,
-        @Nonnull String findByFhirTypeQueryName, @Nonnull String findBySystemCodeQueryName, @Nonnull String findByCodeSetCodeQueryName )
-    {
-        final Set<AbstractRule> rules = new LinkedHashSet<>();
-
-        if ( (systemCodeValues == null) || systemCodeValues.isEmpty() )
-        {
-            rules.addAll( entityManager.createNamedQuery( findByFhirTypeQueryName, AbstractRule.class )
-                .setParameter( "fhirResourceType", fhirResourceType ).getResultList() );
-        }
-        else
-        {
-            final Set<String> resultingSystemCodes = systemCodeValues.stream()
-                .filter( scv -> !System.DHIS2_FHIR_CODE_SET_URI.equals( scv.getSystem() ) )
-                .map( SystemCodeValue::toString ).collect( Collectors.toCollection( TreeSet::new ) );
-            final Set<String> codeSetCodes = systemCodeValues.stream()
-                .filter( scv -> System.DHIS2_FHIR_CODE_SET_URI.equals( scv.getSystem() ) )
-                .map( SystemCodeValue::getCode ).collect( Collectors.toCollection( TreeSet::new ) );
-
-            if ( !resultingSystemCodes.isEmpty() )
-            {
-                rules.addAll( entityManager.createNamedQuery( findBySystemCodeQueryName, AbstractRule.class )
-                    .setParameter( "fhirResourceType", fhirResourceType )
-                    .setParameter( "systemCodeValues", resultingSystemCodes ).getResultList() );
-            }
-
-            if ( !codeSetCodes.isEmpty() )
-            {
-                rules.addAll( entityManager.createNamedQuery( findByCodeSetCodeQueryName, AbstractRule.class )
-                    .setParameter( "fhirResourceType", fhirResourceType )
-                    .setParameter( "codeSetCodes", codeSetCodes ).getResultList() );
-            }
-        }
-
-        final List<AbstractRule> sortedRules = new ArrayList<>( rules );
-        Collections.sort( sortedRules );
-
-        return sortedRules.stream().map( r -> {
-            Hibernate.initialize( r.getDhisDataReferences() );
-
-            return new RuleInfo<>( r, r.getDhisDataReferences() );
-        } ).collect( Collectors.toList() );
-    }
-
     protected Optional<RuleInfo<? extends AbstractRule>> findOneByDhisFhirInputData( @Nonnull String namedQuery,
         @Nonnull FhirResourceType fhirResourceType, @Nonnull DhisResourceType dhisResourceType, @Nonnull UUID ruleId )
     {
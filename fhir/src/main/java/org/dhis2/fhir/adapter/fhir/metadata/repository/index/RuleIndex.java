@@ -0,0 +1,224 @@
+package org.dhis2.fhir.adapter.fhir.metadata.repository.index;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
+import org.dhis2.fhir.adapter.fhir.metadata.model.System;
+import org.dhis2.fhir.adapter.fhir.model.SystemCodeValue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Immutable index of all enabled rules that is used to find the rules that are
+ * applicable for the input data of a transformation without accessing the
+ * database. The rules are indexed by FHIR resource type and by the system code
+ * values and codes of their applicable code sets.
+ *
+ * @author volsch
+ */
+public class RuleIndex
+{
+    private final long version;
+
+    private final long createdAt;
+
+    private final int ruleCount;
+
+    private final Map<FhirResourceType, FhirResourceTypeIndex> impIndexes;
+
+    private final Map<FhirResourceType, FhirResourceTypeIndex> expIndexes;
+
+    /**
+     * @param version                      the version of the rule index.
+     * @param rules                        all enabled rules with their initialized DHIS data references.
+     * @param systemCodeValuesByCodeSetIds the enabled system code values (system URI and code) of the
+     *                                     applicable code sets of the rules by the ID of the code set.
+     */
+    public RuleIndex( long version, @Nonnull Collection<RuleInfo<? extends AbstractRule>> rules, @Nonnull Map<UUID, List<String>> systemCodeValuesByCodeSetIds )
+    {
+        this.version = version;
+        this.createdAt = java.lang.System.currentTimeMillis();
+        this.ruleCount = rules.size();
+        this.impIndexes = createIndexes( rules, systemCodeValuesByCodeSetIds, r -> r.getRule().isImpEnabled() );
+        this.expIndexes = createIndexes( rules, systemCodeValuesByCodeSetIds, r -> r.getRule().isExpEnabled() );
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    public int getRuleCount()
+    {
+        return ruleCount;
+    }
+
+    @Nonnull
+    public List<RuleInfo<? extends AbstractRule>> findAllImpByInputData( @Nonnull FhirResourceType fhirResourceType, @Nullable Collection<SystemCodeValue> systemCodeValues )
+    {
+        return findAllByInputData( impIndexes.get( fhirResourceType ), systemCodeValues, false );
+    }
+
+    @Nonnull
+    public List<RuleInfo<? extends AbstractRule>> findAllExpByInputData( @Nonnull FhirResourceType fhirResourceType, @Nullable Collection<SystemCodeValue> systemCodeValues )
+    {
+        // without any codes all rules are applicable for the export
+        return findAllByInputData( expIndexes.get( fhirResourceType ), systemCodeValues, true );
+    }
+
+    @Nonnull
+    protected static List<RuleInfo<? extends AbstractRule>> findAllByInputData( @Nullable FhirResourceTypeIndex index, @Nullable Collection<SystemCodeValue> systemCodeValues, boolean allWithoutCodes )
+    {
+        if ( index == null )
+        {
+            return new ArrayList<>();
+        }
+
+        if ( (systemCodeValues == null) || systemCodeValues.isEmpty() )
+        {
+            return new ArrayList<>( allWithoutCodes ? index.getAllRules() : index.getRulesWithoutCodeSet() );
+        }
+
+        final Set<RuleInfo<? extends AbstractRule>> rules = new LinkedHashSet<>();
+        boolean systemCodeValuesIncluded = false;
+        for ( final SystemCodeValue systemCodeValue : systemCodeValues )
+        {
+            if ( System.DHIS2_FHIR_CODE_SET_URI.equals( systemCodeValue.getSystem() ) )
+            {
+                rules.addAll( index.getRulesByCodeSetCode().getOrDefault( systemCodeValue.getCode(), Collections.emptyList() ) );
+            }
+            else
+            {
+                systemCodeValuesIncluded = true;
+                rules.addAll( index.getRulesBySystemCodeValue().getOrDefault( systemCodeValue.toString(), Collections.emptyList() ) );
+            }
+        }
+
+        if ( systemCodeValuesIncluded )
+        {
+            rules.addAll( index.getRulesWithoutCodeSet() );
+        }
+
+        final List<RuleInfo<? extends AbstractRule>> sortedRules = new ArrayList<>( rules );
+        Collections.sort( sortedRules );
+
+        return sortedRules;
+    }
+
+    @Nonnull
+    private static Map<FhirResourceType, FhirResourceTypeIndex> createIndexes( @Nonnull Collection<RuleInfo<? extends AbstractRule>> rules,
+        @Nonnull Map<UUID, List<String>> systemCodeValuesByCodeSetIds, @Nonnull Predicate<RuleInfo<? extends AbstractRule>> filter )
+    {
+        final Map<FhirResourceType, FhirResourceTypeIndex> indexes = new EnumMap<>( FhirResourceType.class );
+        rules.stream().filter( filter ).forEach( r -> indexes.computeIfAbsent( r.getRule().getFhirResourceType(), frt -> new FhirResourceTypeIndex() )
+            .add( r, systemCodeValuesByCodeSetIds ) );
+        indexes.values().forEach( FhirResourceTypeIndex::sort );
+
+        return indexes;
+    }
+
+    /**
+     * Index of the rules of a single FHIR resource type.
+     */
+    protected static class FhirResourceTypeIndex
+    {
+        private final List<RuleInfo<? extends AbstractRule>> allRules = new ArrayList<>();
+
+        private final List<RuleInfo<? extends AbstractRule>> rulesWithoutCodeSet = new ArrayList<>();
+
+        private final Map<String, List<RuleInfo<? extends AbstractRule>>> rulesBySystemCodeValue = new HashMap<>();
+
+        private final Map<String, List<RuleInfo<? extends AbstractRule>>> rulesByCodeSetCode = new HashMap<>();
+
+        @Nonnull
+        public List<RuleInfo<? extends AbstractRule>> getAllRules()
+        {
+            return allRules;
+        }
+
+        @Nonnull
+        public List<RuleInfo<? extends AbstractRule>> getRulesWithoutCodeSet()
+        {
+            return rulesWithoutCodeSet;
+        }
+
+        @Nonnull
+        public Map<String, List<RuleInfo<? extends AbstractRule>>> getRulesBySystemCodeValue()
+        {
+            return rulesBySystemCodeValue;
+        }
+
+        @Nonnull
+        public Map<String, List<RuleInfo<? extends AbstractRule>>> getRulesByCodeSetCode()
+        {
+            return rulesByCodeSetCode;
+        }
+
+        protected void add( @Nonnull RuleInfo<? extends AbstractRule> ruleInfo, @Nonnull Map<UUID, List<String>> systemCodeValuesByCodeSetIds )
+        {
+            final AbstractRule rule = ruleInfo.getRule();
+            allRules.add( ruleInfo );
+            if ( rule.getApplicableCodeSet() == null )
+            {
+                rulesWithoutCodeSet.add( ruleInfo );
+            }
+            else
+            {
+                rulesByCodeSetCode.computeIfAbsent( rule.getApplicableCodeSet().getCode(), k -> new ArrayList<>() ).add( ruleInfo );
+                systemCodeValuesByCodeSetIds.getOrDefault( rule.getApplicableCodeSet().getId(), Collections.emptyList() )
+                    .forEach( scv -> rulesBySystemCodeValue.computeIfAbsent( scv, k -> new ArrayList<>() ).add( ruleInfo ) );
+            }
+        }
+
+        protected void sort()
+        {
+            Collections.sort( allRules );
+            Collections.sort( rulesWithoutCodeSet );
+        }
+    }
+}
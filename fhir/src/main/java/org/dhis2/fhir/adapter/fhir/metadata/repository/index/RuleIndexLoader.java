@@ -0,0 +1,81 @@
+package org.dhis2.fhir.adapter.fhir.metadata.repository.index;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
+import org.hibernate.Hibernate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Loads all enabled rules and the system code values of their applicable code
+ * sets and creates a {@link RuleIndex}.
+ *
+ * @author volsch
+ */
+@Component
+public class RuleIndexLoader
+{
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public RuleIndexLoader( @Nonnull EntityManager entityManager )
+    {
+        this.entityManager = entityManager;
+    }
+
+    @Transactional( readOnly = true )
+    @Nonnull
+    public RuleIndex load( long version )
+    {
+        final List<RuleInfo<? extends AbstractRule>> rules = entityManager.createNamedQuery( AbstractRule.FIND_ALL_ENABLED_NAMED_QUERY, AbstractRule.class )
+            .getResultList().stream().map( r -> {
+                Hibernate.initialize( r.getDhisDataReferences() );
+
+                return new RuleInfo<>( r, r.getDhisDataReferences() );
+            } ).collect( Collectors.toList() );
+
+        final Map<UUID, List<String>> systemCodeValuesByCodeSetIds = new HashMap<>();
+        entityManager.createNamedQuery( AbstractRule.FIND_ALL_APPLICABLE_SYSTEM_CODE_VALUES_NAMED_QUERY, Object[].class ).getResultList()
+            .forEach( row -> systemCodeValuesByCodeSetIds.computeIfAbsent( (UUID) row[0], k -> new ArrayList<>() ).add( (String) row[1] ) );
+
+        return new RuleIndex( version, rules, systemCodeValuesByCodeSetIds );
+    }
+}
@@ -0,0 +1,121 @@
+package org.dhis2.fhir.adapter.fhir.metadata.repository.index;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.repository.impl.AdapterMetadataCacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages the current {@link RuleIndex}. The rule index is built when it is
+ * accessed the first time and is rebuilt when it is accessed after it has been
+ * invalidated (i.e. rules or code sets have been changed) or after its maximum
+ * lifetime has been reached (changes that have been made by other instances or
+ * changes of codes and systems). The rule index is replaced atomically, so that
+ * the previous version can still be used by concurrent transformations.
+ *
+ * @author volsch
+ */
+@Component
+public class RuleIndexManager
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final RuleIndexLoader ruleIndexLoader;
+
+    private final long maxLifetimeMillis;
+
+    private final AtomicLong currentVersion = new AtomicLong();
+
+    private volatile RuleIndex ruleIndex;
+
+    public RuleIndexManager( @Nonnull RuleIndexLoader ruleIndexLoader, @Nonnull AdapterMetadataCacheConfig config )
+    {
+        this.ruleIndexLoader = ruleIndexLoader;
+        this.maxLifetimeMillis = TimeUnit.SECONDS.toMillis( config.getRuleIndexLifetimeSecs() );
+    }
+
+    @Nonnull
+    public RuleIndex getRuleIndex()
+    {
+        final RuleIndex ruleIndex = this.ruleIndex;
+        if ( isValid( ruleIndex ) )
+        {
+            return ruleIndex;
+        }
+
+        synchronized ( this )
+        {
+            RuleIndex newRuleIndex = this.ruleIndex;
+            if ( !isValid( newRuleIndex ) )
+            {
+                newRuleIndex = ruleIndexLoader.load( currentVersion.get() );
+                this.ruleIndex = newRuleIndex;
+                logger.info( "Built rule index version {} with {} rules.", newRuleIndex.getVersion(), newRuleIndex.getRuleCount() );
+            }
+            return newRuleIndex;
+        }
+    }
+
+    /**
+     * Invalidates the current rule index. If there is an active transaction,
+     * the rule index is invalidated again after the transaction has been
+     * completed since a concurrent transformation may have rebuilt the rule
+     * index with data that has not yet been committed.
+     */
+    public void invalidate()
+    {
+        currentVersion.incrementAndGet();
+
+        if ( TransactionSynchronizationManager.isSynchronizationActive() )
+        {
+            TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCompletion( int status )
+                {
+                    currentVersion.incrementAndGet();
+                }
+            } );
+        }
+    }
+
+    protected boolean isValid( RuleIndex ruleIndex )
+    {
+        return ruleIndex != null && ruleIndex.getVersion() == currentVersion.get() &&
+            ( java.lang.System.currentTimeMillis() - ruleIndex.getCreatedAt() ) < maxLifetimeMillis;
+    }
+}
@@ -29,16 +29,27 @@ package org.dhis2.fhir.adapter.fhir.metadata.repository.listener;
  */
 
 import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
 import org.springframework.data.rest.core.event.AbstractRepositoryEventListener;
 
+import javax.annotation.Nonnull;
+
 /**
- * Event listener that prepares {@link AbstractRule} class before saving.
+ * Event listener that prepares {@link AbstractRule} class before saving and
+ * invalidates the rule index after the rule has been changed.
  *
  * @param <T> the concrete entity class
  * @author volsch
  */
 public abstract class AbstractRuleEventListener<T extends AbstractRule> extends AbstractRepositoryEventListener<T>
 {
+    private final RuleIndexManager ruleIndexManager;
+
+    protected AbstractRuleEventListener( @Nonnull RuleIndexManager ruleIndexManager )
+    {
+        this.ruleIndexManager = ruleIndexManager;
+    }
+
     @Override
     protected void onBeforeCreate( AbstractRule entity )
     {
@@ -53,4 +64,34 @@ public abstract class AbstractRuleEventListener<T extends AbstractRule> extends
             entity.getDhisDataReferences().stream().filter( dr -> dr.getRule() == null ).forEach( dr -> dr.setRule( entity ) );
         }
     }
+
+    @Override
+    protected void onAfterCreate( AbstractRule entity )
+    {
+        ruleIndexManager.invalidate();
+    }
+
+    @Override
+    protected void onAfterSave( AbstractRule entity )
+    {
+        ruleIndexManager.invalidate();
+    }
+
+    @Override
+    protected void onAfterLinkSave( AbstractRule parent, Object linked )
+    {
+        ruleIndexManager.invalidate();
+    }
+
+    @Override
+    protected void onAfterLinkDelete( AbstractRule parent, Object linked )
+    {
+        ruleIndexManager.invalidate();
+    }
+
+    @Override
+    protected void onAfterDelete( AbstractRule entity )
+    {
+        ruleIndexManager.invalidate();
+    }
 }
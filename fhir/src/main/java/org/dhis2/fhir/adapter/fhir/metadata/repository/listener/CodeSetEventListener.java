@@ -29,12 +29,16 @@ package org.dhis2.fhir.adapter.fhir.metadata.repository.listener;
  */
 
 import org.dhis2.fhir.adapter.fhir.metadata.model.CodeSet;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
 import org.springframework.core.annotation.Order;
 import org.springframework.data.rest.core.event.AbstractRepositoryEventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nonnull;
+
 /**
- * Event listener that prepares {@link CodeSet} class before saving.
+ * Event listener that prepares {@link CodeSet} class before saving and
+ * invalidates the rule index after the code set has been changed.
  *
  * @author volsch
  */
@@ -42,6 +46,13 @@ import org.springframework.stereotype.Component;
 @Order( value = 10 )
 public class CodeSetEventListener extends AbstractRepositoryEventListener<CodeSet>
 {
+    private final RuleIndexManager ruleIndexManager;
+
+    public CodeSetEventListener( @Nonnull RuleIndexManager ruleIndexManager )
+    {
+        this.ruleIndexManager = ruleIndexManager;
+    }
+
     @Override
     protected void onBeforeCreate( CodeSet entity )
     {
@@ -56,4 +67,22 @@ public class CodeSetEventListener extends AbstractRepositoryEventListener<CodeSe
             entity.getCodeSetValues().stream().filter( csv -> csv.getCodeSet() == null ).forEach( csv -> csv.setCodeSet( entity ) );
         }
     }
+
+    @Override
+    protected void onAfterCreate( CodeSet entity )
+    {
+        ruleIndexManager.invalidate();
+    }
+
+    @Override
+    protected void onAfterSave( CodeSet entity )
+    {
+        ruleIndexManager.invalidate();
+    }
+
+    @Override
+    protected void onAfterDelete( CodeSet entity )
+    {
+        ruleIndexManager.invalidate();
+    }
 }
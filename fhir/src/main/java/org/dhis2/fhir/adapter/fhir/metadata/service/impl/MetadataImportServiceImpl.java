@@ -48,6 +48,7 @@ import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirResourceMappingReposi
 import org.dhis2.fhir.adapter.fhir.metadata.repository.MappedTrackerProgramRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.MetadataRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.ProgramStageRuleRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.validator.MetadataValidator;
 import org.dhis2.fhir.adapter.fhir.metadata.service.MetadataImportMessage;
 import org.dhis2.fhir.adapter.fhir.metadata.service.MetadataImportParams;
@@ -100,6 +101,8 @@ public class MetadataImportServiceImpl extends AbstractMetadataService implement
 
     private final CacheManager cacheManager;
 
+    private final RuleIndexManager ruleIndexManager;
+
     private final ObjectMapper mapper;
 
     public MetadataImportServiceImpl( @Nonnull MessageSource messageSource, @Nonnull MappedTrackerProgramRepository trackerProgramRepository,
@@ -107,7 +110,8 @@ public class MetadataImportServiceImpl extends AbstractMetadataService implement
         @Nonnull FhirResourceMappingRepository fhirResourceMappingRepository,
         @Nonnull List<? extends MetadataValidator<? extends Metadata>> validators,
         @Nonnull List<? extends MetadataRepository<? extends Metadata>> repositories,
-        @Nonnull EntityManager entityManager, @Nonnull @Qualifier( "metadataCacheManager" ) CacheManager cacheManager )
+        @Nonnull EntityManager entityManager, @Nonnull @Qualifier( "metadataCacheManager" ) CacheManager cacheManager,
+        @Nonnull RuleIndexManager ruleIndexManager )
     {
         super( trackerProgramRepository, programStageRuleRepository, fhirResourceMappingRepository, repositories );
 
@@ -115,6 +119,7 @@ public class MetadataImportServiceImpl extends AbstractMetadataService implement
         this.validators = validators.stream().collect( Collectors.toMap( MetadataValidator::getMetadataClass, v -> v ) );
         this.entityManager = entityManager;
         this.cacheManager = cacheManager;
+        this.ruleIndexManager = ruleIndexManager;
 
         mapper = new ObjectMapper();
         mapper.disable( FAIL_ON_UNWRAPPED_TYPE_IDENTIFIERS );
@@ -202,6 +207,7 @@ public class MetadataImportServiceImpl extends AbstractMetadataService implement
         }
 
         result.setSuccess( true );
+        ruleIndexManager.invalidate();
         TransactionSynchronizationManager.registerSynchronization(
             new TransactionSynchronizationAdapter()
             {
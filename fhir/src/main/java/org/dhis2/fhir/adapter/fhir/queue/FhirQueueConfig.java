@@ -31,11 +31,14 @@ package org.dhis2.fhir.adapter.fhir.queue;
 import com.google.common.collect.ImmutableMap;
 import org.apache.activemq.artemis.jms.server.config.JMSQueueConfiguration;
 import org.apache.activemq.artemis.jms.server.config.impl.JMSQueueConfigurationImpl;
+import org.apache.activemq.artemis.jms.server.embedded.EmbeddedJMS;
 import org.dhis2.fhir.adapter.dhis.queue.JmsJsonTypeIdMapping;
 import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientConfig;
 import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientRestHookRequest;
 import org.dhis2.fhir.adapter.fhir.repository.FhirResource;
 import org.dhis2.fhir.adapter.fhir.repository.impl.RepositoryConfig;
+import org.dhis2.fhir.adapter.metrics.QueueDepthMeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.jms.artemis.ArtemisConfigurationCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -127,6 +130,14 @@ public class FhirQueueConfig
         return jmsTemplate;
     }
 
+    @Bean
+    @Nonnull
+    protected QueueDepthMeterBinder fhirQueueDepthMeterBinder( @Nonnull ObjectProvider<EmbeddedJMS> embeddedJms )
+    {
+        return new QueueDepthMeterBinder( embeddedJms.getIfAvailable(), fhirClientConfig.getRestHookRequestQueue().getQueueName(),
+            repositoryConfig.getFhirResourceQueue().getQueueName(), repositoryConfig.getFhirResourceDlQueue().getQueueName() );
+    }
+
     @Bean
     @Nonnull
     protected JmsJsonTypeIdMapping dhisJmsJsonTypeIdMapping()
@@ -0,0 +1,68 @@
+package org.dhis2.fhir.adapter.fhir.repository;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ClientFhirEndpoint;
+
+import javax.annotation.Nonnull;
+import java.util.UUID;
+
+/**
+ * Registry of configured FHIR clients that can be reused by all callers that
+ * access the same FHIR endpoint. Each FHIR client uses its own connection pool.
+ * A registered client is replaced when the configuration of its FHIR endpoint
+ * changes.
+ *
+ * @author volsch
+ */
+public interface FhirClientRegistry
+{
+    /**
+     * Returns the registered client for the specified FHIR client and FHIR version.
+     * If there is no such client or if the client has been configured with a different
+     * FHIR endpoint configuration, a new client is created and registered.
+     *
+     * @param fhirClientId the ID of the FHIR client.
+     * @param fhirContext  the FHIR context of the FHIR version of the FHIR client.
+     * @param fhirEndpoint the current configuration of the FHIR endpoint.
+     * @return the configured client.
+     */
+    @Nonnull
+    IGenericClient getClient( @Nonnull UUID fhirClientId, @Nonnull FhirContext fhirContext, @Nonnull ClientFhirEndpoint fhirEndpoint );
+
+    /**
+     * Removes all registered clients of the specified FHIR client. Requests that are
+     * currently executed with these clients are not affected.
+     *
+     * @param fhirClientId the ID of the FHIR client.
+     */
+    void invalidate( @Nonnull UUID fhirClientId );
+}
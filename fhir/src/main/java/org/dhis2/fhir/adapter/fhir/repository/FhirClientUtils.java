@@ -62,7 +62,20 @@ public abstract class FhirClientUtils
     @Nonnull
     public static IGenericClient createClient( @Nonnull FhirContext fhirContext, @Nonnull ClientFhirEndpoint fhirEndpoint )
     {
-        final IGenericClient client = fhirContext.newRestfulGenericClient( fhirEndpoint.getBaseUrl() );
+        return configureClient( fhirContext.newRestfulGenericClient( fhirEndpoint.getBaseUrl() ), fhirEndpoint );
+    }
+
+    /**
+     * Registers the interceptors and settings of the specified FHIR endpoint on the
+     * specified client.
+     *
+     * @param client       the client that should be configured.
+     * @param fhirEndpoint the FHIR endpoint to which the client connects.
+     * @return the specified client.
+     */
+    @Nonnull
+    public static IGenericClient configureClient( @Nonnull IGenericClient client, @Nonnull ClientFhirEndpoint fhirEndpoint )
+    {
         if ( fhirEndpoint.isLogging() )
         {
             client.registerInterceptor( new LoggingInterceptor( fhirEndpoint.isVerboseLogging() ) );
@@ -29,6 +29,7 @@ package org.dhis2.fhir.adapter.fhir.repository;
  */
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersionRestricted;
 import org.hl7.fhir.instance.model.api.IBaseConformance;
 
 import javax.annotation.Nonnull;
@@ -39,10 +40,22 @@ import java.util.Set;
  *
  * @author volsch
  */
-public interface FhirConformanceService
+public interface FhirConformanceService extends FhirVersionRestricted
 {
     @Nonnull
     IBaseConformance getBaseConformance( @Nonnull IGenericClient client );
 
     boolean supportSearchParameters( @Nonnull IGenericClient client, @Nonnull String resourceType, @Nonnull Set<String> searchParameterNames );
+
+    /**
+     * Checks if the server supports conditional reads of the specified resource type
+     * with the <code>If-None-Match</code> header (the version ID of the resource that
+     * is known by the client).
+     *
+     * @param client       the client of the server that should be checked.
+     * @param resourceType the resource type that should be read conditionally.
+     * @return <code>true</code> if the server supports conditional reads of the
+     * resource type, <code>false</code> otherwise.
+     */
+    boolean supportConditionalRead( @Nonnull IGenericClient client, @Nonnull String resourceType );
 }
@@ -69,8 +69,17 @@ public abstract class AbstractFhirConformanceService implements FhirConformanceS
         return supportSearchParameters( baseConformance, resourceType, searchParameterNames );
     }
 
+    @Override
+    public boolean supportConditionalRead( @Nonnull IGenericClient client, @Nonnull String resourceType )
+    {
+        final IBaseConformance baseConformance = getBaseConformance( client );
+        return supportConditionalRead( baseConformance, resourceType );
+    }
+
     @Nonnull
     protected abstract Class<? extends IBaseConformance> getBaseConformanceClass();
 
     protected abstract boolean supportSearchParameters( @Nonnull IBaseConformance baseConformance, @Nonnull String resourceType, @Nonnull Set<String> searchParameterNames );
+
+    protected abstract boolean supportConditionalRead( @Nonnull IBaseConformance baseConformance, @Nonnull String resourceType );
 }
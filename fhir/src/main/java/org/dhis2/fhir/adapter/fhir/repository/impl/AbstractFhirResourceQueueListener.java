@@ -0,0 +1,332 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
+import org.dhis2.fhir.adapter.dhis.DhisConflictException;
+import org.dhis2.fhir.adapter.fhir.client.ProcessedFhirItemInfoUtils;
+import org.dhis2.fhir.adapter.fhir.client.StoredFhirResourceService;
+import org.dhis2.fhir.adapter.fhir.data.model.SubscriptionFhirResource;
+import org.dhis2.fhir.adapter.fhir.data.repository.SubscriptionFhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResource;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.transform.FatalTransformerException;
+import org.dhis2.fhir.adapter.fhir.transform.TransformerDataException;
+import org.dhis2.fhir.adapter.fhir.transform.TransformerMappingException;
+import org.dhis2.fhir.adapter.fhir.util.FhirParserUtils;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingOutcome;
+import org.dhis2.fhir.adapter.metrics.ProcessingStage;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
+import org.dhis2.fhir.adapter.queue.RetryQueueDeliveryException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Abstract base class of listeners that process FHIR resources that are received
+ * from the FHIR resource queue.
+ *
+ * @author volsch
+ */
+public abstract class AbstractFhirResourceQueueListener
+{
+    public static final String PROCESSING_PIPELINE = "fhir-resource";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FhirClientResourceRepository fhirClientResourceRepository;
+
+    private final SubscriptionFhirResourceRepository subscriptionFhirResourceRepository;
+
+    private final StoredFhirResourceService storedItemService;
+
+    private final FhirResourceRepository fhirResourceRepository;
+
+    private final FhirRepository fhirRepository;
+
+    private final ProcessingMetrics processingMetrics;
+
+    private final AtomicLong processedCount = new AtomicLong();
+
+    protected AbstractFhirResourceQueueListener(
+        @Nonnull FhirClientResourceRepository fhirClientResourceRepository,
+        @Nonnull SubscriptionFhirResourceRepository subscriptionFhirResourceRepository,
+        @Nonnull StoredFhirResourceService storedItemService,
+        @Nonnull FhirResourceRepository fhirResourceRepository,
+        @Nonnull FhirRepository fhirRepository,
+        @Nonnull ProcessingMetrics processingMetrics )
+    {
+        this.fhirClientResourceRepository = fhirClientResourceRepository;
+        this.subscriptionFhirResourceRepository = subscriptionFhirResourceRepository;
+        this.storedItemService = storedItemService;
+        this.fhirResourceRepository = fhirResourceRepository;
+        this.fhirRepository = fhirRepository;
+        this.processingMetrics = processingMetrics;
+    }
+
+    @Nonnull
+    protected ProcessingMetrics getProcessingMetrics()
+    {
+        return processingMetrics;
+    }
+
+    @Nonnull
+    protected ProcessingTags createProcessingTags( @Nonnull FhirClientResource fhirClientResource )
+    {
+        return new ProcessingTags( PROCESSING_PIPELINE ).fhirClient( fhirClientResource.getFhirClient().getCode() ).resourceType( fhirClientResource.getFhirResourceType() );
+    }
+
+    /**
+     * Prepares the processing of the specified queued FHIR resource.
+     *
+     * @param fhirResource the FHIR resource that has been received from the queue.
+     * @return the prepared received FHIR resource or <code>null</code> if the
+     * FHIR resource cannot be processed at all.
+     */
+    @Nullable
+    protected ReceivedFhirResource prepare( @Nonnull FhirResource fhirResource )
+    {
+        final long currentProcessedCount = processedCount.incrementAndGet();
+
+        final FhirClientResource fhirClientResource =
+            fhirClientResourceRepository.findOneByIdCached( fhirResource.getFhirClientResourceId() ).orElse( null );
+        if ( fhirClientResource == null )
+        {
+            logger.warn( "FHIR client resource {} is no longer available. Skipping processing of updated FHIR resource {}.",
+                fhirResource.getFhirClientResourceId(), fhirResource.getId() );
+            return null;
+        }
+
+        final FhirClient fhirClient = fhirClientResource.getFhirClient();
+        final ProcessingTags tags = createProcessingTags( fhirClientResource );
+        final SubscriptionFhirResource subscriptionFhirResource = subscriptionFhirResourceRepository.findResource( fhirClientResource, fhirResource.getIdPart() ).orElse( null );
+        final Optional<IBaseResource> resource;
+        if ( fhirResource.isPersistedDataItem() )
+        {
+            resource = processingMetrics.time( ProcessingStage.FETCH, tags, () -> getParsedFhirResource( fhirResource, fhirClientResource, subscriptionFhirResource ) );
+        }
+        else
+        {
+            resource = processingMetrics.time( ProcessingStage.FETCH, tags, () -> fhirResourceRepository.findRefreshed(
+                fhirClient.getId(), fhirClient.getFhirVersion(), fhirClient.getFhirEndpoint(),
+                fhirClientResource.getFhirResourceType().getResourceTypeName(), fhirResource.getId() ) );
+        }
+
+        if ( resource.isPresent() )
+        {
+            final ProcessedItemInfo processedItemInfo = ProcessedFhirItemInfoUtils.create( resource.get() );
+            if ( processingMetrics.time( ProcessingStage.DEDUPLICATE, tags, () -> storedItemService.contains( fhirClient, processedItemInfo.toIdString( Instant.now() ) ) ) )
+            {
+                processingMetrics.count( ProcessingStage.DEDUPLICATE, tags, ProcessingOutcome.SKIPPED, 1 );
+                logger.info( "FHIR resource {} of FHIR client resource {} has already been stored.",
+                    resource.get().getIdElement().toUnqualified(), fhirClientResource.getId() );
+            }
+            else
+            {
+                return new ReceivedFhirResource( fhirResource, fhirClientResource, subscriptionFhirResource, resource.get(), processedItemInfo, currentProcessedCount );
+            }
+        }
+        else if ( fhirResource.isPersistedDataItem() )
+        {
+            processingMetrics.count( ProcessingStage.FETCH, tags, ProcessingOutcome.SKIPPED, 1 );
+            logger.debug( "Persisted FHIR resource {}/{} for FHIR client resource {} is no longer available. Skipping processing of updated FHIR resource.",
+                fhirClientResource.getFhirResourceType().getResourceTypeName(), fhirResource.getIdPart(), fhirClientResource.getId() );
+        }
+        else
+        {
+            processingMetrics.count( ProcessingStage.FETCH, tags, ProcessingOutcome.SKIPPED, 1 );
+            logger.info( "FHIR resource {}/{} for FHIR client resource {} is no longer available. Skipping processing of updated FHIR resource.",
+                fhirClientResource.getFhirResourceType().getResourceTypeName(), fhirResource.getId(), fhirClientResource.getId() );
+        }
+
+        return new ReceivedFhirResource( fhirResource, fhirClientResource, subscriptionFhirResource, null, null, currentProcessedCount );
+    }
+
+    /**
+     * Saves the prepared received FHIR resource if it is processable.
+     *
+     * @param receivedFhirResource the prepared received FHIR resource.
+     * @throws RetryQueueDeliveryException thrown if the processing of the FHIR resource should be retried later.
+     */
+    protected void save( @Nonnull ReceivedFhirResource receivedFhirResource ) throws RetryQueueDeliveryException
+    {
+        final IBaseResource resource = receivedFhirResource.getResource();
+        if ( resource == null )
+        {
+            return;
+        }
+
+        final FhirClientResource fhirClientResource = receivedFhirResource.getFhirClientResource();
+        try ( final MDC.MDCCloseable c = MDC.putCloseable( "fhirId", fhirClientResource.getId() + ":" + resource.getIdElement().toUnqualifiedVersionless() ) )
+        {
+            logger.info( "Processing FHIR resource {} of FHIR client resource {} (persisted={}, processed={}).",
+                resource.getIdElement().toUnqualified(), fhirClientResource.getId(), receivedFhirResource.getFhirResource().isPersistedDataItem(), receivedFhirResource.getProcessedCount() );
+            try
+            {
+                fhirRepository.save( fhirClientResource, resource, null );
+            }
+            catch ( DhisConflictException e )
+            {
+                processingMetrics.count( ProcessingStage.PERSIST, createProcessingTags( fhirClientResource ), ProcessingOutcome.SKIPPED, 1 );
+                logger.warn( "Processing of data of FHIR resource caused a conflict on DHIS2. Skipping FHIR resource because of the occurred conflict: {}", e.getMessage() );
+            }
+            catch ( TransformerDataException | TransformerMappingException e )
+            {
+                logger.warn( "Processing of data of FHIR resource caused a transformation error. Retrying processing later because of resolvable issue: {}", e.getMessage() );
+                processingMetrics.count( ProcessingStage.RETRY, createProcessingTags( fhirClientResource ), ProcessingOutcome.RETRY, 1 );
+                throw new RetryQueueDeliveryException( e );
+            }
+            logger.info( "Processed FHIR resource {} for FHIR client resource {}.",
+                resource.getIdElement().toUnqualifiedVersionless(), fhirClientResource.getId() );
+        }
+    }
+
+    /**
+     * Completes the processing of the prepared received FHIR resource. This
+     * must only be invoked when the FHIR resource has been processed successfully
+     * and the processing must not be retried.
+     *
+     * @param receivedFhirResource the prepared received FHIR resource.
+     */
+    protected void completed( @Nonnull ReceivedFhirResource receivedFhirResource )
+    {
+        if ( receivedFhirResource.getProcessedItemInfo() != null )
+        {
+            storedItemService.stored( receivedFhirResource.getFhirClientResource().getFhirClient(),
+                receivedFhirResource.getProcessedItemInfo().toIdString( Instant.now() ) );
+        }
+
+        // must not be deleted before since it is still required when a retry must be performed
+        if ( receivedFhirResource.getSubscriptionFhirResource() != null )
+        {
+            subscriptionFhirResourceRepository.deleteEnqueued( receivedFhirResource.getSubscriptionFhirResource() );
+        }
+    }
+
+    @Nonnull
+    private Optional<IBaseResource> getParsedFhirResource( @Nonnull FhirResource fhirResource, @Nonnull FhirClientResource fhirClientResource, @Nullable SubscriptionFhirResource subscriptionFhirResource )
+    {
+        final Optional<IBaseResource> resource;
+        if ( subscriptionFhirResource == null )
+        {
+            resource = Optional.empty();
+        }
+        else
+        {
+            final FhirContext fhirContext = fhirResourceRepository.findFhirContext( subscriptionFhirResource.getFhirVersion() )
+                .orElseThrow( () -> new FatalTransformerException( "FHIR context for FHIR version " + subscriptionFhirResource.getFhirVersion() + " has not been configured." ) );
+            resource = Optional.of( Objects.requireNonNull( fhirResourceRepository.transform( fhirClientResource.getFhirClient().getId(), subscriptionFhirResource.getFhirVersion(),
+                FhirParserUtils.parse( fhirContext, subscriptionFhirResource.getFhirResource(), subscriptionFhirResource.getContentType() ) ) ) );
+        }
+        return resource;
+    }
+
+    /**
+     * A FHIR resource that has been received from the queue and that has been
+     * prepared for processing.
+     */
+    protected static class ReceivedFhirResource
+    {
+        private final FhirResource fhirResource;
+
+        private final FhirClientResource fhirClientResource;
+
+        private final SubscriptionFhirResource subscriptionFhirResource;
+
+        private final IBaseResource resource;
+
+        private final ProcessedItemInfo processedItemInfo;
+
+        private final long processedCount;
+
+        public ReceivedFhirResource( @Nonnull FhirResource fhirResource, @Nonnull FhirClientResource fhirClientResource, @Nullable SubscriptionFhirResource subscriptionFhirResource,
+            @Nullable IBaseResource resource, @Nullable ProcessedItemInfo processedItemInfo, long processedCount )
+        {
+            this.fhirResource = fhirResource;
+            this.fhirClientResource = fhirClientResource;
+            this.subscriptionFhirResource = subscriptionFhirResource;
+            this.resource = resource;
+            this.processedItemInfo = processedItemInfo;
+            this.processedCount = processedCount;
+        }
+
+        @Nonnull
+        public FhirResource getFhirResource()
+        {
+            return fhirResource;
+        }
+
+        @Nonnull
+        public FhirClientResource getFhirClientResource()
+        {
+            return fhirClientResource;
+        }
+
+        @Nullable
+        public SubscriptionFhirResource getSubscriptionFhirResource()
+        {
+            return subscriptionFhirResource;
+        }
+
+        /**
+         * @return the FHIR resource that must be processed or <code>null</code> if
+         * there is nothing to be processed (e.g. since it has already been processed).
+         */
+        @Nullable
+        public IBaseResource getResource()
+        {
+            return resource;
+        }
+
+        @Nullable
+        public ProcessedItemInfo getProcessedItemInfo()
+        {
+            return processedItemInfo;
+        }
+
+        public long getProcessedCount()
+        {
+            return processedCount;
+        }
+    }
+}
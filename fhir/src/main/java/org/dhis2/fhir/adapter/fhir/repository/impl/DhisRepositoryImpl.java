@@ -60,8 +60,6 @@ import org.dhis2.fhir.adapter.fhir.transform.TransformerMappingException;
 import org.dhis2.fhir.adapter.fhir.transform.config.FhirRestInterfaceConfig;
 import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirDataProvider;
 import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirDataProviderException;
-import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirSearchResult;
-import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirSearchState;
 import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformOutcome;
 import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformerRequest;
 import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformerService;
@@ -71,6 +69,9 @@ import org.dhis2.fhir.adapter.fhir.transform.dhis.model.ImmutableDhisRequest;
 import org.dhis2.fhir.adapter.fhir.transform.dhis.model.WritableDhisRequest;
 import org.dhis2.fhir.adapter.lock.LockContext;
 import org.dhis2.fhir.adapter.lock.LockManager;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingStage;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,10 +82,8 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -123,6 +122,8 @@ public class DhisRepositoryImpl implements DhisRepository
 
     private final FhirRestInterfaceConfig fhirRestInterfaceConfig;
 
+    private final ProcessingMetrics processingMetrics;
+
     public DhisRepositoryImpl(
         @Nonnull AuthorizationContext authorizationContext,
         @Nonnull Authorization systemDhis2Authorization,
@@ -133,7 +134,8 @@ public class DhisRepositoryImpl implements DhisRepository
         @Nonnull DhisToFhirTransformerService dhisToFhirTransformerService,
         @Nonnull FhirResourceRepository fhirResourceRepository,
         @Nonnull FhirDhisAssignmentRepository fhirDhisAssignmentRepository,
-        @Nonnull FhirRestInterfaceConfig fhirRestInterfaceConfig )
+        @Nonnull FhirRestInterfaceConfig fhirRestInterfaceConfig,
+        @Nonnull ProcessingMetrics processingMetrics )
     {
         this.authorizationContext = authorizationContext;
         this.systemDhis2Authorization = systemDhis2Authorization;
@@ -145,6 +147,7 @@ public class DhisRepositoryImpl implements DhisRepository
         this.fhirResourceRepository = fhirResourceRepository;
         this.fhirDhisAssignmentRepository = fhirDhisAssignmentRepository;
         this.fhirRestInterfaceConfig = fhirRestInterfaceConfig;
+        this.processingMetrics = processingMetrics;
     }
 
     @HystrixCommand( ignoreExceptions = { MissingDhisResourceException.class, TransformerDataException.class, TransformerMappingException.class, UnauthorizedException.class } )
@@ -274,7 +277,7 @@ public class DhisRepositoryImpl implements DhisRepository
             resultingCount = Math.min( count, fhirRestInterfaceConfig.getMaxSearchCount() );
         }
 
-        List<IBaseResource> result = Collections.emptyList();
+        IBundleProvider result = null;
         try ( final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext( true ) )
         {
             final List<RuleInfo<? extends AbstractRule>> rules = dhisToFhirTransformerService.findAllRules( fhirClient, fhirResourceType, filteredCodes );
@@ -288,74 +291,29 @@ public class DhisRepositoryImpl implements DhisRepository
                 logger.debug( "More than one matching DHIS resource type ({}) for FHIR resource {} and codes {}. " +
                     "Search is not supported in this case.", dhisResourceTypes, fhirResourceType, filteredCodes );
             }
-            else
+            else if ( resultingCount > 0 )
             {
-                result = search( fhirClient, fhirResourceType, filteredCodes, filter, lastUpdatedDateRange, dhisResourceTypes.stream().findFirst().get(), rules, resultingCount );
+                result = search( fhirClient, filter, lastUpdatedDateRange, dhisResourceTypes.stream().findFirst().get(), rules, resultingCount );
+                // the first page is transformed immediately in order to know if the result is complete
+                result.getResources( 0, resultingCount );
             }
         }
-        return new SimpleBundleProvider( result ).setSize( (result.size() < resultingCount) ? result.size() : null );
+        return (result == null) ? new SimpleBundleProvider( Collections.emptyList() ).setSize( (resultingCount > 0) ? 0 : null ) : result;
     }
 
+    /**
+     * Creates a bundle provider that searches the DHIS2 resources lazily and transforms them
+     * page by page when they are requested. Subsequent pages can be requested through the
+     * paging provider of the FHIR server.
+     */
     @Nonnull
-    protected List<IBaseResource> search( @Nonnull FhirClient fhirClient, @Nonnull FhirResourceType fhirResourceType, @Nullable Set<SystemCodeValue> filteredCodes, @Nullable Map<String, List<String>> filter, @Nullable DateRangeParam lastUpdatedDateRange,
+    protected IBundleProvider search( @Nonnull FhirClient fhirClient, @Nullable Map<String, List<String>> filter, @Nullable DateRangeParam lastUpdatedDateRange,
         @Nonnull DhisResourceType dhisResourceType, @Nonnull List<RuleInfo<? extends AbstractRule>> rules, int count )
     {
-        if ( count == 0 )
-        {
-            return Collections.emptyList();
-        }
-
         final DhisToFhirDataProvider<? extends AbstractRule> dataProvider = dhisToFhirTransformerService.getDataProvider( fhirClient.getFhirVersion(), dhisResourceType );
         final PreparedDhisToFhirSearch preparedSearch = dataProvider.prepareSearchCasted( fhirClient.getFhirVersion(), rules, filter, lastUpdatedDateRange, count );
 
-        final LinkedList<DhisResource> dhisResources = new LinkedList<>();
-        final List<IBaseResource> result = new ArrayList<>();
-        DhisToFhirSearchState searchState = null;
-        do
-        {
-            if ( dhisResources.isEmpty() )
-            {
-                final DhisToFhirSearchResult<? extends DhisResource> searchResult = dataProvider.search( preparedSearch, searchState, count - result.size() );
-                if ( searchResult == null )
-                {
-                    return result;
-                }
-                searchState = searchResult.getState();
-
-                if ( searchResult.getResult().isEmpty() )
-                {
-                    continue;
-                }
-
-                dhisResources.addAll( searchResult.getResult() );
-            }
-
-            final DhisResource dhisResource = Objects.requireNonNull( dhisResources.poll() );
-            final WritableDhisRequest dhisRequest = new WritableDhisRequest( true, true, true );
-            dhisRequest.setResourceType( dhisResource.getResourceType() );
-            dhisRequest.setLastUpdated( dhisResource.getLastUpdated() );
-
-            DhisToFhirTransformerRequest transformerRequest =
-                dhisToFhirTransformerService.createTransformerRequest( fhirClient, new ImmutableDhisRequest( dhisRequest ), dhisResource, rules );
-            while ( (transformerRequest != null) && (result.size() < count) )
-            {
-                final DhisToFhirTransformOutcome<? extends IBaseResource> outcome = dhisToFhirTransformerService.transform( transformerRequest );
-                if ( outcome == null )
-                {
-                    transformerRequest = null;
-                }
-                else
-                {
-                    if ( outcome.getResource() != null )
-                    {
-                        result.add( outcome.getResource() );
-                    }
-                    transformerRequest = outcome.getNextTransformerRequest();
-                }
-            }
-        }
-        while ( result.size() < count );
-        return result;
+        return new DhisSearchBundleProvider( fhirClient, rules, dataProvider, preparedSearch, dhisToFhirTransformerService, requestCacheService );
     }
 
     protected boolean saveInternallyWithMissingDhisResources( @Nonnull DhisSyncGroup syncGroup, @Nonnull DhisResource resource, @Nonnull Set<DhisResourceId> missingDhisResourceIds, boolean initial )
@@ -366,7 +324,7 @@ public class DhisRepositoryImpl implements DhisRepository
         {
             try
             {
-                result = saveInternally( resource );
+                result = saveInternally( syncGroup, resource );
                 saved = true;
             }
             catch ( MissingDhisResourceException e )
@@ -412,7 +370,7 @@ public class DhisRepositoryImpl implements DhisRepository
             Objects.requireNonNull( resource.getLastUpdated() ).toInstant(), resource.isDeleted() );
     }
 
-    protected boolean saveInternally( @Nonnull DhisResource resource )
+    protected boolean saveInternally( @Nonnull DhisSyncGroup syncGroup, @Nonnull DhisResource resource )
     {
         final WritableDhisRequest dhisRequest = new WritableDhisRequest( false, true, true );
         dhisRequest.setResourceType( resource.getResourceType() );
@@ -424,15 +382,19 @@ public class DhisRepositoryImpl implements DhisRepository
             return false;
         }
 
+        final ProcessingTags syncGroupTags = new ProcessingTags( DhisResourceQueueListener.PROCESSING_PIPELINE )
+            .syncGroup( syncGroup.getId() ).resourceType( resource.getResourceType() );
         boolean saved = false;
         do
         {
+            final DhisToFhirTransformerRequest currentTransformerRequest = transformerRequest;
+            final ProcessingTags tags = syncGroupTags.fhirClient( transformerRequest.getFhirClient().getCode() );
             DhisToFhirTransformOutcome<? extends IBaseResource> outcome;
             try ( final LockContext lockContext = lockManager.begin() )
             {
                 try ( final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext( true ) )
                 {
-                    outcome = dhisToFhirTransformerService.transform( transformerRequest );
+                    outcome = processingMetrics.time( ProcessingStage.TRANSFORM, tags, () -> dhisToFhirTransformerService.transform( currentTransformerRequest ) );
                 }
                 if ( outcome == null )
                 {
@@ -444,7 +406,9 @@ public class DhisRepositoryImpl implements DhisRepository
                     {
                         if ( outcome.isDelete() )
                         {
-                            final boolean deleted = fhirResourceRepository.delete( transformerRequest.getFhirClient(), outcome.getResource() );
+                            final IBaseResource deletedResource = outcome.getResource();
+                            final boolean deleted = processingMetrics.time( ProcessingStage.PERSIST, tags,
+                                () -> fhirResourceRepository.delete( currentTransformerRequest.getFhirClient(), deletedResource ) );
                             fhirDhisAssignmentRepository.deleteFhirResourceId( outcome.getRule(), transformerRequest.getFhirClient(),
                                 outcome.getResource().getIdElement() );
                             logger.info( "Deleted (found={}) resource {} for FHIR client {}.", deleted,
@@ -452,8 +416,9 @@ public class DhisRepositoryImpl implements DhisRepository
                         }
                         else
                         {
-                            final IBaseResource resultingResource = fhirResourceRepository
-                                .save( transformerRequest.getFhirClient(), outcome.getResource(), resource.getId() );
+                            final IBaseResource savedResource = outcome.getResource();
+                            final IBaseResource resultingResource = processingMetrics.time( ProcessingStage.PERSIST, tags,
+                                () -> fhirResourceRepository.save( currentTransformerRequest.getFhirClient(), savedResource, resource.getId() ) );
                             // resource may have been set as attribute in transformer context (e.g. shared encounter)
                             outcome.getResource().setId( resultingResource.getIdElement() );
                             fhirDhisAssignmentRepository.saveFhirResourceId( outcome.getRule(), transformerRequest.getFhirClient(),
@@ -38,6 +38,7 @@ import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
 import org.dhis2.fhir.adapter.dhis.sync.DhisResourceQueueItem;
 import org.dhis2.fhir.adapter.dhis.sync.DhisResourceRepository;
+import org.dhis2.fhir.adapter.dhis.sync.StagedDhisResourceService;
 import org.dhis2.fhir.adapter.dhis.sync.StoredDhisResourceService;
 import org.dhis2.fhir.adapter.fhir.repository.DhisRepository;
 import org.dhis2.fhir.adapter.fhir.repository.MissingDhisResourceException;
@@ -45,6 +46,10 @@ import org.dhis2.fhir.adapter.fhir.repository.OptimisticFhirResourceLockExceptio
 import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
 import org.dhis2.fhir.adapter.fhir.transform.TransformerDataException;
 import org.dhis2.fhir.adapter.fhir.transform.TransformerMappingException;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingOutcome;
+import org.dhis2.fhir.adapter.metrics.ProcessingStage;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
 import org.dhis2.fhir.adapter.queue.RetryQueueDeliveryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +76,8 @@ import java.util.Optional;
 @ConditionalOnProperty( name = "dhis2.fhir-adapter.export-enabled" )
 public class DhisResourceQueueListener
 {
+    public static final String PROCESSING_PIPELINE = "dhis-resource";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final DhisRepository dhisRepository;
@@ -85,13 +92,19 @@ public class DhisResourceQueueListener
 
     private final DhisResourceRepository dhisResourceRepository;
 
+    private final StagedDhisResourceService stagedDhisResourceService;
+
+    private final ProcessingMetrics processingMetrics;
+
     public DhisResourceQueueListener(
         @Nonnull DhisRepository dhisRepository,
         @Nonnull AuthorizationContext authorizationContext,
         @Nonnull Authorization systemDhis2Authorization,
         @Nonnull DhisSyncGroupRepository dhisSyncGroupRepository,
         @Nonnull StoredDhisResourceService storedItemService,
-        @Nonnull DhisResourceRepository dhisResourceRepository )
+        @Nonnull DhisResourceRepository dhisResourceRepository,
+        @Nonnull StagedDhisResourceService stagedDhisResourceService,
+        @Nonnull ProcessingMetrics processingMetrics )
     {
         this.dhisRepository = dhisRepository;
         this.authorizationContext = authorizationContext;
@@ -99,6 +112,8 @@ public class DhisResourceQueueListener
         this.dhisSyncGroupRepository = dhisSyncGroupRepository;
         this.storedItemService = storedItemService;
         this.dhisResourceRepository = dhisResourceRepository;
+        this.stagedDhisResourceService = stagedDhisResourceService;
+        this.processingMetrics = processingMetrics;
     }
 
     @HystrixCommand( ignoreExceptions = RetryQueueDeliveryException.class )
@@ -108,7 +123,7 @@ public class DhisResourceQueueListener
     public void receive( @Nonnull DhisResourceQueueItem queueItem )
     {
         SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
-        try
+        try ( final ProcessingMetrics.InFlight inFlight = processingMetrics.begin( PROCESSING_PIPELINE ) )
         {
             receiveAuthenticated( queueItem );
         }
@@ -130,18 +145,19 @@ public class DhisResourceQueueListener
             return;
         }
 
+        final DhisResourceId resourceId = Objects.requireNonNull( DhisResourceId.parse( queueItem.getId() ) );
+        final ProcessingTags tags = new ProcessingTags( PROCESSING_PIPELINE ).syncGroup( syncGroup.getId() ).resourceType( resourceId.getType() );
         final Optional<? extends DhisResource> resource;
         authorizationContext.setAuthorization( systemDhis2Authorization );
         try
         {
-            final DhisResourceId resourceId = Objects.requireNonNull( DhisResourceId.parse( queueItem.getId() ) );
             if ( queueItem.isDeleted() )
             {
-                resource = dhisResourceRepository.findRefreshedDeleted( resourceId );
+                resource = processingMetrics.time( ProcessingStage.FETCH, tags, () -> dhisResourceRepository.findRefreshedDeleted( resourceId ) );
             }
             else
             {
-                resource = dhisResourceRepository.findRefreshed( resourceId );
+                resource = processingMetrics.time( ProcessingStage.FETCH, tags, () -> findRefreshed( resourceId, queueItem ) );
             }
         }
         finally
@@ -152,8 +168,9 @@ public class DhisResourceQueueListener
         if ( resource.isPresent() )
         {
             final ProcessedItemInfo processedItemInfo = getProcessedItemInfo( resource.get() );
-            if ( storedItemService.contains( syncGroup, processedItemInfo.toIdString( Instant.now() ) ) )
+            if ( processingMetrics.time( ProcessingStage.DEDUPLICATE, tags, () -> storedItemService.contains( syncGroup, processedItemInfo.toIdString( Instant.now() ) ) ) )
             {
+                processingMetrics.count( ProcessingStage.DEDUPLICATE, tags, ProcessingOutcome.SKIPPED, 1 );
                 logger.info( "DHIS resource {} of sync group {} has already been stored.",
                     resource.get().getResourceId(), syncGroup.getId() );
             }
@@ -169,17 +186,20 @@ public class DhisResourceQueueListener
                     catch ( MissingDhisResourceException e )
                     {
                         // retrying this issue will result in the same issue most likely
+                        processingMetrics.count( ProcessingStage.TRANSFORM, tags, ProcessingOutcome.SKIPPED, 1 );
                         logger.warn( "Processing of data of DHIS resource caused a transformation error because of a missing DHIS resource {} that could not be created. Transformation will not be retried.", e.getDhisResourceId() );
                     }
                     catch ( TransformerDataException | TransformerMappingException e )
                     {
                         logger.warn( "Processing of data of DHIS resource caused a transformation error. Retrying processing later because of resolvable issue: {}", e.getMessage() );
+                        processingMetrics.count( ProcessingStage.RETRY, tags, ProcessingOutcome.RETRY, 1 );
                         throw new RetryQueueDeliveryException( e );
                     }
                     catch ( OptimisticFhirResourceLockException e )
                     {
                         logger.debug( e.getMessage(), e );
                         logger.info( "Processing of data of DHIS resource caused an optimistic locking error. Retrying processing later because of resolvable issue." );
+                        processingMetrics.count( ProcessingStage.RETRY, tags, ProcessingOutcome.RETRY, 1 );
                         throw new RetryQueueDeliveryException( e );
                     }
                     logger.info( "Processed DHIS resource {} for sync group {}.", resource.get().getResourceId(), syncGroup.getId() );
@@ -189,11 +209,29 @@ public class DhisResourceQueueListener
         }
         else
         {
+            processingMetrics.count( ProcessingStage.FETCH, tags, ProcessingOutcome.SKIPPED, 1 );
             logger.info( "DHIS resource {} for sync group {} is no longer available. Skipping processing of updated DHIS resource.",
                 queueItem.getId(), syncGroup.getId() );
         }
     }
 
+    @Nonnull
+    private Optional<? extends DhisResource> findRefreshed( @Nonnull DhisResourceId resourceId, @Nonnull DhisResourceQueueItem queueItem )
+    {
+        if ( stagedDhisResourceService.isEnabled() && (queueItem.getLastUpdated() != null) )
+        {
+            final Optional<DhisResource> resource = stagedDhisResourceService.findStaged( resourceId, queueItem.getLastUpdated() );
+
+            if ( resource.isPresent() )
+            {
+                logger.debug( "Using staged DHIS resource {}.", resourceId );
+                return resource;
+            }
+        }
+
+        return dhisResourceRepository.findRefreshed( resourceId );
+    }
+
     @Nonnull
     private ProcessedItemInfo getProcessedItemInfo( @Nonnull DhisResource resource )
     {
@@ -0,0 +1,246 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import org.dhis2.fhir.adapter.cache.RequestCacheContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
+import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirDataProvider;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirSearchResult;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirSearchState;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformOutcome;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformerRequest;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformerService;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.PreparedDhisToFhirSearch;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.model.ImmutableDhisRequest;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.model.WritableDhisRequest;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Bundle provider that searches DHIS2 resources lazily and transforms them to FHIR
+ * resources on demand. The search state of DHIS2 is kept as a cursor and only the
+ * resources of the most recently requested range are kept in memory. If a range
+ * before the most recently requested range is requested, the search is restarted.
+ *
+ * @author volsch
+ */
+public class DhisSearchBundleProvider implements IBundleProvider
+{
+    private final IPrimitiveType<Date> published = InstantDt.withCurrentTime();
+
+    private final FhirClient fhirClient;
+
+    private final List<RuleInfo<? extends AbstractRule>> rules;
+
+    private final DhisToFhirDataProvider<? extends AbstractRule> dataProvider;
+
+    private final PreparedDhisToFhirSearch preparedSearch;
+
+    private final DhisToFhirTransformerService dhisToFhirTransformerService;
+
+    private final RequestCacheService requestCacheService;
+
+    private final LinkedList<DhisResource> dhisResources = new LinkedList<>();
+
+    private final List<IBaseResource> resources = new ArrayList<>();
+
+    private DhisToFhirSearchState searchState;
+
+    private DhisToFhirTransformerRequest transformerRequest;
+
+    private boolean exhausted;
+
+    private int offset;
+
+    public DhisSearchBundleProvider( @Nonnull FhirClient fhirClient, @Nonnull List<RuleInfo<? extends AbstractRule>> rules, @Nonnull DhisToFhirDataProvider<? extends AbstractRule> dataProvider,
+        @Nonnull PreparedDhisToFhirSearch preparedSearch, @Nonnull DhisToFhirTransformerService dhisToFhirTransformerService, @Nonnull RequestCacheService requestCacheService )
+    {
+        this.fhirClient = fhirClient;
+        this.rules = rules;
+        this.dataProvider = dataProvider;
+        this.preparedSearch = preparedSearch;
+        this.dhisToFhirTransformerService = dhisToFhirTransformerService;
+        this.requestCacheService = requestCacheService;
+    }
+
+    @Override
+    public IPrimitiveType<Date> getPublished()
+    {
+        return published;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized List<IBaseResource> getResources( int fromIndex, int toIndex )
+    {
+        if ( fromIndex < offset )
+        {
+            restart();
+        }
+
+        final boolean authenticated = SecurityContextHolder.getContext().getAuthentication() != null;
+        if ( !authenticated )
+        {
+            SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
+        }
+        try ( final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext( true ) )
+        {
+            discard( fromIndex );
+            while ( (offset + resources.size() < toIndex) && transformNext( toIndex - offset - resources.size() ) )
+            {
+                // resources that are skipped must not be kept in memory
+                discard( fromIndex );
+            }
+        }
+        finally
+        {
+            if ( !authenticated )
+            {
+                SecurityContextHolder.clearContext();
+            }
+        }
+
+        final int from = Math.min( fromIndex - offset, resources.size() );
+        final int to = Math.max( from, Math.min( toIndex - offset, resources.size() ) );
+        return new ArrayList<>( resources.subList( from, to ) );
+    }
+
+    @Override
+    public String getUuid()
+    {
+        return null;
+    }
+
+    @Override
+    public Integer preferredPageSize()
+    {
+        return null;
+    }
+
+    @Override
+    public synchronized Integer size()
+    {
+        return isComplete() ? (offset + resources.size()) : null;
+    }
+
+    private boolean isComplete()
+    {
+        return exhausted && dhisResources.isEmpty() && (transformerRequest == null);
+    }
+
+    private void restart()
+    {
+        dhisResources.clear();
+        resources.clear();
+        searchState = null;
+        transformerRequest = null;
+        exhausted = false;
+        offset = 0;
+    }
+
+    private void discard( int fromIndex )
+    {
+        final int count = Math.min( fromIndex - offset, resources.size() );
+        if ( count > 0 )
+        {
+            resources.subList( 0, count ).clear();
+            offset += count;
+        }
+    }
+
+    /**
+     * Performs the next transformation step. The next DHIS2 resources are searched
+     * if there are no more DHIS2 resources to be transformed.
+     *
+     * @param max the maximum number of resources that are still required.
+     * @return <code>true</code> if a transformation step has been performed,
+     * <code>false</code> if there are no more resources available.
+     */
+    private boolean transformNext( int max )
+    {
+        while ( transformerRequest == null )
+        {
+            if ( dhisResources.isEmpty() )
+            {
+                if ( exhausted )
+                {
+                    return false;
+                }
+
+                final DhisToFhirSearchResult<? extends DhisResource> searchResult = dataProvider.search( preparedSearch, searchState, max );
+                if ( searchResult == null )
+                {
+                    exhausted = true;
+                    return false;
+                }
+                searchState = searchResult.getState();
+                dhisResources.addAll( searchResult.getResult() );
+            }
+            else
+            {
+                final DhisResource dhisResource = Objects.requireNonNull( dhisResources.poll() );
+                final WritableDhisRequest dhisRequest = new WritableDhisRequest( true, true, true );
+                dhisRequest.setResourceType( dhisResource.getResourceType() );
+                dhisRequest.setLastUpdated( dhisResource.getLastUpdated() );
+
+                transformerRequest = dhisToFhirTransformerService.createTransformerRequest( fhirClient, new ImmutableDhisRequest( dhisRequest ), dhisResource, rules );
+            }
+        }
+
+        final DhisToFhirTransformOutcome<? extends IBaseResource> outcome = dhisToFhirTransformerService.transform( transformerRequest );
+        if ( outcome == null )
+        {
+            transformerRequest = null;
+        }
+        else
+        {
+            if ( outcome.getResource() != null )
+            {
+                resources.add( outcome.getResource() );
+            }
+            transformerRequest = outcome.getNextTransformerRequest();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,420 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientConfig;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientConnectionPoolConfig;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ClientFhirEndpoint;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientUtils;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Implementation of {@link FhirClientRegistry}. Every registered client uses its own
+ * pooling HTTP client. Expired and idle connections are closed periodically. Clients
+ * that have been replaced or invalidated are not shut down, since they may still be
+ * used by running requests. Their connections are closed as soon as they are idle and
+ * the clients are released when none of their connections is leased anymore. The
+ * connection statistics of every FHIR client are exposed as gauges.
+ *
+ * @author volsch
+ */
+@Component
+public class FhirClientRegistryImpl implements FhirClientRegistry
+{
+    public static final String CONNECTIONS_GAUGE_NAME = "dhis2.fhir.adapter.fhir.client.connections";
+
+    public static final String STATE_TAG_NAME = "state";
+
+    public static final String FHIR_VERSION_TAG_NAME = "fhirVersion";
+
+    protected static final long MIN_EVICTION_INTERVAL_MILLIS = 1_000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FhirClientConfig fhirClientConfig;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<ClientKey, RegisteredClient> clients = new ConcurrentHashMap<>();
+
+    private final Map<ClientKey, ConnectionStatistics> statistics = new ConcurrentHashMap<>();
+
+    private final Queue<RegisteredClient> retiredClients = new ConcurrentLinkedQueue<>();
+
+    private final ScheduledExecutorService evictionExecutor;
+
+    @Autowired
+    public FhirClientRegistryImpl( @Nonnull FhirClientConfig fhirClientConfig, @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
+    {
+        this( fhirClientConfig, meterRegistry.getIfAvailable() );
+    }
+
+    public FhirClientRegistryImpl( @Nonnull FhirClientConfig fhirClientConfig, @Nullable MeterRegistry meterRegistry )
+    {
+        this.fhirClientConfig = fhirClientConfig;
+        this.meterRegistry = meterRegistry;
+
+        final long evictionIntervalMillis = Math.max( MIN_EVICTION_INTERVAL_MILLIS, fhirClientConfig.getConnectionPool().getIdleTimeoutMillis() / 2 );
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread thread = new Thread( r, "fhir-client-connection-evictor" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        this.evictionExecutor.scheduleWithFixedDelay( this::evictConnections, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS );
+    }
+
+    @Nonnull
+    @Override
+    public IGenericClient getClient( @Nonnull UUID fhirClientId, @Nonnull FhirContext fhirContext, @Nonnull ClientFhirEndpoint fhirEndpoint )
+    {
+        final ClientKey key = new ClientKey( fhirClientId, FhirVersion.get( fhirContext.getVersion().getVersion() ) );
+        final List<Object> endpointVersion = createEndpointVersion( fhirEndpoint );
+        final RegisteredClient registeredClient = clients.compute( key, ( k, rc ) -> {
+            if ( (rc != null) && rc.getEndpointVersion().equals( endpointVersion ) )
+            {
+                return rc;
+            }
+            if ( rc != null )
+            {
+                logger.info( "Configuration of FHIR endpoint of FHIR client {} has changed. Replacing registered client.", fhirClientId );
+                retire( rc );
+            }
+            return createClient( k, fhirContext, fhirEndpoint, endpointVersion );
+        } );
+
+        return registeredClient.getClient();
+    }
+
+    @Override
+    public void invalidate( @Nonnull UUID fhirClientId )
+    {
+        clients.keySet().stream().filter( k -> k.getFhirClientId().equals( fhirClientId ) ).forEach( k -> {
+            final RegisteredClient registeredClient = clients.remove( k );
+            if ( registeredClient != null )
+            {
+                logger.debug( "Invalidated registered client of FHIR client {}.", fhirClientId );
+                retire( registeredClient );
+            }
+        } );
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        evictionExecutor.shutdownNow();
+        clients.values().forEach( this::retire );
+        clients.clear();
+        retiredClients.forEach( RegisteredClient::close );
+        retiredClients.clear();
+    }
+
+    protected void evictConnections()
+    {
+        final long idleTimeoutMillis = fhirClientConfig.getConnectionPool().getIdleTimeoutMillis();
+        try
+        {
+            clients.values().forEach( rc -> {
+                rc.getConnectionManager().closeExpiredConnections();
+                rc.getConnectionManager().closeIdleConnections( idleTimeoutMillis, TimeUnit.MILLISECONDS );
+            } );
+
+            final Iterator<RegisteredClient> iterator = retiredClients.iterator();
+            while ( iterator.hasNext() )
+            {
+                final PoolingHttpClientConnectionManager connectionManager = iterator.next().getConnectionManager();
+                connectionManager.closeIdleConnections( 0, TimeUnit.MILLISECONDS );
+
+                final PoolStats poolStats = connectionManager.getTotalStats();
+                if ( (poolStats.getLeased() == 0) && (poolStats.getAvailable() == 0) )
+                {
+                    iterator.remove();
+                }
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.error( "Could not evict connections of FHIR clients.", e );
+        }
+    }
+
+    @Nonnull
+    protected RegisteredClient createClient( @Nonnull ClientKey key, @Nonnull FhirContext fhirContext, @Nonnull ClientFhirEndpoint fhirEndpoint, @Nonnull List<Object> endpointVersion )
+    {
+        final FhirClientConnectionPoolConfig poolConfig = fhirClientConfig.getConnectionPool();
+        final IRestfulClientFactory contextClientFactory = fhirContext.getRestfulClientFactory();
+
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager( RegistryBuilder.<ConnectionSocketFactory>create()
+            .register( "http", PlainConnectionSocketFactory.getSocketFactory() )
+            .register( "https", SSLConnectionSocketFactory.getSystemSocketFactory() ).build() );
+        connectionManager.setMaxTotal( poolConfig.getMaxTotal() );
+        connectionManager.setDefaultMaxPerRoute( poolConfig.getMaxPerRoute() );
+        connectionManager.setValidateAfterInactivity( poolConfig.getValidateAfterInactivityMillis() );
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout( contextClientFactory.getConnectTimeout() )
+            .setConnectionRequestTimeout( contextClientFactory.getConnectionRequestTimeout() )
+            .setSocketTimeout( contextClientFactory.getSocketTimeout() ).build();
+
+        final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().useSystemProperties()
+            .setConnectionManager( connectionManager )
+            .setDefaultRequestConfig( requestConfig )
+            .setKeepAliveStrategy( createKeepAliveStrategy( poolConfig.getKeepAliveMillis() ) )
+            .disableCookieManagement();
+        if ( !poolConfig.isContentCompression() )
+        {
+            httpClientBuilder.disableContentCompression();
+        }
+        final CloseableHttpClient httpClient = httpClientBuilder.build();
+
+        final ApacheRestfulClientFactory clientFactory = new ApacheRestfulClientFactory( fhirContext );
+        clientFactory.setServerValidationMode( contextClientFactory.getServerValidationMode() );
+        clientFactory.setHttpClient( httpClient );
+
+        final IGenericClient client = FhirClientUtils.configureClient( clientFactory.newGenericClient( fhirEndpoint.getBaseUrl() ), fhirEndpoint );
+        getConnectionStatistics( key ).setConnectionManager( connectionManager );
+        logger.debug( "Registered client for FHIR client {} with FHIR version {}.", key.getFhirClientId(), key.getFhirVersion() );
+
+        return new RegisteredClient( endpointVersion, client, httpClient, connectionManager );
+    }
+
+    @Nonnull
+    protected ConnectionStatistics getConnectionStatistics( @Nonnull ClientKey key )
+    {
+        return statistics.computeIfAbsent( key, k -> {
+            final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+            if ( meterRegistry != null )
+            {
+                registerGauge( k, connectionStatistics, "leased", PoolStats::getLeased );
+                registerGauge( k, connectionStatistics, "available", PoolStats::getAvailable );
+                registerGauge( k, connectionStatistics, "pending", PoolStats::getPending );
+                registerGauge( k, connectionStatistics, "max", PoolStats::getMax );
+            }
+            return connectionStatistics;
+        } );
+    }
+
+    private void registerGauge( @Nonnull ClientKey key, @Nonnull ConnectionStatistics connectionStatistics, @Nonnull String state, @Nonnull ToDoubleFunction<PoolStats> function )
+    {
+        Gauge.builder( CONNECTIONS_GAUGE_NAME, connectionStatistics, cs -> cs.get( function ) )
+            .tag( ProcessingTags.FHIR_CLIENT_TAG_NAME, key.getFhirClientId().toString() )
+            .tag( FHIR_VERSION_TAG_NAME, String.valueOf( key.getFhirVersion() ) )
+            .tag( STATE_TAG_NAME, state )
+            .description( "Connections of the connection pool of the FHIR client." )
+            .register( meterRegistry );
+    }
+
+    private void retire( @Nonnull RegisteredClient registeredClient )
+    {
+        statistics.values().forEach( cs -> cs.removeConnectionManager( registeredClient.getConnectionManager() ) );
+        retiredClients.add( registeredClient );
+    }
+
+    @Nonnull
+    protected static List<Object> createEndpointVersion( @Nonnull ClientFhirEndpoint fhirEndpoint )
+    {
+        final List<Object> headers = new ArrayList<>();
+        if ( fhirEndpoint.getHeaders() != null )
+        {
+            fhirEndpoint.getHeaders().forEach( h -> headers.add( Arrays.asList( h.getName(), h.getValue() ) ) );
+        }
+        return Arrays.asList( fhirEndpoint.getBaseUrl(), fhirEndpoint.isLogging(), fhirEndpoint.isVerboseLogging(), fhirEndpoint.isUseJsonFormat(), headers );
+    }
+
+    @Nonnull
+    protected static ConnectionKeepAliveStrategy createKeepAliveStrategy( long maxKeepAliveMillis )
+    {
+        return ( response, context ) -> {
+            final long keepAliveMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+            return (keepAliveMillis > 0) ? Math.min( keepAliveMillis, maxKeepAliveMillis ) : maxKeepAliveMillis;
+        };
+    }
+
+    protected static class ClientKey implements Serializable
+    {
+        private static final long serialVersionUID = -4296212454939587213L;
+
+        private final UUID fhirClientId;
+
+        private final FhirVersion fhirVersion;
+
+        public ClientKey( @Nonnull UUID fhirClientId, @Nullable FhirVersion fhirVersion )
+        {
+            this.fhirClientId = fhirClientId;
+            this.fhirVersion = fhirVersion;
+        }
+
+        @Nonnull
+        public UUID getFhirClientId()
+        {
+            return fhirClientId;
+        }
+
+        @Nullable
+        public FhirVersion getFhirVersion()
+        {
+            return fhirVersion;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o ) return true;
+            if ( o == null || getClass() != o.getClass() ) return false;
+            ClientKey clientKey = (ClientKey) o;
+            return fhirClientId.equals( clientKey.fhirClientId ) && fhirVersion == clientKey.fhirVersion;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( fhirClientId, fhirVersion );
+        }
+    }
+
+    protected class RegisteredClient
+    {
+        private final List<Object> endpointVersion;
+
+        private final IGenericClient client;
+
+        private final CloseableHttpClient httpClient;
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        public RegisteredClient( @Nonnull List<Object> endpointVersion, @Nonnull IGenericClient client, @Nonnull CloseableHttpClient httpClient, @Nonnull PoolingHttpClientConnectionManager connectionManager )
+        {
+            this.endpointVersion = endpointVersion;
+            this.client = client;
+            this.httpClient = httpClient;
+            this.connectionManager = connectionManager;
+        }
+
+        @Nonnull
+        public List<Object> getEndpointVersion()
+        {
+            return endpointVersion;
+        }
+
+        @Nonnull
+        public IGenericClient getClient()
+        {
+            return client;
+        }
+
+        @Nonnull
+        public PoolingHttpClientConnectionManager getConnectionManager()
+        {
+            return connectionManager;
+        }
+
+        public void close()
+        {
+            try
+            {
+                httpClient.close();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Could not close HTTP client of FHIR client: {}", e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Provides the connection statistics of the currently registered client. The
+     * instance remains registered as gauge when the client itself is replaced.
+     */
+    protected static class ConnectionStatistics
+    {
+        private volatile PoolingHttpClientConnectionManager connectionManager;
+
+        public void setConnectionManager( @Nullable PoolingHttpClientConnectionManager connectionManager )
+        {
+            this.connectionManager = connectionManager;
+        }
+
+        public synchronized void removeConnectionManager( @Nonnull PoolingHttpClientConnectionManager connectionManager )
+        {
+            if ( this.connectionManager == connectionManager )
+            {
+                this.connectionManager = null;
+            }
+        }
+
+        public double get( @Nonnull ToDoubleFunction<PoolStats> function )
+        {
+            final PoolingHttpClientConnectionManager cm = connectionManager;
+            return (cm == null) ? 0 : function.applyAsDouble( cm.getTotalStats() );
+        }
+    }
+}
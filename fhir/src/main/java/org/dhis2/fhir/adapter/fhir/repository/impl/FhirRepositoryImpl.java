@@ -70,6 +70,9 @@ import org.dhis2.fhir.adapter.fhir.transform.fhir.model.ResourceSystem;
 import org.dhis2.fhir.adapter.fhir.transform.fhir.model.WritableFhirRequest;
 import org.dhis2.fhir.adapter.lock.LockContext;
 import org.dhis2.fhir.adapter.lock.LockManager;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingStage;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
 import org.hl7.fhir.instance.model.api.IAnyResource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IDomainResource;
@@ -104,6 +107,8 @@ public class FhirRepositoryImpl implements FhirRepository
 
     public static final int MAX_CONFLICT_RETRIES = 2;
 
+    public static final String REST_INTERFACE_PROCESSING_PIPELINE = "fhir-rest-interface";
+
     private final AuthorizationContext authorizationContext;
 
     private final LockManager lockManager;
@@ -122,6 +127,8 @@ public class FhirRepositoryImpl implements FhirRepository
 
     private final FhirDhisAssignmentRepository fhirDhisAssignmentRepository;
 
+    private final ProcessingMetrics processingMetrics;
+
     private final ZoneId zoneId = ZoneId.systemDefault();
 
     private final AtomicLong processedCount = new AtomicLong();
@@ -135,7 +142,8 @@ public class FhirRepositoryImpl implements FhirRepository
         @Nonnull FhirResourceRepository fhirResourceRepository,
         @Nonnull FhirToDhisTransformerService fhirToDhisTransformerService,
         @Nonnull DhisResourceRepository dhisResourceRepository,
-        @Nonnull FhirDhisAssignmentRepository fhirDhisAssignmentRepository )
+        @Nonnull FhirDhisAssignmentRepository fhirDhisAssignmentRepository,
+        @Nonnull ProcessingMetrics processingMetrics )
     {
         this.authorizationContext = authorizationContext;
         this.lockManager = lockManager;
@@ -146,6 +154,7 @@ public class FhirRepositoryImpl implements FhirRepository
         this.fhirToDhisTransformerService = fhirToDhisTransformerService;
         this.dhisResourceRepository = dhisResourceRepository;
         this.fhirDhisAssignmentRepository = fhirDhisAssignmentRepository;
+        this.processingMetrics = processingMetrics;
     }
 
     @Override
@@ -381,17 +390,21 @@ public class FhirRepositoryImpl implements FhirRepository
         }
 
         final ProcessedItemInfo processedItemInfo = ProcessedFhirItemInfoUtils.create( resource );
+        final ProcessingTags tags = new ProcessingTags( ( fhirRepositoryOperation == null ) ? AbstractFhirResourceQueueListener.PROCESSING_PIPELINE : REST_INTERFACE_PROCESSING_PIPELINE )
+            .fhirClient( fhirClientResource.getFhirClient().getCode() ).resourceType( fhirRequest.getResourceType() );
         FhirRepositoryOperationOutcome operationOutcome = null;
         FhirToDhisTransformerRequest transformerRequest = fhirToDhisTransformerService.createTransformerRequest( fhirRequest, fhirClientResource, resource, contained );
 
         do
         {
             FhirToDhisTransformOutcome<? extends DhisResource> outcome;
-            try ( final LockContext lockContext = lockManager.begin() )
+            // a lock context of the caller (e.g. of a batch that persists DHIS2 resources later) must be kept until the caller has completed
+            try ( final LockContext lockContext = lockManager.getCurrentLockContext().isPresent() ? null : lockManager.begin() )
             {
                 try ( final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext( true ) )
                 {
-                    outcome = fhirToDhisTransformerService.transform( transformerRequest );
+                    final FhirToDhisTransformerRequest currentTransformerRequest = transformerRequest;
+                    outcome = processingMetrics.time( ProcessingStage.TRANSFORM, tags, () -> fhirToDhisTransformerService.transform( currentTransformerRequest ) );
                 }
 
                 if ( outcome == null )
@@ -401,13 +414,25 @@ public class FhirRepositoryImpl implements FhirRepository
                 else
                 {
                     final boolean created = outcome.isCreated();
-                    final DhisResource persistedDhisResource = dhisResourceRepository.save( outcome.getResource() );
+                    final DhisResource dhisResource = outcome.getResource();
+                    final DhisResource persistedDhisResource = processingMetrics.time( ProcessingStage.PERSIST, tags, () -> dhisResourceRepository.save( dhisResource ) );
 
                     if ( fhirRepositoryOperation == null )
                     {
-                        fhirDhisAssignmentRepository.saveDhisResourceId(
-                            outcome.getRule(), fhirClientResource.getFhirClient(),
-                            resource.getIdElement(), outcome.getResource().getResourceId() );
+                        final PendingFhirDhisAssignments pendingAssignments = getPendingAssignments();
+
+                        if ( pendingAssignments == null )
+                        {
+                            fhirDhisAssignmentRepository.saveDhisResourceId(
+                                outcome.getRule(), fhirClientResource.getFhirClient(),
+                                resource.getIdElement(), outcome.getResource().getResourceId() );
+                        }
+                        else
+                        {
+                            // DHIS2 resource has not yet been persisted and the assignment must only be stored when persisting succeeds
+                            pendingAssignments.add( outcome.getRule(), fhirClientResource.getFhirClient(),
+                                resource.getIdElement(), outcome.getResource().getResourceId() );
+                        }
                     }
 
                     if ( operationOutcome == null )
@@ -431,6 +456,15 @@ public class FhirRepositoryImpl implements FhirRepository
         return operationOutcome;
     }
 
+    @Nullable
+    protected PendingFhirDhisAssignments getPendingAssignments()
+    {
+        final RequestCacheContext requestCacheContext = requestCacheService.getCurrentRequestCacheContext();
+
+        return (requestCacheContext == null) ? null :
+            requestCacheContext.getAttribute( PendingFhirDhisAssignments.REQUEST_CACHE_ATTRIBUTE_NAME, PendingFhirDhisAssignments.class );
+    }
+
     @Nonnull
     protected String createDhisFhirResourceId( @Nonnull FhirToDhisTransformOutcome<? extends DhisResource> outcome, @Nonnull DhisResource persistedDhisResource )
     {
@@ -0,0 +1,466 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSConstants;
+import org.dhis2.fhir.adapter.cache.RequestCacheContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistStatus;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryContainer;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryTemplate;
+import org.dhis2.fhir.adapter.dhis.local.impl.LocalDhisResourceRepositoryContainerImpl;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Enrollment;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Event;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.fhir.client.StoredFhirResourceService;
+import org.dhis2.fhir.adapter.fhir.data.repository.FhirDhisAssignmentRepository;
+import org.dhis2.fhir.adapter.fhir.data.repository.SubscriptionFhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResource;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
+import org.dhis2.fhir.adapter.fhir.warmup.MetadataWarmUpConfig;
+import org.dhis2.fhir.adapter.lock.LockContext;
+import org.dhis2.fhir.adapter.lock.LockManager;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.dhis2.fhir.adapter.metrics.ProcessingOutcome;
+import org.dhis2.fhir.adapter.metrics.ProcessingStage;
+import org.dhis2.fhir.adapter.metrics.ProcessingTags;
+import org.dhis2.fhir.adapter.queue.QueueConfig;
+import org.dhis2.fhir.adapter.queue.QueueListenerBatchConfig;
+import org.dhis2.fhir.adapter.queue.RetryQueueDeliveryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener that listens for FHIR resources that are received from the FHIR
+ * resource queue and that processes them in batches. Up to the configured maximum
+ * number of messages are drained from the queue (or until the configured maximum
+ * wait time has elapsed). The resulting DHIS2 resources of all FHIR resources
+ * of a batch are collected in a local repository container and are persisted
+ * at the end by using the bulk import of DHIS2. The locks that are acquired
+ * while processing the batch are kept until the DHIS2 resources have been
+ * persisted and the assignments between FHIR and DHIS2 resources are only
+ * stored when DHIS2 has accepted the DHIS2 resources.
+ * <p>
+ * Each message is acknowledged individually. Messages of FHIR resources that
+ * could not be processed are redelivered according to the redelivery settings
+ * of the queue.
+ * <p>
+ * If the metadata warm-up is enabled, the listener is not started automatically
+ * and is started when the metadata warm-up has been completed.
+ *
+ * @author volsch
+ */
+@Component
+@ConditionalOnProperty( name = "dhis2.fhir-adapter.import-enabled" )
+@ConditionalOnExpression( "${dhis2.fhir-adapter.repository.fhir-resource-queue.listener.batch.enabled:false}" )
+public class FhirResourceBatchQueueListener extends AbstractFhirResourceQueueListener implements SmartLifecycle
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private static final Set<Class<? extends DhisResource>> SUPPORTED_REPOSITORY_CLASSES = Collections.unmodifiableSet(
+        new LinkedHashSet<>( Arrays.asList( TrackedEntityInstance.class, Enrollment.class, Event.class ) ) );
+
+    private static final long RECEIVE_TIMEOUT_MILLIS = 1_000;
+
+    private static final long RECOVERY_INTERVAL_MILLIS = 5_000;
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 60_000;
+
+    private final ConnectionFactory connectionFactory;
+
+    private final MessageConverter messageConverter;
+
+    private final RequestCacheService requestCacheService;
+
+    private final LockManager lockManager;
+
+    private final FhirDhisAssignmentRepository fhirDhisAssignmentRepository;
+
+    private final QueueConfig queueConfig;
+
+    private final MetadataWarmUpConfig metadataWarmUpConfig;
+
+    private volatile boolean running;
+
+    private ExecutorService executorService;
+
+    public FhirResourceBatchQueueListener( @Nonnull ConnectionFactory connectionFactory, @Nonnull MessageConverter messageConverter,
+        @Nonnull RequestCacheService requestCacheService, @Nonnull LockManager lockManager, @Nonnull RepositoryConfig repositoryConfig,
+        @Nonnull FhirClientResourceRepository fhirClientResourceRepository,
+        @Nonnull SubscriptionFhirResourceRepository subscriptionFhirResourceRepository,
+        @Nonnull StoredFhirResourceService storedItemService,
+        @Nonnull FhirResourceRepository fhirResourceRepository,
+        @Nonnull FhirRepository fhirRepository,
+        @Nonnull FhirDhisAssignmentRepository fhirDhisAssignmentRepository,
+        @Nonnull MetadataWarmUpConfig metadataWarmUpConfig,
+        @Nonnull ProcessingMetrics processingMetrics )
+    {
+        super( fhirClientResourceRepository, subscriptionFhirResourceRepository, storedItemService, fhirResourceRepository, fhirRepository, processingMetrics );
+        this.connectionFactory = connectionFactory;
+        this.messageConverter = messageConverter;
+        this.requestCacheService = requestCacheService;
+        this.lockManager = lockManager;
+        this.fhirDhisAssignmentRepository = fhirDhisAssignmentRepository;
+        this.queueConfig = repositoryConfig.getFhirResourceQueue();
+        this.metadataWarmUpConfig = metadataWarmUpConfig;
+    }
+
+    @Override
+    public boolean isAutoStartup()
+    {
+        // started by the metadata warm-up when it has been completed
+        return !metadataWarmUpConfig.isEnabled();
+    }
+
+    @Override
+    public int getPhase()
+    {
+        // same phase as used by JMS listener containers
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public synchronized void start()
+    {
+        if ( running )
+        {
+            return;
+        }
+
+        final String concurrency = queueConfig.getListener().getConcurrency();
+        final int consumerCount = Integer.parseInt( concurrency.substring( concurrency.indexOf( '-' ) + 1 ) );
+        logger.info( "Starting {} batch listeners for queue {}.", consumerCount, queueConfig.getQueueName() );
+
+        running = true;
+        executorService = Executors.newFixedThreadPool( consumerCount, new CustomizableThreadFactory( "fhir-resource-batch-listener-" ) );
+        for ( int i = 0; i < consumerCount; i++ )
+        {
+            executorService.execute( this::consume );
+        }
+    }
+
+    @Override
+    public void stop( @Nonnull Runnable callback )
+    {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        if ( !running )
+        {
+            return;
+        }
+
+        logger.info( "Stopping batch listeners for queue {}.", queueConfig.getQueueName() );
+        running = false;
+        executorService.shutdown();
+        try
+        {
+            if ( !executorService.awaitTermination( SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS ) )
+            {
+                logger.warn( "Batch listeners for queue {} did not terminate in time.", queueConfig.getQueueName() );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        executorService = null;
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    protected void consume()
+    {
+        while ( running )
+        {
+            Connection connection = null;
+            Session session = null;
+            MessageConsumer consumer = null;
+            try
+            {
+                connection = connectionFactory.createConnection();
+                session = connection.createSession( false, ActiveMQJMSConstants.INDIVIDUAL_ACKNOWLEDGE );
+                consumer = session.createConsumer( session.createQueue( queueConfig.getQueueName() ) );
+                connection.start();
+
+                while ( running )
+                {
+                    consumeBatch( session, consumer );
+                }
+            }
+            catch ( JMSException | RuntimeException e )
+            {
+                logger.error( "An error occurred when receiving messages from queue " + queueConfig.getQueueName() + ". Retrying later.", e );
+                recover( session );
+                sleepRecoveryInterval();
+            }
+            finally
+            {
+                JmsUtils.closeMessageConsumer( consumer );
+                JmsUtils.closeSession( session );
+                JmsUtils.closeConnection( connection );
+            }
+        }
+    }
+
+    protected void consumeBatch( @Nonnull Session session, @Nonnull MessageConsumer consumer ) throws JMSException
+    {
+        final List<Message> messages = receiveBatch( consumer );
+        if ( messages.isEmpty() )
+        {
+            return;
+        }
+
+        final List<FhirResource> fhirResources = new ArrayList<>( messages.size() );
+        final List<Message> fhirResourceMessages = new ArrayList<>( messages.size() );
+        boolean failed = false;
+        for ( final Message message : messages )
+        {
+            try
+            {
+                fhirResources.add( (FhirResource) messageConverter.fromMessage( message ) );
+                fhirResourceMessages.add( message );
+            }
+            catch ( JMSException | RuntimeException e )
+            {
+                logger.error( "Could not convert received message " + message.getJMSMessageID() + ". Retrying later.", e );
+                failed = true;
+            }
+        }
+
+        final Set<FhirResource> failedFhirResources;
+        SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
+        try
+        {
+            failedFhirResources = receiveAuthenticated( fhirResources );
+        }
+        finally
+        {
+            SecurityContextHolder.clearContext();
+        }
+
+        for ( int i = 0; i < fhirResources.size(); i++ )
+        {
+            if ( failedFhirResources.contains( fhirResources.get( i ) ) )
+            {
+                failed = true;
+            }
+            else
+            {
+                fhirResourceMessages.get( i ).acknowledge();
+            }
+        }
+
+        if ( failed )
+        {
+            // all messages that have not been acknowledged are redelivered
+            session.recover();
+        }
+    }
+
+    @Nonnull
+    protected List<Message> receiveBatch( @Nonnull MessageConsumer consumer ) throws JMSException
+    {
+        final QueueListenerBatchConfig batchConfig = queueConfig.getListener().getBatch();
+        final List<Message> messages = new ArrayList<>();
+
+        Message message = consumer.receive( RECEIVE_TIMEOUT_MILLIS );
+        if ( message == null )
+        {
+            return messages;
+        }
+        messages.add( message );
+
+        final long maxEndMillis = System.currentTimeMillis() + batchConfig.getMaxWaitMillis();
+        while ( running && messages.size() < batchConfig.getMaxSize() )
+        {
+            final long remainingMillis = maxEndMillis - System.currentTimeMillis();
+            message = ( remainingMillis > 0 ) ? consumer.receive( remainingMillis ) : consumer.receiveNoWait();
+            if ( message == null )
+            {
+                break;
+            }
+            messages.add( message );
+        }
+
+        return messages;
+    }
+
+    /**
+     * Processes the specified FHIR resources in one batch.
+     *
+     * @param fhirResources the FHIR resources that should be processed.
+     * @return the FHIR resources that could not be processed and whose processing must be retried.
+     */
+    @Nonnull
+    protected Set<FhirResource> receiveAuthenticated( @Nonnull List<FhirResource> fhirResources )
+    {
+        final Set<FhirResource> failedFhirResources = Collections.newSetFromMap( new IdentityHashMap<>() );
+        final List<ReceivedFhirResource> receivedFhirResources = new ArrayList<>();
+
+        final ProcessingTags tags = new ProcessingTags( PROCESSING_PIPELINE );
+
+        logger.info( "Processing batch of {} FHIR resources.", fhirResources.size() );
+        try ( final ProcessingMetrics.InFlight inFlight = getProcessingMetrics().begin( PROCESSING_PIPELINE, fhirResources.size() );
+              final LockContext lockContext = lockManager.begin();
+              final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext() )
+        {
+            // collects persistence operations in order to apply them at the end in an optimized way
+            final LocalDhisResourceRepositoryContainer repositoryContainer = new LocalDhisResourceRepositoryContainerImpl( SUPPORTED_REPOSITORY_CLASSES );
+            requestCacheContext.setAttribute( LocalDhisResourceRepositoryTemplate.CONTAINER_REQUEST_CACHE_ATTRIBUTE_NAME, repositoryContainer );
+            final PendingFhirDhisAssignments pendingAssignments = new PendingFhirDhisAssignments( fhirDhisAssignmentRepository );
+            requestCacheContext.setAttribute( PendingFhirDhisAssignments.REQUEST_CACHE_ATTRIBUTE_NAME, pendingAssignments );
+
+            for ( final FhirResource fhirResource : fhirResources )
+            {
+                try
+                {
+                    final ReceivedFhirResource receivedFhirResource = prepare( fhirResource );
+                    if ( receivedFhirResource != null )
+                    {
+                        requestCacheContext.setAttribute( LocalDhisResourceRepositoryTemplate.RESOURCE_KEY_REQUEST_CACHE_ATTRIBUTE_NAME, receivedFhirResource );
+                        save( receivedFhirResource );
+                        receivedFhirResources.add( receivedFhirResource );
+                    }
+                }
+                catch ( RetryQueueDeliveryException e )
+                {
+                    failedFhirResources.add( fhirResource );
+                }
+                catch ( RuntimeException e )
+                {
+                    logger.error( "An error occurred when processing FHIR resource " + fhirResource.getId() + ". Retrying processing later.", e );
+                    failedFhirResources.add( fhirResource );
+                    getProcessingMetrics().count( ProcessingStage.RETRY, tags, ProcessingOutcome.RETRY, 1 );
+                }
+            }
+
+            try
+            {
+                getProcessingMetrics().time( ProcessingStage.PERSIST, tags, () -> repositoryContainer.apply( ( resource, resourceKey, result ) -> {
+                    pendingAssignments.persisted( resource.getResourceId(), result.getStatus() == LocalDhisRepositoryPersistStatus.SUCCESS );
+
+                    if ( result.getStatus() != LocalDhisRepositoryPersistStatus.SUCCESS && resourceKey instanceof ReceivedFhirResource )
+                    {
+                        final FhirResource fhirResource = ( (ReceivedFhirResource) resourceKey ).getFhirResource();
+                        logger.warn( "Persisting DHIS2 resource {} of FHIR resource {} failed with status {}. Retrying processing later: {}",
+                            resource.getResourceId(), fhirResource.getId(), result.getStatus(), result.getMessage() );
+                        if ( failedFhirResources.add( fhirResource ) )
+                        {
+                            getProcessingMetrics().count( ProcessingStage.RETRY, tags, ProcessingOutcome.RETRY, 1 );
+                        }
+                    }
+                } ) );
+                pendingAssignments.completed();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "An error occurred when persisting batch of " + fhirResources.size() + " FHIR resources. Retrying processing later.", e );
+                final int previousFailedCount = failedFhirResources.size();
+                failedFhirResources.addAll( fhirResources );
+                getProcessingMetrics().count( ProcessingStage.RETRY, tags, ProcessingOutcome.RETRY, failedFhirResources.size() - previousFailedCount );
+
+                return failedFhirResources;
+            }
+        }
+
+        receivedFhirResources.stream().filter( r -> !failedFhirResources.contains( r.getFhirResource() ) ).forEach( this::completed );
+        logger.info( "Processed batch of {} FHIR resources ({} failed).", fhirResources.size(), failedFhirResources.size() );
+
+        return failedFhirResources;
+    }
+
+    private void recover( @Nullable Session session )
+    {
+        if ( session != null )
+        {
+            // session may be cached and received messages that have not been acknowledged must be redelivered
+            try
+            {
+                session.recover();
+            }
+            catch ( JMSException | RuntimeException e )
+            {
+                logger.debug( "Could not recover session.", e );
+            }
+        }
+    }
+
+    private void sleepRecoveryInterval()
+    {
+        try
+        {
+            Thread.sleep( RECOVERY_INTERVAL_MILLIS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
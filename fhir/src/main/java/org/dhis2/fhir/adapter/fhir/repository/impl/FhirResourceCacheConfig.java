@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.repository.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.dhis2.fhir.adapter.cache.AbstractSimpleCacheConfig;
 import org.dhis2.fhir.adapter.cache.RequestCacheService;
 import org.springframework.beans.factory.ObjectProvider;
@@ -40,6 +41,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
 import javax.annotation.Nonnull;
+import javax.validation.constraints.NotNull;
 
 /**
  * Cache configuration for FHIR Resources.
@@ -54,6 +56,25 @@ public class FhirResourceCacheConfig extends AbstractSimpleCacheConfig
 {
     private static final long serialVersionUID = 3060542002074294407L;
 
+    @NotNull
+    private FhirResourceSerializationFormat serializationFormat = FhirResourceSerializationFormat.JSON;
+
+    /**
+     * @return the format that is used to store FHIR resources in a distributed cache.
+     * Formats other than {@link FhirResourceSerializationFormat#JSON} must only be
+     * used when all instances of the adapter support the format.
+     */
+    @Nonnull
+    public FhirResourceSerializationFormat getSerializationFormat()
+    {
+        return serializationFormat;
+    }
+
+    public void setSerializationFormat( @Nonnull FhirResourceSerializationFormat serializationFormat )
+    {
+        this.serializationFormat = serializationFormat;
+    }
+
     @Nonnull
     @Override
     protected String getCacheManagerName()
@@ -63,8 +84,9 @@ public class FhirResourceCacheConfig extends AbstractSimpleCacheConfig
 
     @Bean
     @Nonnull
-    protected CacheManager fhirCacheManager( @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull FhirResourceRedisSerializer redisSerializer )
+    protected CacheManager fhirCacheManager( @Nonnull RequestCacheService requestCacheService, @Nonnull ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider, @Nonnull FhirResourceRedisSerializer redisSerializer,
+        @Nonnull ObjectProvider<MeterRegistry> meterRegistryProvider )
     {
-        return createCacheManager( requestCacheService, redisConnectionFactoryProvider, redisSerializer );
+        return createCacheManager( requestCacheService, redisConnectionFactoryProvider, redisSerializer, meterRegistryProvider.getIfAvailable() );
     }
 }
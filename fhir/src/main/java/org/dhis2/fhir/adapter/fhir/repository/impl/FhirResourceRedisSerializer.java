@@ -31,7 +31,10 @@ package org.dhis2.fhir.adapter.fhir.repository.impl;
 import ca.uhn.fhir.context.FhirContext;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.stereotype.Component;
@@ -51,23 +54,72 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
- * Serializer for HAPI FHIR Resources for caching them in Redis.
+ * Serializer for HAPI FHIR Resources for caching them in Redis. The serialized
+ * data of format {@link FhirResourceSerializationFormat#JSON} begins with the FHIR
+ * version (modified UTF-8 with a two byte length, i.e. the first byte is always zero).
+ * All other formats begin with a format version byte that is not zero. Data of all
+ * known format versions can be read independent of the configured format. Data of
+ * an unknown format version (written by a newer adapter version) is treated as if
+ * it has not been cached.
  *
  * @author volsch
  */
 @Component
 public class FhirResourceRedisSerializer implements RedisSerializer<IBaseResource>
 {
+    /**
+     * Format version of {@link FhirResourceSerializationFormat#DEFLATE_JSON}. Since
+     * the preset dictionary belongs to the format, a changed dictionary requires a new
+     * format version.
+     */
+    public static final byte DEFLATE_JSON_VERSION = 1;
+
     private static final byte[] EMPTY_ARRAY = new byte[0];
 
+    /**
+     * Preset dictionary of Deflate. The most frequent strings are at the end of the
+     * dictionary since they can be referenced with shorter distances.
+     */
+    private static final byte[] DEFLATE_DICTIONARY = ( "\"Questionnaire/\",\"item\":[{\"linkId\":\"\",\"answer\":[{\"valueCoding\":{" +
+        "\"QuestionnaireResponse\",\"questionnaire\":\"authored\":\"vaccineCode\":{\"occurrenceDateTime\":\"primarySource\":true," +
+        "\"Immunization\",\"patient\":{\"reference\":\"Patient/\"},\"Encounter\",\"encounter\":{\"reference\":\"Encounter/\"}," +
+        "\"Observation\",\"category\":[{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/observation-category\",\"code\":\"vital-signs\"" +
+        "\"effectiveDateTime\":\"issued\":\"valueQuantity\":{\"value\":,\"unit\":\"\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"\"}," +
+        "\"valueCodeableConcept\":{\"valueString\":\"\",\"valueBoolean\":true,\"valueDateTime\":\"\",\"valueInteger\":" +
+        "\"subject\":{\"reference\":\"Patient/\"},\"performer\":[{\"reference\":\"\"}],\"status\":\"final\"," +
+        "\"Organization\",\"managingOrganization\":{\"reference\":\"Organization/\"},\"Location\",\"partOf\":{\"reference\":\"\"}," +
+        "\"Patient\",\"active\":true,\"gender\":\"female\",\"gender\":\"male\",\"birthDate\":\"\",\"deceasedBoolean\":false," +
+        "\"address\":[{\"line\":[\"\"],\"city\":\"\",\"district\":\"\",\"state\":\"\",\"country\":\"\"}],\"telecom\":[{\"system\":\"phone\",\"value\":\"\"}]," +
+        "\"name\":[{\"family\":\"\",\"given\":[\"\"]}],\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">\"}," +
+        "\"extension\":[{\"url\":\"http://\",\"valueReference\":{\"reference\":\"\"}},{\"url\":\"\",\"valueCode\":\"\"}]," +
+        "\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"\",\"display\":\"\"}],\"text\":\"\"}," +
+        "\"identifier\":[{\"system\":\"http://\",\"value\":\"\"}]," +
+        "{\"resourceType\":\"\",\"id\":\"\",\"meta\":{\"versionId\":\"\",\"lastUpdated\":\"\"}," ).getBytes( StandardCharsets.UTF_8 );
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
     private final Map<FhirVersion, FhirContext> fhirContexts;
 
-    public FhirResourceRedisSerializer( @Nonnull ObjectProvider<List<FhirContext>> fhirContexts )
+    private final FhirResourceSerializationFormat format;
+
+    @Autowired
+    public FhirResourceRedisSerializer( @Nonnull ObjectProvider<List<FhirContext>> fhirContexts, @Nonnull FhirResourceCacheConfig cacheConfig )
     {
-        this.fhirContexts = fhirContexts.getIfAvailable( Collections::emptyList ).stream().filter( fc -> (FhirVersion.get( fc.getVersion().getVersion() ) != null) )
+        this( fhirContexts.getIfAvailable( Collections::emptyList ), cacheConfig.getSerializationFormat() );
+    }
+
+    public FhirResourceRedisSerializer( @Nonnull List<FhirContext> fhirContexts, @Nonnull FhirResourceSerializationFormat format )
+    {
+        this.fhirContexts = fhirContexts.stream().filter( fc -> (FhirVersion.get( fc.getVersion().getVersion() ) != null) )
             .collect( Collectors.toMap( fc -> FhirVersion.get( fc.getVersion().getVersion() ), fc -> fc ) );
+        this.format = format;
     }
 
     @Override
@@ -93,11 +145,23 @@ public class FhirResourceRedisSerializer implements RedisSerializer<IBaseResourc
         try
         {
             final DataOutputStream out = new DataOutputStream( bs );
-            out.writeUTF( fhirVersion.name() );
-            final Writer w = new OutputStreamWriter( out, StandardCharsets.UTF_8 );
-            context.newJsonParser().encodeResourceToWriter( resource, w );
-            // flush internal buffers to byte array output stream
-            w.close();
+            switch ( format )
+            {
+                case JSON:
+                    out.writeUTF( fhirVersion.name() );
+                    final Writer w = new OutputStreamWriter( out, StandardCharsets.UTF_8 );
+                    context.newJsonParser().encodeResourceToWriter( resource, w );
+                    // flush internal buffers to byte array output stream
+                    w.close();
+                    break;
+                case DEFLATE_JSON:
+                    out.writeByte( DEFLATE_JSON_VERSION );
+                    out.writeUTF( fhirVersion.name() );
+                    deflate( context.newJsonParser().encodeResourceToString( resource ).getBytes( StandardCharsets.UTF_8 ), out );
+                    break;
+                default:
+                    throw new AssertionError( "Unhandled serialization format: " + format );
+            }
             out.close();
             bs.close();
         }
@@ -117,9 +181,21 @@ public class FhirResourceRedisSerializer implements RedisSerializer<IBaseResourc
             return null;
         }
 
+        final byte formatVersion = bytes[0];
+        if ( (formatVersion != 0) && (formatVersion != DEFLATE_JSON_VERSION) )
+        {
+            logger.debug( "Ignoring cached FHIR resource with unknown format version {}.", formatVersion );
+            return null;
+        }
+
         final DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes ) );
         try
         {
+            if ( formatVersion != 0 )
+            {
+                in.skipBytes( 1 );
+            }
+
             final String fhirVersionString = in.readUTF();
             final FhirVersion fhirVersion;
             try
@@ -137,11 +213,72 @@ public class FhirResourceRedisSerializer implements RedisSerializer<IBaseResourc
                 throw new SerializationException( "Could not deserialize FHIR resource since FHIR context is not available for FHIR version " + fhirVersion + "." );
             }
 
+            if ( formatVersion == DEFLATE_JSON_VERSION )
+            {
+                return context.newJsonParser().parseResource( new InputStreamReader(
+                    new ByteArrayInputStream( inflate( bytes, bytes.length - in.available(), in.available() ) ), StandardCharsets.UTF_8 ) );
+            }
             return context.newJsonParser().parseResource( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
         }
-        catch ( IOException e )
+        catch ( IOException | DataFormatException e )
         {
             throw new SerializationException( "Could not deserialize FHIR resource.", e );
         }
     }
+
+    private static void deflate( @Nonnull byte[] data, @Nonnull DataOutputStream out ) throws IOException
+    {
+        // fastest compression level keeps the overhead of putting resources into the cache low
+        final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+        try
+        {
+            deflater.setDictionary( DEFLATE_DICTIONARY );
+            deflater.setInput( data );
+            deflater.finish();
+
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while ( !deflater.finished() )
+            {
+                out.write( buffer, 0, deflater.deflate( buffer ) );
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    @Nonnull
+    private static byte[] inflate( @Nonnull byte[] data, int offset, int length ) throws DataFormatException
+    {
+        final Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput( data, offset, length );
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream( length * 4 );
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while ( !inflater.finished() )
+            {
+                final int count = inflater.inflate( buffer );
+                if ( count > 0 )
+                {
+                    out.write( buffer, 0, count );
+                }
+                else if ( inflater.needsDictionary() )
+                {
+                    inflater.setDictionary( DEFLATE_DICTIONARY );
+                }
+                else if ( inflater.needsInput() )
+                {
+                    throw new DataFormatException( "Compressed FHIR resource is incomplete." );
+                }
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
 }
@@ -33,15 +33,19 @@ import ca.uhn.fhir.rest.api.CacheControlDirective;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.PreferReturnEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IReadExecutable;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dhis2.fhir.adapter.cache.SingleFlight;
 import org.dhis2.fhir.adapter.data.model.ProcessedItemInfo;
 import org.dhis2.fhir.adapter.fhir.client.ProcessedFhirItemInfoUtils;
 import org.dhis2.fhir.adapter.fhir.client.StoredFhirResourceService;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientProcessorConfig;
 import org.dhis2.fhir.adapter.fhir.metadata.model.ClientFhirEndpoint;
 import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
 import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
@@ -51,12 +55,14 @@ import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceReposit
 import org.dhis2.fhir.adapter.fhir.metadata.repository.event.AutoCreatedFhirClientResourceEvent;
 import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
 import org.dhis2.fhir.adapter.fhir.model.SystemCodeValue;
-import org.dhis2.fhir.adapter.fhir.repository.FhirClientUtils;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
+import org.dhis2.fhir.adapter.fhir.repository.FhirConformanceService;
 import org.dhis2.fhir.adapter.fhir.repository.FhirResourceRepository;
 import org.dhis2.fhir.adapter.fhir.repository.FhirResourceTransformationException;
 import org.dhis2.fhir.adapter.fhir.repository.OptimisticFhirResourceLockException;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionException;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
+import org.dhis2.fhir.adapter.fhir.transform.util.FhirBeanTransformerUtils;
 import org.dhis2.fhir.adapter.rest.RestBadRequestException;
 import org.dhis2.fhir.adapter.util.NameUtils;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
@@ -64,6 +70,10 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
@@ -75,6 +85,7 @@ import org.springframework.transaction.event.TransactionalEventListener;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -92,6 +103,12 @@ import java.util.stream.Collectors;
 @CacheConfig( cacheNames = "fhirResources", cacheManager = "fhirCacheManager" )
 public class FhirResourceRepositoryImpl implements FhirResourceRepository
 {
+    /**
+     * Name of the cache that contains the last read version of each FHIR resource
+     * (before its transformation) for conditional reads.
+     */
+    public static final String VERSION_CACHE_NAME = "fhirResourceVersions";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final ScriptExecutor scriptExecutor;
@@ -100,19 +117,46 @@ public class FhirResourceRepositoryImpl implements FhirResourceRepository
 
     private final FhirClientResourceRepository fhirClientResourceRepository;
 
+    private final FhirClientRegistry fhirClientRegistry;
+
+    private final FhirClientProcessorConfig processorConfig;
+
+    private final CacheManager cacheManager;
+
     private final Map<FhirVersion, FhirContext> fhirContexts;
 
+    private final Map<FhirVersion, FhirConformanceService> conformanceServices = new HashMap<>();
+
     private final Map<FhirVersion, AbstractFhirResourceRepositorySupport> supports = new HashMap<>();
 
+    private final SingleFlight singleFlight;
+
+    @Autowired
     public FhirResourceRepositoryImpl( @Nonnull ScriptExecutor scriptExecutor, @Nonnull StoredFhirResourceService storedItemService, @Nonnull FhirClientResourceRepository fhirClientResourceRepository,
-        @Nonnull ObjectProvider<List<FhirContext>> fhirContexts, @Nonnull ObjectProvider<List<AbstractFhirResourceRepositorySupport>> supports )
+        @Nonnull FhirClientRegistry fhirClientRegistry, @Nonnull ObjectProvider<List<FhirContext>> fhirContexts, @Nonnull ObjectProvider<List<AbstractFhirResourceRepositorySupport>> supports,
+        @Nonnull FhirClientProcessorConfig processorConfig, @Nonnull @Qualifier( "fhirCacheManager" ) CacheManager cacheManager,
+        @Nonnull ObjectProvider<List<FhirConformanceService>> conformanceServices, @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
+    {
+        this( scriptExecutor, storedItemService, fhirClientResourceRepository, fhirClientRegistry, fhirContexts, supports, processorConfig, cacheManager, conformanceServices,
+            meterRegistry.getIfAvailable() );
+    }
+
+    public FhirResourceRepositoryImpl( @Nonnull ScriptExecutor scriptExecutor, @Nonnull StoredFhirResourceService storedItemService, @Nonnull FhirClientResourceRepository fhirClientResourceRepository,
+        @Nonnull FhirClientRegistry fhirClientRegistry, @Nonnull ObjectProvider<List<FhirContext>> fhirContexts, @Nonnull ObjectProvider<List<AbstractFhirResourceRepositorySupport>> supports,
+        @Nonnull FhirClientProcessorConfig processorConfig, @Nonnull CacheManager cacheManager, @Nonnull ObjectProvider<List<FhirConformanceService>> conformanceServices,
+        @Nullable MeterRegistry meterRegistry )
     {
         this.scriptExecutor = scriptExecutor;
         this.storedItemService = storedItemService;
         this.fhirClientResourceRepository = fhirClientResourceRepository;
+        this.fhirClientRegistry = fhirClientRegistry;
+        this.processorConfig = processorConfig;
+        this.cacheManager = cacheManager;
+        this.singleFlight = new SingleFlight( "fhirResources", meterRegistry );
         this.fhirContexts = fhirContexts.getIfAvailable( Collections::emptyList ).stream().filter( fc -> (FhirVersion.get( fc.getVersion().getVersion() ) != null) )
             .collect( Collectors.toMap( fc -> FhirVersion.get( fc.getVersion().getVersion() ), fc -> fc ) );
         supports.getIfAvailable( Collections::emptyList ).forEach( s -> s.getFhirVersions().forEach( v -> FhirResourceRepositoryImpl.this.supports.put( v, s ) ) );
+        conformanceServices.getIfAvailable( Collections::emptyList ).forEach( s -> s.getFhirVersions().forEach( v -> FhirResourceRepositoryImpl.this.conformanceServices.put( v, s ) ) );
     }
 
     @Nonnull
@@ -135,22 +179,84 @@ public class FhirResourceRepositoryImpl implements FhirResourceRepository
         }
 
         final FhirContext fhirContext = fhirContexts.get( fhirVersion );
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, fhirEndpoint );
 
-        logger.debug( "Reading {}/{} from FHIR endpoints {}.", resourceType, resourceId, fhirEndpoint.getBaseUrl() );
+        return singleFlight.execute( Arrays.asList( fhirClientId, fhirVersion, resourceType, resourceId, transform ),
+            () -> read( fhirClientId, fhirVersion, fhirEndpoint, resourceType, resourceId, transform ), r -> r.map( resource -> FhirBeanTransformerUtils.clone( fhirContext, resource ) ) );
+    }
+
+    @Nonnull
+    protected Optional<IBaseResource> read( @Nonnull UUID fhirClientId, @Nonnull FhirVersion fhirVersion, @Nonnull ClientFhirEndpoint fhirEndpoint, @Nonnull String resourceType, @Nonnull String resourceId, boolean transform )
+    {
+        final FhirContext fhirContext = fhirContexts.get( fhirVersion );
+        final IGenericClient client = fhirClientRegistry.getClient( fhirClientId, fhirContext, fhirEndpoint );
+
+        final Cache versionCache = isConditionalRead( client, fhirVersion, resourceType ) ? cacheManager.getCache( VERSION_CACHE_NAME ) : null;
+        final Object versionKey = Arrays.asList( fhirClientId, fhirVersion, resourceType, resourceId );
+        final IBaseResource lastResource = (versionCache == null) ? null : versionCache.get( versionKey, IBaseResource.class );
+        // transformation must not modify the cached resource
+        final IBaseResource unmodifiedResource = (getVersionId( lastResource ) == null) ? null : FhirBeanTransformerUtils.clone( fhirContext, lastResource );
+
+        logger.debug( "Reading {}/{} from FHIR endpoints {} (version={}).", resourceType, resourceId, fhirEndpoint.getBaseUrl(), getVersionId( unmodifiedResource ) );
         IBaseResource resource;
         try
         {
-            resource = client.read().resource( NameUtils.toClassName( resourceType ) ).withId( resourceId ).cacheControl( new CacheControlDirective().setNoCache( true ) ).execute();
+            IReadExecutable<IBaseResource> read = client.read().resource( NameUtils.toClassName( resourceType ) ).withId( resourceId );
+
+            if ( unmodifiedResource != null )
+            {
+                read = read.ifVersionMatches( getVersionId( unmodifiedResource ) ).returnResource( unmodifiedResource );
+            }
+
+            resource = read.cacheControl( new CacheControlDirective().setNoCache( true ) ).execute();
         }
         catch ( ResourceNotFoundException | ResourceGoneException e )
         {
             resource = null;
         }
-        logger.debug( "Read {}/{} from FHIR endpoints {} (found={}).", resourceType, resourceId, fhirEndpoint.getBaseUrl(), (resource != null) );
+        logger.debug( "Read {}/{} from FHIR endpoints {} (found={}, modified={}).", resourceType, resourceId, fhirEndpoint.getBaseUrl(),
+            (resource != null), (resource != null) && (resource != unmodifiedResource) );
+
+        if ( versionCache != null )
+        {
+            if ( resource == null )
+            {
+                versionCache.evict( versionKey );
+            }
+            else if ( (resource != unmodifiedResource) && (getVersionId( resource ) != null) )
+            {
+                versionCache.put( versionKey, FhirBeanTransformerUtils.clone( fhirContext, resource ) );
+            }
+        }
+
         return Optional.ofNullable( transform ? transform( fhirClientId, fhirVersion, resource ) : resource );
     }
 
+    @Nullable
+    private static String getVersionId( @Nullable IBaseResource resource )
+    {
+        return ((resource == null) || (resource.getMeta() == null)) ? null : resource.getMeta().getVersionId();
+    }
+
+    protected boolean isConditionalRead( @Nonnull IGenericClient client, @Nonnull FhirVersion fhirVersion, @Nonnull String resourceType )
+    {
+        final FhirConformanceService conformanceService = conformanceServices.get( fhirVersion );
+
+        if ( !processorConfig.isConditionalRead() || (conformanceService == null) )
+        {
+            return false;
+        }
+
+        try
+        {
+            return conformanceService.supportConditionalRead( client, resourceType );
+        }
+        catch ( BaseServerResponseException e )
+        {
+            logger.debug( "Could not determine if FHIR endpoint {} supports conditional reads: {}", client.getServerBase(), e.getMessage() );
+            return false;
+        }
+    }
+
     @HystrixCommand( ignoreExceptions = FhirResourceTransformationException.class )
     @CachePut( key = "{#fhirClientId, #fhirVersion, #resourceType, #resourceId, true}", unless = "#result==null" )
     @Nonnull
@@ -252,7 +358,7 @@ public class FhirResourceRepositoryImpl implements FhirResourceRepository
         }
 
         final FhirContext fhirContext = fhirContexts.get( fhirClient.getFhirVersion() );
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, fhirClient.getFhirEndpoint() );
+        final IGenericClient client = fhirClientRegistry.getClient( fhirClient.getId(), fhirContext, fhirClient.getFhirEndpoint() );
 
         try
         {
@@ -285,7 +391,7 @@ public class FhirResourceRepositoryImpl implements FhirResourceRepository
         }
 
         final FhirContext fhirContext = fhirContexts.get( fhirClient.getFhirVersion() );
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, fhirClient.getFhirEndpoint() );
+        final IGenericClient client = fhirClientRegistry.getClient( fhirClient.getId(), fhirContext, fhirClient.getFhirEndpoint() );
 
         final IBaseResource preparedResource = prepareResource( resource, dhisResourceId );
         final MethodOutcome methodOutcome;
@@ -369,9 +475,10 @@ public class FhirResourceRepositoryImpl implements FhirResourceRepository
     @TransactionalEventListener( phase = TransactionPhase.BEFORE_COMMIT, classes = AutoCreatedFhirClientResourceEvent.class )
     public void autoCreatedSubscriptionResource( @Nonnull AutoCreatedFhirClientResourceEvent event )
     {
-        final FhirVersion fhirVersion = event.getFhirClientResource().getFhirClient().getFhirVersion();
+        final FhirClient fhirClient = event.getFhirClientResource().getFhirClient();
+        final FhirVersion fhirVersion = fhirClient.getFhirVersion();
         final FhirContext fhirContext = fhirContexts.get( fhirVersion );
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, event.getFhirClientResource().getFhirClient().getFhirEndpoint() );
+        final IGenericClient client = fhirClientRegistry.getClient( fhirClient.getId(), fhirContext, fhirClient.getFhirEndpoint() );
 
         final AbstractFhirResourceRepositorySupport support = supports.get( fhirVersion );
         final MethodOutcome methodOutcome;
@@ -399,7 +506,7 @@ public class FhirResourceRepositoryImpl implements FhirResourceRepository
         }
 
         final FhirContext fhirContext = fhirContexts.get( fhirVersion );
-        final IGenericClient client = FhirClientUtils.createClient( fhirContext, fhirEndpoint );
+        final IGenericClient client = fhirClientRegistry.getClient( fhirClientId, fhirContext, fhirEndpoint );
         final AbstractFhirResourceRepositorySupport support = supports.get( fhirVersion );
 
         logger.debug( "Reading {}?{}={} from FHIR endpoints {}.", resourceType, identifier, field, fhirEndpoint.getBaseUrl() );
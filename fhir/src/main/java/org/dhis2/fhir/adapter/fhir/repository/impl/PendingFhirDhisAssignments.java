@@ -0,0 +1,118 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.fhir.data.repository.FhirDhisAssignmentRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
+import org.hl7.fhir.instance.model.api.IIdType;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the assignments between FHIR resources and DHIS2 resources whose
+ * persistence in DHIS2 has been deferred (e.g. by a local DHIS2 resource
+ * repository container). The assignments are only stored when DHIS2 has
+ * accepted the assigned DHIS2 resource. Instances of this class are not thread
+ * safe and must not be used by multiple threads at the same time.
+ *
+ * @author volsch
+ */
+public class PendingFhirDhisAssignments
+{
+    public static final String REQUEST_CACHE_ATTRIBUTE_NAME = PendingFhirDhisAssignments.class.getSimpleName();
+
+    private final FhirDhisAssignmentRepository fhirDhisAssignmentRepository;
+
+    private final Map<DhisResourceId, List<PendingAssignment>> pendingAssignments = new LinkedHashMap<>();
+
+    public PendingFhirDhisAssignments( @Nonnull FhirDhisAssignmentRepository fhirDhisAssignmentRepository )
+    {
+        this.fhirDhisAssignmentRepository = fhirDhisAssignmentRepository;
+    }
+
+    public void add( @Nonnull AbstractRule rule, @Nonnull FhirClient fhirClient, @Nonnull IIdType fhirResourceId, @Nonnull DhisResourceId dhisResourceId )
+    {
+        pendingAssignments.computeIfAbsent( dhisResourceId, k -> new ArrayList<>() )
+            .add( new PendingAssignment( rule, fhirClient, fhirResourceId ) );
+    }
+
+    /**
+     * Stores (if persisting was successful) or discards (if persisting failed)
+     * the pending assignments of the specified DHIS2 resource.
+     *
+     * @param dhisResourceId the ID of the DHIS2 resource that has been persisted.
+     * @param successful     <code>true</code> if DHIS2 has accepted the DHIS2 resource.
+     */
+    public void persisted( @Nonnull DhisResourceId dhisResourceId, boolean successful )
+    {
+        final List<PendingAssignment> assignments = pendingAssignments.remove( dhisResourceId );
+
+        if ( (assignments != null) && successful )
+        {
+            assignments.forEach( a -> a.save( dhisResourceId ) );
+        }
+    }
+
+    /**
+     * Stores the remaining pending assignments. These belong to DHIS2 resources
+     * that have not been modified and that must not be persisted therefore.
+     */
+    public void completed()
+    {
+        pendingAssignments.forEach( ( dhisResourceId, assignments ) -> assignments.forEach( a -> a.save( dhisResourceId ) ) );
+        pendingAssignments.clear();
+    }
+
+    protected class PendingAssignment
+    {
+        private final AbstractRule rule;
+
+        private final FhirClient fhirClient;
+
+        private final IIdType fhirResourceId;
+
+        public PendingAssignment( @Nonnull AbstractRule rule, @Nonnull FhirClient fhirClient, @Nonnull IIdType fhirResourceId )
+        {
+            this.rule = rule;
+            this.fhirClient = fhirClient;
+            this.fhirResourceId = fhirResourceId;
+        }
+
+        public void save( @Nonnull DhisResourceId dhisResourceId )
+        {
+            fhirDhisAssignmentRepository.saveDhisResourceId( rule, fhirClient, fhirResourceId, dhisResourceId );
+        }
+    }
+}
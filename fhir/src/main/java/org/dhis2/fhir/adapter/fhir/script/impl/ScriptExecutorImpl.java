@@ -44,7 +44,10 @@ import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
 import org.dhis2.fhir.adapter.fhir.script.ScriptPreparationException;
 import org.dhis2.fhir.adapter.script.ScriptEvaluator;
 import org.dhis2.fhir.adapter.script.ScriptEvaluatorException;
+import org.dhis2.fhir.adapter.script.expression.UnsupportedScriptExpressionException;
 import org.dhis2.fhir.adapter.util.NameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.stereotype.Component;
 
@@ -66,20 +69,25 @@ public class ScriptExecutorImpl implements ScriptExecutor
 {
     public static final String ARGUMENTS_VARIABLE_NAME = "args";
 
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
     private final ScriptEvaluator scriptEvaluator;
 
     private final ScriptExecutionContext scriptExecutionContext;
 
     private final ExecutableScriptRepository executableScriptRepository;
 
+    private final ScriptFastPathRegistry fastPathRegistry;
+
     private final ZoneId zoneId = ZoneId.systemDefault();
 
     public ScriptExecutorImpl( @Nonnull ScriptEvaluator scriptEvaluator, @Nonnull ScriptExecutionContext scriptExecutionContext,
-        @Nonnull ExecutableScriptRepository executableScriptRepository )
+        @Nonnull ExecutableScriptRepository executableScriptRepository, @Nonnull ScriptFastPathRegistry fastPathRegistry )
     {
         this.scriptEvaluator = scriptEvaluator;
         this.scriptExecutionContext = scriptExecutionContext;
         this.executableScriptRepository = executableScriptRepository;
+        this.fastPathRegistry = fastPathRegistry;
     }
 
     @Nullable
@@ -143,12 +151,13 @@ public class ScriptExecutorImpl implements ScriptExecutor
 
         final Object result;
         final ScriptSource scriptSource = executableScriptInfo.getScriptSource();
+        final ScriptKey scriptKey = new ScriptKey( scriptSource );
+        final ScriptFastPath fastPath = fastPathRegistry.getFastPath( scriptKey, executableScriptInfo );
         final ScriptExecution previousScriptExecution =
             scriptExecutionContext.setScriptExecution( new ScriptExecutionImpl( scriptVariables, contextVariables ) );
         try
         {
-            result = convertSimpleReturnValue( scriptEvaluator.eval( new ScriptKey( scriptSource ),
-                scriptSource.getSourceText(), scriptVariables ), executableScriptInfo.getScript().getReturnType() );
+            result = convertSimpleReturnValue( eval( scriptKey, scriptSource, fastPath, scriptVariables ), executableScriptInfo.getScript().getReturnType() );
         }
         catch ( ScriptEvaluatorException e )
         {
@@ -167,6 +176,28 @@ public class ScriptExecutorImpl implements ScriptExecutor
         return resultClass.cast( result );
     }
 
+    @Nullable
+    protected Object eval( @Nonnull ScriptKey scriptKey, @Nonnull ScriptSource scriptSource, @Nullable ScriptFastPath fastPath, @Nonnull Map<String, Object> scriptVariables )
+    {
+        if ( fastPath != null && fastPath.getExpression() != null )
+        {
+            try
+            {
+                final Object result = fastPath.getExpression().evaluate( scriptVariables );
+                fastPath.fastPathEvaluated();
+                return result;
+            }
+            catch ( UnsupportedScriptExpressionException e )
+            {
+                // expression is free of side effects and script engine can evaluate the script again
+                logger.debug( "Script {} must be evaluated by script engine: {}", scriptKey, e.getMessage() );
+                fastPath.fallbackEvaluated();
+            }
+        }
+
+        return scriptEvaluator.eval( scriptKey, scriptSource.getSourceText(), scriptVariables );
+    }
+
     @SuppressWarnings( "unchecked" )
     @Nullable
     protected Object convertSimpleReturnValue( @Nullable Object value, @Nonnull DataType dataType )
@@ -0,0 +1,145 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.dhis2.fhir.adapter.fhir.metadata.model.Script;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.script.expression.ScriptExpression;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contains the expression of a script source that can be evaluated without
+ * the script engine (fast path) and statistics about its evaluation.
+ *
+ * @author volsch
+ */
+public class ScriptFastPath implements Serializable
+{
+    private static final long serialVersionUID = -2470232954390950457L;
+
+    private final UUID scriptId;
+
+    private final String scriptCode;
+
+    private final String scriptName;
+
+    private final UUID scriptSourceId;
+
+    private final long scriptSourceVersion;
+
+    private final transient ScriptExpression expression;
+
+    private final LongAdder fastPathCount = new LongAdder();
+
+    private final LongAdder fallbackCount = new LongAdder();
+
+    public ScriptFastPath( @Nonnull Script script, @Nonnull ScriptSource scriptSource, @Nullable ScriptExpression expression )
+    {
+        this.scriptId = script.getId();
+        this.scriptCode = script.getCode();
+        this.scriptName = script.getName();
+        this.scriptSourceId = scriptSource.getId();
+        this.scriptSourceVersion = scriptSource.getVersion();
+        this.expression = expression;
+    }
+
+    public UUID getScriptId()
+    {
+        return scriptId;
+    }
+
+    public String getScriptCode()
+    {
+        return scriptCode;
+    }
+
+    public String getScriptName()
+    {
+        return scriptName;
+    }
+
+    public UUID getScriptSourceId()
+    {
+        return scriptSourceId;
+    }
+
+    public long getScriptSourceVersion()
+    {
+        return scriptSourceVersion;
+    }
+
+    /**
+     * @return <code>true</code> if the script source can be evaluated without the
+     * script engine, <code>false</code> otherwise.
+     */
+    public boolean isFastPath()
+    {
+        return expression != null;
+    }
+
+    @JsonIgnore
+    @Nullable
+    public ScriptExpression getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * @return the number of evaluations that have been performed without the script engine.
+     */
+    public long getFastPathCount()
+    {
+        return fastPathCount.sum();
+    }
+
+    /**
+     * @return the number of evaluations that had to be performed by the script engine
+     * since the expression could not handle the values of the evaluation.
+     */
+    public long getFallbackCount()
+    {
+        return fallbackCount.sum();
+    }
+
+    protected void fastPathEvaluated()
+    {
+        fastPathCount.increment();
+    }
+
+    protected void fallbackEvaluated()
+    {
+        fallbackCount.increment();
+    }
+}
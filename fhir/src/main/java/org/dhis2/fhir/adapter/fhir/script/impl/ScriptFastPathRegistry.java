@@ -0,0 +1,103 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScriptInfo;
+import org.dhis2.fhir.adapter.fhir.transform.config.TransformationConfig;
+import org.dhis2.fhir.adapter.script.expression.ScriptExpressionCompiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compiles trivial script sources to expressions that can be evaluated without
+ * the script engine when they are used the first time and keeps the resulting
+ * {@link ScriptFastPath}s.
+ *
+ * @author volsch
+ */
+@Component
+public class ScriptFastPathRegistry
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final TransformationConfig transformationConfig;
+
+    private final ScriptExpressionCompiler expressionCompiler = new ScriptExpressionCompiler();
+
+    private final Cache<ScriptKey, ScriptFastPath> fastPaths;
+
+    public ScriptFastPathRegistry( @Nonnull TransformationConfig transformationConfig )
+    {
+        this.transformationConfig = transformationConfig;
+        this.fastPaths = Caffeine.newBuilder()
+            .expireAfterAccess( Duration.ofSeconds( transformationConfig.getMaxCachedScriptLifetimeSecs() ) )
+            .maximumSize( transformationConfig.getMaxCachedScripts() ).build();
+    }
+
+    /**
+     * Returns the fast path of the script source of the specified executable script.
+     *
+     * @param scriptKey            the key of the script source.
+     * @param executableScriptInfo the executable script that contains the script source.
+     * @return the fast path or <code>null</code> if the fast path has been disabled.
+     */
+    @Nullable
+    public ScriptFastPath getFastPath( @Nonnull ScriptKey scriptKey, @Nonnull ExecutableScriptInfo executableScriptInfo )
+    {
+        if ( !transformationConfig.isScriptFastPathEnabled() )
+        {
+            return null;
+        }
+
+        return fastPaths.get( scriptKey, k -> {
+            final ScriptFastPath fastPath = new ScriptFastPath( executableScriptInfo.getScript(), executableScriptInfo.getScriptSource(),
+                expressionCompiler.compile( executableScriptInfo.getScriptSource().getSourceText() ) );
+            logger.debug( "Script source {} of script {} uses fast path: {}", fastPath.getScriptSourceId(), fastPath.getScriptCode(), fastPath.isFastPath() );
+            return fastPath;
+        } );
+    }
+
+    @Nonnull
+    public List<ScriptFastPath> getFastPaths()
+    {
+        final List<ScriptFastPath> result = new ArrayList<>( fastPaths.asMap().values() );
+        result.sort( Comparator.comparing( ScriptFastPath::getScriptName, Comparator.nullsLast( String.CASE_INSENSITIVE_ORDER ) ) );
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+package org.dhis2.fhir.adapter.fhir.script.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScript;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ExecutableScriptInfo;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ScriptSource;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.ExecutableScriptRepository;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.warmup.MetadataWarmUpTask;
+import org.dhis2.fhir.adapter.script.ScriptEvaluator;
+import org.dhis2.fhir.adapter.script.ScriptEvaluatorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compiles all script sources of all executable scripts when the application has
+ * been started (as part of the {@linkplain org.dhis2.fhir.adapter.fhir.warmup.MetadataWarmUp
+ * metadata warm-up}). The first processing of a resource that requires a script does
+ * not need to compile the script anymore.
+ *
+ * @author volsch
+ */
+@Component
+@ConditionalOnProperty( name = "dhis2.fhir-adapter.transformation.script-warm-up-enabled", havingValue = "true" )
+public class ScriptWarmUp implements MetadataWarmUpTask
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ScriptEvaluator scriptEvaluator;
+
+    private final ExecutableScriptRepository executableScriptRepository;
+
+    public ScriptWarmUp( @Nonnull ScriptEvaluator scriptEvaluator, @Nonnull ExecutableScriptRepository executableScriptRepository )
+    {
+        this.scriptEvaluator = scriptEvaluator;
+        this.executableScriptRepository = executableScriptRepository;
+    }
+
+    @Nonnull
+    @Override
+    public String getName()
+    {
+        return "scripts";
+    }
+
+    @Override
+    public int warmUp()
+    {
+        logger.info( "Compiling scripts of all executable scripts." );
+        final Set<ScriptKey> scriptKeys = new HashSet<>();
+        int failedCount = 0;
+
+        for ( final ExecutableScript executableScript : executableScriptRepository.findAll() )
+        {
+            for ( final FhirVersion fhirVersion : FhirVersion.values() )
+            {
+                final ScriptSource scriptSource = executableScriptRepository.findInfo( executableScript, fhirVersion )
+                    .map( ExecutableScriptInfo::getScriptSource ).orElse( null );
+                if ( scriptSource != null && scriptKeys.add( new ScriptKey( scriptSource ) ) )
+                {
+                    try
+                    {
+                        scriptEvaluator.precompile( new ScriptKey( scriptSource ), scriptSource.getSourceText() );
+                    }
+                    catch ( ScriptEvaluatorException e )
+                    {
+                        logger.warn( "Could not compile script source {} of executable script {}: {}",
+                            scriptSource.getId(), executableScript.getId(), e.getMessage() );
+                        failedCount++;
+                    }
+                }
+            }
+        }
+
+        logger.info( "Compiled {} script sources ({} failed).", scriptKeys.size(), failedCount );
+        return scriptKeys.size() - failedCount;
+    }
+}
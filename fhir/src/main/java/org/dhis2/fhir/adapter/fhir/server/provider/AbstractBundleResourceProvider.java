@@ -78,6 +78,7 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.dhis2.fhir.adapter.fhir.server.RepositoryExceptionInterceptor.UNPROCESSABLE_ENTITY_EXCEPTIONS;
 
@@ -93,6 +94,8 @@ public abstract class AbstractBundleResourceProvider<T extends IBaseBundle> exte
 
     private final RequestCacheService requestCacheService;
 
+    private final BundlePrefetcher bundlePrefetcher;
+
     private static final Set<Class<? extends DhisResource>> SUPPORTED_REPOSITORY_CLASSES = Collections.unmodifiableSet(
         new LinkedHashSet<>( Arrays.asList( TrackedEntityInstance.class, Enrollment.class, Event.class ) ) );
 
@@ -100,11 +103,12 @@ public abstract class AbstractBundleResourceProvider<T extends IBaseBundle> exte
         @Nonnull FhirClientResourceRepository fhirClientResourceRepository,
         @Nonnull FhirClientSystemRepository fhirClientSystemRepository,
         @Nonnull FhirRepository fhirRepository, @Nonnull DhisRepository dhisRepository,
-        @Nonnull RequestCacheService requestCacheService )
+        @Nonnull RequestCacheService requestCacheService, @Nonnull BundlePrefetcher bundlePrefetcher )
     {
         super( fhirClientResourceRepository, fhirClientSystemRepository, fhirRepository, dhisRepository );
 
         this.requestCacheService = requestCacheService;
+        this.bundlePrefetcher = bundlePrefetcher;
     }
 
     @Nonnull
@@ -134,6 +138,8 @@ public abstract class AbstractBundleResourceProvider<T extends IBaseBundle> exte
         // according to FHIR specification the operations must be processed in order: DELETE, POST, PUT
 
         log.info( "Processing batch bundle with {} items.", batchRequest.getOperations().size() );
+        final AtomicInteger prefetchedCount = new AtomicInteger();
+        final AtomicInteger loadedCount = new AtomicInteger();
         executeInSecurityContext( () -> {
             try ( final RequestCacheContext requestCacheContext = requestCacheService.createRequestCacheContext() )
             {
@@ -141,6 +147,10 @@ public abstract class AbstractBundleResourceProvider<T extends IBaseBundle> exte
                 final LocalDhisResourceRepositoryContainer repositoryContainer = new LocalDhisResourceRepositoryContainerImpl( SUPPORTED_REPOSITORY_CLASSES );
                 requestCacheContext.setAttribute( LocalDhisResourceRepositoryTemplate.CONTAINER_REQUEST_CACHE_ATTRIBUTE_NAME, repositoryContainer );
 
+                // referenced resources are loaded concurrently in advance, the operations are still processed in order
+                prefetchedCount.set( bundlePrefetcher.prefetch( getFhirVersion(), batchRequest ) );
+                requestCacheContext.setAttribute( LocalDhisResourceRepositoryTemplate.LOADED_COUNT_REQUEST_CACHE_ATTRIBUTE_NAME, loadedCount );
+
                 processDeletes( requestCacheContext, batchRequest );
                 processPuts( requestCacheContext, batchRequest, true );
                 processPosts( requestCacheContext, batchRequest );
@@ -165,7 +175,8 @@ public abstract class AbstractBundleResourceProvider<T extends IBaseBundle> exte
 
             return null;
         } );
-        log.info( "Processed batch bundle with {} items.", batchRequest.getOperations().size() );
+        log.info( "Processed batch bundle with {} items ({} DHIS2 resources prefetched, {} loaded on demand).",
+            batchRequest.getOperations().size(), prefetchedCount.get(), loadedCount.get() );
     }
 
     protected void processDeletes( @Nonnull RequestCacheContext requestCacheContext, @Nonnull FhirBatchRequest batchRequest )
@@ -0,0 +1,274 @@
+package org.dhis2.fhir.adapter.fhir.server.provider;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+import org.apache.commons.lang3.StringUtils;
+import org.dhis2.fhir.adapter.auth.Authorization;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.dhis.model.Reference;
+import org.dhis2.fhir.adapter.dhis.orgunit.OrganizationUnitService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityService;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.repository.DhisFhirResourceId;
+import org.dhis2.fhir.adapter.fhir.repository.FhirBatchRequest;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.transform.config.FhirRestInterfaceConfig;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Prefetches the DHIS2 resources that are referenced by the operations of a batch
+ * bundle concurrently before the operations are processed. Tracked entity instances
+ * are loaded with bulk requests and registered in the local repository of the current
+ * request. Organization units are loaded with bulk requests into the shared metadata
+ * cache. The operations themselves are not touched, so that the processing order is
+ * not affected. Resources that could not be prefetched are loaded on demand when the
+ * operations are processed.
+ *
+ * @author volsch
+ */
+@Component
+public class BundlePrefetcher
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final FhirRestInterfaceConfig restInterfaceConfig;
+
+    private final AuthorizationContext authorizationContext;
+
+    private final FhirResourceRepository fhirResourceRepository;
+
+    private final TrackedEntityService trackedEntityService;
+
+    private final OrganizationUnitService organizationUnitService;
+
+    private final ExecutorService executorService;
+
+    public BundlePrefetcher( @Nonnull FhirRestInterfaceConfig restInterfaceConfig, @Nonnull AuthorizationContext authorizationContext, @Nonnull FhirResourceRepository fhirResourceRepository,
+        @Nonnull TrackedEntityService trackedEntityService, @Nonnull OrganizationUnitService organizationUnitService )
+    {
+        this.restInterfaceConfig = restInterfaceConfig;
+        this.authorizationContext = authorizationContext;
+        this.fhirResourceRepository = fhirResourceRepository;
+        this.trackedEntityService = trackedEntityService;
+        this.organizationUnitService = organizationUnitService;
+
+        this.executorService = ( restInterfaceConfig.getBundlePrefetchParallelCount() > 0 ) ?
+            Executors.newFixedThreadPool( restInterfaceConfig.getBundlePrefetchParallelCount(), new CustomizableThreadFactory( "bundle-prefetch-" ) ) : null;
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        if ( executorService != null )
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Prefetches the DHIS2 resources that are referenced by the specified batch request.
+     * The method must be invoked within the request cache context in which the batch
+     * request is processed. Failures are logged only, since the resources that could
+     * not be prefetched are loaded on demand.
+     *
+     * @param fhirVersion  the FHIR version of the resources of the batch request.
+     * @param batchRequest the batch request for which the resources should be prefetched.
+     * @return the number of DHIS2 resources that have been prefetched.
+     */
+    public int prefetch( @Nonnull FhirVersion fhirVersion, @Nonnull FhirBatchRequest batchRequest )
+    {
+        if ( executorService == null )
+        {
+            return 0;
+        }
+
+        final Set<String> trackedEntityInstanceIds = new LinkedHashSet<>();
+        final Set<String> organizationUnitIds = new LinkedHashSet<>();
+        collectIds( fhirVersion, batchRequest, trackedEntityInstanceIds, organizationUnitIds );
+
+        if ( trackedEntityInstanceIds.isEmpty() && organizationUnitIds.isEmpty() )
+        {
+            return 0;
+        }
+
+        final List<CompletableFuture<Collection<TrackedEntityInstance>>> trackedEntityInstanceFutures = new ArrayList<>();
+        final List<CompletableFuture<Integer>> organizationUnitFutures = new ArrayList<>();
+
+        try
+        {
+            final List<String> ids = new ArrayList<>( trackedEntityInstanceIds );
+            final int chunkSize = restInterfaceConfig.getBundlePrefetchChunkSize();
+
+            for ( int i = 0; i < ids.size(); i += chunkSize )
+            {
+                final List<String> chunk = ids.subList( i, Math.min( i + chunkSize, ids.size() ) );
+                trackedEntityInstanceFutures.add( supplyAuthorized( () -> trackedEntityService.findAllByIdsRefreshed( chunk ) ) );
+            }
+
+            // organization units are cached in the shared metadata cache
+            final List<Reference> organizationUnitReferences = organizationUnitIds.stream().map( Reference::createIdReference ).collect( Collectors.toList() );
+
+            for ( int i = 0; i < organizationUnitReferences.size(); i += chunkSize )
+            {
+                final List<Reference> chunk = organizationUnitReferences.subList( i, Math.min( i + chunkSize, organizationUnitReferences.size() ) );
+                organizationUnitFutures.add( supplyAuthorized( () -> organizationUnitService.findMetadataByReferences( chunk ).size() ) );
+            }
+
+            int count = 0;
+
+            for ( final CompletableFuture<Collection<TrackedEntityInstance>> future : trackedEntityInstanceFutures )
+            {
+                // local repository of the request must only be accessed by the request thread
+                count += trackedEntityService.registerFound( join( future, Collections.emptyList() ) );
+            }
+
+            for ( final CompletableFuture<Integer> future : organizationUnitFutures )
+            {
+                count += join( future, 0 );
+            }
+
+            logger.debug( "Prefetched {} of {} referenced tracked entity instances and organization units.",
+                count, trackedEntityInstanceIds.size() + organizationUnitIds.size() );
+
+            return count;
+        }
+        finally
+        {
+            trackedEntityInstanceFutures.forEach( f -> f.cancel( false ) );
+            organizationUnitFutures.forEach( f -> f.cancel( false ) );
+        }
+    }
+
+    protected void collectIds( @Nonnull FhirVersion fhirVersion, @Nonnull FhirBatchRequest batchRequest, @Nonnull Set<String> trackedEntityInstanceIds, @Nonnull Set<String> organizationUnitIds )
+    {
+        final FhirTerser terser = fhirResourceRepository.findFhirContext( fhirVersion ).map( FhirContext::newTerser ).orElse( null );
+
+        batchRequest.getOperations().stream().filter( o -> !o.isProcessed() ).forEach( o -> {
+            collectId( o.getResourceId(), trackedEntityInstanceIds, organizationUnitIds );
+
+            if ( terser != null && o.getResource() != null )
+            {
+                terser.getAllPopulatedChildElementsOfType( o.getResource(), IBaseReference.class ).forEach( r -> {
+                    final IIdType referenceElement = r.getReferenceElement();
+
+                    if ( referenceElement != null && !referenceElement.isLocal() )
+                    {
+                        collectId( referenceElement.getIdPart(), trackedEntityInstanceIds, organizationUnitIds );
+                    }
+                } );
+            }
+        } );
+    }
+
+    private void collectId( @Nullable String id, @Nonnull Set<String> trackedEntityInstanceIds, @Nonnull Set<String> organizationUnitIds )
+    {
+        if ( StringUtils.isBlank( id ) || !DhisFhirResourceId.isValid( id ) )
+        {
+            return;
+        }
+
+        final DhisFhirResourceId dhisFhirResourceId = DhisFhirResourceId.parse( id );
+
+        if ( dhisFhirResourceId.getType() == null )
+        {
+            return;
+        }
+
+        switch ( dhisFhirResourceId.getType() )
+        {
+            case TRACKED_ENTITY:
+                trackedEntityInstanceIds.add( dhisFhirResourceId.getId() );
+                break;
+            case ORGANIZATION_UNIT:
+                organizationUnitIds.add( dhisFhirResourceId.getId() );
+                break;
+            default:
+                // other resources are loaded on demand
+                break;
+        }
+    }
+
+    @Nonnull
+    private <T> CompletableFuture<T> supplyAuthorized( @Nonnull Supplier<T> supplier )
+    {
+        final Authorization authorization = authorizationContext.getAuthorization();
+
+        return CompletableFuture.supplyAsync( () -> {
+            authorizationContext.setAuthorization( authorization );
+            try
+            {
+                return supplier.get();
+            }
+            finally
+            {
+                authorizationContext.resetAuthorization();
+            }
+        }, executorService );
+    }
+
+    @Nonnull
+    private <T> T join( @Nonnull CompletableFuture<T> future, @Nonnull T defaultValue )
+    {
+        try
+        {
+            return future.join();
+        }
+        catch ( CompletionException e )
+        {
+            logger.warn( "Could not prefetch DHIS2 resources of batch bundle, they will be loaded on demand: {}",
+                ( e.getCause() == null ) ? e.getMessage() : e.getCause().getMessage() );
+
+            return defaultValue;
+        }
+    }
+}
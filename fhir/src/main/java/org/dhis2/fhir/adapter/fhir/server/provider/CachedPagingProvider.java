@@ -0,0 +1,129 @@
+package org.dhis2.fhir.adapter.fhir.server.provider;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.IPagingProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.fhir.transform.config.FhirRestInterfaceConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A paging provider that keeps the search results (which contain the cursor of the
+ * search) in a cache with limited size and lifetime. A search result can only be
+ * retrieved with the same authorization with which the search has been performed.
+ *
+ * @author volsch
+ */
+@Component
+public class CachedPagingProvider implements IPagingProvider
+{
+    private final FhirRestInterfaceConfig restInterfaceConfig;
+
+    private final AuthorizationContext authorizationContext;
+
+    private final Cache<String, CachedSearch> searches;
+
+    public CachedPagingProvider( @Nonnull FhirRestInterfaceConfig restInterfaceConfig, @Nonnull AuthorizationContext authorizationContext )
+    {
+        this.restInterfaceConfig = restInterfaceConfig;
+        this.authorizationContext = authorizationContext;
+        this.searches = Caffeine.newBuilder()
+            .expireAfterAccess( restInterfaceConfig.getSearchExpirySeconds(), TimeUnit.SECONDS )
+            .maximumSize( restInterfaceConfig.getMaxCachedSearches() ).build();
+    }
+
+    @Override
+    public int getDefaultPageSize()
+    {
+        return restInterfaceConfig.getDefaultSearchCount();
+    }
+
+    @Override
+    public int getMaximumPageSize()
+    {
+        return restInterfaceConfig.getMaxSearchCount();
+    }
+
+    @Override
+    public IBundleProvider retrieveResultList( String theSearchId )
+    {
+        final CachedSearch cachedSearch = searches.getIfPresent( theSearchId );
+        if ( (cachedSearch == null) || !Objects.equals( cachedSearch.getAuthorization(), authorizationContext.getAuthorization().getAuthorization() ) )
+        {
+            return null;
+        }
+        return cachedSearch.getBundleProvider();
+    }
+
+    @Override
+    public String storeResultList( IBundleProvider theList )
+    {
+        if ( restInterfaceConfig.getMaxCachedSearches() == 0 )
+        {
+            // storing result list has been disabled
+            return null;
+        }
+
+        final String searchId = UUID.randomUUID().toString();
+        searches.put( searchId, new CachedSearch( theList, authorizationContext.getAuthorization().getAuthorization() ) );
+        return searchId;
+    }
+
+    protected static class CachedSearch
+    {
+        private final IBundleProvider bundleProvider;
+
+        private final String authorization;
+
+        public CachedSearch( @Nonnull IBundleProvider bundleProvider, String authorization )
+        {
+            this.bundleProvider = bundleProvider;
+            this.authorization = authorization;
+        }
+
+        @Nonnull
+        public IBundleProvider getBundleProvider()
+        {
+            return bundleProvider;
+        }
+
+        public String getAuthorization()
+        {
+            return authorization;
+        }
+    }
+}
@@ -59,6 +59,18 @@ public class FhirRestInterfaceConfig implements Serializable
     @Min( 1 )
     private int maxSearchCount = 10_000;
 
+    @Min( 0 )
+    private int maxCachedSearches = 1_000;
+
+    @Min( 1 )
+    private int searchExpirySeconds = 600;
+
+    @Min( 0 )
+    private int bundlePrefetchParallelCount = 4;
+
+    @Min( 1 )
+    private int bundlePrefetchChunkSize = 50;
+
     public boolean isDstu3Enabled()
     {
         return dstu3Enabled;
@@ -98,4 +110,44 @@ public class FhirRestInterfaceConfig implements Serializable
     {
         this.maxSearchCount = maxSearchCount;
     }
+
+    public int getMaxCachedSearches()
+    {
+        return maxCachedSearches;
+    }
+
+    public void setMaxCachedSearches( int maxCachedSearches )
+    {
+        this.maxCachedSearches = maxCachedSearches;
+    }
+
+    public int getSearchExpirySeconds()
+    {
+        return searchExpirySeconds;
+    }
+
+    public void setSearchExpirySeconds( int searchExpirySeconds )
+    {
+        this.searchExpirySeconds = searchExpirySeconds;
+    }
+
+    public int getBundlePrefetchParallelCount()
+    {
+        return bundlePrefetchParallelCount;
+    }
+
+    public void setBundlePrefetchParallelCount( int bundlePrefetchParallelCount )
+    {
+        this.bundlePrefetchParallelCount = bundlePrefetchParallelCount;
+    }
+
+    public int getBundlePrefetchChunkSize()
+    {
+        return bundlePrefetchChunkSize;
+    }
+
+    public void setBundlePrefetchChunkSize( int bundlePrefetchChunkSize )
+    {
+        this.bundlePrefetchChunkSize = bundlePrefetchChunkSize;
+    }
 }
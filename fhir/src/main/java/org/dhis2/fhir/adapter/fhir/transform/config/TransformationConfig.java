@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.transform.config;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.dhis2.fhir.adapter.dhis.DhisBasePackage;
 import org.dhis2.fhir.adapter.fhir.FhirBasePackage;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutionContext;
@@ -36,6 +37,7 @@ import org.dhis2.fhir.adapter.geo.GeoBasePackage;
 import org.dhis2.fhir.adapter.script.ScriptEvaluator;
 import org.dhis2.fhir.adapter.script.impl.ScriptEvaluatorImpl;
 import org.dhis2.fhir.adapter.scriptable.generator.JavaScriptGeneratorConfig;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -69,6 +71,13 @@ public class TransformationConfig implements Serializable
     @Min( 1 )
     private int maxCachedScripts = 10000;
 
+    @Min( 0 )
+    private int scriptEnginePoolSize;
+
+    private boolean scriptWarmUpEnabled;
+
+    private boolean scriptFastPathEnabled = true;
+
     public String getScriptEngineName()
     {
         return scriptEngineName;
@@ -109,6 +118,36 @@ public class TransformationConfig implements Serializable
         this.maxCachedScripts = maxCachedScripts;
     }
 
+    public int getScriptEnginePoolSize()
+    {
+        return scriptEnginePoolSize;
+    }
+
+    public void setScriptEnginePoolSize( int scriptEnginePoolSize )
+    {
+        this.scriptEnginePoolSize = scriptEnginePoolSize;
+    }
+
+    public boolean isScriptWarmUpEnabled()
+    {
+        return scriptWarmUpEnabled;
+    }
+
+    public void setScriptWarmUpEnabled( boolean scriptWarmUpEnabled )
+    {
+        this.scriptWarmUpEnabled = scriptWarmUpEnabled;
+    }
+
+    public boolean isScriptFastPathEnabled()
+    {
+        return scriptFastPathEnabled;
+    }
+
+    public void setScriptFastPathEnabled( boolean scriptFastPathEnabled )
+    {
+        this.scriptFastPathEnabled = scriptFastPathEnabled;
+    }
+
     @Bean
     @Nonnull
     protected ScriptExecutionContext scriptExecutionContext()
@@ -118,9 +157,10 @@ public class TransformationConfig implements Serializable
 
     @Bean
     @Nonnull
-    protected ScriptEvaluator scriptEvaluator()
+    protected ScriptEvaluator scriptEvaluator( @Nonnull ObjectProvider<MeterRegistry> meterRegistry )
     {
-        return new ScriptEvaluatorImpl( getScriptEngineName(), scriptEngineArgs, maxCachedScriptLifetimeSecs, maxCachedScripts );
+        return new ScriptEvaluatorImpl( getScriptEngineName(), scriptEngineArgs, maxCachedScriptLifetimeSecs, maxCachedScripts,
+            scriptEnginePoolSize, meterRegistry.getIfAvailable() );
     }
 
     @Bean
@@ -71,12 +71,15 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Transforms a DHIS2 resource to a FHIR resource. The default priority of the transformer is <code>0</code>.
@@ -403,6 +406,7 @@ public abstract class AbstractDhisToFhirTransformer<R extends ScriptedDhisResour
         final AbstractIdentifierDhisToFhirTransformerUtils identifierUtils =
             TransformerUtils.getScriptVariable( scriptVariables, ScriptVariable.IDENTIFIER_UTILS, AbstractIdentifierDhisToFhirTransformerUtils.class );
         final ResourceSystem resourceSystem = context.getResourceSystem( ruleInfo.getRule().getFhirResourceType() );
+        SystemCodeValue resourceIdentifier = null;
 
         if ( resourceSystem != null )
         {
@@ -422,28 +426,37 @@ public abstract class AbstractDhisToFhirTransformer<R extends ScriptedDhisResour
                     return false;
                 }
 
-                final SystemCodeValue identifier = new SystemCodeValue( resourceSystem.getSystem(), identifierValue.substring( StringUtils.length( resourceSystem.getCodePrefix() ) ) );
-
-                if ( sync )
-                {
-                    lockFhirIdentifier( context, identifier );
-                }
-
-                identifierUtils.addOrUpdateIdentifier( resource, identifier, resourceSystem.getFhirDisplayName() );
+                resourceIdentifier = new SystemCodeValue( resourceSystem.getSystem(), identifierValue.substring( StringUtils.length( resourceSystem.getCodePrefix() ) ) );
             }
         }
 
+        SystemCodeValue adapterIdentifier = null;
+        final System adapterIdentifierSystem;
+
         if ( context.isUseAdapterIdentifier() )
         {
-            final System adapterIdentifierSystem = getAdapterIdentifierSystem();
-            final SystemCodeValue identifier = new SystemCodeValue( adapterIdentifierSystem.getSystemUri(), createAdapterIdentifierValue( ruleInfo, scriptedDhisResource ) );
+            adapterIdentifierSystem = getAdapterIdentifierSystem();
+            adapterIdentifier = new SystemCodeValue( adapterIdentifierSystem.getSystemUri(), createAdapterIdentifierValue( ruleInfo, scriptedDhisResource ) );
+        }
+        else
+        {
+            adapterIdentifierSystem = null;
+        }
 
-            if ( sync )
-            {
-                lockFhirIdentifier( context, identifier );
-            }
+        if ( sync )
+        {
+            // both identifiers are locked at once in order to avoid deadlocks
+            lockFhirIdentifiers( context, Stream.of( resourceIdentifier, adapterIdentifier ).filter( Objects::nonNull ).collect( Collectors.toList() ) );
+        }
 
-            identifierUtils.addOrUpdateIdentifier( resource, identifier, adapterIdentifierSystem.getFhirDisplayName(), true );
+        if ( resourceIdentifier != null )
+        {
+            identifierUtils.addOrUpdateIdentifier( resource, resourceIdentifier, resourceSystem.getFhirDisplayName() );
+        }
+
+        if ( adapterIdentifier != null )
+        {
+            identifierUtils.addOrUpdateIdentifier( resource, adapterIdentifier, adapterIdentifierSystem.getFhirDisplayName(), true );
         }
 
         return true;
@@ -456,12 +469,12 @@ public abstract class AbstractDhisToFhirTransformer<R extends ScriptedDhisResour
     protected abstract String getIdentifierValue( @Nonnull DhisToFhirTransformerContext context, @Nonnull RuleInfo<U> ruleInfo,
         @Nullable ExecutableScript identifierLookupScript, @Nonnull R scriptedDhisResource, @Nonnull Map<String, Object> scriptVariables );
 
-    protected void lockFhirIdentifier( @Nonnull DhisToFhirTransformerContext context, @Nonnull SystemCodeValue systemCodeValue )
+    protected void lockFhirIdentifiers( @Nonnull DhisToFhirTransformerContext context, @Nonnull Collection<SystemCodeValue> systemCodeValues )
     {
-        if ( !context.getDhisRequest().isDhisFhirId() )
+        if ( !context.getDhisRequest().isDhisFhirId() && !systemCodeValues.isEmpty() )
         {
             getLockManager().getCurrentLockContext().orElseThrow( () -> new FatalTransformerException( "No lock context available." ) )
-                .lock( "fhir-identifier:" + systemCodeValue.toString() );
+                .lock( systemCodeValues.stream().map( scv -> "fhir-identifier:" + scv.toString() ).collect( Collectors.toList() ) );
         }
     }
 
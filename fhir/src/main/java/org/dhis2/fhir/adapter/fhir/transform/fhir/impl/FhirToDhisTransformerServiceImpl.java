@@ -29,6 +29,10 @@ package org.dhis2.fhir.adapter.fhir.transform.fhir.impl;
  */
 
 import ca.uhn.fhir.context.FhirContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryContainer;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryTemplate;
 import org.dhis2.fhir.adapter.dhis.model.DhisResource;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
@@ -87,6 +91,8 @@ public class FhirToDhisTransformerServiceImpl implements FhirToDhisTransformerSe
 
     private final LockManager lockManager;
 
+    private final RequestCacheService requestCacheService;
+
     private final FhirResourceRepository fhirResourceRepository;
 
     private final RuleRepository ruleRepository;
@@ -97,13 +103,14 @@ public class FhirToDhisTransformerServiceImpl implements FhirToDhisTransformerSe
 
     private final ScriptExecutor scriptExecutor;
 
-    public FhirToDhisTransformerServiceImpl( @Nonnull LockManager lockManager,
+    public FhirToDhisTransformerServiceImpl( @Nonnull LockManager lockManager, @Nonnull RequestCacheService requestCacheService,
         @Nonnull FhirResourceRepository fhirResourceRepository, @Nonnull RuleRepository ruleRepository,
         @Nonnull ObjectProvider<List<FhirToDhisTransformer<?, ?>>> transformersProvider,
         @Nonnull ObjectProvider<List<FhirToDhisTransformerUtils>> transformUtilsProvider,
         @Nonnull ScriptExecutor scriptExecutor )
     {
         this.lockManager = lockManager;
+        this.requestCacheService = requestCacheService;
         this.fhirResourceRepository = fhirResourceRepository;
         this.ruleRepository = ruleRepository;
         this.scriptExecutor = scriptExecutor;
@@ -267,7 +274,11 @@ public class FhirToDhisTransformerServiceImpl implements FhirToDhisTransformerSe
                     }
 
                     // if the previous transformation caused a lock of any resource this must be released since the transformation has been rolled back
-                    lockManager.getCurrentLockContext().ifPresent( LockContext::unlockAll );
+                    // (unless the lock context contains the locks of resources that are still persisted later)
+                    if ( !isPersistenceDeferred() )
+                    {
+                        lockManager.getCurrentLockContext().ifPresent( LockContext::unlockAll );
+                    }
                 }
             }
         }
@@ -280,6 +291,14 @@ public class FhirToDhisTransformerServiceImpl implements FhirToDhisTransformerSe
         return null;
     }
 
+    private boolean isPersistenceDeferred()
+    {
+        final RequestCacheContext requestCacheContext = requestCacheService.getCurrentRequestCacheContext();
+
+        return (requestCacheContext != null) && (requestCacheContext.getAttribute(
+            LocalDhisResourceRepositoryTemplate.CONTAINER_REQUEST_CACHE_ATTRIBUTE_NAME, LocalDhisResourceRepositoryContainer.class ) != null);
+    }
+
     private boolean isApplicable( @Nonnull FhirToDhisTransformerContext context, @Nonnull IBaseResource input,
         @Nonnull RuleInfo<? extends AbstractRule> ruleInfo, @Nonnull Map<String, Object> scriptVariables ) throws TransformerException
     {
@@ -30,25 +30,105 @@ package org.dhis2.fhir.adapter.fhir.transform.util;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
+import org.dhis2.fhir.adapter.fhir.transform.FatalTransformerException;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseReference;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IDomainResource;
+import org.hl7.fhir.instance.model.api.IIdType;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * Transformer utilities that clone a bean (cached instances must not be modified
  * by several thread, e.g. HAPI FHIR objects).
+ * <p>
+ * Resources are copied structurally by the deep copy method that is provided by
+ * the HAPI FHIR structures of DSTU3 and R4. The copy method is looked up once per
+ * resource class. The resulting copy corresponds to the result of encoding and
+ * parsing the resource. Bundles (the parser derives the IDs of the included
+ * resources from the full URLs), resources that contain references that have
+ * only been set to resolved resources (which are contained or converted to
+ * references when the resource is encoded) and resources without a copy method
+ * are cloned by encoding and parsing them.
  *
  * @author volsch
  */
 public abstract class FhirBeanTransformerUtils
 {
+    private static final String COPY_METHOD_NAME = "copy";
+
+    private static final Map<Class<?>, Optional<Method>> copyMethods = new ConcurrentHashMap<>();
+
     @Nullable
-    @SuppressWarnings( { "unchecked" } )
     public static <T extends IBaseResource> T clone( @Nonnull FhirContext fhirContext, @Nullable T object )
+    {
+        if ( object == null )
+        {
+            return null;
+        }
+
+        final Method copyMethod = ( object instanceof IBaseBundle ) ? null : getCopyMethod( object.getClass() );
+        if ( copyMethod == null )
+        {
+            return cloneBySerialization( fhirContext, object );
+        }
+
+        boolean resolvedReferences = false;
+        for ( final IBaseReference reference : fhirContext.newTerser().getAllPopulatedChildElementsOfType( object, IBaseReference.class ) )
+        {
+            if ( reference.getResource() != null )
+            {
+                if ( reference.getReferenceElement().isEmpty() )
+                {
+                    // the encoder contains the resource or derives the reference from its ID
+                    return cloneBySerialization( fhirContext, object );
+                }
+                resolvedReferences = true;
+            }
+        }
+
+        final T copiedObject = copy( copyMethod, object );
+        if ( resolvedReferences && copiedObject instanceof IDomainResource )
+        {
+            resolveContainedReferences( fhirContext, (IDomainResource) copiedObject );
+        }
+
+        // the original object must not be accessed by getters that may initialize its fields
+        final IIdType id = copiedObject.getIdElement();
+        if ( id != null && id.hasIdPart() )
+        {
+            // the encoded resource contains only the ID part and the version (as meta data)
+            final String versionId = ( copiedObject.getMeta().getVersionId() == null ) ? id.getVersionIdPart() : copiedObject.getMeta().getVersionId();
+            copiedObject.setId( fhirContext.getResourceDefinition( copiedObject ).getName() + "/" + id.getIdPart() +
+                ( versionId == null ? "" : "/_history/" + versionId ) );
+            copiedObject.getMeta().setVersionId( versionId );
+        }
+        return copiedObject;
+    }
+
+    /**
+     * Clones the specified resource by encoding it to JSON and parsing the encoded
+     * JSON again.
+     *
+     * @param fhirContext the FHIR context that is used to encode and parse the resource.
+     * @param object      the resource that should be cloned.
+     * @param <T>         the concrete type of the resource.
+     * @return the cloned resource.
+     */
+    @Nullable
+    @SuppressWarnings( { "unchecked" } )
+    public static <T extends IBaseResource> T cloneBySerialization( @Nonnull FhirContext fhirContext, @Nullable T object )
     {
         if ( object == null )
         {
@@ -72,6 +152,64 @@ public abstract class FhirBeanTransformerUtils
         return objects.stream().map( o -> clone( fhirContext, o ) ).collect( Collectors.toList() );
     }
 
+    @Nullable
+    private static Method getCopyMethod( @Nonnull Class<?> objectClass )
+    {
+        return copyMethods.computeIfAbsent( objectClass, c -> {
+            final Method method;
+            try
+            {
+                method = c.getMethod( COPY_METHOD_NAME );
+            }
+            catch ( NoSuchMethodException e )
+            {
+                return Optional.empty();
+            }
+            return c.isAssignableFrom( method.getReturnType() ) ? Optional.of( method ) : Optional.empty();
+        } ).orElse( null );
+    }
+
+    /**
+     * The parser resolves local references to the contained resources. The copy
+     * methods do not copy resolved resources of references.
+     */
+    private static void resolveContainedReferences( @Nonnull FhirContext fhirContext, @Nonnull IDomainResource object )
+    {
+        if ( object.getContained().isEmpty() )
+        {
+            return;
+        }
+
+        final Map<String, IBaseResource> containedResources = new HashMap<>();
+        object.getContained().forEach( r -> containedResources.put( r.getIdElement().getValue(), r ) );
+        for ( final IBaseReference reference : fhirContext.newTerser().getAllPopulatedChildElementsOfType( object, IBaseReference.class ) )
+        {
+            final IIdType referenceElement = reference.getReferenceElement();
+            if ( referenceElement.isLocal() && reference.getResource() == null )
+            {
+                reference.setResource( containedResources.get( referenceElement.getValue() ) );
+            }
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings( { "unchecked" } )
+    private static <T extends IBaseResource> T copy( @Nonnull Method copyMethod, @Nonnull T object )
+    {
+        try
+        {
+            return (T) copyMethod.invoke( object );
+        }
+        catch ( IllegalAccessException e )
+        {
+            throw new FatalTransformerException( "Could not access copy method of " + object.getClass().getName() + ".", e );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw new FatalTransformerException( "Could not copy instance of " + object.getClass().getName() + ".", e.getTargetException() );
+        }
+    }
+
     private FhirBeanTransformerUtils()
     {
         super();
@@ -0,0 +1,210 @@
+package org.dhis2.fhir.adapter.fhir.warmup;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceBatchQueueListener;
+import org.dhis2.fhir.adapter.fhir.security.AdapterSystemAuthenticationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Executes all {@linkplain MetadataWarmUpTask metadata warm-up tasks} in parallel
+ * when the application has been started. If the metadata warm-up is enabled, the
+ * queue listeners (including the {@linkplain FhirResourceBatchQueueListener batch queue listener})
+ * are not started automatically (see {@link MetadataWarmUpConfig}) and are started by
+ * this component when all tasks have been completed.
+ *
+ * @author volsch
+ */
+@Component
+public class MetadataWarmUp
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final MetadataWarmUpConfig config;
+
+    private final List<MetadataWarmUpTask> tasks;
+
+    private final ObjectProvider<JmsListenerEndpointRegistry> jmsListenerEndpointRegistryProvider;
+
+    private final ObjectProvider<FhirResourceBatchQueueListener> batchQueueListenerProvider;
+
+    private final List<TaskStatus> taskStatuses;
+
+    private volatile MetadataWarmUpState state = MetadataWarmUpState.PENDING;
+
+    private volatile Instant startedAt;
+
+    private volatile Instant finishedAt;
+
+    public MetadataWarmUp( @Nonnull MetadataWarmUpConfig config, @Nonnull ObjectProvider<List<MetadataWarmUpTask>> tasksProvider,
+        @Nonnull ObjectProvider<JmsListenerEndpointRegistry> jmsListenerEndpointRegistryProvider,
+        @Nonnull ObjectProvider<FhirResourceBatchQueueListener> batchQueueListenerProvider )
+    {
+        this.config = config;
+        this.tasks = tasksProvider.getIfAvailable( ArrayList::new );
+        this.jmsListenerEndpointRegistryProvider = jmsListenerEndpointRegistryProvider;
+        this.batchQueueListenerProvider = batchQueueListenerProvider;
+        this.taskStatuses = tasks.stream().map( t -> new TaskStatus( t.getName() ) ).collect( Collectors.toList() );
+    }
+
+    @EventListener( ApplicationReadyEvent.class )
+    public void warmUp()
+    {
+        final Thread thread = new Thread( this::warmUpTasks, "metadata-warm-up" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    @Nonnull
+    public MetadataWarmUpStatus getStatus()
+    {
+        final Instant finishedAt = this.finishedAt;
+        return new MetadataWarmUpStatus( state, startedAt, finishedAt,
+            ( finishedAt == null ) ? null : ( finishedAt.toEpochMilli() - ManagementFactory.getRuntimeMXBean().getStartTime() ),
+            taskStatuses.stream().map( TaskStatus::toStatus ).collect( Collectors.toList() ) );
+    }
+
+    protected void warmUpTasks()
+    {
+        startedAt = Instant.now();
+        state = MetadataWarmUpState.RUNNING;
+
+        logger.info( "Warming up metadata with {} tasks.", tasks.size() );
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory( "metadata-warm-up-" );
+        threadFactory.setDaemon( true );
+        final ExecutorService executorService = Executors.newFixedThreadPool( Math.max( 1, Math.min( config.getParallelism(), tasks.size() ) ), threadFactory );
+        try
+        {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for ( int i = 0; i < tasks.size(); i++ )
+            {
+                final MetadataWarmUpTask task = tasks.get( i );
+                final TaskStatus taskStatus = taskStatuses.get( i );
+                futures.add( CompletableFuture.runAsync( () -> warmUpTask( task, taskStatus ), executorService ) );
+            }
+            CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).join();
+        }
+        finally
+        {
+            executorService.shutdown();
+            finishedAt = Instant.now();
+            state = MetadataWarmUpState.COMPLETED;
+            logger.info( "Warmed up metadata in {} ms.", finishedAt.toEpochMilli() - startedAt.toEpochMilli() );
+            startQueueListeners();
+        }
+    }
+
+    protected void warmUpTask( @Nonnull MetadataWarmUpTask task, @Nonnull TaskStatus taskStatus )
+    {
+        final long startMillis = System.currentTimeMillis();
+        taskStatus.state = MetadataWarmUpState.RUNNING;
+
+        SecurityContextHolder.getContext().setAuthentication( new AdapterSystemAuthenticationToken() );
+        try
+        {
+            taskStatus.itemCount = task.warmUp();
+            taskStatus.state = MetadataWarmUpState.COMPLETED;
+            logger.info( "Warmed up {} with {} items.", task.getName(), taskStatus.itemCount );
+        }
+        catch ( RuntimeException e )
+        {
+            taskStatus.message = e.getMessage();
+            taskStatus.state = MetadataWarmUpState.FAILED;
+            logger.warn( "Could not warm up {}. Metadata will be loaded when it is used.", task.getName(), e );
+        }
+        finally
+        {
+            SecurityContextHolder.clearContext();
+            taskStatus.durationMillis = System.currentTimeMillis() - startMillis;
+        }
+    }
+
+    protected void startQueueListeners()
+    {
+        if ( !config.isEnabled() )
+        {
+            return;
+        }
+
+        final JmsListenerEndpointRegistry registry = jmsListenerEndpointRegistryProvider.getIfAvailable();
+        if ( registry != null )
+        {
+            logger.info( "Starting {} queue listeners.", registry.getListenerContainers().size() );
+            registry.start();
+        }
+
+        final FhirResourceBatchQueueListener batchQueueListener = batchQueueListenerProvider.getIfAvailable();
+        if ( batchQueueListener != null )
+        {
+            batchQueueListener.start();
+        }
+    }
+
+    protected static class TaskStatus
+    {
+        private final String name;
+
+        private volatile MetadataWarmUpState state = MetadataWarmUpState.PENDING;
+
+        private volatile int itemCount;
+
+        private volatile Long durationMillis;
+
+        private volatile String message;
+
+        protected TaskStatus( @Nonnull String name )
+        {
+            this.name = name;
+        }
+
+        @Nonnull
+        protected MetadataWarmUpTaskStatus toStatus()
+        {
+            return new MetadataWarmUpTaskStatus( name, state, itemCount, durationMillis, message );
+        }
+    }
+}
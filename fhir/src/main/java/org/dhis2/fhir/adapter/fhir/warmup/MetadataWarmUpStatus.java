@@ -0,0 +1,105 @@
+package org.dhis2.fhir.adapter.fhir.warmup;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The status of the metadata warm-up. The application is ready to process
+ * messages when the warm-up has been completed (even if some tasks failed,
+ * since the affected metadata is then loaded when it is used).
+ *
+ * @author volsch
+ */
+public class MetadataWarmUpStatus implements Serializable
+{
+    private static final long serialVersionUID = -6036395926096361652L;
+
+    private final MetadataWarmUpState state;
+
+    private final Instant startedAt;
+
+    private final Instant finishedAt;
+
+    private final Long timeToReadyMillis;
+
+    private final List<MetadataWarmUpTaskStatus> tasks;
+
+    public MetadataWarmUpStatus( @Nonnull MetadataWarmUpState state, @Nullable Instant startedAt, @Nullable Instant finishedAt, @Nullable Long timeToReadyMillis, @Nonnull List<MetadataWarmUpTaskStatus> tasks )
+    {
+        this.state = state;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.timeToReadyMillis = timeToReadyMillis;
+        this.tasks = tasks;
+    }
+
+    public boolean isReady()
+    {
+        return state == MetadataWarmUpState.COMPLETED;
+    }
+
+    @Nonnull
+    public MetadataWarmUpState getState()
+    {
+        return state;
+    }
+
+    @Nullable
+    public Instant getStartedAt()
+    {
+        return startedAt;
+    }
+
+    @Nullable
+    public Instant getFinishedAt()
+    {
+        return finishedAt;
+    }
+
+    /**
+     * @return the number of milliseconds between the start of the JVM and the completion
+     * of the warm-up or <code>null</code> if the warm-up has not yet been completed.
+     */
+    @Nullable
+    public Long getTimeToReadyMillis()
+    {
+        return timeToReadyMillis;
+    }
+
+    @Nonnull
+    public List<MetadataWarmUpTaskStatus> getTasks()
+    {
+        return tasks;
+    }
+}
@@ -0,0 +1,91 @@
+package org.dhis2.fhir.adapter.fhir.warmup;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * The status of a single metadata warm-up task.
+ *
+ * @author volsch
+ */
+public class MetadataWarmUpTaskStatus implements Serializable
+{
+    private static final long serialVersionUID = 6166339929843227335L;
+
+    private final String name;
+
+    private final MetadataWarmUpState state;
+
+    private final int itemCount;
+
+    private final Long durationMillis;
+
+    private final String message;
+
+    public MetadataWarmUpTaskStatus( @Nonnull String name, @Nonnull MetadataWarmUpState state, int itemCount, @Nullable Long durationMillis, @Nullable String message )
+    {
+        this.name = name;
+        this.state = state;
+        this.itemCount = itemCount;
+        this.durationMillis = durationMillis;
+        this.message = message;
+    }
+
+    @Nonnull
+    public String getName()
+    {
+        return name;
+    }
+
+    @Nonnull
+    public MetadataWarmUpState getState()
+    {
+        return state;
+    }
+
+    public int getItemCount()
+    {
+        return itemCount;
+    }
+
+    @Nullable
+    public Long getDurationMillis()
+    {
+        return durationMillis;
+    }
+
+    @Nullable
+    public String getMessage()
+    {
+        return message;
+    }
+}
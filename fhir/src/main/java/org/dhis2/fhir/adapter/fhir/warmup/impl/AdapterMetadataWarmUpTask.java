@@ -0,0 +1,105 @@
+package org.dhis2.fhir.adapter.fhir.warmup.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceMapping;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientSystemRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirResourceMappingRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.MappedTrackerProgramRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
+import org.dhis2.fhir.adapter.fhir.warmup.MetadataWarmUpTask;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Loads the adapter metadata that is required by every transformation (rules with
+ * their code sets, FHIR clients and FHIR resource mappings) into the metadata cache
+ * and the rule index.
+ *
+ * @author volsch
+ */
+@Component
+@ConditionalOnProperty( name = "dhis2.fhir-adapter.metadata-warm-up.enabled", havingValue = "true" )
+public class AdapterMetadataWarmUpTask implements MetadataWarmUpTask
+{
+    private final RuleIndexManager ruleIndexManager;
+
+    private final FhirClientRepository fhirClientRepository;
+
+    private final FhirClientSystemRepository fhirClientSystemRepository;
+
+    private final FhirResourceMappingRepository resourceMappingRepository;
+
+    private final MappedTrackerProgramRepository mappedTrackerProgramRepository;
+
+    public AdapterMetadataWarmUpTask( @Nonnull RuleIndexManager ruleIndexManager, @Nonnull FhirClientRepository fhirClientRepository, @Nonnull FhirClientSystemRepository fhirClientSystemRepository,
+        @Nonnull FhirResourceMappingRepository resourceMappingRepository, @Nonnull MappedTrackerProgramRepository mappedTrackerProgramRepository )
+    {
+        this.ruleIndexManager = ruleIndexManager;
+        this.fhirClientRepository = fhirClientRepository;
+        this.fhirClientSystemRepository = fhirClientSystemRepository;
+        this.resourceMappingRepository = resourceMappingRepository;
+        this.mappedTrackerProgramRepository = mappedTrackerProgramRepository;
+    }
+
+    @Nonnull
+    @Override
+    public String getName()
+    {
+        return "adapterMetadata";
+    }
+
+    @Override
+    public int warmUp()
+    {
+        int count = ruleIndexManager.getRuleIndex().getRuleCount();
+
+        for ( final FhirClient fhirClient : fhirClientRepository.findAll() )
+        {
+            fhirClientRepository.findOneByIdCached( fhirClient.getId() );
+            fhirClientSystemRepository.findByFhirClient( fhirClient );
+            count++;
+        }
+        fhirClientRepository.findAllDhisUsernames();
+
+        for ( final FhirResourceMapping resourceMapping : resourceMappingRepository.findAll() )
+        {
+            resourceMappingRepository.findOneByFhirResourceType( resourceMapping.getFhirResourceType(), resourceMapping.getTrackedEntityFhirResourceType() );
+            count++;
+        }
+
+        count += mappedTrackerProgramRepository.findAllPolledProgramReferences().size();
+
+        return count;
+    }
+}
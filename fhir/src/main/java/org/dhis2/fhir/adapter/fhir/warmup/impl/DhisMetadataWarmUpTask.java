@@ -0,0 +1,132 @@
+package org.dhis2.fhir.adapter.fhir.warmup.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.dhis.config.DhisMetadataCacheConfig;
+import org.dhis2.fhir.adapter.dhis.model.DhisMetadata;
+import org.dhis2.fhir.adapter.dhis.model.Reference;
+import org.dhis2.fhir.adapter.dhis.tracker.program.Program;
+import org.dhis2.fhir.adapter.dhis.tracker.program.ProgramMetadataService;
+import org.dhis2.fhir.adapter.dhis.tracker.program.ProgramStage;
+import org.dhis2.fhir.adapter.dhis.tracker.program.ProgramStageMetadataService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityMetadataService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityType;
+import org.dhis2.fhir.adapter.fhir.warmup.MetadataWarmUpTask;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Loads all DHIS2 programs (including their program stages) and tracked entity
+ * types with one request per type and puts them into the DHIS2 metadata cache
+ * with all references by which they can be looked up. The tracked entity attributes
+ * (including their option sets) are loaded into the cache as well.
+ *
+ * @author volsch
+ */
+@Component
+@ConditionalOnProperty( name = "dhis2.fhir-adapter.metadata-warm-up.enabled", havingValue = "true" )
+public class DhisMetadataWarmUpTask implements MetadataWarmUpTask
+{
+    public static final String TRACKED_ENTITY_TYPES_CACHE_NAME = "trackedEntityTypes";
+
+    private final CacheManager cacheManager;
+
+    private final ProgramMetadataService programMetadataService;
+
+    private final ProgramStageMetadataService programStageMetadataService;
+
+    private final TrackedEntityMetadataService trackedEntityMetadataService;
+
+    public DhisMetadataWarmUpTask( @Nonnull @Qualifier( "dhisCacheManager" ) CacheManager cacheManager, @Nonnull ProgramMetadataService programMetadataService,
+        @Nonnull ProgramStageMetadataService programStageMetadataService, @Nonnull TrackedEntityMetadataService trackedEntityMetadataService )
+    {
+        this.cacheManager = cacheManager;
+        this.programMetadataService = programMetadataService;
+        this.programStageMetadataService = programStageMetadataService;
+        this.trackedEntityMetadataService = trackedEntityMetadataService;
+    }
+
+    @Nonnull
+    @Override
+    public String getName()
+    {
+        return "dhisMetadata";
+    }
+
+    @Override
+    public int warmUp()
+    {
+        final Cache programCache = getMetadataCache( programMetadataService );
+        final Cache programStageCache = getMetadataCache( programStageMetadataService );
+        int count = 0;
+
+        for ( final Program program : programMetadataService.findAllMetadata() )
+        {
+            put( programCache, program );
+            count++;
+
+            for ( final ProgramStage programStage : program.getStages() )
+            {
+                put( programStageCache, programStage );
+                count++;
+            }
+        }
+
+        final Cache trackedEntityTypeCache = Objects.requireNonNull( cacheManager.getCache( TRACKED_ENTITY_TYPES_CACHE_NAME ) );
+        final List<? extends TrackedEntityType> trackedEntityTypes = trackedEntityMetadataService.findAllTypes();
+        trackedEntityTypes.forEach( t -> put( trackedEntityTypeCache, t ) );
+        count += trackedEntityTypes.size();
+
+        // tracked entity attributes are cached as a whole
+        trackedEntityMetadataService.getAttributes();
+
+        return count;
+    }
+
+    @Nonnull
+    protected Cache getMetadataCache( @Nonnull Object metadataService )
+    {
+        return Objects.requireNonNull( cacheManager.getCache( DhisMetadataCacheConfig.getMetadataCacheName( AopUtils.getTargetClass( metadataService ) ) ) );
+    }
+
+    protected void put( @Nonnull Cache cache, @Nonnull DhisMetadata metadata )
+    {
+        final Collection<Reference> references = metadata.getAllReferences();
+        references.forEach( r -> cache.put( r, metadata ) );
+    }
+}
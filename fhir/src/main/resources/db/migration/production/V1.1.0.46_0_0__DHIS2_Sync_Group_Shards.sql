@@ -0,0 +1,40 @@
+/*
+ *  Copyright (c) 2004-2019, University of Oslo
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright notice, this
+ *  list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *  this list of conditions and the following disclaimer in the documentation
+ *  and/or other materials provided with the distribution.
+ *  Neither the name of the HISP project nor the names of its contributors may
+ *  be used to endorse or promote products derived from this software without
+ *  specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+-- @formatter:off
+ALTER TABLE fhir_dhis_sync_group
+  ADD COLUMN enabled BOOLEAN DEFAULT TRUE NOT NULL,
+  ADD COLUMN dhis_resource_type VARCHAR(30),
+  ADD COLUMN program_id VARCHAR(11),
+  ADD COLUMN org_unit_id VARCHAR(11),
+  ADD CONSTRAINT fhir_dhis_sync_group_fk1 FOREIGN KEY (dhis_resource_type) REFERENCES fhir_dhis_resource_type_enum(value);
+COMMENT ON TABLE fhir_dhis_sync_group IS 'Contains the DHIS2 synchronization groups. Each enabled DHIS2 synchronization group is polled and processed independently. The data can be split into several DHIS2 synchronization groups (shards) that are restricted to a DHIS2 resource type, a program or an organization unit subtree. The enabled groups must not overlap and must cover all synchronized data.';
+COMMENT ON COLUMN fhir_dhis_sync_group.enabled IS 'Specifies if the DHIS2 synchronization group is polled. The default group can be disabled when the data is split into several groups.';
+COMMENT ON COLUMN fhir_dhis_sync_group.dhis_resource_type IS 'The DHIS2 resource type that is polled by this group or NULL if all configured DHIS2 resource types are polled.';
+COMMENT ON COLUMN fhir_dhis_sync_group.program_id IS 'The ID of the program of which the events are polled by this group or NULL if the group is not restricted to a program. A group that is restricted to a program polls only events.';
+COMMENT ON COLUMN fhir_dhis_sync_group.org_unit_id IS 'The ID of the root organization unit of the subtree that is polled by this group or NULL if the group is not restricted to an organization unit subtree. A group that is restricted to an organization unit subtree polls only tracked entity instances and events.';
@@ -28,11 +28,16 @@ package org.dhis2.fhir.adapter.fhir;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.dhis2.fhir.adapter.cache.CacheBasePackage;
 import org.dhis2.fhir.adapter.converter.ZonedDateTimeToDateConverter;
+import org.dhis2.fhir.adapter.data.filter.ItemFilterBasePackage;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientConfig;
 import org.dhis2.fhir.adapter.fhir.data.DataBasePackage;
 import org.dhis2.fhir.adapter.fhir.metadata.MetadataBasePackage;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirClientRegistryImpl;
 import org.dhis2.fhir.adapter.rest.RestBasePackage;
 import org.dhis2.fhir.adapter.script.ScriptEvaluator;
 import org.dhis2.fhir.adapter.script.impl.ScriptEvaluatorImpl;
@@ -72,7 +77,7 @@ import java.util.Properties;
  */
 @Configuration
 @EnableAutoConfiguration( exclude = { RedisAutoConfiguration.class, RedisRepositoriesAutoConfiguration.class, ArtemisAutoConfiguration.class, HystrixAutoConfiguration.class } )
-@ComponentScan( basePackageClasses = { CacheBasePackage.class, RestBasePackage.class, DataBasePackage.class, MetadataBasePackage.class } )
+@ComponentScan( basePackageClasses = { CacheBasePackage.class, RestBasePackage.class, DataBasePackage.class, MetadataBasePackage.class, ItemFilterBasePackage.class } )
 public class MockMvcTestConfig
 {
     @Nonnull
@@ -82,6 +87,13 @@ public class MockMvcTestConfig
         return new ScriptEvaluatorImpl( "nashorn", Arrays.asList( "-doe", "--no-java", "--no-syntax-extensions" ), 3600, 1000 );
     }
 
+    @Nonnull
+    @Bean
+    protected FhirClientRegistry fhirClientRegistry()
+    {
+        return new FhirClientRegistryImpl( new FhirClientConfig(), (MeterRegistry) null );
+    }
+
     @Bean
     @Nonnull
     public WebMvcConfigurer mvcConfigurer()
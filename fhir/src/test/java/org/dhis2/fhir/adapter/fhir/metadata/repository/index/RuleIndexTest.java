@@ -0,0 +1,161 @@
+package org.dhis2.fhir.adapter.fhir.metadata.repository.index;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.CodeSet;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ProgramStageRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
+import org.dhis2.fhir.adapter.fhir.metadata.model.System;
+import org.dhis2.fhir.adapter.fhir.metadata.model.TrackedEntityRule;
+import org.dhis2.fhir.adapter.fhir.model.SystemCodeValue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link RuleIndex}.
+ *
+ * @author volsch
+ */
+public class RuleIndexTest
+{
+    private final UUID codeSetId = UUID.randomUUID();
+
+    private AbstractRule patientRule;
+
+    private AbstractRule observationRule;
+
+    private AbstractRule observationCodeSetRule;
+
+    private AbstractRule observationExpRule;
+
+    private RuleIndex ruleIndex;
+
+    @Before
+    public void before()
+    {
+        final CodeSet codeSet = new CodeSet();
+        codeSet.setId( codeSetId );
+        codeSet.setCode( "VACCINE_MEASLES" );
+
+        patientRule = createRule( new TrackedEntityRule(), FhirResourceType.PATIENT, 10, null, true, true );
+        observationRule = createRule( new ProgramStageRule(), FhirResourceType.OBSERVATION, 5, null, true, false );
+        observationCodeSetRule = createRule( new ProgramStageRule(), FhirResourceType.OBSERVATION, 20, codeSet, true, false );
+        observationExpRule = createRule( new ProgramStageRule(), FhirResourceType.OBSERVATION, 0, codeSet, false, true );
+
+        final Map<UUID, List<String>> systemCodeValues = new HashMap<>();
+        systemCodeValues.put( codeSetId, Arrays.asList( "http://loinc.org|8302-2", "http://loinc.org|8310-5" ) );
+
+        ruleIndex = new RuleIndex( 4, Arrays.asList( patientRule, observationRule, observationCodeSetRule, observationExpRule ).stream()
+            .map( r -> new RuleInfo<>( r, Collections.emptyList() ) ).collect( Collectors.toList() ), systemCodeValues );
+    }
+
+    @Test
+    public void version()
+    {
+        Assert.assertEquals( 4, ruleIndex.getVersion() );
+        Assert.assertEquals( 4, ruleIndex.getRuleCount() );
+    }
+
+    @Test
+    public void findAllImpWithoutCodes()
+    {
+        Assert.assertEquals( Collections.singletonList( observationRule ), getRules( ruleIndex.findAllImpByInputData( FhirResourceType.OBSERVATION, null ) ) );
+        Assert.assertEquals( Collections.singletonList( observationRule ), getRules( ruleIndex.findAllImpByInputData( FhirResourceType.OBSERVATION, Collections.emptyList() ) ) );
+        Assert.assertEquals( Collections.singletonList( patientRule ), getRules( ruleIndex.findAllImpByInputData( FhirResourceType.PATIENT, null ) ) );
+    }
+
+    @Test
+    public void findAllImpUnknownFhirResourceType()
+    {
+        Assert.assertTrue( ruleIndex.findAllImpByInputData( FhirResourceType.ENCOUNTER, null ).isEmpty() );
+    }
+
+    @Test
+    public void findAllImpBySystemCodeValues()
+    {
+        Assert.assertEquals( Arrays.asList( observationCodeSetRule, observationRule ), getRules( ruleIndex.findAllImpByInputData( FhirResourceType.OBSERVATION,
+            Arrays.asList( new SystemCodeValue( "http://loinc.org", "8310-5" ), new SystemCodeValue( "http://loinc.org", "8302-2" ) ) ) ) );
+    }
+
+    @Test
+    public void findAllImpByOtherSystemCodeValues()
+    {
+        Assert.assertEquals( Collections.singletonList( observationRule ), getRules( ruleIndex.findAllImpByInputData( FhirResourceType.OBSERVATION,
+            Collections.singletonList( new SystemCodeValue( "http://loinc.org", "1234-5" ) ) ) ) );
+    }
+
+    @Test
+    public void findAllImpByCodeSetCodes()
+    {
+        Assert.assertEquals( Collections.singletonList( observationCodeSetRule ), getRules( ruleIndex.findAllImpByInputData( FhirResourceType.OBSERVATION,
+            Collections.singletonList( new SystemCodeValue( System.DHIS2_FHIR_CODE_SET_URI, "VACCINE_MEASLES" ) ) ) ) );
+    }
+
+    @Test
+    public void findAllExpBySystemCodeValues()
+    {
+        Assert.assertEquals( Collections.singletonList( observationExpRule ), getRules( ruleIndex.findAllExpByInputData( FhirResourceType.OBSERVATION,
+            Collections.singletonList( new SystemCodeValue( "http://loinc.org", "8302-2" ) ) ) ) );
+    }
+
+    @Test
+    public void findAllExpWithoutCodes()
+    {
+        Assert.assertEquals( Collections.singletonList( observationExpRule ), getRules( ruleIndex.findAllExpByInputData( FhirResourceType.OBSERVATION, null ) ) );
+        Assert.assertEquals( Collections.singletonList( patientRule ), getRules( ruleIndex.findAllExpByInputData( FhirResourceType.PATIENT, null ) ) );
+    }
+
+    private static AbstractRule createRule( AbstractRule rule, FhirResourceType fhirResourceType, int evaluationOrder, CodeSet codeSet, boolean impEnabled, boolean expEnabled )
+    {
+        rule.setId( UUID.randomUUID() );
+        rule.setEnabled( true );
+        rule.setFhirResourceType( fhirResourceType );
+        rule.setEvaluationOrder( evaluationOrder );
+        rule.setApplicableCodeSet( codeSet );
+        rule.setImpEnabled( impEnabled );
+        rule.setExpEnabled( expEnabled );
+        return rule;
+    }
+
+    private static List<AbstractRule> getRules( List<RuleInfo<? extends AbstractRule>> ruleInfos )
+    {
+        return ruleInfos.stream().map( RuleInfo::getRule ).collect( Collectors.toList() );
+    }
+}
@@ -64,6 +64,7 @@ import org.dhis2.fhir.adapter.fhir.metadata.repository.ScriptRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.SystemCodeRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.SystemRepository;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.TrackedEntityRuleRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.validator.MetadataValidator;
 import org.dhis2.fhir.adapter.fhir.metadata.service.MetadataImportParams;
 import org.dhis2.fhir.adapter.fhir.metadata.service.MetadataImportResult;
@@ -167,6 +168,9 @@ public class MetadataImportServiceImplTest
     @Mock
     private CacheManager cacheManager;
 
+    @Mock
+    private RuleIndexManager ruleIndexManager;
+
     private MetadataImportServiceImpl service;
 
     private List<? extends MetadataRepository<? extends Metadata>> metadataRepositories;
@@ -206,7 +210,7 @@ public class MetadataImportServiceImplTest
 
         service = new MetadataImportServiceImpl( messageSource, trackerProgramRepository, programStageRuleRepository,
             fhirResourceMappingRepository, Arrays.asList( programStageRuleMetadataValidator, otherMetadataValidator ),
-            new ArrayList<>( metadataRepositories ), entityManager, cacheManager );
+            new ArrayList<>( metadataRepositories ), entityManager, cacheManager, ruleIndexManager );
     }
 
     @SuppressWarnings( "unchecked" )
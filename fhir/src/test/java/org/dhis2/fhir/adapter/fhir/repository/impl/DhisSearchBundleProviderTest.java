@@ -0,0 +1,203 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.cache.impl.RequestCacheServiceImpl;
+import org.dhis2.fhir.adapter.dhis.model.DhisResource;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.RuleInfo;
+import org.dhis2.fhir.adapter.fhir.metadata.model.TrackedEntityRule;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirDataProvider;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirSearchResult;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirSearchState;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformOutcome;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformerRequest;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.DhisToFhirTransformerService;
+import org.dhis2.fhir.adapter.fhir.transform.dhis.PreparedDhisToFhirSearch;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link DhisSearchBundleProvider}.
+ *
+ * @author volsch
+ */
+public class DhisSearchBundleProviderTest
+{
+    private static final int AVAILABLE_COUNT = 25;
+
+    @Mock
+    private FhirClient fhirClient;
+
+    @Mock
+    private DhisToFhirDataProvider<TrackedEntityRule> dataProvider;
+
+    @Mock
+    private PreparedDhisToFhirSearch preparedSearch;
+
+    @Mock
+    private DhisToFhirTransformerService dhisToFhirTransformerService;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final List<RuleInfo<? extends AbstractRule>> rules = Collections.singletonList( new RuleInfo<>( new TrackedEntityRule(), Collections.emptyList() ) );
+
+    private final Map<DhisToFhirTransformerRequest, String> transformerRequests = new HashMap<>();
+
+    private final Map<IBaseResource, String> resourceIds = new IdentityHashMap<>();
+
+    private final List<Integer> searchedFrom = new ArrayList<>();
+
+    private DhisSearchBundleProvider bundleProvider;
+
+    @Before
+    public void before()
+    {
+        Mockito.doAnswer( invocation -> {
+            final TestSearchState state = invocation.getArgument( 1 );
+            final int max = invocation.getArgument( 2 );
+            final int from = (state == null) ? 0 : state.from;
+            searchedFrom.add( from );
+            if ( from >= AVAILABLE_COUNT )
+            {
+                return null;
+            }
+
+            final List<DhisResource> result = new ArrayList<>();
+            for ( int i = from; (i < AVAILABLE_COUNT) && (i - from < max); i++ )
+            {
+                result.add( new TrackedEntityInstance( "tei" + i ) );
+            }
+            return new DhisToFhirSearchResult<>( result, new TestSearchState( from + result.size() ) );
+        } ).when( dataProvider ).search( ArgumentMatchers.same( preparedSearch ), ArgumentMatchers.any(), ArgumentMatchers.anyInt() );
+
+        Mockito.when( dhisToFhirTransformerService.createTransformerRequest( ArgumentMatchers.same( fhirClient ), ArgumentMatchers.any(), ArgumentMatchers.any( DhisResource.class ), ArgumentMatchers.same( rules ) ) )
+            .thenAnswer( invocation -> {
+                final DhisToFhirTransformerRequest request = Mockito.mock( DhisToFhirTransformerRequest.class );
+                transformerRequests.put( request, invocation.<DhisResource>getArgument( 2 ).getId() );
+                return request;
+            } );
+        Mockito.doAnswer( invocation -> {
+            final IBaseResource resource = Mockito.mock( IBaseResource.class );
+            resourceIds.put( resource, transformerRequests.get( invocation.<DhisToFhirTransformerRequest>getArgument( 0 ) ) );
+            return new DhisToFhirTransformOutcome<>( new TrackedEntityRule(), resource );
+        } ).when( dhisToFhirTransformerService ).transform( ArgumentMatchers.any() );
+
+        bundleProvider = new DhisSearchBundleProvider( fhirClient, rules, dataProvider, preparedSearch, dhisToFhirTransformerService, new RequestCacheServiceImpl() );
+    }
+
+    @Test
+    public void getResourcesPaged()
+    {
+        Assert.assertEquals( ids( 0, 10 ), ids( bundleProvider.getResources( 0, 10 ) ) );
+        Assert.assertNull( bundleProvider.size() );
+        Assert.assertEquals( ids( 10, 20 ), ids( bundleProvider.getResources( 10, 20 ) ) );
+        Assert.assertNull( bundleProvider.size() );
+        Assert.assertEquals( ids( 20, 25 ), ids( bundleProvider.getResources( 20, 30 ) ) );
+        Assert.assertEquals( Integer.valueOf( AVAILABLE_COUNT ), bundleProvider.size() );
+        Assert.assertEquals( 0, bundleProvider.getResources( 30, 40 ).size() );
+
+        // DHIS2 must only be searched once for every page
+        Assert.assertEquals( Arrays.asList( 0, 10, 20, 25 ), searchedFrom );
+    }
+
+    @Test
+    public void getResourcesSamePage()
+    {
+        Assert.assertEquals( ids( 5, 15 ), ids( bundleProvider.getResources( 5, 15 ) ) );
+        Assert.assertEquals( ids( 5, 15 ), ids( bundleProvider.getResources( 5, 15 ) ) );
+        Assert.assertEquals( Arrays.asList( 0 ), searchedFrom );
+    }
+
+    @Test
+    public void getResourcesRestarted()
+    {
+        Assert.assertEquals( ids( 10, 20 ), ids( bundleProvider.getResources( 10, 20 ) ) );
+        Assert.assertEquals( ids( 0, 10 ), ids( bundleProvider.getResources( 0, 10 ) ) );
+        Assert.assertEquals( Arrays.asList( 0, 0 ), searchedFrom );
+    }
+
+    @Test
+    public void getResourcesAll()
+    {
+        Assert.assertEquals( ids( 0, 25 ), ids( bundleProvider.getResources( 0, Integer.MAX_VALUE ) ) );
+        Assert.assertEquals( Integer.valueOf( AVAILABLE_COUNT ), bundleProvider.size() );
+    }
+
+    private static List<String> ids( int from, int to )
+    {
+        final List<String> ids = new ArrayList<>();
+        for ( int i = from; i < to; i++ )
+        {
+            ids.add( "tei" + i );
+        }
+        return ids;
+    }
+
+    private List<String> ids( List<IBaseResource> resources )
+    {
+        return resources.stream().map( resourceIds::get ).collect( Collectors.toList() );
+    }
+
+    private static class TestSearchState implements DhisToFhirSearchState
+    {
+        private final int from;
+
+        private TestSearchState( int from )
+        {
+            this.from = from;
+        }
+
+        @Override
+        public boolean isMore()
+        {
+            return from < AVAILABLE_COUNT;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.dhis2.fhir.adapter.fhir.repository.impl;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dhis2.fhir.adapter.cache.RequestCacheContext;
+import org.dhis2.fhir.adapter.cache.RequestCacheService;
+import org.dhis2.fhir.adapter.cache.impl.RequestCacheServiceImpl;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistCallback;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistResult;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisRepositoryPersistStatus;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryContainer;
+import org.dhis2.fhir.adapter.dhis.local.LocalDhisResourceRepositoryTemplate;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceId;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.fhir.client.StoredFhirResourceService;
+import org.dhis2.fhir.adapter.fhir.data.repository.FhirDhisAssignmentRepository;
+import org.dhis2.fhir.adapter.fhir.data.repository.SubscriptionFhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceRepository;
+import org.dhis2.fhir.adapter.fhir.metadata.model.ClientFhirEndpoint;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClient;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.metadata.model.TrackedEntityRule;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.repository.FhirRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResource;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.transform.TransformerDataException;
+import org.dhis2.fhir.adapter.fhir.warmup.MetadataWarmUpConfig;
+import org.dhis2.fhir.adapter.lock.LockManager;
+import org.dhis2.fhir.adapter.lock.impl.StripedLockManagerImpl;
+import org.dhis2.fhir.adapter.metrics.ProcessingMetrics;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.annotation.Nonnull;
+import javax.jms.ConnectionFactory;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Unit tests for {@link FhirResourceBatchQueueListener}.
+ *
+ * @author volsch
+ */
+public class FhirResourceBatchQueueListenerTest
+{
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private MessageConverter messageConverter;
+
+    @Mock
+    private FhirClientResourceRepository fhirClientResourceRepository;
+
+    @Mock
+    private SubscriptionFhirResourceRepository subscriptionFhirResourceRepository;
+
+    @Mock
+    private StoredFhirResourceService storedItemService;
+
+    @Mock
+    private FhirResourceRepository fhirResourceRepository;
+
+    @Mock
+    private FhirRepository fhirRepository;
+
+    @Mock
+    private FhirDhisAssignmentRepository fhirDhisAssignmentRepository;
+
+    @Mock
+    private LocalDhisRepositoryPersistCallback<TrackedEntityInstance> persistCallback;
+
+    @Mock( answer = Answers.RETURNS_DEEP_STUBS )
+    private IBaseResource resource1;
+
+    @Mock( answer = Answers.RETURNS_DEEP_STUBS )
+    private IBaseResource resource2;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private FhirClient fhirClient;
+
+    private FhirClientResource fhirClientResource;
+
+    private final TrackedEntityRule rule = new TrackedEntityRule();
+
+    private final RequestCacheService requestCacheService = new RequestCacheServiceImpl();
+
+    private final LockManager lockManager = new StripedLockManagerImpl();
+
+    private final MetadataWarmUpConfig metadataWarmUpConfig = new MetadataWarmUpConfig();
+
+    private FhirResourceBatchQueueListener listener;
+
+    @Before
+    public void before()
+    {
+        final ClientFhirEndpoint fhirEndpoint = new ClientFhirEndpoint();
+        fhirEndpoint.setBaseUrl( "http://localhost:8080/fhir" );
+
+        fhirClient = new FhirClient();
+        fhirClient.setId( UUID.randomUUID() );
+        fhirClient.setFhirVersion( FhirVersion.R4 );
+        fhirClient.setFhirEndpoint( fhirEndpoint );
+
+        fhirClientResource = new FhirClientResource();
+        fhirClientResource.setId( UUID.randomUUID() );
+        fhirClientResource.setFhirClient( fhirClient );
+        fhirClientResource.setFhirResourceType( FhirResourceType.PATIENT );
+
+        listener = new FhirResourceBatchQueueListener( connectionFactory, messageConverter, requestCacheService, lockManager, new RepositoryConfig(),
+            fhirClientResourceRepository, subscriptionFhirResourceRepository, storedItemService, fhirResourceRepository, fhirRepository,
+            fhirDhisAssignmentRepository, metadataWarmUpConfig, new ProcessingMetrics( new SimpleMeterRegistry() ) );
+
+        Mockito.when( fhirClientResourceRepository.findOneByIdCached( Mockito.eq( fhirClientResource.getId() ) ) ).thenReturn( Optional.of( fhirClientResource ) );
+        Mockito.when( subscriptionFhirResourceRepository.findResource( Mockito.same( fhirClientResource ), Mockito.anyString() ) ).thenReturn( Optional.empty() );
+        Mockito.when( resource1.getIdElement().getIdPart() ).thenReturn( "1" );
+        Mockito.when( resource1.getMeta().getLastUpdated() ).thenReturn( null );
+        Mockito.when( resource1.getMeta().getVersionId() ).thenReturn( "7" );
+        Mockito.when( resource2.getIdElement().getIdPart() ).thenReturn( "2" );
+        Mockito.when( resource2.getMeta().getLastUpdated() ).thenReturn( null );
+        Mockito.when( resource2.getMeta().getVersionId() ).thenReturn( "3" );
+        Mockito.when( fhirResourceRepository.findRefreshed( Mockito.eq( fhirClient.getId() ), Mockito.eq( FhirVersion.R4 ), Mockito.same( fhirEndpoint ),
+            Mockito.eq( "Patient" ), Mockito.eq( "1" ) ) ).thenReturn( Optional.of( resource1 ) );
+        Mockito.when( fhirResourceRepository.findRefreshed( Mockito.eq( fhirClient.getId() ), Mockito.eq( FhirVersion.R4 ), Mockito.same( fhirEndpoint ),
+            Mockito.eq( "Patient" ), Mockito.eq( "2" ) ) ).thenReturn( Optional.of( resource2 ) );
+    }
+
+    @Test
+    public void isAutoStartup()
+    {
+        Assert.assertTrue( listener.isAutoStartup() );
+    }
+
+    @Test
+    public void isAutoStartupMetadataWarmUp()
+    {
+        // listener is started by the metadata warm-up when it has been completed
+        metadataWarmUpConfig.setEnabled( true );
+        Assert.assertFalse( listener.isAutoStartup() );
+    }
+
+    @Test
+    public void receiveAuthenticated()
+    {
+        final FhirResource fhirResource1 = createFhirResource( "1" );
+        final FhirResource fhirResource2 = createFhirResource( "2" );
+
+        final Set<FhirResource> failed = listener.receiveAuthenticated( Arrays.asList( fhirResource1, fhirResource2 ) );
+        Assert.assertTrue( failed.isEmpty() );
+
+        Mockito.verify( fhirRepository ).save( Mockito.same( fhirClientResource ), Mockito.same( resource1 ), Mockito.isNull() );
+        Mockito.verify( fhirRepository ).save( Mockito.same( fhirClientResource ), Mockito.same( resource2 ), Mockito.isNull() );
+        Mockito.verify( storedItemService ).stored( Mockito.same( fhirClient ), Mockito.endsWith( "/1|7" ) );
+        Mockito.verify( storedItemService ).stored( Mockito.same( fhirClient ), Mockito.endsWith( "/2|3" ) );
+    }
+
+    @Test
+    public void receiveAuthenticatedRetry()
+    {
+        final FhirResource fhirResource1 = createFhirResource( "1" );
+        final FhirResource fhirResource2 = createFhirResource( "2" );
+
+        Mockito.doThrow( new TransformerDataException( "Test" ) ).when( fhirRepository )
+            .save( Mockito.same( fhirClientResource ), Mockito.same( resource1 ), Mockito.isNull() );
+
+        final Set<FhirResource> failed = listener.receiveAuthenticated( Arrays.asList( fhirResource1, fhirResource2 ) );
+        Assert.assertEquals( 1, failed.size() );
+        Assert.assertTrue( failed.contains( fhirResource1 ) );
+
+        Mockito.verify( storedItemService, Mockito.never() ).stored( Mockito.any(), Mockito.contains( "/1|" ) );
+        Mockito.verify( storedItemService ).stored( Mockito.same( fhirClient ), Mockito.endsWith( "/2|3" ) );
+    }
+
+    @Test
+    public void receiveAuthenticatedPersisted()
+    {
+        final FhirResource fhirResource1 = createFhirResource( "1" );
+        final FhirResource fhirResource2 = createFhirResource( "2" );
+        final TrackedEntityInstance tei1 = new TrackedEntityInstance( "a1234567891" );
+        final TrackedEntityInstance tei2 = new TrackedEntityInstance( "a1234567892" );
+
+        saveLocally( resource1, tei1 );
+        saveLocally( resource2, tei2 );
+        Mockito.doAnswer( invocation -> {
+            Assert.assertTrue( "Locks of batch must be kept until DHIS2 resources have been persisted.", lockManager.getCurrentLockContext().isPresent() );
+            final Consumer<LocalDhisRepositoryPersistResult> resultConsumer = invocation.getArgument( 2 );
+            resultConsumer.accept( new LocalDhisRepositoryPersistResult( LocalDhisRepositoryPersistStatus.ERROR, "a1234567891", "Test" ) );
+            resultConsumer.accept( new LocalDhisRepositoryPersistResult( LocalDhisRepositoryPersistStatus.SUCCESS, "a1234567892" ) );
+            return null;
+        } ).when( persistCallback ).persistSave( Mockito.anyCollection(), Mockito.eq( false ), Mockito.any() );
+
+        final Set<FhirResource> failed = listener.receiveAuthenticated( Arrays.asList( fhirResource1, fhirResource2 ) );
+        Assert.assertEquals( 1, failed.size() );
+        Assert.assertTrue( failed.contains( fhirResource1 ) );
+        Assert.assertFalse( lockManager.getCurrentLockContext().isPresent() );
+
+        Mockito.verify( fhirDhisAssignmentRepository, Mockito.never() ).saveDhisResourceId( Mockito.any(), Mockito.any(), Mockito.any(),
+            Mockito.eq( new DhisResourceId( DhisResourceType.TRACKED_ENTITY, "a1234567891" ) ) );
+        final IIdType fhirResourceId2 = resource2.getIdElement();
+        Mockito.verify( fhirDhisAssignmentRepository ).saveDhisResourceId( Mockito.same( rule ), Mockito.same( fhirClient ), Mockito.same( fhirResourceId2 ),
+            Mockito.eq( new DhisResourceId( DhisResourceType.TRACKED_ENTITY, "a1234567892" ) ) );
+        Mockito.verify( storedItemService, Mockito.never() ).stored( Mockito.any(), Mockito.contains( "/1|" ) );
+        Mockito.verify( storedItemService ).stored( Mockito.same( fhirClient ), Mockito.endsWith( "/2|3" ) );
+    }
+
+    @Test
+    public void receiveAuthenticatedPersistFailed()
+    {
+        final FhirResource fhirResource1 = createFhirResource( "1" );
+        final FhirResource fhirResource2 = createFhirResource( "2" );
+
+        saveLocally( resource1, new TrackedEntityInstance( "a1234567891" ) );
+        saveLocally( resource2, new TrackedEntityInstance( "a1234567892" ) );
+        Mockito.doThrow( new IllegalStateException( "Test" ) ).when( persistCallback )
+            .persistSave( Mockito.anyCollection(), Mockito.anyBoolean(), Mockito.any() );
+
+        final Set<FhirResource> failed = listener.receiveAuthenticated( Arrays.asList( fhirResource1, fhirResource2 ) );
+        Assert.assertEquals( 2, failed.size() );
+        Assert.assertFalse( lockManager.getCurrentLockContext().isPresent() );
+
+        Mockito.verifyZeroInteractions( fhirDhisAssignmentRepository );
+        Mockito.verify( storedItemService, Mockito.never() ).stored( Mockito.any(), Mockito.anyString() );
+    }
+
+    @Test
+    public void receiveAuthenticatedMissingClientResource()
+    {
+        final FhirResource fhirResource = createFhirResource( "1" );
+        fhirResource.setFhirClientResourceId( UUID.randomUUID() );
+
+        Mockito.when( fhirClientResourceRepository.findOneByIdCached( Mockito.eq( fhirResource.getFhirClientResourceId() ) ) ).thenReturn( Optional.empty() );
+
+        final Set<FhirResource> failed = listener.receiveAuthenticated( Arrays.asList( fhirResource ) );
+        Assert.assertTrue( failed.isEmpty() );
+
+        Mockito.verifyZeroInteractions( fhirRepository );
+        Mockito.verifyZeroInteractions( storedItemService );
+    }
+
+    private void saveLocally( @Nonnull IBaseResource resource, @Nonnull TrackedEntityInstance trackedEntityInstance )
+    {
+        // simulates the deferred persistence of the DHIS2 resource and the pending assignment that is made by the FHIR repository
+        Mockito.doAnswer( invocation -> {
+            Assert.assertTrue( lockManager.getCurrentLockContext().isPresent() );
+            final RequestCacheContext requestCacheContext = Objects.requireNonNull( requestCacheService.getCurrentRequestCacheContext() );
+            requestCacheContext.<LocalDhisResourceRepositoryContainer>getAttribute( LocalDhisResourceRepositoryTemplate.CONTAINER_REQUEST_CACHE_ATTRIBUTE_NAME, LocalDhisResourceRepositoryContainer.class )
+                .getRepository( TrackedEntityInstance.class, persistCallback )
+                .save( trackedEntityInstance, requestCacheContext.getAttribute( LocalDhisResourceRepositoryTemplate.RESOURCE_KEY_REQUEST_CACHE_ATTRIBUTE_NAME, Object.class ) );
+            requestCacheContext.<PendingFhirDhisAssignments>getAttribute( PendingFhirDhisAssignments.REQUEST_CACHE_ATTRIBUTE_NAME, PendingFhirDhisAssignments.class )
+                .add( rule, fhirClient, resource.getIdElement(), trackedEntityInstance.getResourceId() );
+            return null;
+        } ).when( fhirRepository ).save( Mockito.same( fhirClientResource ), Mockito.same( resource ), Mockito.isNull() );
+    }
+
+    private FhirResource createFhirResource( String id )
+    {
+        final FhirResource fhirResource = new FhirResource();
+        fhirResource.setId( id );
+        fhirResource.setFhirClientResourceId( fhirClientResource.getId() );
+        return fhirResource;
+    }
+}
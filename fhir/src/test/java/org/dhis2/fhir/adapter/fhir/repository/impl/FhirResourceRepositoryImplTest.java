@@ -32,8 +32,11 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.model.api.IFhirVersion;
 import ca.uhn.fhir.model.primitive.IdDt;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.dhis2.fhir.adapter.fhir.client.StoredFhirResourceService;
+import org.dhis2.fhir.adapter.fhir.client.impl.FhirClientProcessorConfig;
 import org.dhis2.fhir.adapter.fhir.metadata.repository.FhirClientResourceRepository;
+import org.dhis2.fhir.adapter.fhir.repository.FhirClientRegistry;
 import org.dhis2.fhir.adapter.fhir.script.ScriptExecutor;
 import org.dhis2.fhir.adapter.spring.StaticObjectProvider;
 import org.hl7.fhir.instance.model.api.IBaseMetaType;
@@ -47,6 +50,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -68,6 +72,9 @@ public class FhirResourceRepositoryImplTest
     @Mock
     private FhirClientResourceRepository fhirClientResourceRepository;
 
+    @Mock
+    private FhirClientRegistry fhirClientRegistry;
+
     @Mock
     private FhirContext fhirContextDstu3;
 
@@ -93,8 +100,9 @@ public class FhirResourceRepositoryImplTest
         Mockito.when( fhirContextR4.getVersion() ).thenReturn( fhirVersionR4 );
         Mockito.when( fhirVersionR4.getVersion() ).thenReturn( FhirVersionEnum.R4 );
 
-        repository = new FhirResourceRepositoryImpl( scriptExecutor, storedItemService, fhirClientResourceRepository,
-            new StaticObjectProvider<>( Arrays.asList( fhirContextDstu3, fhirContextR4 ) ), new StaticObjectProvider<>( Collections.emptyList() ) );
+        repository = new FhirResourceRepositoryImpl( scriptExecutor, storedItemService, fhirClientResourceRepository, fhirClientRegistry,
+            new StaticObjectProvider<>( Arrays.asList( fhirContextDstu3, fhirContextR4 ) ), new StaticObjectProvider<>( Collections.emptyList() ), new FhirClientProcessorConfig(),
+            new ConcurrentMapCacheManager(), new StaticObjectProvider<>( Collections.emptyList() ), new SimpleMeterRegistry() );
     }
 
     @Test
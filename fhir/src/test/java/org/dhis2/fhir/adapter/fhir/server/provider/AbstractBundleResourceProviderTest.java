@@ -131,6 +131,9 @@ public class AbstractBundleResourceProviderTest
     @Mock
     private RequestCacheContext requestCacheContext;
 
+    @Mock
+    private BundlePrefetcher bundlePrefetcher;
+
     @Mock
     private RequestDetails requestDetails;
 
@@ -150,7 +153,7 @@ public class AbstractBundleResourceProviderTest
     public void setUp()
     {
         bundleResourceProvider = Mockito.mock( AbstractBundleResourceProvider.class, Mockito.withSettings()
-            .useConstructor( fhirClientResourceRepository, fhirClientSystemRepository, fhirRepository, dhisRepository, requestCacheService )
+            .useConstructor( fhirClientResourceRepository, fhirClientSystemRepository, fhirRepository, dhisRepository, requestCacheService, bundlePrefetcher )
             .defaultAnswer( Mockito.CALLS_REAL_METHODS ) );
 
         fhirClient.setId( FhirClient.getIdByFhirVersion( FhirVersion.DSTU3 ) );
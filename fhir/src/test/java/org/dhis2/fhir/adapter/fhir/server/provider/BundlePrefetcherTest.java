@@ -0,0 +1,191 @@
+package org.dhis2.fhir.adapter.fhir.server.provider;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.auth.Authorization;
+import org.dhis2.fhir.adapter.auth.AuthorizationContext;
+import org.dhis2.fhir.adapter.auth.ThreadLocalAuthorizationContext;
+import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
+import org.dhis2.fhir.adapter.dhis.model.Reference;
+import org.dhis2.fhir.adapter.dhis.orgunit.OrganizationUnit;
+import org.dhis2.fhir.adapter.dhis.orgunit.OrganizationUnitService;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityInstance;
+import org.dhis2.fhir.adapter.dhis.tracker.trackedentity.TrackedEntityService;
+import org.dhis2.fhir.adapter.fhir.metadata.model.FhirResourceType;
+import org.dhis2.fhir.adapter.fhir.model.FhirVersion;
+import org.dhis2.fhir.adapter.fhir.repository.DhisFhirResourceId;
+import org.dhis2.fhir.adapter.fhir.repository.FhirBatchRequest;
+import org.dhis2.fhir.adapter.fhir.repository.FhirOperation;
+import org.dhis2.fhir.adapter.fhir.repository.FhirOperationType;
+import org.dhis2.fhir.adapter.fhir.repository.FhirResourceRepository;
+import org.dhis2.fhir.adapter.fhir.transform.config.FhirRestInterfaceConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link BundlePrefetcher}.
+ *
+ * @author volsch
+ */
+public class BundlePrefetcherTest
+{
+    private static final UUID RULE_ID = UUID.fromString( "5f9ebdc9-852e-4c83-87ca-795946aabc35" );
+
+    @Mock
+    private FhirResourceRepository fhirResourceRepository;
+
+    @Mock
+    private TrackedEntityService trackedEntityService;
+
+    @Mock
+    private OrganizationUnitService organizationUnitService;
+
+    @Rule
+    public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    private final AuthorizationContext authorizationContext = new ThreadLocalAuthorizationContext();
+
+    private final Authorization authorization = new Authorization( "Bearer 4711" );
+
+    private final List<List<String>> requestedChunks = Collections.synchronizedList( new ArrayList<>() );
+
+    private BundlePrefetcher prefetcher;
+
+    @Before
+    public void before()
+    {
+        final FhirRestInterfaceConfig config = new FhirRestInterfaceConfig();
+        config.setBundlePrefetchParallelCount( 2 );
+        config.setBundlePrefetchChunkSize( 2 );
+
+        Mockito.when( fhirResourceRepository.findFhirContext( ArgumentMatchers.any() ) ).thenReturn( Optional.empty() );
+        Mockito.when( trackedEntityService.findAllByIdsRefreshed( ArgumentMatchers.any() ) ).thenAnswer( invocation -> {
+            Assert.assertSame( authorization, authorizationContext.getAuthorization() );
+
+            final Collection<String> ids = invocation.getArgument( 0 );
+            requestedChunks.add( new ArrayList<>( ids ) );
+
+            return ids.stream().filter( id -> !id.equals( "notFound001" ) ).map( TrackedEntityInstance::new ).collect( Collectors.toList() );
+        } );
+        Mockito.when( trackedEntityService.registerFound( ArgumentMatchers.any() ) ).thenAnswer( invocation -> invocation.<Collection<?>>getArgument( 0 ).size() );
+        Mockito.when( organizationUnitService.findMetadataByReferences( ArgumentMatchers.any() ) ).thenAnswer( invocation -> {
+            Assert.assertSame( authorization, authorizationContext.getAuthorization() );
+
+            return invocation.<Collection<Reference>>getArgument( 0 ).stream().collect( Collectors.toMap( r -> r, r -> new OrganizationUnit() ) );
+        } );
+
+        authorizationContext.setAuthorization( authorization );
+        prefetcher = new BundlePrefetcher( config, authorizationContext, fhirResourceRepository, trackedEntityService, organizationUnitService );
+    }
+
+    @After
+    public void after()
+    {
+        prefetcher.close();
+        authorizationContext.resetAuthorization();
+    }
+
+    @Test
+    public void prefetch()
+    {
+        final FhirOperation processedOperation = operation( FhirOperationType.PUT, FhirResourceType.PATIENT, id( DhisResourceType.TRACKED_ENTITY, "processed01" ) );
+        processedOperation.getResult().badRequest( "Invalid data included" );
+
+        final FhirBatchRequest batchRequest = new FhirBatchRequest( Arrays.asList(
+            operation( FhirOperationType.PUT, FhirResourceType.PATIENT, id( DhisResourceType.TRACKED_ENTITY, "ldXIdLNUNE1" ) ),
+            operation( FhirOperationType.DELETE, FhirResourceType.PATIENT, id( DhisResourceType.TRACKED_ENTITY, "ldXIdLNUNE2" ) ),
+            operation( FhirOperationType.PUT, FhirResourceType.PATIENT, id( DhisResourceType.TRACKED_ENTITY, "ldXIdLNUNE1" ) ),
+            operation( FhirOperationType.PUT, FhirResourceType.PATIENT, id( DhisResourceType.TRACKED_ENTITY, "notFound001" ) ),
+            operation( FhirOperationType.PUT, FhirResourceType.ORGANIZATION, id( DhisResourceType.ORGANIZATION_UNIT, "ldXIdLNUNE3" ) ),
+            operation( FhirOperationType.PUT, FhirResourceType.OBSERVATION, id( DhisResourceType.PROGRAM_STAGE_EVENT, "ldXIdLNUNE4" ) ),
+            operation( FhirOperationType.PUT, FhirResourceType.PATIENT, "ldXIdLNUNE5" ),
+            processedOperation ), false );
+
+        Assert.assertEquals( 3, prefetcher.prefetch( FhirVersion.R4, batchRequest ) );
+
+        Assert.assertEquals( 2, requestedChunks.size() );
+        Assert.assertTrue( requestedChunks.contains( Arrays.asList( "ldXIdLNUNE1", "ldXIdLNUNE2" ) ) );
+        Assert.assertTrue( requestedChunks.contains( Collections.singletonList( "notFound001" ) ) );
+        Mockito.verify( trackedEntityService, Mockito.times( 2 ) ).registerFound( ArgumentMatchers.any() );
+        Mockito.verify( organizationUnitService ).findMetadataByReferences( ArgumentMatchers.eq( Collections.singletonList( Reference.createIdReference( "ldXIdLNUNE3" ) ) ) );
+        Mockito.verifyNoMoreInteractions( organizationUnitService );
+    }
+
+    @Test
+    public void prefetchFailure()
+    {
+        Mockito.doThrow( new IllegalStateException( "Test" ) ).when( organizationUnitService ).findMetadataByReferences( ArgumentMatchers.any() );
+
+        final FhirBatchRequest batchRequest = new FhirBatchRequest( Arrays.asList(
+            operation( FhirOperationType.PUT, FhirResourceType.PATIENT, id( DhisResourceType.TRACKED_ENTITY, "ldXIdLNUNE1" ) ),
+            operation( FhirOperationType.PUT, FhirResourceType.ORGANIZATION, id( DhisResourceType.ORGANIZATION_UNIT, "ldXIdLNUNE3" ) ) ), false );
+
+        Assert.assertEquals( 1, prefetcher.prefetch( FhirVersion.R4, batchRequest ) );
+    }
+
+    @Test
+    public void prefetchNothing()
+    {
+        final FhirBatchRequest batchRequest = new FhirBatchRequest( Collections.singletonList(
+            operation( FhirOperationType.POST, FhirResourceType.PATIENT, null ) ), false );
+
+        Assert.assertEquals( 0, prefetcher.prefetch( FhirVersion.R4, batchRequest ) );
+        Mockito.verifyZeroInteractions( trackedEntityService, organizationUnitService );
+    }
+
+    @Nonnull
+    private static String id( @Nonnull DhisResourceType type, @Nonnull String id )
+    {
+        return DhisFhirResourceId.toString( type, id, RULE_ID );
+    }
+
+    @Nonnull
+    private static FhirOperation operation( @Nonnull FhirOperationType operationType, @Nonnull FhirResourceType resourceType, String resourceId )
+    {
+        return new FhirOperation( operationType, resourceType, null, resourceId, null, null );
+    }
+}
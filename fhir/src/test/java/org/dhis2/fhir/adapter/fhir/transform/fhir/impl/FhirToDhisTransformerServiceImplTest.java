@@ -28,6 +28,7 @@ package org.dhis2.fhir.adapter.fhir.transform.fhir.impl;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import org.dhis2.fhir.adapter.cache.impl.RequestCacheServiceImpl;
 import org.dhis2.fhir.adapter.dhis.model.DhisResourceType;
 import org.dhis2.fhir.adapter.fhir.metadata.model.AbstractRule;
 import org.dhis2.fhir.adapter.fhir.metadata.model.FhirClientResource;
@@ -84,7 +85,7 @@ public class FhirToDhisTransformerServiceImplTest
     @Before
     public void setUp()
     {
-        service = new FhirToDhisTransformerServiceImpl( lockManager, fhirResourceRepository, ruleRepository,
+        service = new FhirToDhisTransformerServiceImpl( lockManager, new RequestCacheServiceImpl(), fhirResourceRepository, ruleRepository,
             new StaticObjectProvider<>( new ArrayList<>() ), new StaticObjectProvider<>( new ArrayList<>() ),
             scriptExecutor );
         service = Mockito.spy( service );
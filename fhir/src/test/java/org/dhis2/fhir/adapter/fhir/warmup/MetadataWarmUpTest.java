@@ -0,0 +1,139 @@
+package org.dhis2.fhir.adapter.fhir.warmup;
+
+/*
+ * Copyright (c) 2004-2019, University of Oslo
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import org.dhis2.fhir.adapter.fhir.repository.impl.FhirResourceBatchQueueListener;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link MetadataWarmUp}.
+ *
+ * @author volsch
+ */
+public class MetadataWarmUpTest
+{
+    @Mock
+    private ObjectProvider<List<MetadataWarmUpTask>> tasksProvider;
+
+    @Mock
+    private ObjectProvider<JmsListenerEndpointRegistry> registryProvider;
+
+    @Mock
+    private JmsListenerEndpointRegistry registry;
+
+    @Mock
+    private ObjectProvider<FhirResourceBatchQueueListener> batchQueueListenerProvider;
+
+    @Mock
+    private FhirResourceBatchQueueListener batchQueueListener;
+
+    @Mock
+    private MetadataWarmUpTask task1;
+
+    @Mock
+    private MetadataWarmUpTask task2;
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    private final MetadataWarmUpConfig config = new MetadataWarmUpConfig();
+
+    @Before
+    public void before()
+    {
+        Mockito.when( task1.getName() ).thenReturn( "task1" );
+        Mockito.when( task2.getName() ).thenReturn( "task2" );
+        Mockito.when( tasksProvider.getIfAvailable( Mockito.any() ) ).thenReturn( Arrays.asList( task1, task2 ) );
+        Mockito.when( registryProvider.getIfAvailable() ).thenReturn( registry );
+        Mockito.when( batchQueueListenerProvider.getIfAvailable() ).thenReturn( batchQueueListener );
+    }
+
+    @Test
+    public void pending()
+    {
+        final MetadataWarmUpStatus status = new MetadataWarmUp( config, tasksProvider, registryProvider, batchQueueListenerProvider ).getStatus();
+
+        Assert.assertFalse( status.isReady() );
+        Assert.assertEquals( MetadataWarmUpState.PENDING, status.getState() );
+        Assert.assertEquals( 2, status.getTasks().size() );
+        Assert.assertEquals( MetadataWarmUpState.PENDING, status.getTasks().get( 0 ).getState() );
+    }
+
+    @Test
+    public void warmUp()
+    {
+        config.setEnabled( true );
+        Mockito.when( task1.warmUp() ).thenAnswer( invocation -> {
+            Assert.assertNotNull( SecurityContextHolder.getContext().getAuthentication() );
+            // queue listeners must not have been started before the warm-up has been completed
+            Mockito.verifyZeroInteractions( registry, batchQueueListener );
+            return 10;
+        } );
+        Mockito.when( task2.warmUp() ).thenThrow( new IllegalStateException( "Test" ) );
+
+        final MetadataWarmUp metadataWarmUp = new MetadataWarmUp( config, tasksProvider, registryProvider, batchQueueListenerProvider );
+        metadataWarmUp.warmUpTasks();
+
+        final MetadataWarmUpStatus status = metadataWarmUp.getStatus();
+        Assert.assertTrue( status.isReady() );
+        Assert.assertNotNull( status.getTimeToReadyMillis() );
+        Assert.assertEquals( MetadataWarmUpState.COMPLETED, status.getTasks().get( 0 ).getState() );
+        Assert.assertEquals( 10, status.getTasks().get( 0 ).getItemCount() );
+        Assert.assertEquals( MetadataWarmUpState.FAILED, status.getTasks().get( 1 ).getState() );
+        Assert.assertEquals( "Test", status.getTasks().get( 1 ).getMessage() );
+
+        final InOrder inOrder = Mockito.inOrder( registry, batchQueueListener );
+        inOrder.verify( registry ).start();
+        inOrder.verify( batchQueueListener ).start();
+    }
+
+    @Test
+    public void warmUpQueueListenersNotDeferred()
+    {
+        final MetadataWarmUp metadataWarmUp = new MetadataWarmUp( config, tasksProvider, registryProvider, batchQueueListenerProvider );
+        metadataWarmUp.warmUpTasks();
+
+        Assert.assertTrue( metadataWarmUp.getStatus().isReady() );
+        Mockito.verifyZeroInteractions( registry, batchQueueListener );
+    }
+}
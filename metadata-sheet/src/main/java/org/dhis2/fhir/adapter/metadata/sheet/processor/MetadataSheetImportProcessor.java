@@ -29,6 +29,7 @@ package org.dhis2.fhir.adapter.metadata.sheet.processor;
  */
 
 import org.apache.poi.ss.usermodel.Workbook;
+import org.dhis2.fhir.adapter.fhir.metadata.repository.index.RuleIndexManager;
 import org.dhis2.fhir.adapter.metadata.sheet.model.MetadataSheetMessageCollector;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.CacheManager;
@@ -61,15 +62,18 @@ public class MetadataSheetImportProcessor
 
     private final CacheManager cacheManager;
 
+    private final RuleIndexManager ruleIndexManager;
+
     public MetadataSheetImportProcessor( @Nonnull MetadataSheetScriptImportProcessor scriptImportProcessor, @Nonnull MetadataSheetProgramImportProcessor programImportProcessor,
         @Nonnull MetadataSheetCodeImportProcessor codeImportProcessor, @Nonnull MetadataSheetRuleImportProcessor ruleImportProcessor,
-        @Nonnull @Qualifier( "metadataCacheManager" ) CacheManager cacheManager )
+        @Nonnull @Qualifier( "metadataCacheManager" ) CacheManager cacheManager, @Nonnull RuleIndexManager ruleIndexManager )
     {
         this.scriptImportProcessor = scriptImportProcessor;
         this.programImportProcessor = programImportProcessor;
         this.codeImportProcessor = codeImportProcessor;
         this.ruleImportProcessor = ruleImportProcessor;
         this.cacheManager = cacheManager;
+        this.ruleIndexManager = ruleIndexManager;
     }
 
     @Nonnull
@@ -106,6 +110,7 @@ public class MetadataSheetImportProcessor
             throw new MetadataSheetImportException( messageCollector );
         }
 
+        ruleIndexManager.invalidate();
         TransactionSynchronizationManager.registerSynchronization(
             new TransactionSynchronizationAdapter()
             {